@@ -110,6 +110,12 @@ public interface V3JobOperations extends ReadOnlyJobOperations {
      */
     Completable updateTask(String taskId, Function<Task, Optional<Task>> changeFunction, Trigger trigger, String reason, CallMetadata callMetadata);
 
+    /**
+     * Batch version of {@link #updateTask(String, Function, Trigger, String, CallMetadata)}. Updates of tasks belonging
+     * to the same job are applied in a single change action. Tasks not found are ignored.
+     */
+    Completable updateTasks(Map<String, Function<Task, Optional<Task>>> changeFunctions, Trigger trigger, String reason, CallMetadata callMetadata);
+
     /**
      * Called by scheduler when a task is assigned to an agent. The new task state is written to store first, and next
      * internal models are updated.
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.Collection;
 
 import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.JsonStreamContext;
@@ -172,7 +173,7 @@ public class ObjectMappers {
     private static final ObjectMapper JACKSON_DEFAULT = new ObjectMapper();
     private static final ObjectMapper DEFAULT = createDefaultMapper();
     private static final ObjectMapper COMPACT = createCompactMapper();
-    private static final ObjectMapper STORE = createStoreMapper();
+    private static final ObjectMapper STORE = createStoreMapper(new JsonFactory());
     private static final ObjectMapper APP_SCALE_STORE = createAppScalePolicyMapper();
 
     /**
@@ -200,6 +201,14 @@ public class ObjectMappers {
         return STORE;
     }
 
+    /**
+     * Creates a new {@link ObjectMapper} instance with the same configuration as {@link #storeMapper()}, but with
+     * the provided {@link JsonFactory}. Can be used to store the data in a binary JSON data format (for example Smile).
+     */
+    public static ObjectMapper newStoreMapper(JsonFactory jsonFactory) {
+        return createStoreMapper(jsonFactory);
+    }
+
     public static ObjectMapper appScalePolicyMapper() {
         return APP_SCALE_STORE;
     }
@@ -340,8 +349,8 @@ public class ObjectMappers {
         return objectMapper;
     }
 
-    private static ObjectMapper createStoreMapper() {
-        ObjectMapper objectMapper = new ObjectMapper();
+    private static ObjectMapper createStoreMapper(JsonFactory jsonFactory) {
+        ObjectMapper objectMapper = new ObjectMapper(jsonFactory);
 
         objectMapper.registerModule(new Jdk8Module());
 
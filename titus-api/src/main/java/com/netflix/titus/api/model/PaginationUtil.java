@@ -55,15 +55,26 @@ public final class PaginationUtil {
                                                                    Function<T, String> cursorFactory) {
         List<T> itemsCopy = new ArrayList<>(items);
         itemsCopy.sort(cursorComparator);
+        return takePageWithCursorFromSorted(page, itemsCopy, cursorIndexOf, cursorFactory);
+    }
 
+    /**
+     * Cursor-based pagination over items that are already sorted in the cursor order. Unlike
+     * {@link #takePageWithCursor(Page, List, Comparator, CursorIndexOf, Function)}, the items are neither copied nor
+     * sorted, so for a random access list the cost is dominated by the cursor lookup, and the page size.
+     */
+    public static <T> Pair<List<T>, Pagination> takePageWithCursorFromSorted(Page page,
+                                                                             List<T> sortedItems,
+                                                                             CursorIndexOf<T> cursorIndexOf,
+                                                                             Function<T, String> cursorFactory) {
         if (StringExt.isEmpty(page.getCursor())) {
-            return takePageWithoutCursor(page, itemsCopy, cursorFactory);
+            return takePageWithoutCursor(page, sortedItems, cursorFactory);
         }
 
-        int offset = cursorIndexOf.apply(itemsCopy, page.getCursor())
+        int offset = cursorIndexOf.apply(sortedItems, page.getCursor())
                 .orElseThrow(() -> new IllegalArgumentException("Invalid cursor: " + page.getCursor())) + 1;
 
-        int totalItems = itemsCopy.size();
+        int totalItems = sortedItems.size();
         boolean isEmptyResult = offset >= totalItems;
         boolean hasMore = totalItems > (offset + page.getPageSize());
         int endOffset = Math.min(totalItems, offset + page.getPageSize());
@@ -76,11 +87,11 @@ public final class PaginationUtil {
                 hasMore,
                 numberOfPages,
                 totalItems,
-                totalItems == 0 ? "" : cursorFactory.apply(itemsCopy.get(cursorPosition)),
+                totalItems == 0 ? "" : cursorFactory.apply(sortedItems.get(cursorPosition)),
                 totalItems == 0 ? 0 : cursorPosition
         );
 
-        List<T> pageItems = isEmptyResult ? Collections.emptyList() : itemsCopy.subList(offset, endOffset);
+        List<T> pageItems = isEmptyResult ? Collections.emptyList() : sortedItems.subList(offset, endOffset);
         return Pair.of(pageItems, pagination);
     }
 
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.benchmark.eviction;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.eviction.model.SystemDisruptionBudget;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.master.eviction.service.quota.ConsumptionResult;
+import com.netflix.titus.master.eviction.service.quota.TitusQuotasManager;
+import com.netflix.titus.master.eviction.service.quota.TitusQuotasManager.LockingMode;
+import com.netflix.titus.master.eviction.service.quota.job.SelfJobDisruptionBudgetResolver;
+import com.netflix.titus.master.eviction.service.quota.system.SystemQuotaController;
+import com.netflix.titus.testkit.model.job.JobComponentStub;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import reactor.core.publisher.Flux;
+
+import static com.netflix.titus.testkit.model.eviction.DisruptionBudgetGenerator.budget;
+import static com.netflix.titus.testkit.model.eviction.DisruptionBudgetGenerator.newBatchJobDescriptor;
+import static com.netflix.titus.testkit.model.eviction.DisruptionBudgetGenerator.percentageOfHealthyPolicy;
+import static com.netflix.titus.testkit.model.eviction.DisruptionBudgetGenerator.unlimitedRate;
+
+/**
+ * Measures the throughput of concurrent {@link TitusQuotasManager#tryConsumeQuota(Job, Task)} calls for tasks
+ * spread over many jobs. The 'globalLock' benchmark runs a quota manager in the {@link LockingMode#GlobalLock} mode,
+ * which serializes all quota consumption requests on a single monitor as it was done before per job locking, and is
+ * kept as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class QuotaConsumptionBenchmark {
+
+    @Param({"1", "100"})
+    private int jobCount;
+
+    @Param({"10"})
+    private int tasksPerJob;
+
+    private SystemQuotaController systemQuotaController;
+    private TitusQuotasManager quotasManager;
+    private SystemQuotaController globalLockSystemQuotaController;
+    private TitusQuotasManager globalLockQuotasManager;
+    private Job<?>[] jobs;
+    private Task[] tasks;
+
+    @Setup
+    public void setUp() {
+        TitusRuntime titusRuntime = TitusRuntimes.internal();
+        JobComponentStub jobComponentStub = new JobComponentStub(titusRuntime);
+
+        List<Job<BatchJobExt>> jobList = JobGenerator.batchJobs(newBatchJobDescriptor(
+                tasksPerJob,
+                budget(percentageOfHealthyPolicy(10), unlimitedRate(), Collections.emptyList())
+        )).getValues(jobCount);
+
+        this.jobs = new Job<?>[jobCount * tasksPerJob];
+        this.tasks = new Task[jobCount * tasksPerJob];
+        int idx = 0;
+        for (Job<BatchJobExt> job : jobList) {
+            jobComponentStub.createJobAndTasks(job);
+            for (Task task : jobComponentStub.getJobOperations().getTasks(job.getId())) {
+                jobs[idx] = job;
+                tasks[idx] = jobComponentStub.moveTaskToState(task, TaskState.Started);
+                idx++;
+            }
+        }
+
+        this.systemQuotaController = newSystemQuotaController(titusRuntime);
+        this.quotasManager = newQuotasManager(jobComponentStub, systemQuotaController, LockingMode.PerJob, titusRuntime);
+        this.globalLockSystemQuotaController = newSystemQuotaController(titusRuntime);
+        this.globalLockQuotasManager = newQuotasManager(jobComponentStub, globalLockSystemQuotaController, LockingMode.GlobalLock, titusRuntime);
+    }
+
+    @TearDown
+    public void tearDown() {
+        quotasManager.shutdown();
+        systemQuotaController.shutdown();
+        globalLockQuotasManager.shutdown();
+        globalLockSystemQuotaController.shutdown();
+    }
+
+    @Benchmark
+    public ConsumptionResult stripedLock() {
+        int idx = ThreadLocalRandom.current().nextInt(tasks.length);
+        return quotasManager.tryConsumeQuota(jobs[idx], tasks[idx]);
+    }
+
+    @Benchmark
+    public ConsumptionResult globalLock() {
+        int idx = ThreadLocalRandom.current().nextInt(tasks.length);
+        return globalLockQuotasManager.tryConsumeQuota(jobs[idx], tasks[idx]);
+    }
+
+    private SystemQuotaController newSystemQuotaController(TitusRuntime titusRuntime) {
+        return new SystemQuotaController(
+                () -> Flux.just(SystemDisruptionBudget.newBasicSystemDisruptionBudget(1_000_000_000, 1_000_000_000)).concatWith(Flux.never()),
+                titusRuntime
+        );
+    }
+
+    private TitusQuotasManager newQuotasManager(JobComponentStub jobComponentStub,
+                                                SystemQuotaController systemQuotaController,
+                                                LockingMode lockingMode,
+                                                TitusRuntime titusRuntime) {
+        TitusQuotasManager quotasManager = new TitusQuotasManager(
+                jobComponentStub.getJobOperations(),
+                SelfJobDisruptionBudgetResolver.getInstance(),
+                jobComponentStub.getContainerHealthService(),
+                systemQuotaController,
+                lockingMode,
+                titusRuntime
+        );
+        quotasManager.enterActiveMode();
+        return quotasManager;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.benchmark.grpc;
+
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.ServiceJobExt;
+import com.netflix.titus.runtime.endpoint.common.EmptyLogStorageInfo;
+import com.netflix.titus.runtime.endpoint.common.LogStorageInfo;
+import com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the conversion of jobs and tasks between the core and the GRPC models, which is done for each job/task
+ * returned by a query, and for each job/task change notification sent to an observer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GrpcModelConverterBenchmark {
+
+    private final LogStorageInfo<Task> logStorageInfo = EmptyLogStorageInfo.empty();
+
+    private Job<ServiceJobExt> coreJob;
+    private Task coreTask;
+    private com.netflix.titus.grpc.protogen.Job grpcJob;
+    private com.netflix.titus.grpc.protogen.Task grpcTask;
+
+    @Setup
+    public void setUp() {
+        this.coreJob = JobGenerator.serviceJobs(JobDescriptorGenerator.serviceJobDescriptors().getValue()).getValue();
+        this.coreTask = JobFunctions.changeTaskStatus(JobGenerator.serviceTasks(coreJob).getValue(), TaskState.Started, "started", "started");
+        this.grpcJob = V3GrpcModelConverters.toGrpcJob(coreJob);
+        this.grpcTask = V3GrpcModelConverters.toGrpcTask(coreTask, logStorageInfo);
+    }
+
+    @Benchmark
+    public com.netflix.titus.grpc.protogen.Job toGrpcJob() {
+        return V3GrpcModelConverters.toGrpcJob(coreJob);
+    }
+
+    @Benchmark
+    public Job toCoreJob() {
+        return V3GrpcModelConverters.toCoreJob(grpcJob);
+    }
+
+    @Benchmark
+    public com.netflix.titus.grpc.protogen.Task toGrpcTask() {
+        return V3GrpcModelConverters.toGrpcTask(coreTask, logStorageInfo);
+    }
+
+    @Benchmark
+    public Task toCoreTask() {
+        return V3GrpcModelConverters.toCoreTask(coreJob, grpcTask);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.benchmark.jobmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.model.Page;
+import com.netflix.titus.api.model.Pagination;
+import com.netflix.titus.api.model.PaginationUtil;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.grpc.protogen.JobDescriptor.JobSpecCase;
+import com.netflix.titus.grpc.protogen.TaskStatus;
+import com.netflix.titus.master.jobmanager.service.query.JobQueryIndex;
+import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3JobQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.jobmanager.JobManagerCursors;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares a first page job query answered from {@link JobQueryIndex} with a full scan followed by a sort, which is
+ * how the queries were answered before. The selective query matches 1% of the jobs (by the application name).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JobQueryIndexBenchmark {
+
+    private static final int APP_COUNT = 100;
+
+    @Param({"10000"})
+    private int jobCount;
+
+    @Param({"10"})
+    private int tasksPerJob;
+
+    @Param({"100"})
+    private int pageSize;
+
+    private final TitusRuntime titusRuntime = TitusRuntimes.internal();
+
+    private JobQueryIndex index;
+    private List<Pair<Job<?>, List<Task>>> jobsAndTasks;
+
+    private JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> allJobsCriteria;
+    private JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> selectiveCriteria;
+
+    @Setup
+    public void setUp() {
+        this.index = JobQueryIndex.empty();
+        this.jobsAndTasks = new ArrayList<>();
+
+        List<Job<BatchJobExt>> jobs = JobGenerator.batchJobs(JobDescriptorGenerator.batchJobDescriptor(tasksPerJob)).getValues(jobCount);
+        for (int i = 0; i < jobs.size(); i++) {
+            Job<BatchJobExt> job = jobs.get(i).toBuilder()
+                    .withJobDescriptor(jobs.get(i).getJobDescriptor().toBuilder().withApplicationName("app" + (i % APP_COUNT)).build())
+                    .build();
+            List<Task> jobTasks = JobGenerator.batchTasks(job).cast(Task.class).getValues(tasksPerJob);
+            index = index.withJob(job, jobTasks);
+            jobsAndTasks.add(Pair.of(job, jobTasks));
+        }
+
+        this.allJobsCriteria = JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder().build();
+        this.selectiveCriteria = JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder().withAppName("app1").build();
+    }
+
+    @Benchmark
+    public Pair<List<Job<?>>, Pagination> indexAllJobs() {
+        return fromIndex(allJobsCriteria);
+    }
+
+    @Benchmark
+    public Pair<List<Job<?>>, Pagination> indexSelective() {
+        return fromIndex(selectiveCriteria);
+    }
+
+    @Benchmark
+    public Pair<List<Job<?>>, Pagination> scanAllJobs() {
+        return fromScan(allJobsCriteria);
+    }
+
+    @Benchmark
+    public Pair<List<Job<?>>, Pagination> scanSelective() {
+        return fromScan(selectiveCriteria);
+    }
+
+    private Pair<List<Job<?>>, Pagination> fromIndex(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+        return PaginationUtil.takePageWithCursorFromSorted(
+                Page.newBuilder().withPageSize(pageSize).build(),
+                index.findJobs(criteria, new V3JobQueryCriteriaEvaluator(criteria, titusRuntime)),
+                JobManagerCursors::coreJobIndexOf,
+                JobManagerCursors::newCoreCursorFrom
+        );
+    }
+
+    private Pair<List<Job<?>>, Pagination> fromScan(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+        V3JobQueryCriteriaEvaluator evaluator = new V3JobQueryCriteriaEvaluator(criteria, titusRuntime);
+        List<Job<?>> matching = new ArrayList<>();
+        for (Pair<Job<?>, List<Task>> jobAndTasks : jobsAndTasks) {
+            if (evaluator.test(jobAndTasks)) {
+                matching.add(jobAndTasks.getLeft());
+            }
+        }
+        return PaginationUtil.takePageWithCursor(
+                Page.newBuilder().withPageSize(pageSize).build(),
+                matching,
+                JobManagerCursors.coreJobCursorOrderComparator(),
+                JobManagerCursors::coreJobIndexOf,
+                JobManagerCursors::newCoreCursorFrom
+        );
+    }
+}
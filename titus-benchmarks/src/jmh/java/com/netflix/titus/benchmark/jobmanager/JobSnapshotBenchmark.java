@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.benchmark.jobmanager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.runtime.connector.jobmanager.JobSnapshot;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the throughput of applying single task updates to {@link JobSnapshot}, as done by the job data replicator
+ * for each task event received from TitusMaster. The default parameters model 10k jobs with 200k tasks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JobSnapshotBenchmark {
+
+    @Param({"10000"})
+    private int jobCount;
+
+    @Param({"20"})
+    private int tasksPerJob;
+
+    private JobSnapshot snapshot;
+    private Task[] tasks;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Map<String, Job<?>> jobsById = new HashMap<>();
+        Map<String, List<Task>> tasksByJobId = new HashMap<>();
+        this.tasks = new Task[jobCount * tasksPerJob];
+
+        List<Job<BatchJobExt>> jobs = JobGenerator.batchJobs(JobDescriptorGenerator.batchJobDescriptor(tasksPerJob)).getValues(jobCount);
+        int idx = 0;
+        for (Job<BatchJobExt> job : jobs) {
+            List<Task> jobTasks = JobGenerator.batchTasks(job).cast(Task.class).getValues(tasksPerJob);
+            jobsById.put(job.getId(), job);
+            tasksByJobId.put(job.getId(), jobTasks);
+            for (Task task : jobTasks) {
+                tasks[idx++] = task;
+            }
+        }
+        this.snapshot = JobSnapshot.newInstance("benchmark", jobsById, tasksByJobId);
+    }
+
+    @Benchmark
+    public JobSnapshot updateTask() {
+        snapshot = snapshot.updateTask(nextUpdatedTask(), false).get();
+        return snapshot;
+    }
+
+    @Benchmark
+    public int updateTaskAndReadJobTasks() {
+        Task task = nextUpdatedTask();
+        snapshot = snapshot.updateTask(task, false).get();
+        return snapshot.getTasks(task.getJobId()).size();
+    }
+
+    private Task nextUpdatedTask() {
+        next = (next + 1) % tasks.length;
+        Task task = tasks[next];
+        TaskState newState = task.getStatus().getState() == TaskState.Started ? TaskState.Launched : TaskState.Started;
+        tasks[next] = JobFunctions.changeTaskStatus(task, newState, "benchmark", "benchmark");
+        return tasks[next];
+    }
+}
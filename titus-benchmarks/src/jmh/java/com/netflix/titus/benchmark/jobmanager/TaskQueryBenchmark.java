@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.benchmark.jobmanager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.model.Page;
+import com.netflix.titus.api.model.Pagination;
+import com.netflix.titus.api.model.PaginationUtil;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.grpc.protogen.JobDescriptor.JobSpecCase;
+import com.netflix.titus.grpc.protogen.TaskStatus;
+import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3TaskQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.jobmanager.JobManagerCursors;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures a task query answered by a scan with {@link V3TaskQueryCriteriaEvaluator}, followed by
+ * {@link PaginationUtil#takePageWithCursor}, as a function of the fleet size. Half of the tasks are in the Started
+ * state. The cursor based query starts from the middle of the result set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TaskQueryBenchmark {
+
+    @Param({"1000", "10000"})
+    private int jobCount;
+
+    @Param({"10"})
+    private int tasksPerJob;
+
+    @Param({"100"})
+    private int pageSize;
+
+    private final TitusRuntime titusRuntime = TitusRuntimes.internal();
+
+    private List<Pair<Job<?>, Task>> jobsAndTasks;
+
+    private V3TaskQueryCriteriaEvaluator allTasksEvaluator;
+    private V3TaskQueryCriteriaEvaluator startedTasksEvaluator;
+    private String middleCursor;
+
+    @Setup
+    public void setUp() {
+        this.jobsAndTasks = new ArrayList<>();
+        for (Job<BatchJobExt> job : JobGenerator.batchJobs(JobDescriptorGenerator.batchJobDescriptor(tasksPerJob)).getValues(jobCount)) {
+            List<Task> tasks = JobGenerator.batchTasks(job).cast(Task.class).getValues(tasksPerJob);
+            for (int i = 0; i < tasks.size(); i++) {
+                Task task = i % 2 == 0 ? tasks.get(i) : JobFunctions.changeTaskStatus(tasks.get(i), TaskState.Started, "started", "started");
+                jobsAndTasks.add(Pair.of(job, task));
+            }
+        }
+
+        this.allTasksEvaluator = new V3TaskQueryCriteriaEvaluator(
+                JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder().build(),
+                titusRuntime
+        );
+        this.startedTasksEvaluator = new V3TaskQueryCriteriaEvaluator(
+                JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder()
+                        .withTaskStates(Collections.singleton(TaskStatus.TaskState.Started))
+                        .build(),
+                titusRuntime
+        );
+
+        List<Task> allTasks = new ArrayList<>();
+        jobsAndTasks.forEach(jobAndTask -> allTasks.add(jobAndTask.getRight()));
+        allTasks.sort(JobManagerCursors.coreTaskCursorOrderComparator());
+        this.middleCursor = JobManagerCursors.newCoreCursorFrom(allTasks.get(allTasks.size() / 2));
+    }
+
+    @Benchmark
+    public Pair<List<Task>, Pagination> firstPageAllTasks() {
+        return query(allTasksEvaluator, Page.newBuilder().withPageSize(pageSize).build());
+    }
+
+    @Benchmark
+    public Pair<List<Task>, Pagination> firstPageStartedTasks() {
+        return query(startedTasksEvaluator, Page.newBuilder().withPageSize(pageSize).build());
+    }
+
+    @Benchmark
+    public Pair<List<Task>, Pagination> cursorPageAllTasks() {
+        return query(allTasksEvaluator, Page.newBuilder().withPageSize(pageSize).withCursor(middleCursor).build());
+    }
+
+    private Pair<List<Task>, Pagination> query(V3TaskQueryCriteriaEvaluator evaluator, Page page) {
+        List<Task> matching = new ArrayList<>();
+        for (Pair<Job<?>, Task> jobAndTask : jobsAndTasks) {
+            if (evaluator.test(jobAndTask)) {
+                matching.add(jobAndTask.getRight());
+            }
+        }
+        return PaginationUtil.takePageWithCursor(
+                page,
+                matching,
+                JobManagerCursors.coreTaskCursorOrderComparator(),
+                JobManagerCursors::coreTaskIndexOf,
+                JobManagerCursors::newCoreCursorFrom
+        );
+    }
+}
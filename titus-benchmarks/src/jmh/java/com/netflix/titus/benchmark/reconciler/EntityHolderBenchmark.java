@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.benchmark.reconciler;
+
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the cost of a single child update in a job {@link EntityHolder}, as a function of the number of tasks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EntityHolderBenchmark {
+
+    @Param({"10", "100", "1000", "5000", "20000"})
+    private int taskCount;
+
+    private EntityHolder jobHolder;
+    private String[] taskIds;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        this.taskIds = new String[taskCount];
+        EntityHolder holder = EntityHolder.newRoot("job#0", "job");
+        for (int i = 0; i < taskCount; i++) {
+            taskIds[i] = "task#" + i;
+            holder = holder.addChild(EntityHolder.newRoot(taskIds[i], "task_v0"));
+        }
+        this.jobHolder = holder;
+    }
+
+    @Benchmark
+    public EntityHolder updateChild() {
+        String taskId = nextTaskId();
+        jobHolder = jobHolder.addChild(EntityHolder.newRoot(taskId, taskId));
+        return jobHolder;
+    }
+
+    @Benchmark
+    public EntityHolder removeAndAddChild() {
+        String taskId = nextTaskId();
+        EntityHolder withoutChild = jobHolder.removeChild(taskId).getLeft();
+        jobHolder = withoutChild.addChild(EntityHolder.newRoot(taskId, taskId));
+        return jobHolder;
+    }
+
+    @Benchmark
+    public EntityHolder addTag() {
+        jobHolder = jobHolder.addTag("tag", nextTaskId());
+        return jobHolder;
+    }
+
+    private String nextTaskId() {
+        next = (next + 1) % taskCount;
+        return taskIds[next];
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.benchmark.reconciler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static com.netflix.titus.testkit.model.job.JobDescriptorGenerator.oneTaskBatchJobDescriptor;
+
+/**
+ * Measures the time to build job {@link EntityHolder}s for all jobs and tasks loaded from a store during the leader
+ * takeover. The store is simulated by job/task lists prepared upfront, so only the in-memory part of the restore
+ * process is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EntityHolderRestoreBenchmark {
+
+    @Param({"100000"})
+    private int taskCount;
+
+    @Param({"10", "1000"})
+    private int jobCount;
+
+    private List<Job<BatchJobExt>> jobs;
+    private List<List<Task>> tasksByJob;
+
+    @Setup
+    public void setUp() {
+        this.jobs = JobGenerator.batchJobs(oneTaskBatchJobDescriptor()).getValues(jobCount);
+        this.tasksByJob = new ArrayList<>(jobCount);
+        int tasksPerJob = taskCount / jobCount;
+        for (Job<BatchJobExt> job : jobs) {
+            tasksByJob.add(new ArrayList<>(JobGenerator.batchTasks(job).getValues(tasksPerJob)));
+        }
+    }
+
+    @Benchmark
+    public List<EntityHolder> addChildOneByOne() {
+        List<EntityHolder> result = new ArrayList<>(jobCount);
+        for (int i = 0; i < jobCount; i++) {
+            Job<?> job = jobs.get(i);
+            EntityHolder jobHolder = EntityHolder.newRoot(job.getId(), job);
+            for (Task task : tasksByJob.get(i)) {
+                jobHolder = jobHolder.addChild(EntityHolder.newRoot(task.getId(), task));
+            }
+            result.add(jobHolder);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<EntityHolder> addChildren() {
+        List<EntityHolder> result = new ArrayList<>(jobCount);
+        for (int i = 0; i < jobCount; i++) {
+            Job<?> job = jobs.get(i);
+            List<Task> tasks = tasksByJob.get(i);
+            List<EntityHolder> taskHolders = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                taskHolders.add(EntityHolder.newRoot(task.getId(), task));
+            }
+            result.add(EntityHolder.newRoot(job.getId(), job).addChildren(taskHolders));
+        }
+        return result;
+    }
+}
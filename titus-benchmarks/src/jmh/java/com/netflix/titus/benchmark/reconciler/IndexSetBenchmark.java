@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.benchmark.reconciler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import com.netflix.titus.common.framework.reconciler.internal.DefaultReconciliationEngine;
+import com.netflix.titus.common.framework.reconciler.internal.DefaultReconciliationFramework;
+import com.netflix.titus.common.framework.reconciler.internal.IndexSet;
+import com.netflix.titus.common.framework.reconciler.internal.InternalReconciliationEngine;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+
+/**
+ * Measures the cost of re-indexing a single changed job (engine root), as done by the reconciliation framework loop
+ * after a model update, against the total number of jobs and tasks. The {@link #reconciliationLoop()} benchmark runs
+ * the {@link DefaultReconciliationFramework} loop iterations that apply a single task update, which includes
+ * the id to engine map maintenance.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IndexSetBenchmark {
+
+    private static final String INDEX_ID = "byEntity";
+
+    private static final long IDLE_TIMEOUT_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long ACTIVE_TIMEOUT_MS = 10;
+
+    private static final Map<Object, Comparator<EntityHolder>> INDEX_COMPARATORS = Collections.singletonMap(
+            INDEX_ID, Comparator.comparingLong(h -> (Long) h.getEntity())
+    );
+
+    @Param({"100", "1000", "10000"})
+    private int jobCount;
+
+    @Param({"10"})
+    private int tasksPerJob;
+
+    private IndexSet<EntityHolder> indexSet;
+    private EntityHolder[] jobHolders;
+    private int next;
+    private long version;
+
+    private final TestScheduler testScheduler = Schedulers.test();
+    private DefaultReconciliationFramework<String> framework;
+    private List<DefaultReconciliationEngine<String>> engines;
+    private int nextEngine;
+
+    @Setup
+    public void setUp() {
+        this.jobHolders = new EntityHolder[jobCount];
+        for (int i = 0; i < jobCount; i++) {
+            EntityHolder jobHolder = EntityHolder.newRoot("job#" + i, Long.valueOf(i));
+            for (int t = 0; t < tasksPerJob; t++) {
+                jobHolder = jobHolder.addChild(EntityHolder.newRoot("job#" + i + "-task#" + t, "task"));
+            }
+            jobHolders[i] = jobHolder;
+        }
+        this.indexSet = IndexSet.newIndexSet(INDEX_COMPARATORS, EntityHolder::getId).apply(Arrays.asList(jobHolders));
+
+        this.engines = new ArrayList<>();
+        for (EntityHolder jobHolder : jobHolders) {
+            engines.add(new DefaultReconciliationEngine<>(
+                    jobHolder,
+                    false,
+                    reconciliationEngine -> Collections.emptyList(),
+                    Collections.emptyMap(),
+                    new ReconciliationEngineBenchmark.StringEventFactory(),
+                    changeAction -> Collections.emptyList(),
+                    event -> Collections.emptyList(),
+                    TitusRuntimes.internal()
+            ));
+        }
+        this.framework = new DefaultReconciliationFramework<>(
+                new ArrayList<InternalReconciliationEngine<String>>(engines),
+                bootstrapModel -> {
+                    throw new IllegalStateException("Engines are not created by the benchmark");
+                },
+                IDLE_TIMEOUT_MS,
+                ACTIVE_TIMEOUT_MS,
+                INDEX_COMPARATORS,
+                new DefaultRegistry(),
+                Optional.of(testScheduler)
+        );
+        framework.start();
+        // The first iteration is a full cycle, and all the following ones evaluate the ready engines only.
+        testScheduler.triggerActions();
+    }
+
+    @TearDown
+    public void tearDown() {
+        framework.stop(0);
+    }
+
+    @Benchmark
+    public IndexSet<EntityHolder> deltaUpdate() {
+        indexSet = indexSet.apply(Collections.singletonList(nextUpdatedJob()), Collections.emptyList());
+        return indexSet;
+    }
+
+    @Benchmark
+    public int deltaUpdateAndRead() {
+        indexSet = indexSet.apply(Collections.singletonList(nextUpdatedJob()), Collections.emptyList());
+        return indexSet.getOrdered(INDEX_ID).size();
+    }
+
+    /**
+     * Runs two loop iterations, the first one triggering the change action, and the second one applying its model
+     * update. The time should not depend on the total number of tasks.
+     */
+    @Benchmark
+    public EntityHolder reconciliationLoop() {
+        DefaultReconciliationEngine<String> engine = engines.get(nextEngine);
+        String taskId = engine.getReferenceView().getId() + "-task#" + (version % tasksPerJob);
+        nextEngine = (nextEngine + 1) % jobCount;
+
+        engine.changeReferenceModel(ReconciliationEngineBenchmark.updateChildAction(taskId, "task@" + version++)).subscribe();
+        testScheduler.advanceTimeBy(2 * ACTIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        return engine.getReferenceView();
+    }
+
+    private EntityHolder nextUpdatedJob() {
+        next = (next + 1) % jobCount;
+        jobHolders[next] = jobHolders[next].setEntity(version++);
+        return jobHolders[next];
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.benchmark.reconciler;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.common.framework.reconciler.ChangeAction;
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import com.netflix.titus.common.framework.reconciler.ModelActionHolder;
+import com.netflix.titus.common.framework.reconciler.ReconcileEventFactory;
+import com.netflix.titus.common.framework.reconciler.ReconciliationEngine;
+import com.netflix.titus.common.framework.reconciler.internal.DefaultReconciliationEngine;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.common.util.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import rx.Observable;
+
+/**
+ * Measures a full {@link DefaultReconciliationEngine} cycle (trigger, model update, event emit, transaction close)
+ * of a reference model change updating a single child, as a function of the number of children. The engine
+ * maintains an index over its children, as the job reconciliation engines do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReconciliationEngineBenchmark {
+
+    private static final String INDEX = "byValue";
+
+    private static final Map<Object, Comparator<EntityHolder>> INDEX_COMPARATORS = Collections.singletonMap(
+            INDEX, Comparator.<EntityHolder, String>comparing(EntityHolder::getEntity)
+    );
+
+    @Param({"100", "1000", "10000"})
+    private int childCount;
+
+    private DefaultReconciliationEngine<String> engine;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        EntityHolder root = EntityHolder.newRoot("root", "root");
+        for (int i = 0; i < childCount; i++) {
+            root = root.addChild(EntityHolder.newRoot("child#" + i, "value#" + i));
+        }
+        this.engine = new DefaultReconciliationEngine<>(
+                root,
+                false,
+                reconciliationEngine -> Collections.emptyList(),
+                INDEX_COMPARATORS,
+                new StringEventFactory(),
+                changeAction -> Collections.emptyList(),
+                event -> Collections.emptyList(),
+                TitusRuntimes.internal()
+        );
+    }
+
+    @Benchmark
+    public EntityHolder changeReferenceModel() {
+        String childId = "child#" + next;
+        String newValue = "value#" + next + '@' + System.nanoTime();
+        next = (next + 1) % childCount;
+
+        engine.changeReferenceModel(updateChildAction(childId, newValue)).subscribe();
+        engine.triggerActions();
+        engine.applyModelUpdates();
+        engine.emitEvents();
+        engine.closeFinishedTransactions();
+
+        return engine.getReferenceView();
+    }
+
+    static ChangeAction updateChildAction(String childId, String newValue) {
+        return () -> Observable.just(ModelActionHolder.referenceList(rootHolder -> {
+            Optional<EntityHolder> child = rootHolder.findChildById(childId);
+            if (!child.isPresent()) {
+                return Optional.empty();
+            }
+            EntityHolder updatedChild = child.get().setEntity(newValue);
+            return Optional.of(Pair.of(rootHolder.addChild(updatedChild), updatedChild));
+        }));
+    }
+
+    static class StringEventFactory implements ReconcileEventFactory<String> {
+
+        @Override
+        public String newBeforeChangeEvent(ReconciliationEngine<String> engine, ChangeAction changeAction, String transactionId) {
+            return "beforeChange";
+        }
+
+        @Override
+        public String newAfterChangeEvent(ReconciliationEngine<String> engine, ChangeAction changeAction, long waitTimeMs, long executionTimeMs, String transactionId) {
+            return "afterChange";
+        }
+
+        @Override
+        public String newChangeErrorEvent(ReconciliationEngine<String> engine, ChangeAction changeAction, Throwable error, long waitTimeMs, long executionTimeMs, String transactionId) {
+            return "changeError";
+        }
+
+        @Override
+        public String newModelEvent(ReconciliationEngine<String> engine, EntityHolder newRoot) {
+            return "model";
+        }
+
+        @Override
+        public String newModelUpdateEvent(ReconciliationEngine<String> engine, ChangeAction changeAction, ModelActionHolder modelActionHolder,
+                                          EntityHolder changedEntityHolder, Optional<EntityHolder> previousEntityHolder, String transactionId) {
+            return "modelUpdate";
+        }
+
+        @Override
+        public String newModelUpdateErrorEvent(ReconciliationEngine<String> engine, ChangeAction changeAction, ModelActionHolder modelActionHolder,
+                                               EntityHolder previousEntityHolder, Throwable error, String transactionId) {
+            return "modelUpdateError";
+        }
+    }
+}
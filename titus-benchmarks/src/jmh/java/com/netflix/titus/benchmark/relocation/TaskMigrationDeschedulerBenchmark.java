@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.benchmark.relocation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.agent.model.AgentInstance;
+import com.netflix.titus.api.agent.model.AgentInstanceGroup;
+import com.netflix.titus.api.agent.model.InstanceGroupLifecycleState;
+import com.netflix.titus.api.agent.service.ReadOnlyAgentOperations;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.model.Tier;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.supplementary.relocation.descheduler.DefaultDeschedulerService;
+import com.netflix.titus.supplementary.relocation.model.DeschedulingResult;
+import com.netflix.titus.testkit.model.agent.AgentComponentStub;
+import com.netflix.titus.testkit.model.agent.AgentGenerator;
+import com.netflix.titus.testkit.model.eviction.EvictionComponentStub;
+import com.netflix.titus.testkit.model.job.JobComponentStub;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static com.netflix.titus.testkit.model.agent.AgentTestFunctions.inState;
+import static com.netflix.titus.testkit.model.eviction.DisruptionBudgetGenerator.budget;
+import static com.netflix.titus.testkit.model.eviction.DisruptionBudgetGenerator.newBatchJobDescriptor;
+import static com.netflix.titus.testkit.model.eviction.DisruptionBudgetGenerator.selfManagedPolicy;
+import static com.netflix.titus.testkit.model.eviction.DisruptionBudgetGenerator.unlimitedRate;
+
+/**
+ * Measures a full descheduling pass over a large number of removable agents. Tasks of each job are spread across
+ * many agents, and the job quota allows evicting only half of them, so each descheduling decision changes
+ * the fitness of other agents.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TaskMigrationDeschedulerBenchmark {
+
+    private static final int INSTANCE_GROUP_COUNT = 10;
+
+    private static final int JOB_COUNT = 100;
+
+    @Param({"1000", "10000"})
+    private int agentCount;
+
+    @Param({"2"})
+    private int tasksPerAgent;
+
+    private DefaultDeschedulerService deschedulerService;
+
+    @Setup
+    public void setUp() {
+        TitusRuntime titusRuntime = TitusRuntimes.internal();
+        AgentComponentStub agentComponentStub = AgentComponentStub.newAgentComponent();
+        JobComponentStub jobComponentStub = new JobComponentStub(titusRuntime);
+        EvictionComponentStub evictionComponentStub = new EvictionComponentStub(jobComponentStub, titusRuntime);
+
+        ReadOnlyAgentOperations agentOperations = agentComponentStub.getAgentManagementService();
+        List<AgentInstance> agents = new ArrayList<>();
+        AgentGenerator.agentServerGroups(Tier.Flex, agentCount / INSTANCE_GROUP_COUNT).getValues(INSTANCE_GROUP_COUNT).forEach(instanceGroup -> {
+            AgentInstanceGroup removable = instanceGroup.but(inState(InstanceGroupLifecycleState.Removable));
+            agentComponentStub.addInstanceGroup(removable);
+            agents.addAll(agentOperations.getAgentInstances(removable.getId()));
+        });
+
+        int tasksPerJob = agents.size() * tasksPerAgent / JOB_COUNT;
+        List<Job<BatchJobExt>> jobs = JobGenerator.batchJobs(newBatchJobDescriptor(
+                tasksPerJob,
+                budget(selfManagedPolicy(30_000), unlimitedRate(), Collections.emptyList())
+        )).getValues(JOB_COUNT);
+
+        int taskIdx = 0;
+        for (Job<BatchJobExt> job : jobs) {
+            jobComponentStub.createJobAndTasks(job);
+            for (Task task : jobComponentStub.getJobOperations().getTasks(job.getId())) {
+                jobComponentStub.place(task.getId(), agents.get(taskIdx++ % agents.size()));
+            }
+            evictionComponentStub.setJobQuota(job.getId(), tasksPerJob / 2);
+        }
+        evictionComponentStub.setSystemQuota(taskIdx);
+
+        this.deschedulerService = new DefaultDeschedulerService(
+                jobComponentStub.getJobOperations(),
+                evictionComponentStub.getEvictionOperations(),
+                agentOperations,
+                titusRuntime
+        );
+    }
+
+    @Benchmark
+    public List<DeschedulingResult> deschedule() {
+        return deschedulerService.deschedule(Collections.emptyMap());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.benchmark.store;
+
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.json.ObjectMappers;
+import com.netflix.titus.ext.cassandra.store.StoreRecordCodec;
+import com.netflix.titus.ext.cassandra.store.StoreRecordCodecs;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares encoding and decoding throughput of the job store record formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StoreRecordCodecBenchmark {
+
+    @Param({StoreRecordCodecs.JSON_FORMAT, StoreRecordCodecs.SMILE_FORMAT})
+    private String format;
+
+    private StoreRecordCodec codec;
+
+    private Job<BatchJobExt> job;
+    private Task task;
+    private String encodedJob;
+    private String encodedTask;
+
+    @Setup
+    public void setUp() {
+        this.codec = StoreRecordCodecs.newDualReadCodec(format, ObjectMappers.storeMapper());
+
+        this.job = JobGenerator.batchJobs(JobDescriptorGenerator.batchJobDescriptors().getValue()).getValue();
+        this.task = JobGenerator.batchTasks(job).getValue();
+        this.encodedJob = codec.encode(job);
+        this.encodedTask = codec.encode(task);
+    }
+
+    @Benchmark
+    public String encodeJob() {
+        return codec.encode(job);
+    }
+
+    @Benchmark
+    public Job decodeJob() {
+        return codec.decode(encodedJob, Job.class);
+    }
+
+    @Benchmark
+    public String encodeTask() {
+        return codec.encode(task);
+    }
+
+    @Benchmark
+    public Task decodeTask() {
+        return codec.decode(encodedTask, Task.class);
+    }
+}
@@ -17,34 +17,40 @@
 package com.netflix.titus.common.framework.reconciler;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
+import com.netflix.titus.common.util.collections.PersistentHashMap;
 import com.netflix.titus.common.util.tuple.Pair;
 
 /**
  * Composite entity hierarchy. The parent-child association runs from parent to child only. {@link EntityHolder} instances
  * are immutable, thus each change produces a new version of an entity. Also each child update requires update of a parent
  * entity, when the reference to the child changes (a new version is created).
+ * <p>
+ * Children are kept in a {@link PersistentHashMap}, so adding, replacing or removing a child shares the structure
+ * with the previous version, and costs O(log n) instead of a full copy. The children list is materialized lazily.
  */
 public class EntityHolder {
 
     private final String id;
     private final Object entity;
 
-    private final List<EntityHolder> children;
-    private final Map<String, EntityHolder> childrenById;
+    private final PersistentHashMap<String, EntityHolder> childrenById;
     private final Map<String, Object> attributes;
 
-    private EntityHolder(String id, Object entity, Map<String, EntityHolder> childrenById, Map<String, Object> attributes) {
+    private volatile List<EntityHolder> children;
+
+    private EntityHolder(String id, Object entity, PersistentHashMap<String, EntityHolder> childrenById, Map<String, Object> attributes) {
         this.id = id;
         this.entity = entity;
         this.childrenById = childrenById;
-        this.children = new ArrayList<>(childrenById.values());
         this.attributes = attributes;
     }
 
@@ -57,6 +63,11 @@ public class EntityHolder {
     }
 
     public List<EntityHolder> getChildren() {
+        if (children == null) {
+            children = childrenById.isEmpty()
+                    ? Collections.emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(childrenById.values()));
+        }
         return children;
     }
 
@@ -72,14 +83,14 @@ public class EntityHolder {
     }
 
     public Optional<EntityHolder> findChildById(String childId) {
-        if (children.isEmpty()) {
+        if (childrenById.isEmpty()) {
             return Optional.empty();
         }
         EntityHolder entityHolder = childrenById.get(childId);
         if (entityHolder != null) {
             return Optional.of(entityHolder);
         }
-        for (EntityHolder child : children) {
+        for (EntityHolder child : getChildren()) {
             Optional<EntityHolder> result = child.findChildById(childId);
             if (result.isPresent()) {
                 return result;
@@ -89,19 +100,37 @@ public class EntityHolder {
     }
 
     public EntityHolder addChild(EntityHolder child) {
-        Map<String, EntityHolder> newChildrenById = new HashMap<>(childrenById);
-        newChildrenById.put(child.getId(), child);
+        return new EntityHolder(id, entity, childrenById.with(child.getId(), child), attributes);
+    }
+
+    /**
+     * Adds many children at once, creating a single new version of this entity. If this entity has no children yet,
+     * which is the case when an entity hierarchy is restored, the children map is built in one pass.
+     */
+    public EntityHolder addChildren(Collection<EntityHolder> newChildren) {
+        if (newChildren.isEmpty()) {
+            return this;
+        }
+        PersistentHashMap<String, EntityHolder> newChildrenById;
+        if (childrenById.isEmpty()) {
+            PersistentHashMap.Builder<String, EntityHolder> builder = PersistentHashMap.newBuilder();
+            newChildren.forEach(child -> builder.put(child.getId(), child));
+            newChildrenById = builder.build();
+        } else {
+            newChildrenById = childrenById;
+            for (EntityHolder child : newChildren) {
+                newChildrenById = newChildrenById.with(child.getId(), child);
+            }
+        }
         return new EntityHolder(id, entity, newChildrenById, attributes);
     }
 
     public Pair<EntityHolder, Optional<EntityHolder>> removeChild(String id) {
-        if (!childrenById.containsKey(id)) {
+        EntityHolder removedChild = childrenById.get(id);
+        if (removedChild == null) {
             return Pair.of(this, Optional.empty());
         }
-        Map<String, EntityHolder> newChildrenById = new HashMap<>(childrenById);
-        EntityHolder removedChild = newChildrenById.remove(id);
-
-        EntityHolder newRoot = new EntityHolder(this.id, this.entity, newChildrenById, this.attributes);
+        EntityHolder newRoot = new EntityHolder(this.id, this.entity, childrenById.without(id), this.attributes);
         return Pair.of(newRoot, Optional.of(removedChild));
     }
 
@@ -124,12 +153,50 @@ public class EntityHolder {
         return new EntityHolder(id, entity, childrenById, attributes);
     }
 
+    /**
+     * Reports the direct children that differ between this entity and its previous version. Only the changed parts of
+     * the children map are visited, so the cost is proportional to the number of changes, not to the number of
+     * children.
+     *
+     * @param addedOrUpdated called with the children that are new, or were replaced with a new version
+     * @param removed        called with the children of the previous version that are no longer present
+     */
+    public void diffChildren(EntityHolder previous, Consumer<EntityHolder> addedOrUpdated, Consumer<EntityHolder> removed) {
+        diffChildren(previous, addedOrUpdated, (previousChild, child) -> addedOrUpdated.accept(child), removed);
+    }
+
+    /**
+     * Same as {@link #diffChildren(EntityHolder, Consumer, Consumer)}, but separates new children from the updated ones.
+     * The previous version of an updated child is provided, so the caller can diff the nested levels as well.
+     *
+     * @param added   called with the children that are new
+     * @param updated called with the previous and the current version of the children that were replaced
+     * @param removed called with the children of the previous version that are no longer present
+     */
+    public void diffChildren(EntityHolder previous,
+                             Consumer<EntityHolder> added,
+                             BiConsumer<EntityHolder, EntityHolder> updated,
+                             Consumer<EntityHolder> removed) {
+        childrenById.diff(
+                previous.childrenById,
+                (childId, child) -> {
+                    EntityHolder previousChild = previous.childrenById.get(childId);
+                    if (previousChild == null) {
+                        added.accept(child);
+                    } else {
+                        updated.accept(previousChild, child);
+                    }
+                },
+                (childId, child) -> removed.accept(child)
+        );
+    }
+
     public void visit(Consumer<EntityHolder> visitor) {
         visitor.accept(this);
-        children.forEach(c -> c.visit(visitor));
+        childrenById.forEach((childId, child) -> child.visit(visitor));
     }
 
     public static <E> EntityHolder newRoot(String id, E entity) {
-        return new EntityHolder(id, entity, Collections.emptyMap(), Collections.emptyMap());
+        return new EntityHolder(id, entity, PersistentHashMap.empty(), Collections.emptyMap());
     }
 }
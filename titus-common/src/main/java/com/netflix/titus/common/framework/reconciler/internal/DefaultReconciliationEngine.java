@@ -56,7 +56,7 @@ public class DefaultReconciliationEngine<EVENT> implements InternalReconciliatio
     private final TitusRuntime titusRuntime;
     private final Clock clock;
 
-    private IndexSet<EntityHolder> indexSet;
+    private volatile IndexSet<EntityHolder> indexSet;
 
     private Transaction pendingTransaction = EmptyTransaction.EMPTY;
 
@@ -65,6 +65,9 @@ public class DefaultReconciliationEngine<EVENT> implements InternalReconciliatio
 
     private boolean firstTrigger;
 
+    private volatile Runnable readinessListener = () -> {
+    };
+
     public DefaultReconciliationEngine(EntityHolder bootstrapModel,
                                        boolean newlyCreated,
                                        DifferenceResolver<EVENT> runningDifferenceResolver,
@@ -75,24 +78,25 @@ public class DefaultReconciliationEngine<EVENT> implements InternalReconciliatio
                                        TitusRuntime titusRuntime) {
         this.runningDifferenceResolver = runningDifferenceResolver;
         this.eventFactory = eventFactory;
-        this.indexSet = IndexSet.newIndexSet(indexComparators);
+        this.indexSet = IndexSet.newIndexSet(indexComparators, EntityHolder::getId);
         this.titusRuntime = titusRuntime;
         this.clock = titusRuntime.getClock();
         this.eventObservable = ObservableExt.protectFromMissingExceptionHandlers(eventSubject, logger);
         this.modelHolder = new ModelHolder(bootstrapModel, bootstrapModel, bootstrapModel);
         this.firstTrigger = newlyCreated;
         this.metrics = new ReconciliationEngineMetrics<>(extraChangeActionTags, extraModelActionTags, titusRuntime.getRegistry(), clock);
-        indexEntityHolder(bootstrapModel);
+        this.indexSet = indexSet.apply(bootstrapModel.getChildren());
     }
 
     @Override
     public boolean applyModelUpdates() {
         return pendingTransaction.applyModelUpdates(modelHolder)
                 .map(newModelHolder -> {
-                    boolean isReferenceModelChanged = newModelHolder != modelHolder && newModelHolder.getReference() != modelHolder.getReference();
+                    EntityHolder previousReference = modelHolder.getReference();
+                    boolean isReferenceModelChanged = newModelHolder != modelHolder && newModelHolder.getReference() != previousReference;
                     this.modelHolder = newModelHolder;
                     if (isReferenceModelChanged) {
-                        indexEntityHolder(modelHolder.getReference());
+                        indexEntityHolder(previousReference, modelHolder.getReference());
                     }
                     return isReferenceModelChanged;
                 })
@@ -172,6 +176,7 @@ public class DefaultReconciliationEngine<EVENT> implements InternalReconciliatio
             changeActionEventQueue.add(eventFactory.newBeforeChangeEvent(this, referenceUpdate, transactionId));
             referenceChangeActions.add(new ChangeActionHolder(entityHolderId, referenceUpdate, subscriber, transactionId, clock.wallTime()));
             metrics.updateChangeActionQueueSize(referenceChangeActions.size());
+            notifyReady();
         });
     }
 
@@ -200,6 +205,15 @@ public class DefaultReconciliationEngine<EVENT> implements InternalReconciliatio
         return eventObservable;
     }
 
+    @Override
+    public void setReadinessListener(Runnable readinessListener) {
+        this.readinessListener = readinessListener;
+    }
+
+    void notifyReady() {
+        readinessListener.run();
+    }
+
     void shutdown() {
         pendingTransaction.close();
         eventSubject.onCompleted();
@@ -304,8 +318,14 @@ public class DefaultReconciliationEngine<EVENT> implements InternalReconciliatio
         pendingTransaction = transactions.size() == 1 ? transactions.get(0) : new CompositeTransaction(transactions);
     }
 
-    private void indexEntityHolder(EntityHolder entityHolder) {
-        indexSet = indexSet.apply(entityHolder.getChildren());
+    /**
+     * Re-indexes only the children added, updated or removed between the two versions of the reference model.
+     */
+    private void indexEntityHolder(EntityHolder previous, EntityHolder current) {
+        List<EntityHolder> addedOrUpdated = new ArrayList<>();
+        List<String> removedIds = new ArrayList<>();
+        current.diffChildren(previous, addedOrUpdated::add, removed -> removedIds.add(removed.getId()));
+        indexSet = indexSet.apply(addedOrUpdated, removedIds);
     }
 
     void emitEvent(EVENT event) {
@@ -19,8 +19,8 @@ package com.netflix.titus.common.framework.reconciler.internal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -38,6 +38,8 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.google.common.base.Preconditions;
+import com.netflix.spectator.api.Gauge;
+import com.netflix.spectator.api.Id;
 import com.netflix.spectator.api.Registry;
 import com.netflix.spectator.api.Timer;
 import com.netflix.spectator.api.patterns.PolledMeter;
@@ -48,6 +50,7 @@ import com.netflix.titus.common.framework.reconciler.MultiEngineChangeAction;
 import com.netflix.titus.common.framework.reconciler.ReconciliationEngine;
 import com.netflix.titus.common.framework.reconciler.ReconciliationFramework;
 import com.netflix.titus.common.util.ExceptionExt;
+import com.netflix.titus.common.util.collections.PersistentHashMap;
 import com.netflix.titus.common.util.rx.ObservableExt;
 import com.netflix.titus.common.util.tuple.Pair;
 import org.slf4j.Logger;
@@ -69,6 +72,8 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
     private static final String LOOP_EXECUTION_TIME_METRIC = ROOT_METRIC_NAME + "executionTime";
     private static final String LAST_EXECUTION_TIME_METRIC = ROOT_METRIC_NAME + "lastExecutionTime";
     private static final String LAST_FULL_CYCLE_EXECUTION_TIME_METRIC = ROOT_METRIC_NAME + "lastFullCycleExecutionTime";
+    private static final String EVALUATED_ENGINES_METRIC = ROOT_METRIC_NAME + "evaluatedEngines";
+    private static final String ALL_ENGINES_METRIC = ROOT_METRIC_NAME + "allEngines";
 
     private final Function<EntityHolder, InternalReconciliationEngine<EVENT>> engineFactory;
     private final long idleTimeoutMs;
@@ -79,11 +84,17 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
 
     private final Set<InternalReconciliationEngine<EVENT>> engines = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
+    /**
+     * Engines that reported pending work via their readiness listener. Only these engines are evaluated in the
+     * reconciliation loop iterations between the full cycles.
+     */
+    private final Set<InternalReconciliationEngine<EVENT>> readyEngines = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
     private final BlockingQueue<Pair<InternalReconciliationEngine<EVENT>, Subscriber<ReconciliationEngine>>> enginesAdded = new LinkedBlockingQueue<>();
     private final BlockingQueue<Pair<InternalReconciliationEngine<EVENT>, Subscriber<Void>>> enginesToRemove = new LinkedBlockingQueue<>();
 
-    private final AtomicReference<Map<String, InternalReconciliationEngine<EVENT>>> idToEngineMapRef = new AtomicReference<>(Collections.emptyMap());
-    private IndexSet<EntityHolder> indexSet;
+    private final AtomicReference<PersistentHashMap<String, InternalReconciliationEngine<EVENT>>> idToEngineMapRef = new AtomicReference<>(PersistentHashMap.empty());
+    private volatile IndexSet<EntityHolder> indexSet;
 
     private final Scheduler.Worker worker;
 
@@ -95,6 +106,8 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
     private final Subscription internalEventSubscription;
 
     private final Timer loopExecutionTime;
+    private final Gauge evaluatedEnginesGauge;
+    private final Gauge allEnginesGauge;
     private volatile long lastFullCycleExecutionTimeMs; // Probed by a polled meter.
     private volatile long lastExecutionTimeMs; // Probed by a polled meter.
 
@@ -107,11 +120,26 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
                                           Map<Object, Comparator<EntityHolder>> indexComparators,
                                           Registry registry,
                                           Optional<Scheduler> optionalScheduler) {
+        this(bootstrapEngines, engineFactory, idleTimeoutMs, activeTimeoutMs, indexComparators, registry, optionalScheduler, Optional.empty());
+    }
+
+    /**
+     * @param shardId if set, the framework instance is one of the shards of {@link ShardedReconciliationFramework}. The
+     *                shard id is added as a tag to all metrics, and as a suffix to the internal thread name.
+     */
+    DefaultReconciliationFramework(List<InternalReconciliationEngine<EVENT>> bootstrapEngines,
+                                   Function<EntityHolder, InternalReconciliationEngine<EVENT>> engineFactory,
+                                   long idleTimeoutMs,
+                                   long activeTimeoutMs,
+                                   Map<Object, Comparator<EntityHolder>> indexComparators,
+                                   Registry registry,
+                                   Optional<Scheduler> optionalScheduler,
+                                   Optional<String> shardId) {
         Preconditions.checkArgument(idleTimeoutMs > 0, "idleTimeout <= 0 (%s)", idleTimeoutMs);
         Preconditions.checkArgument(activeTimeoutMs <= idleTimeoutMs, "activeTimeout(%s) > idleTimeout(%s)", activeTimeoutMs, idleTimeoutMs);
 
         this.engineFactory = engineFactory;
-        this.indexSet = IndexSet.newIndexSet(indexComparators);
+        this.indexSet = IndexSet.newIndexSet(indexComparators, EntityHolder::getId);
 
         this.idleTimeoutMs = idleTimeoutMs;
         this.activeTimeoutMs = activeTimeoutMs;
@@ -121,7 +149,7 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
             this.executor = null;
         } else {
             this.executor = Executors.newSingleThreadExecutor(runnable -> {
-                Thread thread = new Thread(runnable, "TitusReconciliationFramework");
+                Thread thread = new Thread(runnable, "TitusReconciliationFramework" + shardId.map(id -> "-" + id).orElse(""));
                 thread.setDaemon(true);
                 return thread;
             });
@@ -134,16 +162,20 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
         // To keep eventsObservable permanently active.
         this.internalEventSubscription = eventsObservable.subscribe(ObservableExt.silentSubscriber());
 
-        this.loopExecutionTime = registry.timer(LOOP_EXECUTION_TIME_METRIC);
+        this.loopExecutionTime = registry.timer(newMetricId(registry, LOOP_EXECUTION_TIME_METRIC, shardId));
         this.lastFullCycleExecutionTimeMs = scheduler.now() - idleTimeoutMs;
         this.lastExecutionTimeMs = scheduler.now();
-        PolledMeter.using(registry).withName(LAST_EXECUTION_TIME_METRIC).monitorValue(this, self -> scheduler.now() - self.lastExecutionTimeMs);
-        PolledMeter.using(registry).withName(LAST_FULL_CYCLE_EXECUTION_TIME_METRIC).monitorValue(this, self -> scheduler.now() - self.lastFullCycleExecutionTimeMs);
-
-        engines.addAll(bootstrapEngines);
-        bootstrapEngines.forEach(engine -> eventsMergeSubject.onNext(engine.events()));
+        PolledMeter.using(registry).withId(newMetricId(registry, LAST_EXECUTION_TIME_METRIC, shardId)).monitorValue(this, self -> scheduler.now() - self.lastExecutionTimeMs);
+        PolledMeter.using(registry).withId(newMetricId(registry, LAST_FULL_CYCLE_EXECUTION_TIME_METRIC, shardId)).monitorValue(this, self -> scheduler.now() - self.lastFullCycleExecutionTimeMs);
+        this.evaluatedEnginesGauge = registry.gauge(newMetricId(registry, EVALUATED_ENGINES_METRIC, shardId));
+        this.allEnginesGauge = registry.gauge(newMetricId(registry, ALL_ENGINES_METRIC, shardId));
+
+        bootstrapEngines.forEach(engine -> {
+            registerEngine(engine);
+            eventsMergeSubject.onNext(engine.events());
+        });
 
-        updateIndexSet();
+        updateIndexSet(bootstrapEngines, Collections.emptyList());
     }
 
     @Override
@@ -220,48 +252,7 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
     public Observable<Void> changeReferenceModel(MultiEngineChangeAction multiEngineChangeAction,
                                                  BiFunction<String, Observable<List<ModelActionHolder>>, ChangeAction> engineChangeActionFactory,
                                                  String... rootEntityHolderIds) {
-        Preconditions.checkArgument(rootEntityHolderIds.length > 1,
-                "Change action for multiple engines requested, but %s root id holders provided", rootEntityHolderIds.length
-        );
-
-        return Observable.create(emitter -> {
-
-            List<ReconciliationEngine<EVENT>> engines = new ArrayList<>();
-            for (String id : rootEntityHolderIds) {
-                ReconciliationEngine<EVENT> engine = findEngineByRootId(id).orElseThrow(() -> new IllegalArgumentException("Reconciliation engine not found: rootId=" + id));
-                engines.add(engine);
-            }
-
-            List<Observable<Map<String, List<ModelActionHolder>>>> outputs = ObservableExt.propagate(multiEngineChangeAction.apply(), engines.size());
-            List<Observable<Void>> engineActions = new ArrayList<>();
-            for (int i = 0; i < engines.size(); i++) {
-                ReconciliationEngine<EVENT> engine = engines.get(i);
-                String rootId = engine.getReferenceView().getId();
-                ChangeAction engineAction = engineChangeActionFactory.apply(rootId, outputs.get(i).map(r -> r.get(rootId)));
-                engineActions.add(engine.changeReferenceModel(engineAction));
-            }
-
-            // Synchronize on subscription to make sure that this operation is not interleaved with concurrent
-            // subscriptions for the same set or subset of the reconciliation engines. The interleaving might result
-            // in a deadlock. For example with two engines engineA and engineB:
-            // - multi-engine change action M1 for engineA and engineB is scheduled
-            // - M1/engineA is added to its queue
-            // - another multi-engine change action M2 for engineA and engineB is scheduled
-            // - M2/engineB is added to its queue
-            // - M1/engineB is added to its queue, and next M2/engineA
-            // Executing M1 requires that both M1/engineA and M1/engineB are at the top of the queue, but in this case
-            // M2/engineB is ahead of the M1/engineB. On the other hand, M1/engineA is ahead of M2/engineB. Because
-            // of that we have deadlock. Please, note that we can ignore here the regular (engine scoped) change actions.
-            Subscription subscription;
-            synchronized (multiEngineChangeLock) {
-                subscription = Observable.mergeDelayError(engineActions).subscribe(
-                        emitter::onNext,
-                        emitter::onError,
-                        emitter::onCompleted
-                );
-            }
-            emitter.setSubscription(subscription);
-        }, Emitter.BackpressureMode.NONE);
+        return changeMultiEngineReferenceModel(this::findEngineByRootId, multiEngineChangeLock, multiEngineChangeAction, engineChangeActionFactory, rootEntityHolderIds);
     }
 
     @Override
@@ -325,12 +316,28 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
     private void doLoop(boolean fullReconciliationCycle) {
         Set<InternalReconciliationEngine<EVENT>> mustRunEngines = new HashSet<>();
 
+        // In the full cycle evaluate all engines. Otherwise only those that reported pending work.
+        List<InternalReconciliationEngine<EVENT>> enginesToEvaluate = new ArrayList<>();
+        if (fullReconciliationCycle) {
+            readyEngines.clear();
+            enginesToEvaluate.addAll(engines);
+        } else {
+            for (Iterator<InternalReconciliationEngine<EVENT>> it = readyEngines.iterator(); it.hasNext(); ) {
+                InternalReconciliationEngine<EVENT> engine = it.next();
+                it.remove();
+                if (engines.contains(engine)) {
+                    enginesToEvaluate.add(engine);
+                }
+            }
+        }
+
         // Apply pending model updates/send events
-        boolean modelUpdates = false;
-        for (InternalReconciliationEngine engine : engines) {
+        List<InternalReconciliationEngine<EVENT>> updatedEngines = new ArrayList<>();
+        for (InternalReconciliationEngine<EVENT> engine : enginesToEvaluate) {
             try {
-                boolean anyChange = engine.applyModelUpdates();
-                modelUpdates = modelUpdates || anyChange;
+                if (engine.applyModelUpdates()) {
+                    updatedEngines.add(engine);
+                }
             } catch (Exception e) {
                 logger.warn("Unexpected error from reconciliation engine 'applyModelUpdates' method", e);
             }
@@ -341,7 +348,9 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
         enginesAdded.drainTo(recentlyAdded);
         recentlyAdded.forEach(pair -> {
             InternalReconciliationEngine<EVENT> newEngine = pair.getLeft();
-            engines.add(newEngine);
+            registerEngine(newEngine);
+            enginesToEvaluate.add(newEngine);
+            updatedEngines.add(newEngine);
             mustRunEngines.add(newEngine);
             eventsMergeSubject.onNext(newEngine.events());
         });
@@ -350,12 +359,13 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
         List<Pair<InternalReconciliationEngine<EVENT>, Subscriber<Void>>> recentlyRemoved = new ArrayList<>();
         enginesToRemove.drainTo(recentlyRemoved);
         shutdownEnginesToRemove(recentlyRemoved);
-
-        boolean engineSetUpdate = !recentlyAdded.isEmpty() || !recentlyRemoved.isEmpty();
+        if (!recentlyRemoved.isEmpty()) {
+            enginesToEvaluate.removeIf(engine -> !engines.contains(engine));
+        }
 
         // Update indexes if there are model changes.
-        if (modelUpdates || engineSetUpdate) {
-            updateIndexSet();
+        if (!updatedEngines.isEmpty() || !recentlyRemoved.isEmpty()) {
+            updateIndexSet(updatedEngines, recentlyRemoved.stream().map(Pair::getLeft).collect(Collectors.toList()));
         }
 
         // Complete engine add/remove subscribers.
@@ -371,7 +381,7 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
         recentlyRemoved.forEach(pair -> pair.getRight().onCompleted());
 
         // Emit events
-        for (InternalReconciliationEngine engine : engines) {
+        for (InternalReconciliationEngine engine : enginesToEvaluate) {
             try {
                 engine.emitEvents();
             } catch (Exception e) {
@@ -380,7 +390,7 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
         }
 
         // Complete ChangeAction subscribers
-        for (InternalReconciliationEngine<EVENT> engine : engines) {
+        for (InternalReconciliationEngine<EVENT> engine : enginesToEvaluate) {
             try {
                 if (engine.closeFinishedTransactions()) {
                     mustRunEngines.add(engine);
@@ -391,15 +401,28 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
         }
 
         // Trigger actions on engines.
-        for (InternalReconciliationEngine engine : engines) {
-            if (fullReconciliationCycle || engine.hasPendingTransactions() || mustRunEngines.contains(engine)) {
+        for (InternalReconciliationEngine<EVENT> engine : enginesToEvaluate) {
+            boolean mustRun = mustRunEngines.contains(engine);
+            if (fullReconciliationCycle || engine.hasPendingTransactions() || mustRun) {
                 try {
                     engine.triggerActions();
                 } catch (Exception e) {
                     logger.warn("Unexpected error from reconciliation engine 'triggerActions' method", e);
                 }
             }
+            // Engines with work in progress, or which just completed a transaction, are evaluated again in the next iteration.
+            if (mustRun || engine.hasPendingTransactions()) {
+                readyEngines.add(engine);
+            }
         }
+
+        evaluatedEnginesGauge.set(enginesToEvaluate.size());
+        allEnginesGauge.set(engines.size());
+    }
+
+    private void registerEngine(InternalReconciliationEngine<EVENT> engine) {
+        engines.add(engine);
+        engine.setReadinessListener(() -> readyEngines.add(engine));
     }
 
     private void shutdownEnginesToRemove(List<Pair<InternalReconciliationEngine<EVENT>, Subscriber<Void>>> toRemove) {
@@ -409,14 +432,153 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
                 ((DefaultReconciliationEngine) e).shutdown();
             }
             engines.remove(e);
+            readyEngines.remove(e);
         });
     }
 
-    private void updateIndexSet() {
-        Map<String, InternalReconciliationEngine<EVENT>> idToEngineMap = new HashMap<>();
-        engines.forEach(engine -> engine.getReferenceView().visit(h -> idToEngineMap.put(h.getId(), engine)));
+    /**
+     * Updates the id to engine map and the root entity indexes for the engines which reference model changed, or which
+     * were added or removed. The cost is proportional to the size of the changed engines, not all of them.
+     */
+    private void updateIndexSet(List<InternalReconciliationEngine<EVENT>> updatedEngines,
+                                List<InternalReconciliationEngine<EVENT>> removedEngines) {
+        PersistentHashMap<String, InternalReconciliationEngine<EVENT>> idToEngineMap = idToEngineMapRef.get();
+        List<EntityHolder> updatedRoots = new ArrayList<>();
+        List<String> removedRootIds = new ArrayList<>();
+
+        for (InternalReconciliationEngine<EVENT> engine : updatedEngines) {
+            if (removedEngines.contains(engine)) {
+                continue;
+            }
+            EntityHolder newRoot = engine.getReferenceView();
+            Optional<EntityHolder> previousRoot = indexSet.findById(newRoot.getId());
+
+            List<EntityHolder> added = new ArrayList<>();
+            List<EntityHolder> removed = new ArrayList<>();
+            if (previousRoot.isPresent()) {
+                diffEntityHolders(previousRoot.get(), newRoot, added, removed);
+            } else {
+                added.add(newRoot);
+            }
+            // Removals go first, so an entity moved to another parent within the same engine stays mapped.
+            for (EntityHolder holder : removed) {
+                idToEngineMap = removeIds(idToEngineMap, holder, engine);
+            }
+            for (EntityHolder holder : added) {
+                idToEngineMap = addIds(idToEngineMap, holder, engine);
+            }
+            updatedRoots.add(newRoot);
+        }
+
+        for (InternalReconciliationEngine<EVENT> engine : removedEngines) {
+            String rootId = engine.getReferenceView().getId();
+            Optional<EntityHolder> previousRoot = indexSet.findById(rootId);
+            if (previousRoot.isPresent()) {
+                idToEngineMap = removeIds(idToEngineMap, previousRoot.get(), engine);
+            }
+            removedRootIds.add(rootId);
+        }
+
         this.idToEngineMapRef.set(idToEngineMap);
+        this.indexSet = indexSet.apply(updatedRoots, removedRootIds);
+    }
+
+    /**
+     * Collects the sub-trees added to, or removed from the entity hierarchy. Updated entities keep their ids, so only
+     * their children are compared, and the unchanged parts of the hierarchy are not visited.
+     */
+    private static void diffEntityHolders(EntityHolder previous, EntityHolder current, List<EntityHolder> added, List<EntityHolder> removed) {
+        current.diffChildren(
+                previous,
+                added::add,
+                (previousChild, child) -> diffEntityHolders(previousChild, child, added, removed),
+                removed::add
+        );
+    }
+
+    private PersistentHashMap<String, InternalReconciliationEngine<EVENT>> addIds(PersistentHashMap<String, InternalReconciliationEngine<EVENT>> idToEngineMap,
+                                                                              EntityHolder holder,
+                                                                              InternalReconciliationEngine<EVENT> engine) {
+        List<String> toAdd = new ArrayList<>();
+        holder.visit(h -> toAdd.add(h.getId()));
+        PersistentHashMap<String, InternalReconciliationEngine<EVENT>> result = idToEngineMap;
+        for (String id : toAdd) {
+            result = result.with(id, engine);
+        }
+        return result;
+    }
+
+    private PersistentHashMap<String, InternalReconciliationEngine<EVENT>> removeIds(PersistentHashMap<String, InternalReconciliationEngine<EVENT>> idToEngineMap,
+                                                                                 EntityHolder holder,
+                                                                                 InternalReconciliationEngine<EVENT> engine) {
+        List<String> toRemove = new ArrayList<>();
+        holder.visit(h -> {
+            if (idToEngineMap.get(h.getId()) == engine) {
+                toRemove.add(h.getId());
+            }
+        });
+        PersistentHashMap<String, InternalReconciliationEngine<EVENT>> result = idToEngineMap;
+        for (String id : toRemove) {
+            result = result.without(id);
+        }
+        return result;
+    }
+
+    /**
+     * Multi-engine change action implementation shared with {@link ShardedReconciliationFramework}, which resolves
+     * engines across all its shards, and uses a single lock for all of them.
+     */
+    static <EVENT> Observable<Void> changeMultiEngineReferenceModel(Function<String, Optional<ReconciliationEngine<EVENT>>> engineResolver,
+                                                                    Object lock,
+                                                                    MultiEngineChangeAction multiEngineChangeAction,
+                                                                    BiFunction<String, Observable<List<ModelActionHolder>>, ChangeAction> engineChangeActionFactory,
+                                                                    String... rootEntityHolderIds) {
+        Preconditions.checkArgument(rootEntityHolderIds.length > 1,
+                "Change action for multiple engines requested, but %s root id holders provided", rootEntityHolderIds.length
+        );
+
+        return Observable.create(emitter -> {
+
+            List<ReconciliationEngine<EVENT>> engines = new ArrayList<>();
+            for (String id : rootEntityHolderIds) {
+                ReconciliationEngine<EVENT> engine = engineResolver.apply(id).orElseThrow(() -> new IllegalArgumentException("Reconciliation engine not found: rootId=" + id));
+                engines.add(engine);
+            }
+
+            List<Observable<Map<String, List<ModelActionHolder>>>> outputs = ObservableExt.propagate(multiEngineChangeAction.apply(), engines.size());
+            List<Observable<Void>> engineActions = new ArrayList<>();
+            for (int i = 0; i < engines.size(); i++) {
+                ReconciliationEngine<EVENT> engine = engines.get(i);
+                String rootId = engine.getReferenceView().getId();
+                ChangeAction engineAction = engineChangeActionFactory.apply(rootId, outputs.get(i).map(r -> r.get(rootId)));
+                engineActions.add(engine.changeReferenceModel(engineAction));
+            }
+
+            // Synchronize on subscription to make sure that this operation is not interleaved with concurrent
+            // subscriptions for the same set or subset of the reconciliation engines. The interleaving might result
+            // in a deadlock. For example with two engines engineA and engineB:
+            // - multi-engine change action M1 for engineA and engineB is scheduled
+            // - M1/engineA is added to its queue
+            // - another multi-engine change action M2 for engineA and engineB is scheduled
+            // - M2/engineB is added to its queue
+            // - M1/engineB is added to its queue, and next M2/engineA
+            // Executing M1 requires that both M1/engineA and M1/engineB are at the top of the queue, but in this case
+            // M2/engineB is ahead of the M1/engineB. On the other hand, M1/engineA is ahead of M2/engineB. Because
+            // of that we have deadlock. Please, note that we can ignore here the regular (engine scoped) change actions.
+            Subscription subscription;
+            synchronized (lock) {
+                subscription = Observable.mergeDelayError(engineActions).subscribe(
+                        emitter::onNext,
+                        emitter::onError,
+                        emitter::onCompleted
+                );
+            }
+            emitter.setSubscription(subscription);
+        }, Emitter.BackpressureMode.NONE);
+    }
 
-        indexSet = indexSet.apply(engines.stream().map(ReconciliationEngine::getReferenceView).collect(Collectors.toList()));
+    private static Id newMetricId(Registry registry, String name, Optional<String> shardId) {
+        Id id = registry.createId(name);
+        return shardId.map(s -> id.withTag("shard", s)).orElse(id);
     }
 }
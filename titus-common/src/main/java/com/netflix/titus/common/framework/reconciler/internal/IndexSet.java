@@ -21,26 +21,100 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.netflix.titus.common.util.collections.PersistentHashMap;
+import com.netflix.titus.common.util.collections.PersistentSortedSet;
 
 /**
- * TODO Optimize. This is expensive and inefficient implementation.
+ * A collection of sorted views over a set of elements. Each update produces a new version of the index set.
+ * The indexes are maintained incrementally: only the added, updated or removed elements are re-positioned in
+ * the (persistent) sorted trees, and the ordered lists are materialized lazily, on first access.
  */
 public class IndexSet<T> {
 
-    private static final IndexSet<?> EMPTY = new IndexSet<>(Collections.emptyMap());
-
+    private final Function<T, String> idExtractor;
+    private final PersistentHashMap<String, T> elementsById;
     private final Map<Object, Index<T>> indexes;
 
-    private IndexSet(Map<Object, Index<T>> indexes) {
+    private IndexSet(Function<T, String> idExtractor, PersistentHashMap<String, T> elementsById, Map<Object, Index<T>> indexes) {
+        this.idExtractor = idExtractor;
+        this.elementsById = elementsById;
         this.indexes = indexes;
     }
 
-    public IndexSet<T> apply(Collection<T> added) {
-        Map<Object, Index<T>> copy = new HashMap<>();
-        indexes.forEach((k, v) -> copy.put(k, v.apply(added)));
-        return new IndexSet<>(copy);
+    public Optional<T> findById(String id) {
+        return Optional.ofNullable(elementsById.get(id));
+    }
+
+    /**
+     * Replaces the current content of the index set with the given collection. Only the elements that were added,
+     * removed, or replaced with a new instance are re-indexed.
+     */
+    public IndexSet<T> apply(Collection<T> elements) {
+        List<T> addedOrUpdated = new ArrayList<>();
+        int matched = 0;
+        for (T element : elements) {
+            T previous = elementsById.get(idExtractor.apply(element));
+            if (previous != null) {
+                matched++;
+            }
+            if (previous != element) {
+                addedOrUpdated.add(element);
+            }
+        }
+
+        List<String> removedIds = Collections.emptyList();
+        if (matched < elementsById.size()) {
+            Set<String> currentIds = new HashSet<>();
+            elements.forEach(element -> currentIds.add(idExtractor.apply(element)));
+            removedIds = new ArrayList<>();
+            for (String id : elementsById.keySet()) {
+                if (!currentIds.contains(id)) {
+                    removedIds.add(id);
+                }
+            }
+        }
+        return apply(addedOrUpdated, removedIds);
+    }
+
+    /**
+     * Applies a delta to the index set.
+     *
+     * @param addedOrUpdated new elements, or new versions of the existing elements
+     * @param removedIds     identifiers of the elements to remove
+     */
+    public IndexSet<T> apply(Collection<T> addedOrUpdated, Collection<String> removedIds) {
+        if (addedOrUpdated.isEmpty() && removedIds.isEmpty()) {
+            return this;
+        }
+
+        PersistentHashMap<String, T> newElementsById = elementsById;
+        List<T> removed = new ArrayList<>();
+        for (String id : removedIds) {
+            T previous = newElementsById.get(id);
+            if (previous != null) {
+                removed.add(previous);
+                newElementsById = newElementsById.without(id);
+            }
+        }
+        for (T element : addedOrUpdated) {
+            String id = idExtractor.apply(element);
+            T previous = newElementsById.get(id);
+            if (previous != null) {
+                removed.add(previous);
+            }
+            newElementsById = newElementsById.with(id, element);
+        }
+
+        Map<Object, Index<T>> newIndexes = new HashMap<>();
+        indexes.forEach((k, v) -> newIndexes.put(k, v.apply(removed, addedOrUpdated)));
+        return new IndexSet<>(idExtractor, newElementsById, newIndexes);
     }
 
     public List<T> getOrdered(Object indexId) {
@@ -51,38 +125,46 @@ public class IndexSet<T> {
         return result.getOrdered();
     }
 
-    public static <T> IndexSet<T> empty() {
-        return (IndexSet<T>) EMPTY;
-    }
-
-    public static <T> IndexSet<T> newIndexSet(Map<Object, Comparator<T>> comparators) {
+    public static <T> IndexSet<T> newIndexSet(Map<Object, Comparator<T>> comparators, Function<T, String> idExtractor) {
         Map<Object, Index<T>> indexes = new HashMap<>();
-        comparators.forEach((k, v) -> indexes.put(k, Index.newIndex(v)));
-        return new IndexSet<>(indexes);
+        comparators.forEach((k, v) -> indexes.put(k, Index.newIndex(v, idExtractor)));
+        return new IndexSet<>(idExtractor, PersistentHashMap.empty(), indexes);
     }
 
     static class Index<T> {
 
-        private final Comparator<T> comparator;
-        private final List<T> ordered;
+        private final PersistentSortedSet<T> sorted;
+
+        private volatile List<T> ordered;
 
-        private Index(Comparator<T> comparator, List<T> ordered) {
-            this.comparator = comparator;
-            this.ordered = ordered;
+        private Index(PersistentSortedSet<T> sorted) {
+            this.sorted = sorted;
         }
 
-        Index<T> apply(Collection<T> added) {
-            List<T> copy = new ArrayList<>(added);
-            copy.sort(comparator);
-            return new Index<>(comparator, copy);
+        Index<T> apply(Collection<T> removed, Collection<T> added) {
+            PersistentSortedSet<T> newSorted = sorted;
+            for (T element : removed) {
+                newSorted = newSorted.remove(element);
+            }
+            for (T element : added) {
+                newSorted = newSorted.add(element);
+            }
+            return newSorted == sorted ? this : new Index<>(newSorted);
         }
 
         List<T> getOrdered() {
+            if (ordered == null) {
+                ordered = Collections.unmodifiableList(sorted.toList());
+            }
             return ordered;
         }
 
-        static <T> Index<T> newIndex(Comparator<T> comparator) {
-            return new Index<>(comparator, Collections.emptyList());
+        /**
+         * Elements equal according to the provided comparator are ordered by their id, so each element has
+         * a unique position in the sorted tree.
+         */
+        static <T> Index<T> newIndex(Comparator<T> comparator, Function<T, String> idExtractor) {
+            return new Index<>(PersistentSortedSet.empty(comparator.thenComparing(idExtractor)));
         }
     }
 }
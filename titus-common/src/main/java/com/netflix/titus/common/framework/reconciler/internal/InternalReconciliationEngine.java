@@ -49,5 +49,10 @@ public interface InternalReconciliationEngine<EVENT>  extends ReconciliationEngi
      */
     boolean triggerActions();
 
-
+    /**
+     * Registers a callback, which the engine invokes each time it gets new work to do (a change action is enqueued,
+     * a running change action completes, or an event is queued for emission). The reconciliation framework uses it
+     * to evaluate only the engines with pending work between the full reconciliation cycles.
+     */
+    void setReadinessListener(Runnable readinessListener);
 }
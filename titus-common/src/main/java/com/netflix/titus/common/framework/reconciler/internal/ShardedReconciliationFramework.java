@@ -0,0 +1,222 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.common.framework.reconciler.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import com.google.common.base.Preconditions;
+import com.netflix.spectator.api.Registry;
+import com.netflix.titus.common.framework.reconciler.ChangeAction;
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import com.netflix.titus.common.framework.reconciler.ModelActionHolder;
+import com.netflix.titus.common.framework.reconciler.MultiEngineChangeAction;
+import com.netflix.titus.common.framework.reconciler.ReconciliationEngine;
+import com.netflix.titus.common.framework.reconciler.ReconciliationFramework;
+import com.netflix.titus.common.util.tuple.Pair;
+import rx.Completable;
+import rx.Observable;
+import rx.Scheduler;
+
+/**
+ * {@link ReconciliationFramework} implementation that partitions reconciliation engines by their root id into
+ * a fixed number of shards. Each shard is a separate {@link DefaultReconciliationFramework} instance, with its own
+ * reconciliation loop running on a dedicated thread, and its own (shard tagged) metrics. As each engine belongs to
+ * exactly one shard, the order of events emitted by an engine is preserved.
+ * <p>
+ * Multi-engine change actions are coordinated at this level, with a single lock for all shards, so change actions
+ * for engines located in different shards cannot be interleaved in a way that leads to a deadlock.
+ */
+public class ShardedReconciliationFramework<EVENT> implements ReconciliationFramework<EVENT> {
+
+    private final List<DefaultReconciliationFramework<EVENT>> shards;
+    private final Map<Object, Comparator<EntityHolder>> indexComparators;
+    private final Observable<EVENT> eventsObservable;
+
+    private final Object multiEngineChangeLock = new Object();
+
+    /**
+     * Merged views are cached until any of the shard views changes.
+     */
+    private final ConcurrentMap<Object, Pair<List<List<EntityHolder>>, List<EntityHolder>>> orderedViewCache = new ConcurrentHashMap<>();
+
+    public ShardedReconciliationFramework(int shardCount,
+                                          List<InternalReconciliationEngine<EVENT>> bootstrapEngines,
+                                          Function<EntityHolder, InternalReconciliationEngine<EVENT>> engineFactory,
+                                          long idleTimeoutMs,
+                                          long activeTimeoutMs,
+                                          Map<Object, Comparator<EntityHolder>> indexComparators,
+                                          Registry registry,
+                                          Optional<Scheduler> optionalScheduler) {
+        Preconditions.checkArgument(shardCount > 0, "shardCount <= 0 (%s)", shardCount);
+
+        this.indexComparators = indexComparators;
+
+        List<List<InternalReconciliationEngine<EVENT>>> bootstrapEnginesByShard = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            bootstrapEnginesByShard.add(new ArrayList<>());
+        }
+        bootstrapEngines.forEach(engine ->
+                bootstrapEnginesByShard.get(shardIndexOf(engine.getReferenceView().getId(), shardCount)).add(engine)
+        );
+
+        List<DefaultReconciliationFramework<EVENT>> shards = new ArrayList<>();
+        List<Observable<EVENT>> shardEvents = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            DefaultReconciliationFramework<EVENT> shard = new DefaultReconciliationFramework<>(
+                    bootstrapEnginesByShard.get(i),
+                    engineFactory,
+                    idleTimeoutMs,
+                    activeTimeoutMs,
+                    indexComparators,
+                    registry,
+                    optionalScheduler,
+                    Optional.of(Integer.toString(i))
+            );
+            shards.add(shard);
+            shardEvents.add(shard.events());
+        }
+        this.shards = Collections.unmodifiableList(shards);
+        this.eventsObservable = Observable.merge(shardEvents);
+    }
+
+    @Override
+    public void start() {
+        shards.forEach(DefaultReconciliationFramework::start);
+    }
+
+    @Override
+    public boolean stop(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        boolean allStopped = true;
+        for (DefaultReconciliationFramework<EVENT> shard : shards) {
+            allStopped = shard.stop(Math.max(0, deadline - System.currentTimeMillis())) && allStopped;
+        }
+        return allStopped;
+    }
+
+    @Override
+    public Observable<EVENT> events() {
+        return eventsObservable;
+    }
+
+    @Override
+    public Optional<ReconciliationEngine<EVENT>> findEngineByRootId(String id) {
+        return shardOf(id).findEngineByRootId(id);
+    }
+
+    @Override
+    public Optional<Pair<ReconciliationEngine<EVENT>, EntityHolder>> findEngineByChildId(String childId) {
+        for (DefaultReconciliationFramework<EVENT> shard : shards) {
+            Optional<Pair<ReconciliationEngine<EVENT>, EntityHolder>> result = shard.findEngineByChildId(childId);
+            if (result.isPresent()) {
+                return result;
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public <ORDER_BY> List<EntityHolder> orderedView(ORDER_BY orderingCriteria) {
+        Comparator<EntityHolder> comparator = indexComparators.get(orderingCriteria);
+        if (comparator == null) {
+            throw new IllegalArgumentException("Unknown index id " + orderingCriteria);
+        }
+
+        List<List<EntityHolder>> shardViews = new ArrayList<>(shards.size());
+        shards.forEach(shard -> shardViews.add(shard.orderedView(orderingCriteria)));
+
+        Pair<List<List<EntityHolder>>, List<EntityHolder>> cached = orderedViewCache.get(orderingCriteria);
+        if (cached != null && isSameView(cached.getLeft(), shardViews)) {
+            return cached.getRight();
+        }
+
+        List<EntityHolder> merged = merge(shardViews, comparator.thenComparing(EntityHolder::getId));
+        orderedViewCache.put(orderingCriteria, Pair.of(shardViews, merged));
+        return merged;
+    }
+
+    @Override
+    public Observable<ReconciliationEngine<EVENT>> newEngine(EntityHolder bootstrapModel) {
+        return shardOf(bootstrapModel.getId()).newEngine(bootstrapModel);
+    }
+
+    @Override
+    public Completable removeEngine(ReconciliationEngine<EVENT> engine) {
+        return shardOf(engine.getReferenceView().getId()).removeEngine(engine);
+    }
+
+    @Override
+    public Observable<Void> changeReferenceModel(MultiEngineChangeAction multiEngineChangeAction,
+                                                 BiFunction<String, Observable<List<ModelActionHolder>>, ChangeAction> engineChangeActionFactory,
+                                                 String... rootEntityHolderIds) {
+        return DefaultReconciliationFramework.changeMultiEngineReferenceModel(
+                this::findEngineByRootId, multiEngineChangeLock, multiEngineChangeAction, engineChangeActionFactory, rootEntityHolderIds
+        );
+    }
+
+    private DefaultReconciliationFramework<EVENT> shardOf(String rootId) {
+        return shards.get(shardIndexOf(rootId, shards.size()));
+    }
+
+    private static int shardIndexOf(String rootId, int shardCount) {
+        return Math.floorMod(rootId.hashCode(), shardCount);
+    }
+
+    private static boolean isSameView(List<List<EntityHolder>> previous, List<List<EntityHolder>> current) {
+        for (int i = 0; i < current.size(); i++) {
+            if (previous.get(i) != current.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<EntityHolder> merge(List<List<EntityHolder>> sortedLists, Comparator<EntityHolder> comparator) {
+        int total = 0;
+        PriorityQueue<Pair<EntityHolder, Integer>> heads = new PriorityQueue<>(Math.max(1, sortedLists.size()), (a, b) -> comparator.compare(a.getLeft(), b.getLeft()));
+        int[] positions = new int[sortedLists.size()];
+        for (int i = 0; i < sortedLists.size(); i++) {
+            List<EntityHolder> list = sortedLists.get(i);
+            total += list.size();
+            if (!list.isEmpty()) {
+                heads.add(Pair.of(list.get(0), i));
+            }
+        }
+
+        List<EntityHolder> result = new ArrayList<>(total);
+        while (!heads.isEmpty()) {
+            Pair<EntityHolder, Integer> head = heads.poll();
+            result.add(head.getLeft());
+            int listIdx = head.getRight();
+            int nextPosition = ++positions[listIdx];
+            List<EntityHolder> list = sortedLists.get(listIdx);
+            if (nextPosition < list.size()) {
+                heads.add(Pair.of(list.get(nextPosition), listIdx));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
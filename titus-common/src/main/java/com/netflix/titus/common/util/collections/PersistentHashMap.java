@@ -0,0 +1,589 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.util.collections;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Immutable hash map with structural sharing, implemented as a hash array mapped trie (HAMT). Each update creates
+ * a new version of the map, which shares all but O(log32 n) nodes with the previous one, so a single update costs
+ * near-constant allocation irrespective of the map size.
+ * <p>
+ * The standard {@link Map} mutation methods are not supported. Use {@link #with(Object, Object)} and
+ * {@link #without(Object)} instead. Null keys and values are not allowed.
+ *
+ * @param <K> type of keys. They must have a correct implementations of <tt>equals()</tt> and <tt>hashCode()</tt>
+ * @param <V> type of values
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private volatile Set<Entry<K, V>> entrySet;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        if (root == null || key == null) {
+            return null;
+        }
+        return (V) root.find(0, hash(key), key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns a new version of this map with the given key/value pair added, or replaced if the key is already present.
+     * If the key is already associated with the same value instance, this map is returned.
+     */
+    public PersistentHashMap<K, V> with(K key, V value) {
+        Preconditions.checkNotNull(key, "null key");
+        Preconditions.checkNotNull(value, "null value");
+
+        boolean[] added = new boolean[1];
+        Node newRoot = (root == null ? BitmapIndexedNode.EMPTY : root).put(0, hash(key), key, value, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a new version of this map without the given key. If the key is not present, this map is returned.
+     */
+    public PersistentHashMap<K, V> without(Object key) {
+        if (root == null || key == null) {
+            return this;
+        }
+        Node newRoot = root.remove(0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return newRoot == null ? empty() : new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    /**
+     * Reports the differences between this map and its previous version. Values are compared by reference. Sub-tries
+     * shared by both versions are skipped, so if this map was derived from the previous one by a few updates, the cost
+     * is proportional to the number of updates, not to the map size.
+     *
+     * @param addedOrUpdated called with the entries of this map, that are new or have a different value
+     * @param removed        called with the entries of the previous version, that are not present in this map
+     */
+    public void diff(PersistentHashMap<K, V> previous, BiConsumer<? super K, ? super V> addedOrUpdated, BiConsumer<? super K, ? super V> removed) {
+        diffNodes(previous.root, root, (BiConsumer<Object, Object>) addedOrUpdated, (BiConsumer<Object, Object>) removed);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    public static <K, V> PersistentHashMap<K, V> copyOf(Map<K, V> map) {
+        if (map instanceof PersistentHashMap) {
+            return (PersistentHashMap<K, V>) map;
+        }
+        Builder<K, V> builder = newBuilder();
+        map.forEach(builder::put);
+        return builder.build();
+    }
+
+    public static <K, V> Builder<K, V> newBuilder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Collects entries, and builds the trie in one pass, bottom up. Each node is allocated exactly once, while adding
+     * the same entries one by one with {@link #with(Object, Object)} copies the path from the root for each of them.
+     * If the same key is put more than once, the last value wins.
+     */
+    public static final class Builder<K, V> {
+
+        private final Map<K, V> entries = new HashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder<K, V> put(K key, V value) {
+            Preconditions.checkNotNull(key, "null key");
+            Preconditions.checkNotNull(value, "null value");
+            entries.put(key, value);
+            return this;
+        }
+
+        public PersistentHashMap<K, V> build() {
+            if (entries.isEmpty()) {
+                return empty();
+            }
+            int size = entries.size();
+            Object[] keys = new Object[size];
+            Object[] values = new Object[size];
+            int[] hashes = new int[size];
+            int[] members = new int[size];
+            int idx = 0;
+            for (Map.Entry<K, V> entry : entries.entrySet()) {
+                keys[idx] = entry.getKey();
+                values[idx] = entry.getValue();
+                hashes[idx] = hash(entry.getKey());
+                members[idx] = idx;
+                idx++;
+            }
+            return new PersistentHashMap<>(buildNode(0, members, keys, values, hashes), size);
+        }
+
+        private static Node buildNode(int shift, int[] members, Object[] keys, Object[] values, int[] hashes) {
+            if (members.length > 1 && haveSameHash(members, hashes)) {
+                Object[] array = new Object[2 * members.length];
+                for (int i = 0; i < members.length; i++) {
+                    array[2 * i] = keys[members[i]];
+                    array[2 * i + 1] = values[members[i]];
+                }
+                return new CollisionNode(hashes[members[0]], array);
+            }
+
+            int[] counts = new int[1 << BITS];
+            for (int member : members) {
+                counts[(hashes[member] >>> shift) & MASK]++;
+            }
+            int[][] slots = new int[1 << BITS][];
+            int bitmap = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    slots[i] = new int[counts[i]];
+                    bitmap |= 1 << i;
+                    counts[i] = 0;
+                }
+            }
+            for (int member : members) {
+                int slot = (hashes[member] >>> shift) & MASK;
+                slots[slot][counts[slot]++] = member;
+            }
+
+            Object[] array = new Object[2 * Integer.bitCount(bitmap)];
+            int idx = 0;
+            for (int[] slotMembers : slots) {
+                if (slotMembers == null) {
+                    continue;
+                }
+                if (slotMembers.length == 1) {
+                    array[2 * idx] = keys[slotMembers[0]];
+                    array[2 * idx + 1] = values[slotMembers[0]];
+                } else {
+                    array[2 * idx + 1] = buildNode(shift + BITS, slotMembers, keys, values, hashes);
+                }
+                idx++;
+            }
+            return new BitmapIndexedNode(bitmap, array);
+        }
+
+        private static boolean haveSameHash(int[] members, int[] hashes) {
+            int first = hashes[members[0]];
+            for (int i = 1; i < members.length; i++) {
+                if (hashes[members[i]] != first) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static void diffNodes(Node previous, Node current, BiConsumer<Object, Object> addedOrUpdated, BiConsumer<Object, Object> removed) {
+        if (previous == current) {
+            return;
+        }
+        if (previous instanceof BitmapIndexedNode && current instanceof BitmapIndexedNode) {
+            BitmapIndexedNode previousNode = (BitmapIndexedNode) previous;
+            BitmapIndexedNode currentNode = (BitmapIndexedNode) current;
+            int bits = previousNode.bitmap | currentNode.bitmap;
+            while (bits != 0) {
+                int bit = Integer.lowestOneBit(bits);
+                bits ^= bit;
+                diffSlots(previousNode.slot(bit), currentNode.slot(bit), addedOrUpdated, removed);
+            }
+            return;
+        }
+        // One side is empty (all its entries are reported anyway), or a collision node is involved, which holds
+        // a few entries only.
+        diffEntries(toEntries(previous), toEntries(current), addedOrUpdated, removed);
+    }
+
+    private static void diffSlots(Object[] previous, Object[] current, BiConsumer<Object, Object> addedOrUpdated, BiConsumer<Object, Object> removed) {
+        if (previous != null && current != null && previous[0] == null && current[0] == null) {
+            diffNodes((Node) previous[1], (Node) current[1], addedOrUpdated, removed);
+            return;
+        }
+        // A slot changes between a single entry and a sub-node only when the sub-node holds a few entries.
+        diffEntries(slotEntries(previous), slotEntries(current), addedOrUpdated, removed);
+    }
+
+    private static Map<Object, Object> slotEntries(Object[] slot) {
+        if (slot == null) {
+            return Collections.emptyMap();
+        }
+        return slot[0] == null ? toEntries((Node) slot[1]) : Collections.singletonMap(slot[0], slot[1]);
+    }
+
+    private static Map<Object, Object> toEntries(Node node) {
+        if (node == null) {
+            return Collections.emptyMap();
+        }
+        Map<Object, Object> entries = new HashMap<>();
+        node.forEach(entries::put);
+        return entries;
+    }
+
+    private static void diffEntries(Map<Object, Object> previous, Map<Object, Object> current, BiConsumer<Object, Object> addedOrUpdated, BiConsumer<Object, Object> removed) {
+        current.forEach((key, value) -> {
+            if (previous.get(key) != value) {
+                addedOrUpdated.accept(key, value);
+            }
+        });
+        previous.forEach((key, value) -> {
+            if (!current.containsKey(key)) {
+                removed.accept(key, value);
+            }
+        });
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bitPosition(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            List<Entry<K, V>> entries = new ArrayList<>(size);
+            PersistentHashMap.this.forEach((key, value) -> entries.add(new SimpleImmutableEntry<>(key, value)));
+            return entries.iterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private interface Node {
+
+        Object find(int shift, int hash, Object key);
+
+        /**
+         * @return this node if nothing changed, or a new node version
+         */
+        Node put(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * @return this node if the key was not found, null if the node has no more entries, or a new node version
+         */
+        Node remove(int shift, int hash, Object key);
+
+        /**
+         * @return two element array with key/value pair if this node holds a single entry, or null otherwise
+         */
+        Object[] singleEntry();
+
+        void forEach(BiConsumer<Object, Object> consumer);
+    }
+
+    /**
+     * Trie node with up to 32 slots, with only the occupied ones allocated. Each slot is a pair of array elements,
+     * which are either a key/value pair, or null/sub-node pair.
+     */
+    private static final class BitmapIndexedNode implements Node {
+
+        private static final BitmapIndexedNode EMPTY = new BitmapIndexedNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        private BitmapIndexedNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        /**
+         * @return two element array with the slot's key/value pair or null/sub-node pair, or null if the slot is empty
+         */
+        private Object[] slot(int bit) {
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int idx = index(bit);
+            return new Object[]{array[2 * idx], array[2 * idx + 1]};
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int bit = bitPosition(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int idx = index(bit);
+            Object slotKey = array[2 * idx];
+            Object slotValue = array[2 * idx + 1];
+            if (slotKey == null) {
+                return ((Node) slotValue).find(shift + BITS, hash, key);
+            }
+            return key.equals(slotKey) ? slotValue : null;
+        }
+
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bitPosition(hash, shift);
+            int idx = index(bit);
+
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                int count = Integer.bitCount(bitmap);
+                Object[] newArray = new Object[2 * (count + 1)];
+                System.arraycopy(array, 0, newArray, 0, 2 * idx);
+                newArray[2 * idx] = key;
+                newArray[2 * idx + 1] = value;
+                System.arraycopy(array, 2 * idx, newArray, 2 * (idx + 1), 2 * (count - idx));
+                return new BitmapIndexedNode(bitmap | bit, newArray);
+            }
+
+            Object slotKey = array[2 * idx];
+            Object slotValue = array[2 * idx + 1];
+            if (slotKey == null) {
+                Node newSubNode = ((Node) slotValue).put(shift + BITS, hash, key, value, added);
+                return newSubNode == slotValue ? this : new BitmapIndexedNode(bitmap, cloneAndSet(array, 2 * idx + 1, newSubNode));
+            }
+            if (key.equals(slotKey)) {
+                return slotValue == value ? this : new BitmapIndexedNode(bitmap, cloneAndSet(array, 2 * idx + 1, value));
+            }
+
+            added[0] = true;
+            Node subNode = createNode(shift + BITS, slotKey, slotValue, hash, key, value);
+            Object[] newArray = array.clone();
+            newArray[2 * idx] = null;
+            newArray[2 * idx + 1] = subNode;
+            return new BitmapIndexedNode(bitmap, newArray);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            int bit = bitPosition(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int idx = index(bit);
+            Object slotKey = array[2 * idx];
+            Object slotValue = array[2 * idx + 1];
+
+            if (slotKey == null) {
+                Node newSubNode = ((Node) slotValue).remove(shift + BITS, hash, key);
+                if (newSubNode == slotValue) {
+                    return this;
+                }
+                if (newSubNode == null) {
+                    return removeSlot(bit, idx);
+                }
+                // Pull single entry sub-nodes up, so the trie does not keep long chains after removals.
+                Object[] single = newSubNode.singleEntry();
+                if (single != null) {
+                    Object[] newArray = array.clone();
+                    newArray[2 * idx] = single[0];
+                    newArray[2 * idx + 1] = single[1];
+                    return new BitmapIndexedNode(bitmap, newArray);
+                }
+                return new BitmapIndexedNode(bitmap, cloneAndSet(array, 2 * idx + 1, newSubNode));
+            }
+            return key.equals(slotKey) ? removeSlot(bit, idx) : this;
+        }
+
+        private Node removeSlot(int bit, int idx) {
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, 2 * idx);
+            System.arraycopy(array, 2 * (idx + 1), newArray, 2 * idx, newArray.length - 2 * idx);
+            return new BitmapIndexedNode(bitmap ^ bit, newArray);
+        }
+
+        @Override
+        public Object[] singleEntry() {
+            return array.length == 2 && array[0] != null ? array : null;
+        }
+
+        @Override
+        public void forEach(BiConsumer<Object, Object> consumer) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(consumer);
+                } else {
+                    consumer.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+
+        private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            }
+            boolean[] ignored = new boolean[1];
+            return EMPTY
+                    .put(shift, hash1, key1, value1, ignored)
+                    .put(shift, hash2, key2, value2, ignored);
+        }
+    }
+
+    /**
+     * Leaf node holding all entries with the same (full) hash code.
+     */
+    private static final class CollisionNode implements Node {
+
+        private final int hash;
+        private final Object[] array;
+
+        private CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            if (hash != this.hash) {
+                return null;
+            }
+            int idx = indexOf(key);
+            return idx < 0 ? null : array[idx + 1];
+        }
+
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                return new BitmapIndexedNode(bitPosition(this.hash, shift), new Object[]{null, this})
+                        .put(shift, hash, key, value, added);
+            }
+            int idx = indexOf(key);
+            if (idx >= 0) {
+                return array[idx + 1] == value ? this : new CollisionNode(hash, cloneAndSet(array, idx + 1, value));
+            }
+            added[0] = true;
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            if (hash != this.hash) {
+                return this;
+            }
+            int idx = indexOf(key);
+            if (idx < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            System.arraycopy(array, idx + 2, newArray, idx, newArray.length - idx);
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        public Object[] singleEntry() {
+            return array.length == 2 ? array : null;
+        }
+
+        @Override
+        public void forEach(BiConsumer<Object, Object> consumer) {
+            for (int i = 0; i < array.length; i += 2) {
+                consumer.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+
+    private static Object[] cloneAndSet(Object[] array, int idx, Object value) {
+        Object[] newArray = array.clone();
+        newArray[idx] = value;
+        return newArray;
+    }
+}
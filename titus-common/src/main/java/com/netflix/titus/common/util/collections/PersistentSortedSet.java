@@ -0,0 +1,284 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.util.collections;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Immutable sorted set with structural sharing, implemented as a path-copying AVL tree. Adding or removing an element
+ * creates O(log n) new nodes, and shares the remaining ones with the previous version. Each node keeps the size of its
+ * subtree, so positional access ({@link #get(int)}, {@link #indexOf(Object)}) is O(log n) as well.
+ * <p>
+ * The comparator must be consistent with element identity, as elements for which it returns 0 are treated as
+ * the same element (the newer one replaces the older one).
+ */
+public final class PersistentSortedSet<T> {
+
+    private final Comparator<T> comparator;
+    private final Node<T> root;
+    private final int size;
+
+    private PersistentSortedSet(Comparator<T> comparator, Node<T> root, int size) {
+        this.comparator = comparator;
+        this.root = root;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public Comparator<T> getComparator() {
+        return comparator;
+    }
+
+    public PersistentSortedSet<T> add(T element) {
+        Preconditions.checkNotNull(element, "null element");
+
+        boolean[] added = new boolean[1];
+        Node<T> newRoot = insert(root, element, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentSortedSet<>(comparator, newRoot, added[0] ? size + 1 : size);
+    }
+
+    public PersistentSortedSet<T> remove(T element) {
+        if (root == null || element == null) {
+            return this;
+        }
+        Node<T> newRoot = delete(root, element);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentSortedSet<>(comparator, newRoot, size - 1);
+    }
+
+    /**
+     * Visits all elements in the ascending order.
+     */
+    public void forEach(Consumer<T> consumer) {
+        if (root != null) {
+            root.forEach(consumer);
+        }
+    }
+
+    public List<T> toList() {
+        List<T> result = new ArrayList<>(size);
+        forEach(result::add);
+        return result;
+    }
+
+    /**
+     * Returns an element at the given position in the ascending order.
+     */
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range [0, " + size + ')');
+        }
+        Node<T> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.value;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Returns a position of an element equal (according to the comparator) to the given one. If there is no such element,
+     * returns <tt>(-(insertion point) - 1)</tt>, following the {@link java.util.Collections#binarySearch(List, Object, Comparator)}
+     * contract.
+     */
+    public int indexOf(T element) {
+        int offset = 0;
+        Node<T> node = root;
+        while (node != null) {
+            int c = comparator.compare(element, node.value);
+            if (c < 0) {
+                node = node.left;
+            } else if (c > 0) {
+                offset += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return offset + size(node.left);
+            }
+        }
+        return -offset - 1;
+    }
+
+    /**
+     * Returns an immutable, random access list view of this set, with O(log n) element access.
+     */
+    public List<T> asList() {
+        return new ListView<>(this);
+    }
+
+    public static <T> PersistentSortedSet<T> empty(Comparator<T> comparator) {
+        return new PersistentSortedSet<>(comparator, null, 0);
+    }
+
+    private Node<T> insert(Node<T> node, T element, boolean[] added) {
+        if (node == null) {
+            added[0] = true;
+            return new Node<>(element, null, null);
+        }
+        int c = comparator.compare(element, node.value);
+        if (c < 0) {
+            Node<T> newLeft = insert(node.left, element, added);
+            return newLeft == node.left ? node : balance(node.value, newLeft, node.right);
+        }
+        if (c > 0) {
+            Node<T> newRight = insert(node.right, element, added);
+            return newRight == node.right ? node : balance(node.value, node.left, newRight);
+        }
+        return node.value == element ? node : new Node<>(element, node.left, node.right);
+    }
+
+    private Node<T> delete(Node<T> node, T element) {
+        if (node == null) {
+            return null;
+        }
+        int c = comparator.compare(element, node.value);
+        if (c < 0) {
+            Node<T> newLeft = delete(node.left, element);
+            return newLeft == node.left ? node : balance(node.value, newLeft, node.right);
+        }
+        if (c > 0) {
+            Node<T> newRight = delete(node.right, element);
+            return newRight == node.right ? node : balance(node.value, node.left, newRight);
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node<T> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.value, node.left, deleteMin(node.right));
+    }
+
+    private Node<T> deleteMin(Node<T> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.value, deleteMin(node.left), node.right);
+    }
+
+    private static <T> Node<T> balance(T value, Node<T> left, Node<T> right) {
+        int diff = height(left) - height(right);
+        if (diff > 1) {
+            if (height(left.left) < height(left.right)) {
+                left = rotateLeft(left.value, left.left, left.right);
+            }
+            return rotateRight(value, left, right);
+        }
+        if (diff < -1) {
+            if (height(right.right) < height(right.left)) {
+                right = rotateRight(right.value, right.left, right.right);
+            }
+            return rotateLeft(value, left, right);
+        }
+        return new Node<>(value, left, right);
+    }
+
+    private static <T> Node<T> rotateRight(T value, Node<T> left, Node<T> right) {
+        return new Node<>(left.value, left.left, new Node<>(value, left.right, right));
+    }
+
+    private static <T> Node<T> rotateLeft(T value, Node<T> left, Node<T> right) {
+        return new Node<>(right.value, new Node<>(value, left, right.left), right.right);
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node<T> {
+
+        private final T value;
+        private final Node<T> left;
+        private final Node<T> right;
+        private final int height;
+        private final int size;
+
+        private Node(T value, Node<T> left, Node<T> right) {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+
+        private void forEach(Consumer<T> consumer) {
+            if (left != null) {
+                left.forEach(consumer);
+            }
+            consumer.accept(value);
+            if (right != null) {
+                right.forEach(consumer);
+            }
+        }
+    }
+
+    private static final class ListView<T> extends AbstractList<T> implements RandomAccess {
+
+        private final PersistentSortedSet<T> set;
+
+        private ListView(PersistentSortedSet<T> set) {
+            this.set = set;
+        }
+
+        @Override
+        public T get(int index) {
+            return set.get(index);
+        }
+
+        @Override
+        public int size() {
+            return set.size;
+        }
+
+        @Override
+        public void forEach(Consumer<? super T> action) {
+            set.forEach(action::accept);
+        }
+    }
+}
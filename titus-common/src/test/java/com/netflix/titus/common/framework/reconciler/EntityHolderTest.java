@@ -16,6 +16,10 @@
 
 package com.netflix.titus.common.framework.reconciler;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import com.netflix.titus.common.util.tuple.Pair;
@@ -65,4 +69,49 @@ public class EntityHolderTest {
         assertThat(first(rootV2.getChildren()).getId()).isEqualTo("myChild2");
         assertThat(child1.getId()).isEqualTo("myChild1");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAddChildren() throws Exception {
+        EntityHolder root = newRoot("myRoot", "as").addChildren(Arrays.asList(newRoot("myChild1", "a1"), newRoot("myChild2", "a2")));
+        assertThat(root.getChildren()).hasSize(2);
+        assertThat((String) root.findChildById("myChild1").get().getEntity()).isEqualTo("a1");
+
+        EntityHolder rootV2 = root.addChildren(Arrays.asList(newRoot("myChild2", "a2_v2"), newRoot("myChild3", "a3")));
+        assertThat(rootV2.getChildren()).hasSize(3);
+        assertThat((String) rootV2.findChildById("myChild2").get().getEntity()).isEqualTo("a2_v2");
+        assertThat(root.addChildren(Collections.emptyList())).isSameAs(root);
+    }
+
+    @Test
+    public void testDiffChildren() throws Exception {
+        EntityHolder rootV1 = newRoot("myRoot", "as").addChildren(Arrays.asList(newRoot("myChild1", "a1"), newRoot("myChild2", "a2")));
+        EntityHolder rootV2 = rootV1.addChild(newRoot("myChild1", "a1_v2")).addChild(newRoot("myChild3", "a3")).removeChild("myChild2").getLeft();
+
+        List<String> addedOrUpdated = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        rootV2.diffChildren(rootV1, child -> addedOrUpdated.add(child.getId()), child -> removed.add(child.getId()));
+
+        assertThat(addedOrUpdated).containsExactlyInAnyOrder("myChild1", "myChild3");
+        assertThat(removed).containsExactly("myChild2");
+    }
+
+    @Test
+    public void testDiffChildrenWithPreviousVersions() throws Exception {
+        EntityHolder rootV1 = newRoot("myRoot", "as").addChildren(Arrays.asList(newRoot("myChild1", "a1"), newRoot("myChild2", "a2")));
+        EntityHolder rootV2 = rootV1.addChild(newRoot("myChild1", "a1_v2")).addChild(newRoot("myChild3", "a3")).removeChild("myChild2").getLeft();
+
+        List<String> added = new ArrayList<>();
+        List<String> updated = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        rootV2.diffChildren(
+                rootV1,
+                child -> added.add(child.getId()),
+                (previousChild, child) -> updated.add(previousChild.getEntity() + "->" + child.getEntity()),
+                child -> removed.add(child.getId())
+        );
+
+        assertThat(added).containsExactly("myChild3");
+        assertThat(updated).containsExactly("a1->a1_v2");
+        assertThat(removed).containsExactly("myChild2");
+    }
+}
@@ -38,6 +38,7 @@ import com.netflix.titus.testkit.rx.ExtTestSubscriber;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import rx.Observable;
 import rx.observers.AssertableSubscriber;
 import rx.schedulers.Schedulers;
@@ -168,6 +169,56 @@ public class DefaultReconciliationFrameworkTest {
         verify(engine, times(1)).triggerActions();
     }
 
+    @Test
+    public void testOnlyReadyEnginesAreEvaluatedBetweenFullCycles() {
+        framework.newEngine(EntityHolder.newRoot("myRoot1", "myEntity1")).subscribe();
+        testScheduler.triggerActions();
+
+        ArgumentCaptor<Runnable> readinessListenerCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(engine1, times(1)).setReadinessListener(readinessListenerCaptor.capture());
+
+        // Newly added engine is evaluated in the next iteration, and becomes idle afterwards
+        testScheduler.advanceTimeBy(ACTIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        testScheduler.advanceTimeBy(ACTIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        verify(engine1, times(1)).applyModelUpdates();
+
+        // Engine reports pending work
+        readinessListenerCaptor.getValue().run();
+        testScheduler.advanceTimeBy(ACTIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        verify(engine1, times(2)).applyModelUpdates();
+    }
+
+    @Test
+    public void testChildIdsAreReindexedAfterModelUpdate() {
+        EntityHolder rootV1 = EntityHolder.newRoot("myRoot1", "myEntity1")
+                .addChild(EntityHolder.newRoot("child1", "a1").addChild(EntityHolder.newRoot("grandChild1", "b1")))
+                .addChild(EntityHolder.newRoot("child2", "a2"));
+        when(engine1.getReferenceView()).thenReturn(rootV1);
+        framework.newEngine(rootV1).subscribe();
+        testScheduler.triggerActions();
+
+        ArgumentCaptor<Runnable> readinessListenerCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(engine1, times(1)).setReadinessListener(readinessListenerCaptor.capture());
+        assertThat(framework.findEngineByChildId("grandChild1")).isPresent();
+        assertThat(framework.findEngineByChildId("child2")).isPresent();
+
+        EntityHolder child1V2 = rootV1.findChildById("child1").get()
+                .removeChild("grandChild1").getLeft()
+                .addChild(EntityHolder.newRoot("grandChild2", "b2"));
+        EntityHolder rootV2 = rootV1.addChild(child1V2).removeChild("child2").getLeft().addChild(EntityHolder.newRoot("child3", "a3"));
+        when(engine1.getReferenceView()).thenReturn(rootV2);
+        when(engine1.applyModelUpdates()).thenReturn(true);
+        readinessListenerCaptor.getValue().run();
+        testScheduler.advanceTimeBy(ACTIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertThat(framework.findEngineByRootId("myRoot1")).isPresent();
+        assertThat(framework.findEngineByChildId("child1")).isPresent();
+        assertThat(framework.findEngineByChildId("grandChild1")).isNotPresent();
+        assertThat(framework.findEngineByChildId("grandChild2")).isPresent();
+        assertThat(framework.findEngineByChildId("child2")).isNotPresent();
+        assertThat(framework.findEngineByChildId("child3")).isPresent();
+    }
+
     @Test
     public void testMultiEngineChangeAction() {
         EntityHolder root1 = EntityHolder.newRoot("myRoot1", "myEntity1");
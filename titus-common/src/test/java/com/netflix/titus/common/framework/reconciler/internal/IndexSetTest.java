@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.common.framework.reconciler.internal;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexSetTest {
+
+    private final IndexSet<EntityHolder> emptyIndexSet = IndexSet.newIndexSet(newComparators(), EntityHolder::getId);
+
+    @Test
+    public void testFullUpdate() throws Exception {
+        IndexSet<EntityHolder> indexSet = emptyIndexSet.apply(asList(
+                EntityHolder.newRoot("id1", "b"),
+                EntityHolder.newRoot("id2", "a"),
+                EntityHolder.newRoot("id3", "c")
+        ));
+        assertThat(indexSet.getOrdered("ascending").stream().map(EntityHolder::getId)).containsExactly("id2", "id1", "id3");
+        assertThat(indexSet.getOrdered("descending").stream().map(EntityHolder::getId)).containsExactly("id3", "id1", "id2");
+
+        IndexSet<EntityHolder> updated = indexSet.apply(asList(
+                EntityHolder.newRoot("id1", "d"),
+                EntityHolder.newRoot("id3", "c")
+        ));
+        assertThat(updated.getOrdered("ascending").stream().map(EntityHolder::getId)).containsExactly("id3", "id1");
+        assertThat(updated.findById("id2")).isEmpty();
+
+        // Previous version is not affected
+        assertThat(indexSet.getOrdered("ascending")).hasSize(3);
+    }
+
+    @Test
+    public void testDeltaUpdate() throws Exception {
+        IndexSet<EntityHolder> indexSet = emptyIndexSet.apply(asList(
+                EntityHolder.newRoot("id1", "a"),
+                EntityHolder.newRoot("id2", "b")
+        ));
+
+        IndexSet<EntityHolder> updated = indexSet.apply(Collections.singletonList(EntityHolder.newRoot("id1", "c")), Collections.emptyList());
+        assertThat(updated.getOrdered("ascending").stream().map(EntityHolder::getId)).containsExactly("id2", "id1");
+
+        IndexSet<EntityHolder> removed = updated.apply(Collections.emptyList(), Collections.singletonList("id2"));
+        assertThat(removed.getOrdered("ascending").stream().map(EntityHolder::getId)).containsExactly("id1");
+    }
+
+    @Test
+    public void testEqualElementsAreOrderedById() throws Exception {
+        IndexSet<EntityHolder> indexSet = emptyIndexSet.apply(asList(
+                EntityHolder.newRoot("id2", "a"),
+                EntityHolder.newRoot("id1", "a")
+        ));
+        assertThat(indexSet.getOrdered("ascending").stream().map(EntityHolder::getId)).containsExactly("id1", "id2");
+    }
+
+    private static Map<Object, Comparator<EntityHolder>> newComparators() {
+        Map<Object, Comparator<EntityHolder>> comparators = new HashMap<>();
+        comparators.put("ascending", Comparator.comparing(h -> (String) h.getEntity()));
+        comparators.put("descending", Comparator.<EntityHolder, String>comparing(h -> h.getEntity()).reversed());
+        return comparators;
+    }
+}
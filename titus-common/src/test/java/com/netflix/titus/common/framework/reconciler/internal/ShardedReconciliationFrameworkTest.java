@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.common.framework.reconciler.internal;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import com.google.common.collect.ImmutableMap;
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.titus.common.framework.reconciler.ChangeAction;
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import com.netflix.titus.common.framework.reconciler.ModelActionHolder;
+import com.netflix.titus.common.framework.reconciler.MultiEngineChangeAction;
+import com.netflix.titus.common.framework.reconciler.internal.SimpleReconcilerEvent.EventType;
+import com.netflix.titus.testkit.rx.ExtTestSubscriber;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ShardedReconciliationFrameworkTest {
+
+    private static final long IDLE_TIMEOUT_MS = 100;
+    private static final long ACTIVE_TIMEOUT_MS = 20;
+    private static final int STOP_TIMEOUT_MS = 1_000;
+    private static final int SHARD_COUNT = 2;
+
+    private final TestScheduler testScheduler = Schedulers.test();
+
+    private final Function<EntityHolder, InternalReconciliationEngine<SimpleReconcilerEvent>> engineFactory = mock(Function.class);
+
+    private final InternalReconciliationEngine engine1 = mock(InternalReconciliationEngine.class);
+    private final InternalReconciliationEngine engine2 = mock(InternalReconciliationEngine.class);
+
+    private final PublishSubject<SimpleReconcilerEvent> engine1Events = PublishSubject.create();
+    private final PublishSubject<SimpleReconcilerEvent> engine2Events = PublishSubject.create();
+
+    private final Map<Object, Comparator<EntityHolder>> indexComparators = ImmutableMap.<Object, Comparator<EntityHolder>>builder()
+            .put("ascending", Comparator.comparing(EntityHolder::getEntity))
+            .put("descending", Comparator.<EntityHolder, String>comparing(EntityHolder::getEntity).reversed())
+            .build();
+
+    private final ShardedReconciliationFramework<SimpleReconcilerEvent> framework = new ShardedReconciliationFramework<>(
+            SHARD_COUNT,
+            Collections.emptyList(),
+            engineFactory,
+            IDLE_TIMEOUT_MS,
+            ACTIVE_TIMEOUT_MS,
+            indexComparators,
+            new DefaultRegistry(),
+            Optional.of(testScheduler)
+    );
+
+    @Before
+    public void setUp() {
+        framework.start();
+        when(engineFactory.apply(any())).thenReturn(engine1, engine2);
+        setUpEngine(engine1, EntityHolder.newRoot("myRoot1", "myEntity1"), engine1Events);
+        setUpEngine(engine2, EntityHolder.newRoot("myRoot2", "myEntity2"), engine2Events);
+
+        framework.newEngine(EntityHolder.newRoot("myRoot1", "myEntity1")).subscribe();
+        framework.newEngine(EntityHolder.newRoot("myRoot2", "myEntity2")).subscribe();
+        testScheduler.triggerActions();
+    }
+
+    @After
+    public void tearDown() {
+        framework.stop(STOP_TIMEOUT_MS);
+    }
+
+    @Test
+    public void testEnginesInDifferentShardsAreVisible() {
+        assertThat(framework.findEngineByRootId("myRoot1")).contains(engine1);
+        assertThat(framework.findEngineByRootId("myRoot2")).contains(engine2);
+        assertThat(framework.findEngineByRootId("badRootId")).isEmpty();
+    }
+
+    @Test
+    public void testOrderedViewMergesAllShards() {
+        assertThat(framework.orderedView("ascending").stream().map(EntityHolder::getEntity)).containsExactly("myEntity1", "myEntity2");
+        assertThat(framework.orderedView("descending").stream().map(EntityHolder::getEntity)).containsExactly("myEntity2", "myEntity1");
+
+        // Unchanged view is served from cache
+        assertThat(framework.orderedView("ascending")).isSameAs(framework.orderedView("ascending"));
+    }
+
+    @Test
+    public void testMultiEngineChangeActionAcrossShards() {
+        MultiEngineChangeAction multiEngineChangeAction = () -> Observable.just(ImmutableMap.of(
+                "myRoot1", ModelActionHolder.allModels(new SimpleModelUpdateAction(EntityHolder.newRoot("myRoot1", "myEntity1#v2"), true)),
+                "myRoot2", ModelActionHolder.allModels(new SimpleModelUpdateAction(EntityHolder.newRoot("myRoot2", "myEntity2#v2"), true))
+        ));
+        Map<String, List<ModelActionHolder>> holders = new HashMap<>();
+        Observable<Void> multiChangeObservable = framework.changeReferenceModel(
+                multiEngineChangeAction,
+                (id, modelUpdates) -> {
+                    ChangeAction changeAction = () -> modelUpdates.doOnNext(next -> holders.put(id, next));
+                    return changeAction;
+                },
+                "myRoot1", "myRoot2"
+        );
+
+        ExtTestSubscriber<Void> multiChangeSubscriber = new ExtTestSubscriber<>();
+        multiChangeObservable.subscribe(multiChangeSubscriber);
+        assertThat(multiChangeSubscriber.isUnsubscribed()).isTrue();
+
+        verify(engine1, times(1)).changeReferenceModel(any());
+        verify(engine2, times(1)).changeReferenceModel(any());
+        assertThat(holders.get("myRoot1")).hasSize(3);
+        assertThat(holders.get("myRoot2")).hasSize(3);
+    }
+
+    @Test
+    public void testEventsFromAllShardsArePublished() {
+        ExtTestSubscriber<SimpleReconcilerEvent> eventSubscriber = new ExtTestSubscriber<>();
+        framework.events().subscribe(eventSubscriber);
+
+        engine1Events.onNext(newEvent("event1"));
+        assertThat(eventSubscriber.takeNext().getMessage()).isEqualTo("event1");
+
+        engine2Events.onNext(newEvent("event2"));
+        assertThat(eventSubscriber.takeNext().getMessage()).isEqualTo("event2");
+    }
+
+    private void setUpEngine(InternalReconciliationEngine engine, EntityHolder root, PublishSubject<SimpleReconcilerEvent> events) {
+        when(engine.triggerActions()).thenReturn(true);
+        when(engine.getReferenceView()).thenReturn(root);
+        when(engine.events()).thenReturn(events.asObservable());
+        when(engine.changeReferenceModel(any())).thenAnswer(invocation -> {
+            ChangeAction changeAction = invocation.getArgument(0);
+            return changeAction.apply().ignoreElements().cast(Void.class);
+        });
+    }
+
+    private SimpleReconcilerEvent newEvent(String message) {
+        return new SimpleReconcilerEvent(EventType.Changed, message, Optional.empty());
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.util.collections;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersistentHashMapTest {
+
+    @Test
+    public void testWithAndWithout() throws Exception {
+        PersistentHashMap<String, String> v1 = PersistentHashMap.<String, String>empty().with("a", "1").with("b", "2");
+        PersistentHashMap<String, String> v2 = v1.with("a", "1_v2");
+        PersistentHashMap<String, String> v3 = v2.without("b");
+
+        assertThat(v1).containsOnly(entry("a", "1"), entry("b", "2"));
+        assertThat(v2).containsOnly(entry("a", "1_v2"), entry("b", "2"));
+        assertThat(v3).containsOnly(entry("a", "1_v2"));
+        assertThat(v3.without("b")).isSameAs(v3);
+        assertThat(v3.without("a")).isEmpty();
+    }
+
+    @Test
+    public void testSameValueUpdateReturnsSameInstance() throws Exception {
+        String value = "1";
+        PersistentHashMap<String, String> map = PersistentHashMap.<String, String>empty().with("a", value);
+        assertThat(map.with("a", value)).isSameAs(map);
+    }
+
+    @Test
+    public void testHashCollisions() throws Exception {
+        PersistentHashMap<CollidingKey, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 10; i++) {
+            map = map.with(new CollidingKey(i), i);
+        }
+        assertThat(map).hasSize(10);
+        for (int i = 0; i < 10; i++) {
+            assertThat(map.get(new CollidingKey(i))).isEqualTo(i);
+        }
+        for (int i = 0; i < 10; i++) {
+            map = map.without(new CollidingKey(i));
+            assertThat(map).hasSize(9 - i);
+        }
+    }
+
+    @Test
+    public void testRandomUpdatesAgainstHashMap() throws Exception {
+        Random random = new Random(123);
+        Map<String, Integer> expected = new HashMap<>();
+        PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+
+        for (int i = 0; i < 20_000; i++) {
+            String key = "key#" + random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.without(key);
+            } else {
+                expected.put(key, i);
+                map = map.with(key, i);
+            }
+            assertThat(map.size()).isEqualTo(expected.size());
+        }
+        assertThat(map).isEqualTo(expected);
+
+        List<String> keys = new ArrayList<>(expected.keySet());
+        for (String key : keys) {
+            assertThat(map.get(key)).isEqualTo(expected.get(key));
+            map = map.without(key);
+        }
+        assertThat(map).isEmpty();
+    }
+
+    @Test
+    public void testBuilder() throws Exception {
+        Random random = new Random(123);
+        Map<String, Integer> expected = new HashMap<>();
+        PersistentHashMap.Builder<String, Integer> builder = PersistentHashMap.newBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            String key = "key#" + random.nextInt(10_000);
+            expected.put(key, i);
+            builder.put(key, i);
+        }
+        PersistentHashMap<String, Integer> map = builder.build();
+        assertThat(map).hasSize(expected.size());
+        assertThat(map).isEqualTo(expected);
+
+        // The built map must support further updates, same as the one created incrementally.
+        String someKey = expected.keySet().iterator().next();
+        assertThat(map.with(someKey, -1).get(someKey)).isEqualTo(-1);
+        assertThat(map.without(someKey)).hasSize(expected.size() - 1);
+        assertThat(map.with("newKey", -2)).hasSize(expected.size() + 1);
+    }
+
+    @Test
+    public void testBuilderWithHashCollisions() throws Exception {
+        PersistentHashMap.Builder<CollidingKey, Integer> builder = PersistentHashMap.newBuilder();
+        for (int i = 0; i < 10; i++) {
+            builder.put(new CollidingKey(i), i);
+        }
+        PersistentHashMap<CollidingKey, Integer> map = builder.build();
+        assertThat(map).hasSize(10);
+        for (int i = 0; i < 10; i++) {
+            assertThat(map.get(new CollidingKey(i))).isEqualTo(i);
+        }
+        assertThat(map.without(new CollidingKey(0))).hasSize(9);
+        assertThat(PersistentHashMap.newBuilder().build()).isEmpty();
+    }
+
+    @Test
+    public void testDiff() throws Exception {
+        Random random = new Random(123);
+        PersistentHashMap.Builder<String, Integer> builder = PersistentHashMap.newBuilder();
+        for (int i = 0; i < 5_000; i++) {
+            builder.put("key#" + i, i);
+        }
+        PersistentHashMap<String, Integer> previous = builder.build();
+
+        for (int round = 0; round < 100; round++) {
+            Map<String, Integer> expectedAddedOrUpdated = new HashMap<>();
+            Map<String, Integer> expectedRemoved = new HashMap<>();
+            PersistentHashMap<String, Integer> current = previous;
+            for (int i = 0; i < 10; i++) {
+                String key = "key#" + random.nextInt(6_000);
+                if (random.nextBoolean() && current.containsKey(key)) {
+                    current = current.without(key);
+                } else {
+                    current = current.with(key, 10_000 + round * 10 + i);
+                }
+            }
+            for (String key : current.keySet()) {
+                if (previous.get(key) != current.get(key)) {
+                    expectedAddedOrUpdated.put(key, current.get(key));
+                }
+            }
+            for (String key : previous.keySet()) {
+                if (!current.containsKey(key)) {
+                    expectedRemoved.put(key, previous.get(key));
+                }
+            }
+
+            Map<String, Integer> addedOrUpdated = new HashMap<>();
+            Map<String, Integer> removed = new HashMap<>();
+            current.diff(previous, addedOrUpdated::put, removed::put);
+
+            assertThat(addedOrUpdated).isEqualTo(expectedAddedOrUpdated);
+            assertThat(removed).isEqualTo(expectedRemoved);
+            previous = current;
+        }
+    }
+
+    @Test
+    public void testDiffWithHashCollisions() throws Exception {
+        PersistentHashMap<CollidingKey, Integer> previous = PersistentHashMap.<CollidingKey, Integer>empty()
+                .with(new CollidingKey(0), 0)
+                .with(new CollidingKey(1), 1);
+        PersistentHashMap<CollidingKey, Integer> current = previous
+                .without(new CollidingKey(0))
+                .with(new CollidingKey(2), 2);
+
+        Map<CollidingKey, Integer> addedOrUpdated = new HashMap<>();
+        Map<CollidingKey, Integer> removed = new HashMap<>();
+        current.diff(previous, addedOrUpdated::put, removed::put);
+
+        assertThat(addedOrUpdated).containsOnlyKeys(new CollidingKey(2));
+        assertThat(removed).containsOnlyKeys(new CollidingKey(0));
+
+        addedOrUpdated.clear();
+        removed.clear();
+        current.diff(PersistentHashMap.empty(), addedOrUpdated::put, removed::put);
+        assertThat(addedOrUpdated).hasSize(2);
+        assertThat(removed).isEmpty();
+    }
+
+    private static Map.Entry<String, String> entry(String key, String value) {
+        return SimpleEntry.of(key, value);
+    }
+
+    private static class CollidingKey {
+
+        private final int id;
+
+        private CollidingKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.common.util.collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersistentSortedSetTest {
+
+    @Test
+    public void testAddAndRemove() throws Exception {
+        PersistentSortedSet<Integer> v1 = PersistentSortedSet.<Integer>empty(Comparator.naturalOrder()).add(3).add(1).add(2);
+        PersistentSortedSet<Integer> v2 = v1.remove(2);
+
+        assertThat(v1.toList()).containsExactly(1, 2, 3);
+        assertThat(v2.toList()).containsExactly(1, 3);
+        assertThat(v2.remove(2)).isSameAs(v2);
+        assertThat(v2.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testRandomUpdatesAgainstTreeSet() throws Exception {
+        Random random = new Random(123);
+        TreeSet<Integer> expected = new TreeSet<>();
+        PersistentSortedSet<Integer> set = PersistentSortedSet.empty(Comparator.naturalOrder());
+
+        for (int i = 0; i < 20_000; i++) {
+            int value = random.nextInt(2_000);
+            if (random.nextBoolean()) {
+                expected.add(value);
+                set = set.add(value);
+            } else {
+                expected.remove(value);
+                set = set.remove(value);
+            }
+            assertThat(set.size()).isEqualTo(expected.size());
+        }
+        assertThat(set.toList()).isEqualTo(new ArrayList<>(expected));
+    }
+
+    @Test
+    public void testPositionalAccess() throws Exception {
+        PersistentSortedSet<Integer> set = PersistentSortedSet.empty(Comparator.naturalOrder());
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            set = set.add(i * 2);
+            expected.add(i * 2);
+        }
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(set.get(i)).isEqualTo(expected.get(i));
+        }
+        for (int value = -1; value <= 2_000; value++) {
+            assertThat(set.indexOf(value)).isEqualTo(Collections.binarySearch(expected, value));
+        }
+        assertThat(set.asList()).isEqualTo(expected);
+        assertThat(set.asList().subList(10, 20)).isEqualTo(expected.subList(10, 20));
+    }
+}
@@ -29,6 +29,7 @@ import com.netflix.titus.common.runtime.TitusRuntimes;
 import com.netflix.titus.common.util.CollectionsExt;
 import com.netflix.titus.ext.cassandra.store.CassandraJobStore;
 import com.netflix.titus.ext.cassandra.store.CassandraStoreConfiguration;
+import com.netflix.titus.ext.cassandra.store.StoreRecordCodecs;
 import com.netflix.titus.ext.cassandra.tool.snapshot.JobSnapshotLoader;
 import org.cassandraunit.CQLDataLoader;
 import org.cassandraunit.dataset.cql.ClassPathCQLDataSet;
@@ -70,6 +71,31 @@ public class EmbeddedCassandraStoreFactory {
         public boolean isTracingEnabled() {
             return false;
         }
+
+        @Override
+        public boolean isTaskWriteCoalescingEnabled() {
+            return false;
+        }
+
+        @Override
+        public long getTaskWriteCoalescingWindowMs() {
+            return 20;
+        }
+
+        @Override
+        public int getTaskWriteBatchSize() {
+            return 20;
+        }
+
+        @Override
+        public int getTaskWriteConcurrency() {
+            return 8;
+        }
+
+        @Override
+        public String getRecordWriteFormat() {
+            return StoreRecordCodecs.JSON_FORMAT;
+        }
     };
 
     private final Session session;
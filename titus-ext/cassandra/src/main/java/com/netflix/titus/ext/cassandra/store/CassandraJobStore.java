@@ -16,21 +16,25 @@
 
 package com.netflix.titus.ext.cassandra.store;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.Configuration;
 import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.QueryTrace;
@@ -70,6 +74,7 @@ import rx.Completable;
 import rx.Emitter;
 import rx.Observable;
 import rx.exceptions.Exceptions;
+import rx.schedulers.Schedulers;
 
 import static com.netflix.titus.common.util.guice.ProxyType.Logging;
 import static com.netflix.titus.common.util.guice.ProxyType.Spectator;
@@ -84,6 +89,7 @@ public class CassandraJobStore implements JobStore {
     private static final int INITIAL_BUCKET_COUNT = 100;
     private static final int MAX_BUCKET_SIZE = 2_000;
     private static final String METRIC_NAME_ROOT = "titusMaster.jobManager.cassandra";
+    private static final long TASK_WRITE_DRAIN_TIMEOUT_MS = 30_000;
 
     // SELECT Queries
     private static final String RETRIEVE_ACTIVE_JOB_ID_BUCKETS_STRING = "SELECT distinct bucket FROM active_job_ids";
@@ -134,7 +140,7 @@ public class CassandraJobStore implements JobStore {
 
     private final TitusRuntime titusRuntime;
     private final Session session;
-    private final ObjectMapper mapper;
+    private final StoreRecordCodec codec;
     private final BalancedBucketManager<String> activeJobIdsBucketManager;
     private final CassandraStoreConfiguration configuration;
     private final Optional<FitInjection> fitDriverInjection;
@@ -142,6 +148,8 @@ public class CassandraJobStore implements JobStore {
 
     private final Predicate<Job> disruptionBudgetEnabledPredicate;
 
+    private final Optional<TaskWriteCoalescer> taskWriteCoalescer;
+
     @Inject
     public CassandraJobStore(CassandraStoreConfiguration configuration,
                              @Named(FeatureRolloutPlans.DISRUPTION_BUDGET_FEATURE) Predicate<JobDescriptor> disruptionBudgetEnabledPredicate,
@@ -182,7 +190,7 @@ public class CassandraJobStore implements JobStore {
             this.fitBadDataInjection = Optional.empty();
         }
 
-        this.mapper = mapper;
+        this.codec = StoreRecordCodecs.newDualReadCodec(configuration.getRecordWriteFormat(), mapper);
         this.activeJobIdsBucketManager = new BalancedBucketManager<>(initialBucketCount, maxBucketSize, METRIC_NAME_ROOT, titusRuntime.getRegistry());
 
         retrieveActiveJobIdBucketsStatement = session.prepare(RETRIEVE_ACTIVE_JOB_ID_BUCKETS_STRING).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
@@ -206,6 +214,38 @@ public class CassandraJobStore implements JobStore {
         deleteActiveJobStatement = session.prepare(DELETE_ACTIVE_JOB_STRING).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
         deleteActiveTaskIdStatement = session.prepare(DELETE_ACTIVE_TASK_ID_STRING).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
         deleteActiveTaskStatement = session.prepare(DELETE_ACTIVE_TASK_STRING).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        if (configuration.isTaskWriteCoalescingEnabled()) {
+            this.taskWriteCoalescer = Optional.of(new TaskWriteCoalescer(
+                    configuration.getTaskWriteCoalescingWindowMs(),
+                    configuration.getTaskWriteBatchSize(),
+                    configuration.getTaskWriteConcurrency(),
+                    task -> insertActiveTaskStatement.bind(task.getId(), codec.encode(task)),
+                    this::resolveReplicas,
+                    this::execute,
+                    METRIC_NAME_ROOT,
+                    titusRuntime.getRegistry(),
+                    Schedulers.computation()
+            ));
+        } else {
+            this.taskWriteCoalescer = Optional.empty();
+        }
+    }
+
+    /**
+     * Sends all buffered task writes, and waits for the in-flight ones to complete.
+     */
+    @PreDestroy
+    public void shutdown() {
+        taskWriteCoalescer.ifPresent(coalescer -> {
+            try {
+                if (!coalescer.close().await(TASK_WRITE_DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Buffered task writes not completed within {}ms", TASK_WRITE_DRAIN_TIMEOUT_MS);
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to drain buffered task writes", e);
+            }
+        });
     }
 
     @Override
@@ -267,7 +307,7 @@ public class CassandraJobStore implements JobStore {
 
                         Job<?> job;
                         try {
-                            job = ObjectMappers.readValue(mapper, effectiveValue, Job.class);
+                            job = codec.decode(effectiveValue, Job.class);
                         } catch (Exception e) {
                             logger.error("Cannot map serialized job data to Job class: {}", effectiveValue, e);
                             return Either.ofError(e);
@@ -327,7 +367,7 @@ public class CassandraJobStore implements JobStore {
                 throw JobStoreException.jobDoesNotExist(jobId);
             }
             String value = row.getString(0);
-            return (Job<?>) ObjectMappers.readValue(mapper, value, Job.class);
+            return (Job<?>) codec.decode(value, Job.class);
         }));
     }
 
@@ -338,11 +378,11 @@ public class CassandraJobStore implements JobStore {
                     String jobId = job.getId();
                     checkIfJobAlreadyExists(jobId);
 
-                    String jobJsonString = writeJobToString(job);
+                    String jobRecord = writeJobToString(job);
 
                     int bucket = activeJobIdsBucketManager.getNextBucket();
                     activeJobIdsBucketManager.addItem(bucket, jobId);
-                    Statement jobStatement = insertActiveJobStatement.bind(jobId, jobJsonString);
+                    Statement jobStatement = insertActiveJobStatement.bind(jobId, jobRecord);
                     Statement jobIdStatement = insertActiveJobIdStatement.bind(bucket, jobId);
 
                     BatchStatement batchStatement = new BatchStatement();
@@ -362,7 +402,7 @@ public class CassandraJobStore implements JobStore {
 
     private String writeJobToString(Job job) {
         if (disruptionBudgetEnabledPredicate.test(job)) {
-            return ObjectMappers.writeValueAsString(mapper, job);
+            return codec.encode(job);
         }
 
         if (!DisruptionBudgetFunctions.isLegacyJob(job)) {
@@ -370,7 +410,7 @@ public class CassandraJobStore implements JobStore {
         }
 
         JobDescriptor jobWithDisruptionBudgetNull = job.getJobDescriptor().toBuilder().withDisruptionBudget(null).build();
-        return ObjectMappers.writeValueAsString(mapper, job.toBuilder().withJobDescriptor(jobWithDisruptionBudgetNull).build());
+        return codec.encode(job.toBuilder().withJobDescriptor(jobWithDisruptionBudgetNull).build());
     }
 
     @Override
@@ -379,10 +419,10 @@ public class CassandraJobStore implements JobStore {
                 .fromCallable((Callable<Statement>) () -> {
                     String jobId = job.getId();
                     checkIfJobIsActive(jobId);
-                    String jobJsonString = writeJobToString(job);
+                    String jobRecord = writeJobToString(job);
 
                     transactionLogger().logBeforeUpdate(insertActiveJobStatement, "updateJob", job);
-                    return insertActiveJobStatement.bind(jobId, jobJsonString);
+                    return insertActiveJobStatement.bind(jobId, jobRecord);
                 })
                 .flatMap(statement ->
                         execute(statement).doOnNext(rs -> transactionLogger().logAfterUpdate(insertActiveJobStatement, "updateJob", job))
@@ -529,8 +569,8 @@ public class CassandraJobStore implements JobStore {
             String jobId = task.getJobId();
             String taskId = task.getId();
             checkIfJobIsActive(jobId);
-            String taskJsonString = ObjectMappers.writeValueAsString(mapper, task);
-            Statement taskStatement = insertActiveTaskStatement.bind(taskId, taskJsonString);
+            String taskRecord = codec.encode(task);
+            Statement taskStatement = insertActiveTaskStatement.bind(taskId, taskRecord);
             Statement taskIdStatement = insertActiveTaskIdStatement.bind(jobId, taskId);
 
             BatchStatement batchStatement = new BatchStatement();
@@ -547,15 +587,23 @@ public class CassandraJobStore implements JobStore {
 
     @Override
     public Completable updateTask(Task task) {
+        if (taskWriteCoalescer.isPresent()) {
+            return Completable.defer(() -> {
+                checkIfJobIsActive(task.getJobId());
+                transactionLogger().logBeforeUpdate(insertActiveTaskStatement, "updateTask", task);
+                return taskWriteCoalescer.get().updateTask(task)
+                        .doOnCompleted(() -> transactionLogger().logAfterUpdate(insertActiveTaskStatement, "updateTask", task));
+            });
+        }
         return Observable.fromCallable((Callable<Statement>) () -> {
             String jobId = task.getJobId();
             String taskId = task.getId();
             checkIfJobIsActive(jobId);
-            String taskJsonString = ObjectMappers.writeValueAsString(mapper, task);
+            String taskRecord = codec.encode(task);
 
             transactionLogger().logBeforeUpdate(insertActiveTaskStatement, "updateTask", task);
 
-            return insertActiveTaskStatement.bind(taskId, taskJsonString);
+            return insertActiveTaskStatement.bind(taskId, taskRecord);
         }).flatMap(statement -> {
                     transactionLogger().logAfterUpdate(insertActiveTaskStatement, "updateTask", task);
                     return execute(statement);
@@ -565,22 +613,22 @@ public class CassandraJobStore implements JobStore {
 
     @Override
     public Completable replaceTask(Task oldTask, Task newTask) {
-        return Observable.fromCallable((Callable<Statement>) () -> {
+        return flushPendingTaskWrite(oldTask.getId()).andThen(Observable.fromCallable((Callable<Statement>) () -> {
             String jobId = newTask.getJobId();
             checkIfJobIsActive(jobId);
             String taskId = newTask.getId();
-            String taskJsonString = ObjectMappers.writeValueAsString(mapper, newTask);
+            String taskRecord = codec.encode(newTask);
 
             BatchStatement batchStatement = getArchiveTaskBatchStatement(oldTask);
 
-            Statement insertTaskStatement = insertActiveTaskStatement.bind(taskId, taskJsonString);
+            Statement insertTaskStatement = insertActiveTaskStatement.bind(taskId, taskRecord);
             Statement insertTaskIdStatement = insertActiveTaskIdStatement.bind(jobId, taskId);
 
             batchStatement.add(insertTaskStatement);
             batchStatement.add(insertTaskIdStatement);
 
             return batchStatement;
-        }).flatMap(this::execute).toCompletable();
+        }).flatMap(this::execute).toCompletable());
     }
 
     /**
@@ -595,27 +643,27 @@ public class CassandraJobStore implements JobStore {
      */
     @Override
     public Completable moveTask(Job jobFrom, Job jobTo, Task taskAfter) {
-        return Observable.fromCallable((Callable<Statement>) () -> {
+        return flushPendingTaskWrite(taskAfter.getId()).andThen(Observable.fromCallable((Callable<Statement>) () -> {
             checkIfJobIsActive(jobFrom.getId());
             checkIfJobIsActive(jobTo.getId());
 
-            String taskJsonString = ObjectMappers.writeValueAsString(mapper, taskAfter);
-            transactionLogger().logBeforeUpdate(insertActiveTaskStatement, "moveTask", taskJsonString);
+            String taskRecord = codec.encode(taskAfter);
+            transactionLogger().logBeforeUpdate(insertActiveTaskStatement, "moveTask", taskRecord);
 
             BatchStatement batchStatement = new BatchStatement();
-            batchStatement.add(insertActiveJobStatement.bind(jobFrom.getId(), ObjectMappers.writeValueAsString(mapper, jobFrom)));
-            batchStatement.add(insertActiveJobStatement.bind(jobTo.getId(), ObjectMappers.writeValueAsString(mapper, jobTo)));
-            batchStatement.add(insertActiveTaskStatement.bind(taskAfter.getId(), taskJsonString));
+            batchStatement.add(insertActiveJobStatement.bind(jobFrom.getId(), codec.encode(jobFrom)));
+            batchStatement.add(insertActiveJobStatement.bind(jobTo.getId(), codec.encode(jobTo)));
+            batchStatement.add(insertActiveTaskStatement.bind(taskAfter.getId(), taskRecord));
             batchStatement.add(deleteActiveTaskIdStatement.bind(jobFrom.getId(), taskAfter.getId()));
             batchStatement.add(insertActiveTaskIdStatement.bind(jobTo.getId(), taskAfter.getId()));
 
             return batchStatement;
-        }).flatMap(this::execute).toCompletable().doOnCompleted(() -> transactionLogger().logAfterUpdate(insertActiveTaskStatement, "moveTask", taskAfter));
+        }).flatMap(this::execute).toCompletable().doOnCompleted(() -> transactionLogger().logAfterUpdate(insertActiveTaskStatement, "moveTask", taskAfter)));
     }
 
     @Override
     public Completable deleteTask(Task task) {
-        return Observable.fromCallable((Callable<Statement>) () -> {
+        return flushPendingTaskWrite(task.getId()).andThen(Observable.fromCallable((Callable<Statement>) () -> {
             String jobId = task.getJobId();
             checkIfJobIsActive(jobId);
 
@@ -626,7 +674,7 @@ public class CassandraJobStore implements JobStore {
                     transactionLogger().logAfterDelete(deleteActiveTaskStatement, "deleteTask", task);
                     return execute(statement);
                 }
-        ).toCompletable();
+        ).toCompletable());
     }
 
     @Override
@@ -638,7 +686,7 @@ public class CassandraJobStore implements JobStore {
                         throw JobStoreException.jobDoesNotExist(jobId);
                     }
                     String value = row.getString(0);
-                    return (Job<?>) ObjectMappers.readValue(mapper, value, Job.class);
+                    return (Job<?>) codec.decode(value, Job.class);
                 }));
     }
 
@@ -671,7 +719,7 @@ public class CassandraJobStore implements JobStore {
     }
 
     private Task deserializeTask(String value) {
-        Task task = ObjectMappers.readValue(mapper, value, Task.class);
+        Task task = codec.decode(value, Task.class);
 
         // Task attributes field check
         if (task.getAttributes() == null) {
@@ -688,11 +736,11 @@ public class CassandraJobStore implements JobStore {
     private BatchStatement getArchiveJobBatchStatement(Job job) {
         String jobId = job.getId();
         int bucket = activeJobIdsBucketManager.getItemBucket(jobId);
-        String jobJsonString = writeJobToString(job);
+        String jobRecord = writeJobToString(job);
 
         Statement deleteJobStatement = deleteActiveJobStatement.bind(jobId);
         Statement deleteJobIdStatement = deleteActiveJobIdStatement.bind(bucket, jobId);
-        Statement insertJobStatement = insertArchivedJobStatement.bind(jobId, jobJsonString);
+        Statement insertJobStatement = insertArchivedJobStatement.bind(jobId, jobRecord);
 
         BatchStatement statement = new BatchStatement();
         statement.add(deleteJobStatement);
@@ -705,11 +753,11 @@ public class CassandraJobStore implements JobStore {
     private BatchStatement getArchiveTaskBatchStatement(Task task) {
         String jobId = task.getJobId();
         String taskId = task.getId();
-        String taskJsonString = ObjectMappers.writeValueAsString(mapper, task);
+        String taskRecord = codec.encode(task);
 
         Statement deleteTaskStatement = deleteActiveTaskStatement.bind(taskId);
         Statement deleteTaskIdStatement = deleteActiveTaskIdStatement.bind(jobId, taskId);
-        Statement insertTaskStatement = insertArchivedTaskStatement.bind(taskId, taskJsonString);
+        Statement insertTaskStatement = insertArchivedTaskStatement.bind(taskId, taskRecord);
         Statement insertTaskIdStatement = insertArchivedTaskIdStatement.bind(jobId, taskId);
 
         BatchStatement batchStatement = new BatchStatement();
@@ -756,6 +804,31 @@ public class CassandraJobStore implements JobStore {
         ).doOnError(e -> logger.error("Cassandra operation error: {}", e.getMessage()));
     }
 
+    /**
+     * A buffered task update must be written before any other operation on the same task, so it does not override
+     * the operation result. If the buffered write fails, its caller gets the error, and the operation proceeds.
+     */
+    private Completable flushPendingTaskWrite(String taskId) {
+        return taskWriteCoalescer.map(coalescer -> coalescer.flushTask(taskId).onErrorComplete()).orElse(Completable.complete());
+    }
+
+    /**
+     * Resolves the set of replica hosts owning the statement partition, so writes to partitions with the same replicas
+     * can be grouped into one unlogged batch, and routed directly to one of the replicas.
+     */
+    private Object resolveReplicas(Statement statement) {
+        Configuration driverConfiguration = session.getCluster().getConfiguration();
+        ByteBuffer routingKey = statement.getRoutingKey(
+                driverConfiguration.getProtocolOptions().getProtocolVersion(),
+                driverConfiguration.getCodecRegistry()
+        );
+        String keyspace = statement.getKeyspace() != null ? statement.getKeyspace() : session.getLoggedKeyspace();
+        if (routingKey == null || keyspace == null) {
+            return Collections.emptySet();
+        }
+        return session.getCluster().getMetadata().getReplicas(keyspace, routingKey);
+    }
+
     private int getConcurrencyLimit() {
         return Math.max(2, configuration.getConcurrencyLimit());
     }
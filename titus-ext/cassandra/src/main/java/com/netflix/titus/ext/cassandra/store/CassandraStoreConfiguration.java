@@ -47,4 +47,36 @@ public interface CassandraStoreConfiguration {
      */
     @DefaultValue("false")
     boolean isTracingEnabled();
+
+    /**
+     * If enabled, task updates are buffered for a short period of time, and successive updates of the same task are
+     * collapsed into a single write. The buffered writes are sent to Cassandra as unlogged batches.
+     */
+    @DefaultValue("false")
+    boolean isTaskWriteCoalescingEnabled();
+
+    /**
+     * How long a task update is buffered before being written.
+     */
+    @DefaultValue("20")
+    long getTaskWriteCoalescingWindowMs();
+
+    /**
+     * Maximum number of task writes in a single unlogged batch.
+     */
+    @DefaultValue("20")
+    int getTaskWriteBatchSize();
+
+    /**
+     * Maximum number of task write batches executed concurrently.
+     */
+    @DefaultValue("8")
+    int getTaskWriteConcurrency();
+
+    /**
+     * Format in which job and task records are written, either 'json' or 'smile' (binary JSON). Records in both formats
+     * are read irrespective of this setting, so it can be changed in both directions without migrating the data.
+     */
+    @DefaultValue("json")
+    String getRecordWriteFormat();
 }
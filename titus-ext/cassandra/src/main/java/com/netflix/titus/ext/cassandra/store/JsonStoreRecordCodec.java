@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.cassandra.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.titus.api.json.ObjectMappers;
+
+/**
+ * Stores records as JSON documents. This is the original, and the default record format.
+ */
+public class JsonStoreRecordCodec implements StoreRecordCodec {
+
+    private final ObjectMapper mapper;
+
+    public JsonStoreRecordCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public String encode(Object record) {
+        return ObjectMappers.writeValueAsString(mapper, record);
+    }
+
+    @Override
+    public <T> T decode(String value, Class<T> type) {
+        return ObjectMappers.readValue(mapper, value, type);
+    }
+}
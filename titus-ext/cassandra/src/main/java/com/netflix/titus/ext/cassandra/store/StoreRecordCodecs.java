@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.cassandra.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+
+/**
+ * Factory methods for {@link StoreRecordCodec}s.
+ */
+public final class StoreRecordCodecs {
+
+    public static final String JSON_FORMAT = "json";
+    public static final String SMILE_FORMAT = "smile";
+
+    private StoreRecordCodecs() {
+    }
+
+    /**
+     * Returns a codec writing records in the given format, and reading records in any of the supported formats. This
+     * allows changing the write format in both directions, while the store holds records written in the other one.
+     */
+    public static StoreRecordCodec newDualReadCodec(String writeFormat, ObjectMapper jsonMapper) {
+        Preconditions.checkArgument(
+                JSON_FORMAT.equalsIgnoreCase(writeFormat) || SMILE_FORMAT.equalsIgnoreCase(writeFormat),
+                "Unsupported store record format: %s", writeFormat
+        );
+        JsonStoreRecordCodec jsonCodec = new JsonStoreRecordCodec(jsonMapper);
+        SmileStoreRecordCodec smileCodec = new SmileStoreRecordCodec();
+        return new DualReadCodec(SMILE_FORMAT.equalsIgnoreCase(writeFormat) ? smileCodec : jsonCodec, jsonCodec, smileCodec);
+    }
+
+    private static class DualReadCodec implements StoreRecordCodec {
+
+        private final StoreRecordCodec writeCodec;
+        private final JsonStoreRecordCodec jsonCodec;
+        private final SmileStoreRecordCodec smileCodec;
+
+        private DualReadCodec(StoreRecordCodec writeCodec, JsonStoreRecordCodec jsonCodec, SmileStoreRecordCodec smileCodec) {
+            this.writeCodec = writeCodec;
+            this.jsonCodec = jsonCodec;
+            this.smileCodec = smileCodec;
+        }
+
+        @Override
+        public String encode(Object record) {
+            return writeCodec.encode(record);
+        }
+
+        @Override
+        public <T> T decode(String value, Class<T> type) {
+            return SmileStoreRecordCodec.isSmileRecord(value)
+                    ? smileCodec.decode(value, type)
+                    : jsonCodec.decode(value, type);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.cassandra.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Statement;
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import rx.Completable;
+import rx.CompletableSubscriber;
+import rx.Observable;
+import rx.Scheduler;
+import rx.subjects.AsyncSubject;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Write-behind buffer for task updates. Updates of the same task within the coalescing window are collapsed into
+ * a single write of the latest task version. At the end of the window, pending writes are grouped by the replica set
+ * owning the task partition, and sent as unlogged batches. A caller's {@link Completable} completes only after
+ * the batch holding its (or a newer) task version has been written with the requested consistency level, so the
+ * durability guarantees of {@link CassandraJobStore#updateTask(Task)} are preserved.
+ * <p>
+ * Writes sent to Cassandra are tracked per task until they complete, so {@link #flushTask(String)} can order
+ * a subsequent operation on the task after all its buffered and in-flight writes.
+ */
+class TaskWriteCoalescer {
+
+    private final long windowMs;
+    private final int maxBatchSize;
+    private final int concurrency;
+    private final Function<Task, Statement> statementFactory;
+    private final Function<Statement, Object> groupingKeyResolver;
+    private final Function<Statement, Observable<ResultSet>> executor;
+    private final Scheduler.Worker worker;
+    private final Registry registry;
+
+    private final Counter requestedWritesCounter;
+    private final Counter savedWritesCounter;
+    private final Counter batchCounter;
+    private final Timer flushLatencyTimer;
+
+    private final Object lock = new Object();
+    private Map<String, PendingWrite> pendingWrites = new LinkedHashMap<>();
+    private final Map<String, Completable> inFlightWrites = new HashMap<>();
+    private boolean flushScheduled;
+    private boolean closed;
+
+    TaskWriteCoalescer(long windowMs,
+                       int maxBatchSize,
+                       int concurrency,
+                       Function<Task, Statement> statementFactory,
+                       Function<Statement, Object> groupingKeyResolver,
+                       Function<Statement, Observable<ResultSet>> executor,
+                       String metricRoot,
+                       Registry registry,
+                       Scheduler scheduler) {
+        this.windowMs = windowMs;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.concurrency = Math.max(1, concurrency);
+        this.statementFactory = statementFactory;
+        this.groupingKeyResolver = groupingKeyResolver;
+        this.executor = executor;
+        this.worker = scheduler.createWorker();
+        this.registry = registry;
+
+        this.requestedWritesCounter = registry.counter(metricRoot + ".writeBehind.requestedWrites");
+        this.savedWritesCounter = registry.counter(metricRoot + ".writeBehind.savedWrites");
+        this.batchCounter = registry.counter(metricRoot + ".writeBehind.batches");
+        this.flushLatencyTimer = registry.timer(metricRoot + ".writeBehind.flushLatency");
+    }
+
+    /**
+     * Schedules a task write. The returned {@link Completable} is lazy, and the write is enqueued on subscription.
+     * After {@link #close()}, the write is sent immediately.
+     */
+    Completable updateTask(Task task) {
+        return Completable.create(subscriber -> {
+            subscriber.onSubscribe(Subscriptions.empty());
+            requestedWritesCounter.increment();
+            boolean flushNow;
+            synchronized (lock) {
+                PendingWrite pendingWrite = pendingWrites.get(task.getId());
+                if (pendingWrite == null) {
+                    pendingWrites.put(task.getId(), new PendingWrite(task, subscriber, registry.clock().monotonicTime()));
+                } else {
+                    savedWritesCounter.increment();
+                    pendingWrite.update(task, subscriber);
+                }
+                flushNow = closed;
+                if (!closed && !flushScheduled) {
+                    flushScheduled = true;
+                    worker.schedule(this::flushAll, windowMs, TimeUnit.MILLISECONDS);
+                }
+            }
+            if (flushNow) {
+                flushAll();
+            }
+        });
+    }
+
+    /**
+     * Writes immediately a pending update of the given task if there is one, after all writes of the task already
+     * sent to Cassandra complete. Must be called before any other task operation (replace, move, delete), so
+     * a buffered or in-flight update does not override its result.
+     */
+    Completable flushTask(String taskId) {
+        return Completable.defer(() -> {
+            Completable inFlight;
+            PendingWrite pendingWrite;
+            synchronized (lock) {
+                inFlight = inFlightWrites.get(taskId);
+                pendingWrite = pendingWrites.remove(taskId);
+                if (pendingWrite != null) {
+                    markInFlight(pendingWrite);
+                }
+            }
+            Completable awaitInFlight = inFlight == null ? Completable.complete() : inFlight;
+            if (pendingWrite == null) {
+                return awaitInFlight;
+            }
+            return awaitInFlight.andThen(Completable.defer(() -> {
+                try {
+                    pendingWrite.statement = statementFactory.apply(pendingWrite.task);
+                } catch (Exception e) {
+                    pendingWrite.subscribers.forEach(subscriber -> subscriber.onError(e));
+                    finish(pendingWrite);
+                    return Completable.error(e);
+                }
+                return writeBatch(Collections.singletonList(pendingWrite));
+            }));
+        });
+    }
+
+    /**
+     * Stops buffering. Pending writes are sent immediately, and the returned {@link Completable} completes when
+     * all writes sent to Cassandra are done (successfully or not; errors are delivered to the individual callers).
+     */
+    Completable close() {
+        return Completable.defer(() -> {
+            synchronized (lock) {
+                closed = true;
+            }
+            worker.unsubscribe();
+            flushAll();
+
+            List<Completable> inFlight;
+            synchronized (lock) {
+                inFlight = new ArrayList<>(inFlightWrites.values());
+            }
+            return Completable.merge(inFlight);
+        });
+    }
+
+    /**
+     * Number of buffered task writes, not yet sent to Cassandra.
+     */
+    int getPendingCount() {
+        synchronized (lock) {
+            return pendingWrites.size();
+        }
+    }
+
+    /**
+     * Number of tasks with writes sent to Cassandra, and not completed yet.
+     */
+    int getInFlightCount() {
+        synchronized (lock) {
+            return inFlightWrites.size();
+        }
+    }
+
+    private void flushAll() {
+        Map<String, PendingWrite> toFlush;
+        synchronized (lock) {
+            toFlush = pendingWrites;
+            pendingWrites = new LinkedHashMap<>();
+            flushScheduled = false;
+            toFlush.values().forEach(this::markInFlight);
+        }
+        if (toFlush.isEmpty()) {
+            return;
+        }
+
+        List<Completable> batches = new ArrayList<>();
+        for (List<PendingWrite> group : groupByReplicas(toFlush.values())) {
+            for (int i = 0; i < group.size(); i += maxBatchSize) {
+                List<PendingWrite> batch = group.subList(i, Math.min(group.size(), i + maxBatchSize));
+                // A task may still have a write from the previous window in flight, which must land first.
+                batches.add(awaitPreviousWrites(batch).andThen(Completable.defer(() -> writeBatch(batch))));
+            }
+        }
+        // Errors are delivered to the individual callers, and completion is tracked in inFlightWrites.
+        Completable.mergeDelayError(Observable.from(batches), concurrency).onErrorComplete().subscribe();
+    }
+
+    /**
+     * Registers a write as in flight. A new write of a task is completed only when the previous ones are, so waiting
+     * for the latest entry of a task covers all its writes.
+     */
+    private void markInFlight(PendingWrite write) {
+        Completable own = write.done.toCompletable();
+        Completable previous = inFlightWrites.get(write.taskId);
+        write.previousInFlight = previous;
+        write.inFlight = previous == null ? own : Completable.merge(previous, own);
+        inFlightWrites.put(write.taskId, write.inFlight);
+    }
+
+    private Completable awaitPreviousWrites(List<PendingWrite> writes) {
+        List<Completable> previous = new ArrayList<>();
+        writes.forEach(write -> {
+            if (write.previousInFlight != null) {
+                previous.add(write.previousInFlight);
+            }
+        });
+        return previous.isEmpty() ? Completable.complete() : Completable.merge(previous);
+    }
+
+    private void finish(PendingWrite write) {
+        synchronized (lock) {
+            inFlightWrites.remove(write.taskId, write.inFlight);
+        }
+        write.done.onCompleted();
+    }
+
+    /**
+     * Groups writes by the replica set owning the task partition, and the statement consistency level.
+     */
+    private Collection<List<PendingWrite>> groupByReplicas(Collection<PendingWrite> writes) {
+        Map<Object, List<PendingWrite>> groups = new LinkedHashMap<>();
+        for (PendingWrite write : writes) {
+            try {
+                write.statement = statementFactory.apply(write.task);
+                // Statements with different consistency levels cannot share a batch.
+                List<Object> groupingKey = Arrays.asList(groupingKeyResolver.apply(write.statement), write.statement.getConsistencyLevel());
+                groups.computeIfAbsent(groupingKey, key -> new ArrayList<>()).add(write);
+            } catch (Exception e) {
+                write.subscribers.forEach(subscriber -> subscriber.onError(e));
+                finish(write);
+            }
+        }
+        return groups.values();
+    }
+
+    private Completable writeBatch(List<PendingWrite> writes) {
+        Statement statement;
+        if (writes.size() == 1) {
+            statement = writes.get(0).statement;
+        } else {
+            BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            // All statements in a batch have the same consistency level (see groupByReplicas).
+            ConsistencyLevel consistencyLevel = writes.get(0).statement.getConsistencyLevel();
+            if (consistencyLevel != null) {
+                batch.setConsistencyLevel(consistencyLevel);
+            }
+            writes.forEach(write -> batch.add(write.statement));
+            statement = batch;
+        }
+        batchCounter.increment();
+
+        return executor.apply(statement).toCompletable()
+                .doOnCompleted(() -> {
+                    long now = registry.clock().monotonicTime();
+                    writes.forEach(write -> {
+                        flushLatencyTimer.record(now - write.enqueueTime, TimeUnit.NANOSECONDS);
+                        write.subscribers.forEach(CompletableSubscriber::onCompleted);
+                    });
+                })
+                .doOnError(error -> writes.forEach(write -> write.subscribers.forEach(subscriber -> subscriber.onError(error))))
+                .doAfterTerminate(() -> writes.forEach(this::finish))
+                .doOnUnsubscribe(() -> writes.forEach(this::finish));
+    }
+
+    private static class PendingWrite {
+
+        private final String taskId;
+        private final List<CompletableSubscriber> subscribers = new ArrayList<>(1);
+        private final long enqueueTime;
+        private final AsyncSubject<Void> done = AsyncSubject.create();
+        private Task task;
+        private Statement statement;
+        private Completable inFlight;
+        private Completable previousInFlight;
+
+        private PendingWrite(Task task, CompletableSubscriber subscriber, long enqueueTime) {
+            this.taskId = task.getId();
+            this.task = task;
+            this.enqueueTime = enqueueTime;
+            subscribers.add(subscriber);
+        }
+
+        private void update(Task task, CompletableSubscriber subscriber) {
+            this.task = task;
+            subscribers.add(subscriber);
+        }
+    }
+}
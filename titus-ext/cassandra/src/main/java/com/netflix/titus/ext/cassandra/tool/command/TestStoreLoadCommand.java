@@ -32,6 +32,7 @@ import com.netflix.titus.common.runtime.TitusRuntimes;
 import com.netflix.titus.common.util.tuple.Pair;
 import com.netflix.titus.ext.cassandra.store.CassandraJobStore;
 import com.netflix.titus.ext.cassandra.store.CassandraStoreConfiguration;
+import com.netflix.titus.ext.cassandra.store.StoreRecordCodecs;
 import com.netflix.titus.ext.cassandra.tool.Command;
 import com.netflix.titus.ext.cassandra.tool.CommandContext;
 import org.apache.commons.cli.CommandLine;
@@ -73,6 +74,31 @@ public class TestStoreLoadCommand implements Command {
         public boolean isTracingEnabled() {
             return false;
         }
+
+        @Override
+        public boolean isTaskWriteCoalescingEnabled() {
+            return false;
+        }
+
+        @Override
+        public long getTaskWriteCoalescingWindowMs() {
+            return 20;
+        }
+
+        @Override
+        public int getTaskWriteBatchSize() {
+            return 20;
+        }
+
+        @Override
+        public int getTaskWriteConcurrency() {
+            return 8;
+        }
+
+        @Override
+        public String getRecordWriteFormat() {
+            return StoreRecordCodecs.JSON_FORMAT;
+        }
     };
 
     @Override
@@ -30,9 +30,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.common.base.Preconditions;
 import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.ext.cassandra.store.StoreRecordCodec;
+import com.netflix.titus.ext.cassandra.store.StoreRecordCodecs;
 import com.netflix.titus.ext.cassandra.tool.CassandraSchemas;
 import com.netflix.titus.ext.cassandra.tool.CassandraUtils;
-import rx.Observable;
 
 /**
  * Downloads jobs active data from Cassandra database into set of files. A snapshot can be loaded back into
@@ -47,6 +48,11 @@ public class JobSnapshotDownloader {
         MAPPER.enable(SerializationFeature.INDENT_OUTPUT);
     }
 
+    /**
+     * Records may be stored in JSON or Smile format. Both are read into a {@link JsonNode} tree, and saved as JSON.
+     */
+    private static final StoreRecordCodec RECORD_CODEC = StoreRecordCodecs.newDualReadCodec(StoreRecordCodecs.JSON_FORMAT, new ObjectMapper());
+
     private final Session session;
     private final boolean includeArchived;
     private final File outputFolder;
@@ -78,13 +84,7 @@ public class JobSnapshotDownloader {
         File output = new File(outputFolder, table + ".json");
 
         List<JsonNode> allItems = CassandraUtils.readTwoColumnTable(session, table)
-                .flatMap(p -> {
-                    try {
-                        return Observable.just(MAPPER.readTree((String) p.getRight()));
-                    } catch (IOException e) {
-                        return Observable.error(e);
-                    }
-                })
+                .map(p -> RECORD_CODEC.decode((String) p.getRight(), JsonNode.class))
                 .toList()
                 .toBlocking().first();
 
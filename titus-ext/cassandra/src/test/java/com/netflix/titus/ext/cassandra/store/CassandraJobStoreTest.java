@@ -99,6 +99,31 @@ public class CassandraJobStoreTest {
         public boolean isTracingEnabled() {
             return false;
         }
+
+        @Override
+        public boolean isTaskWriteCoalescingEnabled() {
+            return false;
+        }
+
+        @Override
+        public long getTaskWriteCoalescingWindowMs() {
+            return 20;
+        }
+
+        @Override
+        public int getTaskWriteBatchSize() {
+            return 20;
+        }
+
+        @Override
+        public int getTaskWriteConcurrency() {
+            return 8;
+        }
+
+        @Override
+        public String getRecordWriteFormat() {
+            return StoreRecordCodecs.JSON_FORMAT;
+        }
     };
 
     @Test
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.cassandra.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.model.job.ext.ServiceJobExt;
+import com.netflix.titus.api.json.ObjectMappers;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StoreRecordCodecsTest {
+
+    private static final int SAMPLE_SIZE = 20;
+
+    private final StoreRecordCodec jsonCodec = StoreRecordCodecs.newDualReadCodec(StoreRecordCodecs.JSON_FORMAT, ObjectMappers.storeMapper());
+    private final StoreRecordCodec smileCodec = StoreRecordCodecs.newDualReadCodec(StoreRecordCodecs.SMILE_FORMAT, ObjectMappers.storeMapper());
+
+    @Test
+    public void testJsonRoundTrip() {
+        checkRoundTrip(jsonCodec, jsonCodec);
+    }
+
+    @Test
+    public void testSmileRoundTrip() {
+        checkRoundTrip(smileCodec, smileCodec);
+    }
+
+    @Test
+    public void testSmileCodecReadsJsonRecords() {
+        checkRoundTrip(jsonCodec, smileCodec);
+    }
+
+    @Test
+    public void testJsonCodecReadsSmileRecords() {
+        checkRoundTrip(smileCodec, jsonCodec);
+    }
+
+    @Test
+    public void testRecordFormat() {
+        Job<BatchJobExt> job = JobGenerator.oneBatchJob();
+        assertThat(jsonCodec.encode(job)).startsWith("{");
+        assertThat(smileCodec.encode(job)).startsWith(SmileStoreRecordCodec.FORMAT_MARKER);
+    }
+
+    @Test
+    public void testUnknownWriteFormat() {
+        assertThatThrownBy(() -> StoreRecordCodecs.newDualReadCodec("xml", ObjectMappers.storeMapper()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void checkRoundTrip(StoreRecordCodec writer, StoreRecordCodec reader) {
+        for (Job<?> job : sampleJobs()) {
+            assertThat(reader.decode(writer.encode(job), Job.class)).isEqualTo(job);
+        }
+        for (Task task : sampleTasks()) {
+            assertThat(reader.decode(writer.encode(task), Task.class)).isEqualTo(task);
+        }
+    }
+
+    private List<Job<?>> sampleJobs() {
+        List<Job<?>> jobs = new ArrayList<>();
+        JobDescriptorGenerator.batchJobDescriptors().getValues(SAMPLE_SIZE)
+                .forEach(descriptor -> jobs.add(JobGenerator.batchJobs(descriptor).getValue()));
+        JobDescriptorGenerator.serviceJobDescriptors().getValues(SAMPLE_SIZE)
+                .forEach(descriptor -> jobs.add(JobGenerator.serviceJobs(descriptor).getValue()));
+        return jobs;
+    }
+
+    private List<Task> sampleTasks() {
+        List<Task> tasks = new ArrayList<>();
+        for (Job<?> job : sampleJobs()) {
+            Task task = JobFunctions.isBatchJob(job)
+                    ? JobGenerator.batchTasks((Job<BatchJobExt>) job).getValue()
+                    : JobGenerator.serviceTasks((Job<ServiceJobExt>) job).getValue();
+            tasks.add(task);
+            tasks.add(JobFunctions.changeTaskStatus(task, TaskState.Started, "started", "started"));
+        }
+        return tasks;
+    }
+}
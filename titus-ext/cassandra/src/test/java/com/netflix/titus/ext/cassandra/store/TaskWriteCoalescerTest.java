@@ -0,0 +1,271 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.cassandra.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.Test;
+import rx.Observable;
+import rx.observers.AssertableSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TaskWriteCoalescerTest {
+
+    private static final long WINDOW_MS = 20;
+
+    private final TestScheduler testScheduler = new TestScheduler();
+
+    private final List<Statement> executedStatements = new ArrayList<>();
+    private final List<PublishSubject<ResultSet>> executions = new ArrayList<>();
+
+    private final TaskWriteCoalescer coalescer = new TaskWriteCoalescer(
+            WINDOW_MS,
+            2,
+            4,
+            task -> new SimpleStatement("INSERT", task.getId(), task.getStatus().getState().name()),
+            statement -> "sameReplicas",
+            statement -> {
+                executedStatements.add(statement);
+                PublishSubject<ResultSet> result = PublishSubject.create();
+                executions.add(result);
+                return result;
+            },
+            "test",
+            new DefaultRegistry(),
+            testScheduler
+    );
+
+    private final Job<BatchJobExt> job = JobGenerator.oneBatchJob();
+    private final List<Task> tasks = JobGenerator.batchTasks(job).cast(Task.class).getValues(3);
+
+    @Test
+    public void testUpdatesOfSameTaskAreCoalesced() {
+        Task task = tasks.get(0);
+        Task started = JobFunctions.changeTaskStatus(task, TaskState.Started, "started", "started");
+
+        AssertableSubscriber<Void> first = coalescer.updateTask(task).test();
+        AssertableSubscriber<Void> second = coalescer.updateTask(started).test();
+        assertThat(coalescer.getPendingCount()).isEqualTo(1);
+
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+        assertThat(executedStatements).hasSize(1);
+        assertThat(((SimpleStatement) executedStatements.get(0)).getObject(1)).isEqualTo(TaskState.Started.name());
+
+        // Completion only after the write is done.
+        first.assertNotCompleted();
+        second.assertNotCompleted();
+        executions.get(0).onCompleted();
+        first.assertCompleted();
+        second.assertCompleted();
+    }
+
+    @Test
+    public void testWritesAreBatched() {
+        List<AssertableSubscriber<Void>> subscribers = new ArrayList<>();
+        tasks.forEach(task -> subscribers.add(coalescer.updateTask(task).test()));
+
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        // Batch size limit is 2
+        assertThat(executedStatements).hasSize(2);
+        assertThat(executedStatements.get(0)).isInstanceOf(BatchStatement.class);
+        assertThat(((BatchStatement) executedStatements.get(0)).size()).isEqualTo(2);
+
+        executions.get(0).onCompleted();
+        executions.get(1).onError(new RuntimeException("simulated error"));
+        subscribers.get(0).assertCompleted();
+        subscribers.get(1).assertCompleted();
+        subscribers.get(2).assertError(RuntimeException.class);
+    }
+
+    @Test
+    public void testFlushTask() {
+        Task task = tasks.get(0);
+        AssertableSubscriber<Void> update = coalescer.updateTask(task).test();
+
+        AssertableSubscriber<Void> flush = coalescer.flushTask(task.getId()).test();
+        assertThat(executedStatements).hasSize(1);
+        assertThat(coalescer.getPendingCount()).isZero();
+
+        executions.get(0).onCompleted();
+        flush.assertCompleted();
+        update.assertCompleted();
+
+        // Nothing left for the scheduled flush
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+        assertThat(executedStatements).hasSize(1);
+
+        // Flush with no pending write completes immediately
+        coalescer.flushTask(task.getId()).test().assertCompleted();
+    }
+
+    @Test
+    public void testFlushTaskWaitsForInFlightWrite() {
+        Task task = tasks.get(0);
+        AssertableSubscriber<Void> update = coalescer.updateTask(task).test();
+
+        // The window expires, and the write is sent, but not completed yet.
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+        assertThat(executedStatements).hasSize(1);
+        assertThat(coalescer.getPendingCount()).isZero();
+        assertThat(coalescer.getInFlightCount()).isEqualTo(1);
+
+        AssertableSubscriber<Void> flush = coalescer.flushTask(task.getId()).test();
+        flush.assertNotCompleted();
+
+        executions.get(0).onCompleted();
+        update.assertCompleted();
+        flush.assertCompleted();
+        assertThat(coalescer.getInFlightCount()).isZero();
+    }
+
+    @Test
+    public void testFlushTaskWritesPendingUpdateAfterInFlightWrite() {
+        Task task = tasks.get(0);
+        Task started = JobFunctions.changeTaskStatus(task, TaskState.Started, "started", "started");
+
+        coalescer.updateTask(task).test();
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+        AssertableSubscriber<Void> secondUpdate = coalescer.updateTask(started).test();
+
+        AssertableSubscriber<Void> flush = coalescer.flushTask(task.getId()).test();
+        // The newer version is not sent until the previous write completes.
+        assertThat(executedStatements).hasSize(1);
+
+        executions.get(0).onCompleted();
+        assertThat(executedStatements).hasSize(2);
+        assertThat(((SimpleStatement) executedStatements.get(1)).getObject(1)).isEqualTo(TaskState.Started.name());
+        flush.assertNotCompleted();
+
+        executions.get(1).onCompleted();
+        secondUpdate.assertCompleted();
+        flush.assertCompleted();
+    }
+
+    @Test
+    public void testFlushTaskWaitsForFailedInFlightWrite() {
+        Task task = tasks.get(0);
+        AssertableSubscriber<Void> update = coalescer.updateTask(task).test();
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        AssertableSubscriber<Void> flush = coalescer.flushTask(task.getId()).test();
+        executions.get(0).onError(new RuntimeException("simulated error"));
+
+        update.assertError(RuntimeException.class);
+        flush.assertCompleted();
+        assertThat(coalescer.getInFlightCount()).isZero();
+    }
+
+    @Test
+    public void testNextWindowWriteWaitsForInFlightWrite() {
+        Task task = tasks.get(0);
+        Task started = JobFunctions.changeTaskStatus(task, TaskState.Started, "started", "started");
+
+        AssertableSubscriber<Void> firstUpdate = coalescer.updateTask(task).test();
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+        assertThat(executedStatements).hasSize(1);
+
+        // The next window expires while the first write is still in flight.
+        AssertableSubscriber<Void> secondUpdate = coalescer.updateTask(started).test();
+        AssertableSubscriber<Void> otherTaskUpdate = coalescer.updateTask(tasks.get(1)).test();
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+        assertThat(executedStatements).hasSize(1);
+
+        executions.get(0).onCompleted();
+        firstUpdate.assertCompleted();
+        assertThat(executedStatements).hasSize(2);
+        assertThat(((BatchStatement) executedStatements.get(1)).size()).isEqualTo(2);
+
+        executions.get(1).onCompleted();
+        secondUpdate.assertCompleted();
+        otherTaskUpdate.assertCompleted();
+        assertThat(coalescer.getInFlightCount()).isZero();
+    }
+
+    @Test
+    public void testBatchUsesStatementConsistencyLevel() {
+        TaskWriteCoalescer localOneCoalescer = new TaskWriteCoalescer(
+                WINDOW_MS, 10, 1,
+                task -> new SimpleStatement("INSERT", task.getId()).setConsistencyLevel(ConsistencyLevel.LOCAL_ONE),
+                statement -> "sameReplicas",
+                statement -> {
+                    executedStatements.add(statement);
+                    return Observable.empty();
+                },
+                "test",
+                new DefaultRegistry(),
+                testScheduler
+        );
+        tasks.forEach(task -> localOneCoalescer.updateTask(task).test());
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        assertThat(executedStatements).hasSize(1);
+        assertThat(executedStatements.get(0).getConsistencyLevel()).isEqualTo(ConsistencyLevel.LOCAL_ONE);
+    }
+
+    @Test
+    public void testCloseDrainsBufferedWrites() {
+        AssertableSubscriber<Void> update = coalescer.updateTask(tasks.get(0)).test();
+
+        AssertableSubscriber<Void> close = coalescer.close().test();
+        assertThat(executedStatements).hasSize(1);
+        close.assertNotCompleted();
+
+        executions.get(0).onCompleted();
+        update.assertCompleted();
+        close.assertCompleted();
+
+        // After close, writes are sent without waiting for the window.
+        AssertableSubscriber<Void> lateUpdate = coalescer.updateTask(tasks.get(1)).test();
+        assertThat(executedStatements).hasSize(2);
+        executions.get(1).onCompleted();
+        lateUpdate.assertCompleted();
+    }
+
+    @Test
+    public void testExecutorWithImmediateResult() {
+        TaskWriteCoalescer immediate = new TaskWriteCoalescer(
+                WINDOW_MS, 10, 1,
+                task -> new SimpleStatement("INSERT", task.getId()),
+                statement -> "sameReplicas",
+                statement -> Observable.empty(),
+                "test",
+                new DefaultRegistry(),
+                testScheduler
+        );
+        AssertableSubscriber<Void> update = immediate.updateTask(tasks.get(0)).test();
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+        update.assertCompleted();
+    }
+}
@@ -16,9 +16,11 @@
 package com.netflix.titus.federation.service;
 
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import com.netflix.titus.api.federation.model.Cell;
 import com.netflix.titus.common.util.rx.ReactorExt;
 import com.netflix.titus.federation.startup.GrpcConfiguration;
 import com.netflix.titus.grpc.protogen.Job;
@@ -42,14 +44,17 @@ public class AggregatingJobManagementServiceHelper {
     private AggregatingCellClient aggregatingCellClient;
     private final GrpcConfiguration grpcConfiguration;
     private final CallMetadataResolver callMetadataResolver;
+    private final CellLocationCache cellLocationCache;
 
     @Inject
     public AggregatingJobManagementServiceHelper(AggregatingCellClient aggregatingCellClient,
                                                  GrpcConfiguration grpcConfiguration,
-                                                 CallMetadataResolver callMetadataResolver) {
+                                                 CallMetadataResolver callMetadataResolver,
+                                                 CellLocationCache cellLocationCache) {
         this.aggregatingCellClient = aggregatingCellClient;
         this.grpcConfiguration = grpcConfiguration;
         this.callMetadataResolver = callMetadataResolver;
+        this.cellLocationCache = cellLocationCache;
 
     }
 
@@ -63,7 +68,20 @@ public class AggregatingJobManagementServiceHelper {
                 .flatMap(response -> response.getResult()
                         .map(v -> Observable.just(CellResponse.ofValue(response)))
                         .onErrorGet(Observable::error)
-                );
+                )
+                .doOnNext(response -> cellLocationCache.addJob(response.getResult(), response.getCell()));
+    }
+
+    /**
+     * Executes a call in the cell owning the given job. The cell location is taken from {@link CellLocationCache},
+     * and only if not known, all cells are queried.
+     */
+    public <T> Observable<T> callInJobCell(String jobId, Function<Cell, Observable<T>> cellCall) {
+        return cellLocationCache.callInJobCell(
+                jobId,
+                cellCall,
+                Observable.defer(() -> findJobInAllCells(jobId).flatMap(response -> cellCall.apply(response.getCell())))
+        );
     }
 
     public Mono<CellResponse<JobManagementServiceStub, Job>> findJobInAllCellsReact(String jobId) {
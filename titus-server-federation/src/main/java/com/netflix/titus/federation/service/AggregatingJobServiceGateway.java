@@ -19,11 +19,10 @@ package com.netflix.titus.federation.service;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -34,8 +33,6 @@ import com.netflix.titus.api.service.TitusServiceException;
 import com.netflix.titus.common.util.CollectionsExt;
 import com.netflix.titus.common.util.ProtobufExt;
 import com.netflix.titus.common.util.StringExt;
-import com.netflix.titus.common.util.concurrency.CallbackCountDownLatch;
-import com.netflix.titus.common.util.rx.EmitterWithMultipleSubscriptions;
 import com.netflix.titus.common.util.rx.ReactorExt;
 import com.netflix.titus.common.util.tuple.Pair;
 import com.netflix.titus.federation.startup.GrpcConfiguration;
@@ -45,8 +42,6 @@ import com.netflix.titus.grpc.protogen.JobAttributesDeleteRequest;
 import com.netflix.titus.grpc.protogen.JobAttributesUpdate;
 import com.netflix.titus.grpc.protogen.JobCapacityUpdate;
 import com.netflix.titus.grpc.protogen.JobChangeNotification;
-import com.netflix.titus.grpc.protogen.JobChangeNotification.JobUpdate;
-import com.netflix.titus.grpc.protogen.JobChangeNotification.TaskUpdate;
 import com.netflix.titus.grpc.protogen.JobDescriptor;
 import com.netflix.titus.grpc.protogen.JobDisruptionBudgetUpdate;
 import com.netflix.titus.grpc.protogen.JobId;
@@ -57,7 +52,6 @@ import com.netflix.titus.grpc.protogen.JobQuery;
 import com.netflix.titus.grpc.protogen.JobQueryResult;
 import com.netflix.titus.grpc.protogen.JobStatusUpdate;
 import com.netflix.titus.grpc.protogen.ObserveJobsQuery;
-import com.netflix.titus.grpc.protogen.Pagination;
 import com.netflix.titus.grpc.protogen.Task;
 import com.netflix.titus.grpc.protogen.TaskAttributesDeleteRequest;
 import com.netflix.titus.grpc.protogen.TaskAttributesUpdate;
@@ -77,14 +71,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Mono;
 import rx.Completable;
-import rx.Emitter;
 import rx.Observable;
 
-import static com.netflix.titus.api.jobmanager.JobAttributes.JOB_ATTRIBUTES_STACK;
-import static com.netflix.titus.api.jobmanager.TaskAttributes.TASK_ATTRIBUTES_STACK;
 import static com.netflix.titus.federation.service.CellConnectorUtil.callToCell;
-import static com.netflix.titus.federation.service.PageAggregationUtil.combinePagination;
-import static com.netflix.titus.federation.service.PageAggregationUtil.takeCombinedPage;
 import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.emptyGrpcPagination;
 import static com.netflix.titus.runtime.endpoint.common.grpc.GrpcUtil.createRequestObservable;
 import static com.netflix.titus.runtime.endpoint.common.grpc.GrpcUtil.createWrappedStub;
@@ -104,6 +93,8 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
     private AggregatingJobManagementServiceHelper jobManagementServiceHelper;
     private final CellRouter router;
     private final CallMetadataResolver callMetadataResolver;
+    private final CellLocationCache cellLocationCache;
+    private final CellJobEventStreams cellJobEventStreams;
 
     @Inject
     public AggregatingJobServiceGateway(GrpcConfiguration grpcConfiguration,
@@ -112,7 +103,9 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
                                         CellRouter router,
                                         CallMetadataResolver callMetadataResolver,
                                         AggregatingCellClient aggregatingClient,
-                                        AggregatingJobManagementServiceHelper jobManagementServiceHelper) {
+                                        AggregatingJobManagementServiceHelper jobManagementServiceHelper,
+                                        CellLocationCache cellLocationCache,
+                                        CellJobEventStreams cellJobEventStreams) {
 
         this.grpcConfiguration = grpcConfiguration;
         this.federationConfiguration = federationConfiguration;
@@ -121,6 +114,8 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
         this.callMetadataResolver = callMetadataResolver;
         this.aggregatingClient = aggregatingClient;
         this.jobManagementServiceHelper = jobManagementServiceHelper;
+        this.cellLocationCache = cellLocationCache;
+        this.cellJobEventStreams = cellJobEventStreams;
     }
 
     @Override
@@ -139,7 +134,10 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
         return createRequestObservable(emitter -> {
             StreamObserver<JobId> streamObserver = GrpcUtil.createClientResponseObserver(
                     emitter,
-                    jobId -> emitter.onNext(jobId.getId()),
+                    jobId -> {
+                        cellLocationCache.addJob(jobId.getId(), cell);
+                        emitter.onNext(jobId.getId());
+                    },
                     emitter::onError,
                     emitter::onCompleted
             );
@@ -151,8 +149,8 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
     public Completable updateJobCapacity(JobCapacityUpdate request) {
         Optional<CallMetadata> context = callMetadataResolver.resolve();
 
-        Observable<Empty> result = jobManagementServiceHelper.findJobInAllCells(request.getJobId())
-                .flatMap(response -> singleCellCall(response.getCell(),
+        Observable<Empty> result = jobManagementServiceHelper.callInJobCell(request.getJobId(),
+                cell -> singleCellCall(cell,
                         (client, streamObserver) -> wrap(context, client).updateJobCapacity(request, streamObserver))
                 );
         return result.toCompletable();
@@ -162,8 +160,8 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
     public Completable updateJobProcesses(JobProcessesUpdate request) {
         Optional<CallMetadata> context = callMetadataResolver.resolve();
 
-        Observable<Empty> result = jobManagementServiceHelper.findJobInAllCells(request.getJobId())
-                .flatMap(response -> singleCellCall(response.getCell(),
+        Observable<Empty> result = jobManagementServiceHelper.callInJobCell(request.getJobId(),
+                cell -> singleCellCall(cell,
                         (client, streamObserver) -> wrap(context, client).updateJobProcesses(request, streamObserver))
                 );
         return result.toCompletable();
@@ -173,8 +171,8 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
     public Completable updateJobStatus(JobStatusUpdate request) {
         Optional<CallMetadata> context = callMetadataResolver.resolve();
 
-        Observable<Empty> result = jobManagementServiceHelper.findJobInAllCells(request.getId())
-                .flatMap(response -> singleCellCall(response.getCell(),
+        Observable<Empty> result = jobManagementServiceHelper.callInJobCell(request.getId(),
+                cell -> singleCellCall(cell,
                         (client, streamObserver) -> wrap(context, client).updateJobStatus(request, streamObserver))
                 );
         return result.toCompletable();
@@ -184,8 +182,8 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
     public Mono<Void> updateJobDisruptionBudget(JobDisruptionBudgetUpdate request) {
         Optional<CallMetadata> context = callMetadataResolver.resolve();
 
-        Mono<Empty> result = jobManagementServiceHelper.findJobInAllCellsReact(request.getJobId())
-                .flatMap(response -> singleCellCallReact(response.getCell(),
+        Mono<Empty> result = callInJobCellReact(request.getJobId(),
+                cell -> singleCellCall(cell,
                         (client, streamObserver) -> wrap(context, client).updateJobDisruptionBudget(request, streamObserver))
                 );
         return result.ignoreElement().cast(Void.class);
@@ -195,8 +193,8 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
     public Mono<Void> updateJobAttributes(JobAttributesUpdate request) {
         Optional<CallMetadata> context = callMetadataResolver.resolve();
 
-        Mono<Empty> result = jobManagementServiceHelper.findJobInAllCellsReact(request.getJobId())
-                .flatMap(response -> singleCellCallReact(response.getCell(),
+        Mono<Empty> result = callInJobCellReact(request.getJobId(),
+                cell -> singleCellCall(cell,
                         (client, streamObserver) -> wrap(context, client).updateJobAttributes(request, streamObserver))
                 );
         return result.ignoreElement().cast(Void.class);
@@ -206,8 +204,8 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
     public Mono<Void> deleteJobAttributes(JobAttributesDeleteRequest request) {
         Optional<CallMetadata> context = callMetadataResolver.resolve();
 
-        Mono<Empty> result = jobManagementServiceHelper.findJobInAllCellsReact(request.getJobId())
-                .flatMap(response -> singleCellCallReact(response.getCell(),
+        Mono<Empty> result = callInJobCellReact(request.getJobId(),
+                cell -> singleCellCall(cell,
                         (client, streamObserver) -> wrap(context, client).deleteJobAttributes(request, streamObserver))
                 );
         return result.ignoreElement().cast(Void.class);
@@ -215,9 +213,11 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
 
     @Override
     public Observable<Job> findJob(String jobId) {
-        return jobManagementServiceHelper.findJobInAllCells(jobId)
-                .map(CellResponse::getResult)
-                .map(this::addStackName);
+        JobId id = JobId.newBuilder().setId(jobId).build();
+        return cellLocationCache.callInJobCell(jobId,
+                cell -> singleCellCall(cell, (ClientCall<Job>) (client, streamObserver) -> client.findJob(id, streamObserver)),
+                Observable.defer(() -> jobManagementServiceHelper.findJobInAllCells(jobId).map(CellResponse::getResult))
+        ).map(this::addStackName);
     }
 
     @Override
@@ -238,77 +238,51 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
                     .build();
         }
 
-        if (StringExt.isNotEmpty(request.getPage().getCursor()) || request.getPage().getPageNumber() == 0) {
-            return findJobsWithCursorPagination(request, fieldsFilter);
-        }
-        // TODO: page number pagination
-        return Observable.error(TitusServiceException.invalidArgument("pageNumbers are not supported, please use cursors"));
-    }
-
-    private Observable<JobQueryResult> findJobsWithCursorPagination(JobQuery request, Set<String> fields) {
-        return aggregatingClient.call(JobManagementServiceGrpc::newStub, findJobsInCell(request))
-                .map(CellResponse::getResult)
-                .map(this::addStackName)
-                .reduce(this::combineJobResults)
-                .map(combinedResults -> {
-                    Pair<List<Job>, Pagination> combinedPage = takeCombinedPage(
-                            request.getPage(),
-                            combinedResults.getItemsList(),
-                            combinedResults.getPagination(),
-                            JobManagerCursors.jobCursorOrderComparator(),
-                            JobManagerCursors::newCursorFrom
-                    );
-
-                    if (!CollectionsExt.isNullOrEmpty(fields)) {
-                        combinedPage = combinedPage.mapLeft(jobs -> jobs.stream()
-                                .map(job -> ProtobufExt.copy(job, fields))
-                                .collect(Collectors.toList())
-                        );
-                    }
-
-                    return JobQueryResult.newBuilder()
-                            .addAllItems(combinedPage.getLeft())
-                            .setPagination(combinedPage.getRight())
-                            .build();
-                });
-    }
-
-    private ClientCall<JobQueryResult> findJobsInCell(JobQuery request) {
-        return (client, streamObserver) -> wrap(client).findJobs(request, streamObserver);
-    }
-
-    private JobQueryResult combineJobResults(JobQueryResult one, JobQueryResult other) {
-        Pagination pagination = combinePagination(one.getPagination(), other.getPagination());
-        return JobQueryResult.newBuilder()
-                .setPagination(pagination)
-                .addAllItems(one.getItemsList())
-                .addAllItems(other.getItemsList())
-                .build();
+        return findJobsWithMergedPages(request, fieldsFilter);
+    }
+
+    private Observable<JobQueryResult> findJobsWithMergedPages(JobQuery request, Set<String> fields) {
+        CellPageMerger<Job> merger = new CellPageMerger<>(
+                connector.getChannels().keySet(),
+                (cell, page) -> singleCellCall(cell,
+                        (ClientCall<JobQueryResult>) (client, streamObserver) -> client.findJobs(request.toBuilder().setPage(page).build(), streamObserver)
+                ).map(result -> {
+                    result.getItemsList().forEach(job -> cellLocationCache.addJob(job, cell));
+                    return Pair.of(result.getItemsList(), result.getPagination());
+                }),
+                JobManagerCursors.jobCursorOrderComparator(),
+                JobManagerCursors::newCursorFrom,
+                federationConfiguration.getPageNumberPaginationMaxSkippedItems()
+        );
+        return merger.takePage(request.getPage()).map(page -> {
+            List<Job> jobs = page.getLeft().stream().map(this::addStackName).collect(Collectors.toList());
+            if (!CollectionsExt.isNullOrEmpty(fields)) {
+                jobs = jobs.stream().map(job -> ProtobufExt.copy(job, fields)).collect(Collectors.toList());
+            }
+            return JobQueryResult.newBuilder()
+                    .addAllItems(jobs)
+                    .setPagination(page.getRight())
+                    .build();
+        });
     }
 
     @Override
     public Observable<JobChangeNotification> observeJob(String jobId) {
         JobId request = JobId.newBuilder().setId(jobId).build();
-        return jobManagementServiceHelper.findJobInAllCells(jobId)
-                .flatMap(response -> singleCellCallWithNoDeadline(response.getCell(),
-                        (client, streamObserver) -> client.observeJob(request, streamObserver))
-                );
+        return jobManagementServiceHelper.callInJobCell(jobId,
+                cell -> singleCellCallWithNoDeadline(cell,
+                        (ClientCall<JobChangeNotification>) (client, streamObserver) -> client.observeJob(request, streamObserver)
+                ).doOnNext(notification -> cellLocationCache.addNotification(notification, cell))
+        );
     }
 
     @Override
     public Observable<JobChangeNotification> observeJobs(ObserveJobsQuery query) {
-        final Observable<JobChangeNotification> observable = createRequestObservable(delegate -> {
-            Emitter<JobChangeNotification> emitter = new EmitterWithMultipleSubscriptions<>(delegate);
-            Map<Cell, JobManagementServiceStub> clients = CellConnectorUtil.stubs(connector, JobManagementServiceGrpc::newStub);
-            final CountDownLatch markersEmitted = new CallbackCountDownLatch(clients.size(),
-                    () -> emitter.onNext(buildJobSnapshotEndMarker())
-            );
-            clients.forEach((cell, client) -> {
-                StreamObserver<JobChangeNotification> streamObserver = new FilterOutFirstMarker(emitter, markersEmitted);
-                wrapWithNoDeadline(client).observeJobs(query, streamObserver);
-            });
-        });
-        return observable.map(this::addStackName);
+        // ObserveJobsQuery has no field list, so the projection is requested with the 'fields' filtering criteria key.
+        Set<String> fields = StringExt.splitByCommaIntoSet(query.getFilteringCriteriaMap().get("fields"));
+        Set<String> jobFields = fields.isEmpty() ? Collections.emptySet() : CollectionsExt.merge(fields, JOB_FEDERATION_MINIMUM_FIELD_SET);
+        Set<String> taskFields = fields.isEmpty() ? Collections.emptySet() : CollectionsExt.merge(fields, TASK_FEDERATION_MINIMUM_FIELD_SET);
+        return cellJobEventStreams.observeJobs(query, jobFields, taskFields);
     }
 
     @Override
@@ -316,8 +290,8 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
         Optional<CallMetadata> context = callMetadataResolver.resolve();
 
         JobId id = JobId.newBuilder().setId(jobId).build();
-        Observable<Empty> result = jobManagementServiceHelper.findJobInAllCells(jobId)
-                .flatMap(response -> singleCellCall(response.getCell(),
+        Observable<Empty> result = jobManagementServiceHelper.callInJobCell(jobId,
+                cell -> singleCellCall(cell,
                         (client, streamObserver) -> wrap(context, client).killJob(id, streamObserver))
                 );
         return result.toCompletable();
@@ -325,7 +299,23 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
 
     @Override
     public Observable<Task> findTask(String taskId) {
-        return findTaskInAllCells(taskId).map(CellResponse::getResult).map(this::addStackName);
+        TaskId id = TaskId.newBuilder().setId(taskId).build();
+        return cellLocationCache.callInTaskCell(taskId,
+                cell -> singleCellCall(cell, (ClientCall<Task>) (client, streamObserver) -> client.findTask(id, streamObserver)),
+                Observable.defer(() -> findTaskInAllCells(taskId).map(CellResponse::getResult))
+        ).map(this::addStackName);
+    }
+
+    /**
+     * Executes a call in the cell owning the given task, resolving the cell location as described in
+     * {@link AggregatingJobManagementServiceHelper#callInJobCell(String, Function)}.
+     */
+    private <T> Observable<T> callInTaskCell(String taskId, Function<Cell, Observable<T>> cellCall) {
+        return cellLocationCache.callInTaskCell(
+                taskId,
+                cellCall,
+                Observable.defer(() -> findTaskInAllCells(taskId).flatMap(response -> cellCall.apply(response.getCell())))
+        );
     }
 
     private Observable<CellResponse<JobManagementServiceStub, Task>> findTaskInAllCells(String taskId) {
@@ -334,7 +324,8 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
                 .flatMap(response -> response.getResult()
                         .map(v -> Observable.just(CellResponse.ofValue(response)))
                         .onErrorGet(Observable::error)
-                );
+                )
+                .doOnNext(response -> cellLocationCache.addTask(response.getResult(), response.getCell()));
     }
 
     private ClientCall<Task> findTaskInCell(String taskId) {
@@ -360,60 +351,40 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
                     .build();
         }
 
-        if (StringExt.isNotEmpty(request.getPage().getCursor()) || request.getPage().getPageNumber() == 0) {
-            return findTasksWithCursorPagination(request, fieldsFilter);
-        }
-        // TODO: page number pagination
-        return Observable.error(TitusServiceException.invalidArgument("pageNumbers are not supported, please use cursors"));
-    }
-
-    private Observable<TaskQueryResult> findTasksWithCursorPagination(TaskQuery request, Set<String> fields) {
-        return aggregatingClient.call(JobManagementServiceGrpc::newStub, findTasksInCell(request))
-                .map(CellResponse::getResult)
-                .map(this::addStackName)
-                .reduce(this::combineTaskResults)
-                .map(combinedResults -> {
-                    Pair<List<Task>, Pagination> combinedPage = takeCombinedPage(
-                            request.getPage(),
-                            combinedResults.getItemsList(),
-                            combinedResults.getPagination(),
-                            JobManagerCursors.taskCursorOrderComparator(),
-                            JobManagerCursors::newCursorFrom
-                    );
-
-                    if (!CollectionsExt.isNullOrEmpty(fields)) {
-                        combinedPage = combinedPage.mapLeft(tasks -> tasks.stream()
-                                .map(task -> ProtobufExt.copy(task, fields))
-                                .collect(Collectors.toList())
-                        );
-                    }
-
-                    return TaskQueryResult.newBuilder()
-                            .addAllItems(combinedPage.getLeft())
-                            .setPagination(combinedPage.getRight())
-                            .build();
-                });
-    }
-
-    private ClientCall<TaskQueryResult> findTasksInCell(TaskQuery request) {
-        return (client, streamObserver) -> wrap(client).findTasks(request, streamObserver);
-    }
-
-    private TaskQueryResult combineTaskResults(TaskQueryResult one, TaskQueryResult other) {
-        Pagination pagination = combinePagination(one.getPagination(), other.getPagination());
-        return TaskQueryResult.newBuilder()
-                .setPagination(pagination)
-                .addAllItems(one.getItemsList())
-                .addAllItems(other.getItemsList())
-                .build();
+        return findTasksWithMergedPages(request, fieldsFilter);
+    }
+
+    private Observable<TaskQueryResult> findTasksWithMergedPages(TaskQuery request, Set<String> fields) {
+        CellPageMerger<Task> merger = new CellPageMerger<>(
+                connector.getChannels().keySet(),
+                (cell, page) -> singleCellCall(cell,
+                        (ClientCall<TaskQueryResult>) (client, streamObserver) -> client.findTasks(request.toBuilder().setPage(page).build(), streamObserver)
+                ).map(result -> {
+                    result.getItemsList().forEach(task -> cellLocationCache.addTask(task, cell));
+                    return Pair.of(result.getItemsList(), result.getPagination());
+                }),
+                JobManagerCursors.taskCursorOrderComparator(),
+                JobManagerCursors::newCursorFrom,
+                federationConfiguration.getPageNumberPaginationMaxSkippedItems()
+        );
+        return merger.takePage(request.getPage()).map(page -> {
+            List<Task> tasks = page.getLeft().stream().map(this::addStackName).collect(Collectors.toList());
+            if (!CollectionsExt.isNullOrEmpty(fields)) {
+                tasks = tasks.stream().map(task -> ProtobufExt.copy(task, fields)).collect(Collectors.toList());
+            }
+            return TaskQueryResult.newBuilder()
+                    .addAllItems(tasks)
+                    .setPagination(page.getRight())
+                    .build();
+        });
     }
 
     @Override
     public Completable killTask(TaskKillRequest request) {
         Optional<CallMetadata> context = callMetadataResolver.resolve();
 
-        Observable<Empty> result = findTaskInAllCells(request.getTaskId())
-                .flatMap(response -> singleCellCall(response.getCell(),
+        Observable<Empty> result = callInTaskCell(request.getTaskId(),
+                cell -> singleCellCall(cell,
                         (client, streamObserver) -> wrap(context, client).killTask(request, streamObserver))
                 );
         return result.toCompletable();
@@ -421,73 +392,42 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
 
     @Override
     public Completable updateTaskAttributes(TaskAttributesUpdate attributesUpdate) {
-        Observable<Empty> result = findTaskInAllCells(attributesUpdate.getTaskId())
-                .flatMap(response -> singleCellCall(response.getCell(),
+        Observable<Empty> result = callInTaskCell(attributesUpdate.getTaskId(),
+                cell -> singleCellCall(cell,
                         (client, streamObserver) -> client.updateTaskAttributes(attributesUpdate, streamObserver)));
         return result.toCompletable();
     }
 
     @Override
     public Completable deleteTaskAttributes(TaskAttributesDeleteRequest deleteRequest) {
-        Observable<Empty> result = findTaskInAllCells(deleteRequest.getTaskId())
-                .flatMap(response -> singleCellCall(response.getCell(),
+        Observable<Empty> result = callInTaskCell(deleteRequest.getTaskId(),
+                cell -> singleCellCall(cell,
                         (client, streamObserver) -> client.deleteTaskAttributes(deleteRequest, streamObserver)));
         return result.toCompletable();
     }
 
     @Override
     public Completable moveTask(TaskMoveRequest taskMoveRequest) {
-        Observable<Empty> result = findTaskInAllCells(taskMoveRequest.getTaskId())
-                .flatMap(response -> singleCellCall(response.getCell(),
+        Observable<Empty> result = callInTaskCell(taskMoveRequest.getTaskId(),
+                cell -> singleCellCall(cell,
                         (client, streamObserver) -> client.moveTask(taskMoveRequest, streamObserver)));
         return result.toCompletable();
     }
 
-    private JobQueryResult addStackName(JobQueryResult result) {
-        List<Job> withStackName = result.getItemsList().stream().map(this::addStackName).collect(Collectors.toList());
-        return result.toBuilder().clearItems().addAllItems(withStackName).build();
-    }
-
-    private TaskQueryResult addStackName(TaskQueryResult result) {
-        List<Task> withStackName = result.getItemsList().stream().map(this::addStackName).collect(Collectors.toList());
-        return result.toBuilder().clearItems().addAllItems(withStackName).build();
-    }
-
     private JobDescriptor addStackName(JobDescriptor jobDescriptor) {
-        return jobDescriptor.toBuilder()
-                .putAttributes(JOB_ATTRIBUTES_STACK, federationConfiguration.getStack())
-                .build();
+        return StackNameUtil.addStackName(jobDescriptor, federationConfiguration.getStack());
     }
 
     private Job addStackName(Job job) {
-        JobDescriptor jobDescriptor = addStackName(job.getJobDescriptor());
-        return job.toBuilder().setJobDescriptor(jobDescriptor).build();
+        return StackNameUtil.addStackName(job, federationConfiguration.getStack());
     }
 
     private Task addStackName(Task task) {
-        return task.toBuilder()
-                .putTaskContext(TASK_ATTRIBUTES_STACK, federationConfiguration.getStack())
-                .build();
+        return StackNameUtil.addStackName(task, federationConfiguration.getStack());
     }
 
     private JobChangeNotification addStackName(JobChangeNotification notification) {
-        switch (notification.getNotificationCase()) {
-            case JOBUPDATE:
-                Job job = addStackName(notification.getJobUpdate().getJob());
-                JobUpdate jobUpdate = notification.getJobUpdate().toBuilder().setJob(job).build();
-                return notification.toBuilder().setJobUpdate(jobUpdate).build();
-            case TASKUPDATE:
-                Task task = addStackName(notification.getTaskUpdate().getTask());
-                TaskUpdate taskUpdate = notification.getTaskUpdate().toBuilder().setTask(task).build();
-                return notification.toBuilder().setTaskUpdate(taskUpdate).build();
-            default:
-                return notification;
-        }
-    }
-
-    private static JobChangeNotification buildJobSnapshotEndMarker() {
-        final JobChangeNotification.SnapshotEnd marker = JobChangeNotification.SnapshotEnd.newBuilder().build();
-        return JobChangeNotification.newBuilder().setSnapshotEnd(marker).build();
+        return StackNameUtil.addStackName(notification, federationConfiguration.getStack());
     }
 
     private JobManagementServiceStub wrap(Optional<CallMetadata> context, JobManagementServiceStub client) {
@@ -507,8 +447,8 @@ public class AggregatingJobServiceGateway implements JobServiceGateway {
                 (client, streamObserver) -> clientCall.accept(wrap(client), streamObserver));
     }
 
-    private <T> Mono<T> singleCellCallReact(Cell cell, ClientCall<T> clientCall) {
-        return ReactorExt.toMono(singleCellCall(cell, clientCall).toSingle());
+    private <T> Mono<T> callInJobCellReact(String jobId, Function<Cell, Observable<T>> cellCall) {
+        return ReactorExt.toMono(jobManagementServiceHelper.callInJobCell(jobId, cellCall).toSingle());
     }
 
     private <T> Observable<T> singleCellCallWithNoDeadline(Cell cell, ClientCall<T> clientCall) {
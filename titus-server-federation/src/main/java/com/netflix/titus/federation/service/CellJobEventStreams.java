@@ -0,0 +1,528 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.federation.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.titus.api.federation.model.Cell;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.util.CollectionsExt;
+import com.netflix.titus.common.util.ProtobufExt;
+import com.netflix.titus.common.util.collections.PersistentHashMap;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.federation.startup.TitusFederationConfiguration;
+import com.netflix.titus.grpc.protogen.JobChangeNotification;
+import com.netflix.titus.grpc.protogen.JobDescriptor.JobSpecCase;
+import com.netflix.titus.grpc.protogen.JobManagementServiceGrpc;
+import com.netflix.titus.grpc.protogen.JobStatus;
+import com.netflix.titus.grpc.protogen.ObserveJobsQuery;
+import com.netflix.titus.grpc.protogen.TaskStatus;
+import com.netflix.titus.runtime.connector.jobmanager.JobSnapshot;
+import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
+import com.netflix.titus.runtime.endpoint.metadata.CallMetadataResolver;
+import com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3JobQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3TaskQueryCriteriaEvaluator;
+import io.grpc.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Notification;
+import rx.Observable;
+import rx.Subscription;
+import rx.subjects.UnicastSubject;
+
+import static com.netflix.titus.api.jobmanager.TaskAttributes.TASK_ATTRIBUTES_MOVED_FROM_JOB;
+import static com.netflix.titus.federation.service.CellConnectorUtil.callToCell;
+import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toJobQueryCriteria;
+import static com.netflix.titus.runtime.endpoint.common.grpc.GrpcUtil.createWrappedStub;
+
+/**
+ * Keeps a single job event stream per cell, shared by all federation observeJobs clients. The jobs and tasks of
+ * each cell are replicated locally: the GRPC notifications (already decorated with the federation stack name) are
+ * kept for serving snapshots to new subscribers, and their core model counterparts are kept in a {@link JobSnapshot}
+ * for evaluating the client query criteria. An upstream stream is opened on the first subscription, and is kept open
+ * while the cell has subscribers. It is cancelled, and the cell replica released, when the last subscriber goes away.
+ * An upstream termination is propagated to all subscribers of the cell, and the next subscription opens a new stream.
+ * <p>
+ * Events are published to subscribers outside of the replica lock. Each subscriber buffers its live events
+ * independently, and is terminated when it falls behind by more than
+ * {@link TitusFederationConfiguration#getObserveJobsMaxBufferedEvents()} events.
+ */
+@Singleton
+public class CellJobEventStreams {
+
+    private static final Logger logger = LoggerFactory.getLogger(CellJobEventStreams.class);
+
+    private static final String METRIC_ROOT = "titusFederation.observeJobs.";
+
+    private static final JobChangeNotification SNAPSHOT_END_MARKER = JobChangeNotification.newBuilder()
+            .setSnapshotEnd(JobChangeNotification.SnapshotEnd.newBuilder())
+            .build();
+
+    private final TitusFederationConfiguration configuration;
+    private final CellConnector connector;
+    private final CallMetadataResolver callMetadataResolver;
+    private final CellLocationCache cellLocationCache;
+    private final TitusRuntime titusRuntime;
+
+    private final ConcurrentMap<Cell, CellReplica> replicas = new ConcurrentHashMap<>();
+
+    private final AtomicInteger subscribers;
+    private final Counter upstreamConnectionCounter;
+    private final Counter eventCounter;
+    private final Counter conversionErrorCounter;
+    private final Counter droppedSubscriberCounter;
+
+    @Inject
+    public CellJobEventStreams(TitusFederationConfiguration configuration,
+                               CellConnector connector,
+                               CallMetadataResolver callMetadataResolver,
+                               CellLocationCache cellLocationCache,
+                               TitusRuntime titusRuntime) {
+        this.configuration = configuration;
+        this.connector = connector;
+        this.callMetadataResolver = callMetadataResolver;
+        this.cellLocationCache = cellLocationCache;
+        this.titusRuntime = titusRuntime;
+
+        Registry registry = titusRuntime.getRegistry();
+        this.subscribers = registry.gauge(METRIC_ROOT + "subscribers", new AtomicInteger());
+        this.upstreamConnectionCounter = registry.counter(METRIC_ROOT + "upstreamConnections");
+        this.eventCounter = registry.counter(METRIC_ROOT + "events");
+        this.conversionErrorCounter = registry.counter(METRIC_ROOT + "conversionErrors");
+        this.droppedSubscriberCounter = registry.counter(METRIC_ROOT + "droppedSubscribers");
+    }
+
+    /**
+     * Returns the merged event stream of all cells. It starts with the jobs and tasks matching the query from
+     * the local cell replicas, followed by a single snapshot end marker, emitted once the snapshots of all cells are
+     * loaded. The stream terminates when any of the cell streams terminates.
+     *
+     * @param jobFields  if not empty, the jobs in the notifications are trimmed to these fields
+     * @param taskFields if not empty, the tasks in the notifications are trimmed to these fields
+     */
+    Observable<JobChangeNotification> observeJobs(ObserveJobsQuery query, Set<String> jobFields, Set<String> taskFields) {
+        return Observable.defer(() -> {
+            JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria = toJobQueryCriteria(query);
+            Predicate<CellJobEvent> filter = criteria.isEmpty()
+                    ? event -> true
+                    : newCriteriaFilter(criteria);
+
+            Set<Cell> cells = connector.getChannels().keySet();
+            AtomicInteger pendingMarkers = new AtomicInteger(cells.size());
+
+            List<Observable<Notification<CellJobEvent>>> cellStreams = cells.stream()
+                    .map(cell -> replicas.computeIfAbsent(cell, CellReplica::new).observe().materialize())
+                    .collect(Collectors.toList());
+
+            // Merging the materialized streams terminates the result when any of the cell streams terminates.
+            return Observable.merge(cellStreams)
+                    .<CellJobEvent>dematerialize()
+                    .filter(event -> event.isSnapshotEnd()
+                            ? pendingMarkers.decrementAndGet() == 0
+                            : filter.test(event)
+                    )
+                    .map(event -> project(event.getNotification(), jobFields, taskFields));
+        }).doOnSubscribe(subscribers::incrementAndGet).doOnUnsubscribe(subscribers::decrementAndGet);
+    }
+
+    private Predicate<CellJobEvent> newCriteriaFilter(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+        V3JobQueryCriteriaEvaluator jobsPredicate = new V3JobQueryCriteriaEvaluator(criteria, titusRuntime);
+        V3TaskQueryCriteriaEvaluator tasksPredicate = new V3TaskQueryCriteriaEvaluator(criteria, titusRuntime);
+        return event -> event.matches(jobsPredicate, tasksPredicate);
+    }
+
+    private static JobChangeNotification project(JobChangeNotification notification, Set<String> jobFields, Set<String> taskFields) {
+        switch (notification.getNotificationCase()) {
+            case JOBUPDATE:
+                if (jobFields.isEmpty()) {
+                    return notification;
+                }
+                return notification.toBuilder()
+                        .setJobUpdate(notification.getJobUpdate().toBuilder()
+                                .setJob(ProtobufExt.copy(notification.getJobUpdate().getJob(), jobFields))
+                        ).build();
+            case TASKUPDATE:
+                if (taskFields.isEmpty()) {
+                    return notification;
+                }
+                return notification.toBuilder()
+                        .setTaskUpdate(notification.getTaskUpdate().toBuilder()
+                                .setTask(ProtobufExt.copy(notification.getTaskUpdate().getTask(), taskFields))
+                        ).build();
+            default:
+                return notification;
+        }
+    }
+
+    private class CellReplica {
+
+        private final Cell cell;
+
+        private final Object lock = new Object();
+
+        // All fields below are guarded by the lock. The subscriber set is copied on write, so it can be iterated
+        // outside of the lock.
+        private CellState state;
+        private Set<LiveEvents> liveSubscribers = Collections.emptySet();
+        private Subscription upstreamSubscription;
+        private Notification<CellJobEvent> upstreamTermination;
+        private long connectionId;
+
+        private CellReplica(Cell cell) {
+            this.cell = cell;
+        }
+
+        /**
+         * Emits the current cell state, followed by the live events. The snapshot is taken, and the subscriber
+         * registered for the live events, under the lock, so no event is lost or duplicated. Live events are buffered
+         * until the snapshot is written out.
+         */
+        private Observable<CellJobEvent> observe() {
+            return Observable.defer(() -> {
+                List<CellJobEvent> snapshot;
+                LiveEvents liveEvents = new LiveEvents(this);
+                synchronized (lock) {
+                    if (state == null) {
+                        connect();
+                        if (state == null) {
+                            // The upstream stream terminated before it could be shared.
+                            return Observable.just(upstreamTermination).<CellJobEvent>dematerialize();
+                        }
+                    }
+                    snapshot = state.toEvents();
+                    liveSubscribers = CollectionsExt.copyAndAdd(liveSubscribers, liveEvents);
+                }
+                return Observable.from(snapshot)
+                        .concatWith(liveEvents.observe())
+                        .doOnUnsubscribe(() -> remove(liveEvents));
+            });
+        }
+
+        /**
+         * Removes a subscriber. The upstream stream is cancelled and the replica state released when the last
+         * subscriber goes away.
+         */
+        private void remove(LiveEvents liveEvents) {
+            Subscription toCancel = null;
+            synchronized (lock) {
+                if (!liveSubscribers.contains(liveEvents)) {
+                    return;
+                }
+                liveSubscribers = CollectionsExt.copyAndRemove(liveSubscribers, liveEvents);
+                if (liveSubscribers.isEmpty() && state != null) {
+                    logger.info("No more subscribers of cell {}, disconnecting from its job event stream", cell.getName());
+                    // Events still in flight from the cancelled stream are ignored.
+                    connectionId++;
+                    state = null;
+                    toCancel = upstreamSubscription;
+                    upstreamSubscription = null;
+                }
+            }
+            if (toCancel != null) {
+                toCancel.unsubscribe();
+            }
+        }
+
+        private void connect() {
+            long currentConnectionId = ++connectionId;
+            this.state = new CellState(JobSnapshot.empty(), PersistentHashMap.empty(), PersistentHashMap.empty(), false);
+            this.upstreamTermination = null;
+
+            logger.info("Connecting to the job event stream of cell {}", cell.getName());
+            upstreamConnectionCounter.increment();
+
+            this.upstreamSubscription = callToCell(cell, connector, JobManagementServiceGrpc::newStub,
+                    (client, streamObserver) -> createWrappedStub(client, callMetadataResolver).observeJobs(ObserveJobsQuery.getDefaultInstance(), streamObserver)
+            ).subscribe(
+                    notification -> onUpstreamEvent(currentConnectionId, notification),
+                    error -> onUpstreamTerminated(currentConnectionId, Notification.createOnError(error)),
+                    () -> onUpstreamTerminated(currentConnectionId, Notification.createOnCompleted())
+            );
+        }
+
+        private void onUpstreamEvent(long sourceConnectionId, JobChangeNotification notification) {
+            eventCounter.increment();
+            JobChangeNotification decorated = StackNameUtil.addStackName(notification, configuration.getStack());
+            cellLocationCache.addNotification(decorated, cell);
+
+            CellJobEvent event;
+            Set<LiveEvents> receivers;
+            synchronized (lock) {
+                if (sourceConnectionId != connectionId || state == null) {
+                    return;
+                }
+                Pair<CellState, CellJobEvent> result = state.apply(decorated);
+                this.state = result.getLeft();
+                event = result.getRight();
+                receivers = liveSubscribers;
+            }
+
+            // Upstream events are delivered sequentially, so the subscribers observe them in the same order as
+            // they are applied to the state.
+            int maxBufferedEvents = configuration.getObserveJobsMaxBufferedEvents();
+            for (LiveEvents liveEvents : receivers) {
+                if (!liveEvents.offer(event, maxBufferedEvents)) {
+                    remove(liveEvents);
+                }
+            }
+        }
+
+        private void onUpstreamTerminated(long sourceConnectionId, Notification<CellJobEvent> termination) {
+            Set<LiveEvents> receivers;
+            synchronized (lock) {
+                if (sourceConnectionId != connectionId || state == null) {
+                    return;
+                }
+                this.state = null;
+                this.upstreamSubscription = null;
+                this.upstreamTermination = termination;
+                receivers = liveSubscribers;
+                liveSubscribers = Collections.emptySet();
+            }
+
+            if (termination.isOnError()) {
+                logger.warn("Job event stream of cell {} terminated with an error", cell.getName(), termination.getThrowable());
+            } else {
+                logger.info("Job event stream of cell {} completed", cell.getName());
+            }
+            receivers.forEach(liveEvents -> liveEvents.terminate(termination));
+        }
+    }
+
+    /**
+     * Live events of a single subscriber of a cell, buffered until the subscriber consumes them.
+     */
+    private class LiveEvents {
+
+        private final CellReplica replica;
+        private final UnicastSubject<CellJobEvent> subject = UnicastSubject.create();
+        private final AtomicInteger buffered = new AtomicInteger();
+
+        private LiveEvents(CellReplica replica) {
+            this.replica = replica;
+        }
+
+        private Observable<CellJobEvent> observe() {
+            return subject.doOnNext(event -> buffered.decrementAndGet());
+        }
+
+        /**
+         * Returns false, and terminates the subscriber, if it has more than the given number of buffered events.
+         */
+        private boolean offer(CellJobEvent event, int maxBufferedEvents) {
+            if (buffered.incrementAndGet() > maxBufferedEvents) {
+                droppedSubscriberCounter.increment();
+                logger.warn("Terminating a slow subscriber of cell {} with more than {} buffered events", replica.cell.getName(), maxBufferedEvents);
+                subject.onError(Status.RESOURCE_EXHAUSTED
+                        .withDescription("Too many buffered events for cell " + replica.cell.getName())
+                        .asRuntimeException()
+                );
+                return false;
+            }
+            subject.onNext(event);
+            return true;
+        }
+
+        private void terminate(Notification<CellJobEvent> termination) {
+            if (termination.isOnError()) {
+                subject.onError(termination.getThrowable());
+            } else {
+                subject.onCompleted();
+            }
+        }
+    }
+
+    /**
+     * Immutable replica of a cell state. Finished jobs and tasks are removed, the same way as in {@link JobSnapshot}.
+     */
+    private class CellState {
+
+        private final JobSnapshot snapshot;
+        private final PersistentHashMap<String, JobChangeNotification> jobs;
+        private final PersistentHashMap<String, PersistentHashMap<String, JobChangeNotification>> tasksByJobId;
+        private final boolean snapshotLoaded;
+
+        private CellState(JobSnapshot snapshot,
+                          PersistentHashMap<String, JobChangeNotification> jobs,
+                          PersistentHashMap<String, PersistentHashMap<String, JobChangeNotification>> tasksByJobId,
+                          boolean snapshotLoaded) {
+            this.snapshot = snapshot;
+            this.jobs = jobs;
+            this.tasksByJobId = tasksByJobId;
+            this.snapshotLoaded = snapshotLoaded;
+        }
+
+        private List<CellJobEvent> toEvents() {
+            List<CellJobEvent> events = new ArrayList<>();
+            jobs.forEach((jobId, notification) -> {
+                Job<?> coreJob = snapshot.findJob(jobId).orElse(null);
+                events.add(new CellJobEvent(notification, coreJob, snapshot.getTasks(jobId), null));
+            });
+            tasksByJobId.forEach((jobId, tasks) -> {
+                Job<?> coreJob = snapshot.findJob(jobId).orElse(null);
+                tasks.forEach((taskId, notification) -> {
+                    Task coreTask = snapshot.findTaskById(taskId).map(Pair::getRight).orElse(null);
+                    events.add(new CellJobEvent(notification, coreJob, Collections.emptyList(), coreTask));
+                });
+            });
+            if (snapshotLoaded) {
+                events.add(CellJobEvent.SNAPSHOT_END);
+            }
+            return events;
+        }
+
+        private Pair<CellState, CellJobEvent> apply(JobChangeNotification notification) {
+            switch (notification.getNotificationCase()) {
+                case SNAPSHOTEND:
+                    return Pair.of(new CellState(snapshot, jobs, tasksByJobId, true), CellJobEvent.SNAPSHOT_END);
+                case JOBUPDATE:
+                    return applyJobUpdate(notification);
+                case TASKUPDATE:
+                    return applyTaskUpdate(notification);
+                default:
+                    return Pair.of(this, new CellJobEvent(notification, null, Collections.emptyList(), null));
+            }
+        }
+
+        private Pair<CellState, CellJobEvent> applyJobUpdate(JobChangeNotification notification) {
+            com.netflix.titus.grpc.protogen.Job grpcJob = notification.getJobUpdate().getJob();
+            String jobId = grpcJob.getId();
+
+            Job<?> coreJob = null;
+            JobSnapshot newSnapshot = snapshot;
+            try {
+                coreJob = V3GrpcModelConverters.toCoreJob(grpcJob);
+                newSnapshot = snapshot.updateJob(coreJob).orElse(snapshot);
+            } catch (Exception e) {
+                conversionErrorCounter.increment();
+                logger.debug("Cannot convert job {} to the core model", jobId, e);
+            }
+
+            CellState newState;
+            if (grpcJob.getStatus().getState() == JobStatus.JobState.Finished) {
+                newState = new CellState(newSnapshot, jobs.without(jobId), tasksByJobId.without(jobId), snapshotLoaded);
+            } else {
+                newState = new CellState(newSnapshot, jobs.with(jobId, notification), tasksByJobId, snapshotLoaded);
+            }
+            return Pair.of(newState, new CellJobEvent(notification, coreJob, snapshot.getTasks(jobId), null));
+        }
+
+        private Pair<CellState, CellJobEvent> applyTaskUpdate(JobChangeNotification notification) {
+            com.netflix.titus.grpc.protogen.Task grpcTask = notification.getTaskUpdate().getTask();
+            String taskId = grpcTask.getId();
+            String jobId = grpcTask.getJobId();
+            boolean moved = notification.getTaskUpdate().getMovedFromAnotherJob();
+
+            Optional<Job<?>> coreJob = snapshot.findJob(jobId);
+            Task coreTask = null;
+            JobSnapshot newSnapshot = snapshot;
+            if (coreJob.isPresent()) {
+                try {
+                    coreTask = V3GrpcModelConverters.toCoreTask(coreJob.get(), grpcTask);
+                    newSnapshot = snapshot.updateTask(coreTask, moved).orElse(snapshot);
+                } catch (Exception e) {
+                    conversionErrorCounter.increment();
+                    logger.debug("Cannot convert task {} to the core model", taskId, e);
+                }
+            }
+
+            PersistentHashMap<String, PersistentHashMap<String, JobChangeNotification>> newTasksByJobId = tasksByJobId;
+            if (moved) {
+                String movedFromJobId = grpcTask.getTaskContextMap().get(TASK_ATTRIBUTES_MOVED_FROM_JOB);
+                if (movedFromJobId != null) {
+                    newTasksByJobId = withoutTask(newTasksByJobId, movedFromJobId, taskId);
+                }
+            }
+            if (grpcTask.getStatus().getState() == TaskStatus.TaskState.Finished) {
+                newTasksByJobId = withoutTask(newTasksByJobId, jobId, taskId);
+            } else if (jobs.containsKey(jobId)) {
+                PersistentHashMap<String, JobChangeNotification> jobTasks = newTasksByJobId.get(jobId);
+                newTasksByJobId = newTasksByJobId.with(jobId, (jobTasks == null ? PersistentHashMap.<String, JobChangeNotification>empty() : jobTasks).with(taskId, notification));
+            }
+
+            CellState newState = new CellState(newSnapshot, jobs, newTasksByJobId, snapshotLoaded);
+            return Pair.of(newState, new CellJobEvent(notification, coreJob.orElse(null), Collections.emptyList(), coreTask));
+        }
+
+        private PersistentHashMap<String, PersistentHashMap<String, JobChangeNotification>> withoutTask(
+                PersistentHashMap<String, PersistentHashMap<String, JobChangeNotification>> tasksByJobId,
+                String jobId,
+                String taskId) {
+            PersistentHashMap<String, JobChangeNotification> jobTasks = tasksByJobId.get(jobId);
+            if (jobTasks == null || !jobTasks.containsKey(taskId)) {
+                return tasksByJobId;
+            }
+            return tasksByJobId.with(jobId, jobTasks.without(taskId));
+        }
+    }
+
+    /**
+     * A decorated GRPC notification, together with its core model representation used for query evaluation.
+     * The core model entities are null if they could not be resolved.
+     */
+    private static class CellJobEvent {
+
+        private static final CellJobEvent SNAPSHOT_END = new CellJobEvent(SNAPSHOT_END_MARKER, null, Collections.emptyList(), null);
+
+        private final JobChangeNotification notification;
+        private final Job<?> coreJob;
+        private final List<Task> coreJobTasks;
+        private final Task coreTask;
+
+        private CellJobEvent(JobChangeNotification notification, Job<?> coreJob, List<Task> coreJobTasks, Task coreTask) {
+            this.notification = notification;
+            this.coreJob = coreJob;
+            this.coreJobTasks = coreJobTasks;
+            this.coreTask = coreTask;
+        }
+
+        private JobChangeNotification getNotification() {
+            return notification;
+        }
+
+        private boolean isSnapshotEnd() {
+            return notification.getNotificationCase() == JobChangeNotification.NotificationCase.SNAPSHOTEND;
+        }
+
+        private boolean matches(Predicate<Pair<Job<?>, List<Task>>> jobsPredicate, Predicate<Pair<Job<?>, Task>> tasksPredicate) {
+            switch (notification.getNotificationCase()) {
+                case JOBUPDATE:
+                    return coreJob != null && jobsPredicate.test(Pair.of(coreJob, coreJobTasks));
+                case TASKUPDATE:
+                    return coreJob != null && coreTask != null && tasksPredicate.test(Pair.of(coreJob, coreTask));
+                default:
+                    return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.federation.service;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.titus.api.federation.model.Cell;
+import com.netflix.titus.federation.startup.TitusFederationConfiguration;
+import com.netflix.titus.grpc.protogen.Job;
+import com.netflix.titus.grpc.protogen.JobChangeNotification;
+import com.netflix.titus.grpc.protogen.Task;
+import io.grpc.Status;
+import rx.Observable;
+
+/**
+ * Remembers in which cell a job or a task is located, so single job/task operations can be sent directly to
+ * the owning cell, instead of being preceded by a lookup in all cells. The cache is populated from the create
+ * responses, query results, and event streams. It is validated lazily: if the cached cell returns
+ * {@link Status.Code#NOT_FOUND}, the entry is dropped and the location is resolved again by querying all cells.
+ */
+@Singleton
+public class CellLocationCache {
+
+    private static final String METRIC_ROOT = "titusFederation.cellLocationCache.";
+
+    private final Cache<String, Cell> jobLocations;
+    private final Cache<String, Cell> taskLocations;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter invalidationCounter;
+    private final Counter savedCallsCounter;
+
+    @Inject
+    public CellLocationCache(TitusFederationConfiguration configuration, Registry registry) {
+        this.jobLocations = newCache(configuration);
+        this.taskLocations = newCache(configuration);
+
+        this.hitCounter = registry.counter(METRIC_ROOT + "lookups", "result", "hit");
+        this.missCounter = registry.counter(METRIC_ROOT + "lookups", "result", "miss");
+        this.invalidationCounter = registry.counter(METRIC_ROOT + "invalidations");
+        this.savedCallsCounter = registry.counter(METRIC_ROOT + "savedCalls");
+    }
+
+    public Optional<Cell> getJobCell(String jobId) {
+        return lookup(jobLocations, jobId);
+    }
+
+    public Optional<Cell> getTaskCell(String taskId) {
+        return lookup(taskLocations, taskId);
+    }
+
+    public void addJob(String jobId, Cell cell) {
+        jobLocations.put(jobId, cell);
+    }
+
+    public void addJob(Job job, Cell cell) {
+        jobLocations.put(job.getId(), cell);
+    }
+
+    public void addTask(Task task, Cell cell) {
+        taskLocations.put(task.getId(), cell);
+        jobLocations.put(task.getJobId(), cell);
+    }
+
+    public void addNotification(JobChangeNotification notification, Cell cell) {
+        switch (notification.getNotificationCase()) {
+            case JOBUPDATE:
+                addJob(notification.getJobUpdate().getJob(), cell);
+                break;
+            case TASKUPDATE:
+                addTask(notification.getTaskUpdate().getTask(), cell);
+                break;
+            default:
+        }
+    }
+
+    /**
+     * Executes a call in the cached job cell. If the job location is not known, or the cached cell does not know
+     * the job (in which case the entry is invalidated), the fallback call involving all cells is made.
+     */
+    public <T> Observable<T> callInJobCell(String jobId, Function<Cell, Observable<T>> cellCall, Observable<T> fallback) {
+        return callInCell(jobLocations, jobId, cellCall, fallback);
+    }
+
+    /**
+     * Task variant of {@link #callInJobCell(String, Function, Observable)}.
+     */
+    public <T> Observable<T> callInTaskCell(String taskId, Function<Cell, Observable<T>> cellCall, Observable<T> fallback) {
+        return callInCell(taskLocations, taskId, cellCall, fallback);
+    }
+
+    private <T> Observable<T> callInCell(Cache<String, Cell> locations,
+                                         String id,
+                                         Function<Cell, Observable<T>> cellCall,
+                                         Observable<T> fallback) {
+        return Observable.defer(() -> {
+            Optional<Cell> cached = lookup(locations, id);
+            if (!cached.isPresent()) {
+                return fallback;
+            }
+            // A successful routed call replaces a lookup in all cells.
+            return cellCall.apply(cached.get()).doOnCompleted(savedCallsCounter::increment).onErrorResumeNext(error -> {
+                if (Status.fromThrowable(error).getCode() != Status.Code.NOT_FOUND) {
+                    return Observable.error(error);
+                }
+                locations.invalidate(id);
+                invalidationCounter.increment();
+                return fallback;
+            });
+        });
+    }
+
+    private Optional<Cell> lookup(Cache<String, Cell> locations, String id) {
+        Cell cell = locations.getIfPresent(id);
+        if (cell == null) {
+            missCounter.increment();
+            return Optional.empty();
+        }
+        hitCounter.increment();
+        return Optional.of(cell);
+    }
+
+    private static Cache<String, Cell> newCache(TitusFederationConfiguration configuration) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(configuration.getCellLocationCacheSize())
+                .expireAfterWrite(configuration.getCellLocationCacheTtlMs(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+}
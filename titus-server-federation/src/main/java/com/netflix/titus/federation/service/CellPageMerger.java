@@ -0,0 +1,298 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.federation.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.netflix.titus.api.federation.model.Cell;
+import com.netflix.titus.api.service.TitusServiceException;
+import com.netflix.titus.common.util.StringExt;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.grpc.protogen.Page;
+import com.netflix.titus.grpc.protogen.Pagination;
+import rx.Observable;
+
+/**
+ * K-way merge of cursor ordered pages from multiple cells. Instead of fetching a full page from each cell, and
+ * discarding most of the items, each cell is asked initially for its share of the page. A cell is asked for more
+ * items only when its buffered items are all merged, and it may still hold items preceding the ones buffered from
+ * the other cells.
+ * <p>
+ * The returned cursor is a composite of per-cell cursors, each pointing to the last item taken from a given cell,
+ * so the next page continues in each cell exactly where the previous page ended. A plain (non-composite) cursor is
+ * accepted as well, in which case it is used as a starting point for all cells.
+ * <p>
+ * Page number based requests cannot be translated into per-cell positions, as the number of items each cell
+ * contributes to the preceding pages is not known. They are served by merging the cell items from the beginning,
+ * and skipping the items preceding the requested page, so their cost grows linearly with the page number. To bound
+ * it, requests skipping more than the configured maximum number of items are rejected, and cursors must be used
+ * to reach further pages.
+ */
+class CellPageMerger<T> {
+
+    private static final String COMPOSITE_CURSOR_PREFIX = "federation:";
+    private static final char ENTRY_SEPARATOR = ';';
+    private static final char KEY_VALUE_SEPARATOR = '=';
+
+    private final Collection<Cell> cells;
+    private final BiFunction<Cell, Page, Observable<Pair<List<T>, Pagination>>> cellPageFetcher;
+    private final Comparator<T> cursorComparator;
+    private final Function<T, String> cursorFactory;
+    private final long maxSkippedItems;
+
+    /**
+     * @param cellPageFetcher fetches a page from a cell. The page has either a cursor or page number 0 set.
+     * @param maxSkippedItems maximum number of items preceding a page requested by its page number
+     */
+    CellPageMerger(Collection<Cell> cells,
+                   BiFunction<Cell, Page, Observable<Pair<List<T>, Pagination>>> cellPageFetcher,
+                   Comparator<T> cursorComparator,
+                   Function<T, String> cursorFactory,
+                   long maxSkippedItems) {
+        this.cells = cells;
+        this.cellPageFetcher = cellPageFetcher;
+        this.cursorComparator = cursorComparator;
+        this.cursorFactory = cursorFactory;
+        this.maxSkippedItems = maxSkippedItems;
+    }
+
+    Observable<Pair<List<T>, Pagination>> takePage(Page requested) {
+        return Observable.defer(() -> {
+            if (StringExt.isEmpty(requested.getCursor()) && (long) requested.getPageNumber() * requested.getPageSize() > maxSkippedItems) {
+                return Observable.error(TitusServiceException.invalidArgument(String.format(
+                        "Page number %s of size %s is beyond the first %s items; use cursor based pagination instead",
+                        requested.getPageNumber(), requested.getPageSize(), maxSkippedItems
+                )));
+            }
+            MergeState state = new MergeState(requested);
+            return mergeLoop(state).map(MergeState::toResult);
+        });
+    }
+
+    private Observable<MergeState> mergeLoop(MergeState state) {
+        List<CellSource> toFetch = state.drain();
+        if (toFetch.isEmpty()) {
+            return Observable.just(state);
+        }
+        long remaining = state.getRemaining();
+        List<Observable<Pair<List<T>, Pagination>>> fetches = toFetch.stream()
+                .map(source -> cellPageFetcher.apply(source.cell, source.nextPage(remaining, toFetch.size())).doOnNext(source::onPage))
+                .collect(Collectors.toList());
+        return Observable.merge(fetches).toList().flatMap(ignored -> mergeLoop(state));
+    }
+
+    static String encodeCursor(Map<String, String> cellCursors) {
+        StringBuilder sb = new StringBuilder(COMPOSITE_CURSOR_PREFIX);
+        cellCursors.forEach((cellName, cursor) -> sb.append(cellName).append(KEY_VALUE_SEPARATOR).append(cursor).append(ENTRY_SEPARATOR));
+        return Base64.getEncoder().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns cell name to cursor mapping from a composite cursor, or an empty map if the cursor is a plain one.
+     */
+    static Map<String, String> decodeCursor(String cursor) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            return Collections.emptyMap();
+        }
+        if (!decoded.startsWith(COMPOSITE_CURSOR_PREFIX)) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> cellCursors = new HashMap<>();
+        for (String entry : decoded.substring(COMPOSITE_CURSOR_PREFIX.length()).split(String.valueOf(ENTRY_SEPARATOR))) {
+            int idx = entry.indexOf(KEY_VALUE_SEPARATOR);
+            if (idx > 0) {
+                cellCursors.put(entry.substring(0, idx), entry.substring(idx + 1));
+            }
+        }
+        return cellCursors;
+    }
+
+    private class MergeState {
+
+        private final Page requested;
+        private final boolean pageNumberMode;
+        private final long toSkip;
+        private final long needed;
+        private final List<CellSource> sources;
+
+        private final List<T> pageItems = new ArrayList<>();
+        private long skipped;
+
+        private MergeState(Page requested) {
+            this.requested = requested;
+            this.pageNumberMode = StringExt.isEmpty(requested.getCursor());
+            this.toSkip = pageNumberMode ? (long) requested.getPageNumber() * requested.getPageSize() : 0;
+            this.needed = toSkip + requested.getPageSize();
+
+            Map<String, String> cellCursors = pageNumberMode ? Collections.emptyMap() : decodeCursor(requested.getCursor());
+            this.sources = cells.stream()
+                    .map(cell -> {
+                        String startCursor = "";
+                        if (!pageNumberMode) {
+                            // Plain cursors are valid for all cells, as all of them use the same item order.
+                            startCursor = cellCursors.isEmpty()
+                                    ? requested.getCursor()
+                                    : cellCursors.getOrDefault(cell.getName(), "");
+                        }
+                        return new CellSource(cell, startCursor);
+                    })
+                    .collect(Collectors.toList());
+        }
+
+        private long getRemaining() {
+            return needed - skipped - pageItems.size();
+        }
+
+        /**
+         * Merges the buffered items until the page is complete, or a cell must be asked for more items.
+         *
+         * @return cells to fetch more items from, or an empty list if the page is complete
+         */
+        private List<CellSource> drain() {
+            while (getRemaining() > 0) {
+                List<CellSource> toFetch = sources.stream().filter(CellSource::needsFetch).collect(Collectors.toList());
+                if (!toFetch.isEmpty()) {
+                    return toFetch;
+                }
+                CellSource min = null;
+                for (CellSource source : sources) {
+                    if (!source.buffer.isEmpty() && (min == null || cursorComparator.compare(source.buffer.peekFirst(), min.buffer.peekFirst()) < 0)) {
+                        min = source;
+                    }
+                }
+                if (min == null) {
+                    break;
+                }
+                T item = min.take();
+                if (skipped < toSkip) {
+                    skipped++;
+                } else {
+                    pageItems.add(item);
+                }
+            }
+            return Collections.emptyList();
+        }
+
+        private Pair<List<T>, Pagination> toResult() {
+            long itemsBefore = 0;
+            int totalItems = 0;
+            boolean hasMore = false;
+            Map<String, String> cellCursors = new HashMap<>();
+            for (CellSource source : sources) {
+                itemsBefore += source.itemsBefore;
+                totalItems += source.totalItems;
+                hasMore |= source.hasMoreItems();
+                if (StringExt.isNotEmpty(source.lastTakenCursor)) {
+                    cellCursors.put(source.cell.getName(), source.lastTakenCursor);
+                }
+            }
+
+            int pageSize = requested.getPageSize();
+            long firstItemPosition = itemsBefore + skipped;
+            int pageNumber = pageNumberMode ? requested.getPageNumber() : (int) (firstItemPosition / pageSize);
+            long cursorPosition = pageItems.isEmpty() ? Math.max(0, firstItemPosition - 1) : firstItemPosition + pageItems.size() - 1;
+
+            Pagination pagination = Pagination.newBuilder()
+                    .setCurrentPage(Page.newBuilder(requested).setPageNumber(pageNumber))
+                    .setHasMore(hasMore)
+                    .setTotalPages((int) ((totalItems + (long) pageSize - 1) / pageSize))
+                    .setTotalItems(totalItems)
+                    .setCursor(pageItems.isEmpty() ? "" : encodeCursor(cellCursors))
+                    .setCursorPosition(totalItems == 0 ? 0 : (int) cursorPosition)
+                    .build();
+            return Pair.of(pageItems, pagination);
+        }
+    }
+
+    private class CellSource {
+
+        private final Cell cell;
+        private final Deque<T> buffer = new ArrayDeque<>();
+
+        private String fetchCursor;
+        private String lastTakenCursor;
+        private boolean fetched;
+        private boolean hasMore = true;
+        private long itemsBefore;
+        private int totalItems;
+
+        private CellSource(Cell cell, String startCursor) {
+            this.cell = cell;
+            this.fetchCursor = startCursor;
+            this.lastTakenCursor = startCursor;
+        }
+
+        private boolean needsFetch() {
+            return buffer.isEmpty() && hasMore;
+        }
+
+        private boolean hasMoreItems() {
+            return !buffer.isEmpty() || hasMore;
+        }
+
+        /**
+         * The first request asks for the cell's share of the remaining items. Once it is consumed, the cell is
+         * asked for all remaining items, as it may be the only one still having them.
+         */
+        private Page nextPage(long remaining, int fetchingCells) {
+            long size = fetched ? remaining : (remaining + fetchingCells - 1) / fetchingCells;
+            Page.Builder builder = Page.newBuilder().setPageSize((int) Math.max(1, Math.min(Integer.MAX_VALUE, size)));
+            if (StringExt.isNotEmpty(fetchCursor)) {
+                builder.setCursor(fetchCursor);
+            }
+            return builder.build();
+        }
+
+        private void onPage(Pair<List<T>, Pagination> page) {
+            List<T> items = page.getLeft();
+            Pagination pagination = page.getRight();
+            if (!fetched) {
+                fetched = true;
+                // Number of cell items preceding the starting point.
+                itemsBefore = pagination.getTotalItems() == 0 ? 0 : pagination.getCursorPosition() + 1 - items.size();
+            }
+            totalItems = pagination.getTotalItems();
+            buffer.addAll(items);
+            hasMore = pagination.getHasMore() && !items.isEmpty();
+            if (!items.isEmpty()) {
+                fetchCursor = cursorFactory.apply(items.get(items.size() - 1));
+            }
+        }
+
+        private T take() {
+            T item = buffer.pollFirst();
+            lastTakenCursor = cursorFactory.apply(item);
+            return item;
+        }
+    }
+}
@@ -1,68 +0,0 @@
-/*
- * Copyright 2018 Netflix, Inc.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *     http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.netflix.titus.federation.service;
-
-import java.util.concurrent.CountDownLatch;
-
-import com.google.protobuf.Empty;
-import com.netflix.titus.runtime.endpoint.common.grpc.GrpcUtil;
-import com.netflix.titus.grpc.protogen.JobChangeNotification;
-import com.netflix.titus.grpc.protogen.JobChangeNotification.NotificationCase;
-import io.grpc.stub.ClientCallStreamObserver;
-import io.grpc.stub.ClientResponseObserver;
-import rx.Emitter;
-
-/**
- * Filter out the first <tt>marker</tt> from a source stream, decrementing a {@link CountDownLatch} when it is received.
- */
-class FilterOutFirstMarker implements ClientResponseObserver<Empty, JobChangeNotification> {
-
-    private final Emitter<JobChangeNotification> emitter;
-    private final CountDownLatch latch;
-
-    private volatile boolean markerReceived = false;
-
-    FilterOutFirstMarker(Emitter<JobChangeNotification> destination, CountDownLatch markersReceived) {
-        this.emitter = destination;
-        this.latch = markersReceived;
-    }
-
-    @Override
-    public void beforeStart(ClientCallStreamObserver<Empty> requestStream) {
-        GrpcUtil.attachCancellingCallback(emitter, requestStream);
-    }
-
-    @Override
-    public void onNext(JobChangeNotification value) {
-        if (!markerReceived && value.getNotificationCase() == NotificationCase.SNAPSHOTEND) {
-            markerReceived = true;
-            latch.countDown();
-            return;
-        }
-        emitter.onNext(value);
-    }
-
-    @Override
-    public void onError(Throwable t) {
-        emitter.onError(t);
-    }
-
-    @Override
-    public void onCompleted() {
-        emitter.onCompleted();
-    }
-}
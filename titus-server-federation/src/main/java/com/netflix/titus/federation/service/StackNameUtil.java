@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.federation.service;
+
+import com.netflix.titus.grpc.protogen.Job;
+import com.netflix.titus.grpc.protogen.JobChangeNotification;
+import com.netflix.titus.grpc.protogen.JobChangeNotification.JobUpdate;
+import com.netflix.titus.grpc.protogen.JobChangeNotification.TaskUpdate;
+import com.netflix.titus.grpc.protogen.JobDescriptor;
+import com.netflix.titus.grpc.protogen.Task;
+
+import static com.netflix.titus.api.jobmanager.JobAttributes.JOB_ATTRIBUTES_STACK;
+import static com.netflix.titus.api.jobmanager.TaskAttributes.TASK_ATTRIBUTES_STACK;
+
+/**
+ * Decorates jobs and tasks returned by cells with the name of the federation stack.
+ */
+final class StackNameUtil {
+
+    private StackNameUtil() {
+    }
+
+    static JobDescriptor addStackName(JobDescriptor jobDescriptor, String stack) {
+        return jobDescriptor.toBuilder()
+                .putAttributes(JOB_ATTRIBUTES_STACK, stack)
+                .build();
+    }
+
+    static Job addStackName(Job job, String stack) {
+        JobDescriptor jobDescriptor = addStackName(job.getJobDescriptor(), stack);
+        return job.toBuilder().setJobDescriptor(jobDescriptor).build();
+    }
+
+    static Task addStackName(Task task, String stack) {
+        return task.toBuilder()
+                .putTaskContext(TASK_ATTRIBUTES_STACK, stack)
+                .build();
+    }
+
+    static JobChangeNotification addStackName(JobChangeNotification notification, String stack) {
+        switch (notification.getNotificationCase()) {
+            case JOBUPDATE:
+                Job job = addStackName(notification.getJobUpdate().getJob(), stack);
+                JobUpdate jobUpdate = notification.getJobUpdate().toBuilder().setJob(job).build();
+                return notification.toBuilder().setJobUpdate(jobUpdate).build();
+            case TASKUPDATE:
+                Task task = addStackName(notification.getTaskUpdate().getTask(), stack);
+                TaskUpdate taskUpdate = notification.getTaskUpdate().toBuilder().setTask(task).build();
+                return notification.toBuilder().setTaskUpdate(taskUpdate).build();
+            default:
+                return notification;
+        }
+    }
+}
@@ -30,4 +30,30 @@ public interface TitusFederationConfiguration {
 
     @DefaultValue("cell1=(app1.*|app2.*);cell2=(.*)")
     String getRoutingRules();
+
+    /**
+     * Maximum number of job and task entries (each) in the job/task to cell location cache.
+     */
+    @DefaultValue("100000")
+    long getCellLocationCacheSize();
+
+    /**
+     * Time after which a job/task to cell location cache entry expires.
+     */
+    @DefaultValue("3600000")
+    long getCellLocationCacheTtlMs();
+
+    /**
+     * Maximum number of live events buffered for a single observeJobs subscriber. A subscriber that falls further
+     * behind is terminated.
+     */
+    @DefaultValue("10000")
+    int getObserveJobsMaxBufferedEvents();
+
+    /**
+     * Maximum number of items preceding a page requested by its page number instead of a cursor. Such pages are
+     * found by merging the items of all cells from the beginning, so deeper pages must be requested with a cursor.
+     */
+    @DefaultValue("10000")
+    long getPageNumberPaginationMaxSkippedItems();
 }
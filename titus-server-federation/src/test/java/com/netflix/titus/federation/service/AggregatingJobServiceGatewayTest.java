@@ -31,10 +31,13 @@ import java.util.stream.Stream;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.jayway.awaitility.Awaitility;
+import com.netflix.spectator.api.DefaultRegistry;
 import com.netflix.titus.api.federation.model.Cell;
 import com.netflix.titus.api.jobmanager.service.JobManagerConstants;
 import com.netflix.titus.api.model.Page;
 import com.netflix.titus.api.service.TitusServiceException;
+import com.netflix.titus.common.runtime.TitusRuntimes;
 import com.netflix.titus.common.util.CollectionsExt;
 import com.netflix.titus.common.util.time.Clocks;
 import com.netflix.titus.common.util.time.TestClock;
@@ -71,6 +74,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import rx.internal.util.RxRingBuffer;
 import rx.observers.AssertableSubscriber;
 import rx.subjects.PublishSubject;
 
@@ -94,6 +98,7 @@ public class AggregatingJobServiceGatewayTest {
     private static final JobStatus FINISHED_STATE = JobStatus.newBuilder().setState(JobStatus.JobState.Finished).build();
     private static final int TASKS_IN_GENERATED_JOBS = 10;
     private static final long GRPC_REQUEST_TIMEOUT_MS = 1_000L;
+    private static final int OBSERVE_JOBS_MAX_BUFFERED_EVENTS = 1_000;
 
     @Rule
     public final GrpcServerRule cellOne = new GrpcServerRule().directExecutor();
@@ -104,6 +109,10 @@ public class AggregatingJobServiceGatewayTest {
     private final PublishSubject<JobChangeNotification> cellTwoUpdates = PublishSubject.create();
 
     private String stackName;
+    private GrpcConfiguration grpcConfiguration;
+    private TitusFederationConfiguration titusFederationConfiguration;
+    private CellConnector connector;
+    private CellRouter cellRouter;
     private AggregatingJobServiceGateway service;
     private List<Cell> cells;
     private Map<Cell, GrpcServerRule> cellToServiceMap;
@@ -114,23 +123,24 @@ public class AggregatingJobServiceGatewayTest {
     public void setUp() {
         stackName = UUID.randomUUID().toString();
 
-        GrpcConfiguration grpcConfiguration = mock(GrpcConfiguration.class);
+        grpcConfiguration = mock(GrpcConfiguration.class);
         when(grpcConfiguration.getRequestTimeoutMs()).thenReturn(GRPC_REQUEST_TIMEOUT_MS);
 
-        TitusFederationConfiguration titusFederationConfiguration = mock(TitusFederationConfiguration.class);
+        titusFederationConfiguration = mock(TitusFederationConfiguration.class);
         when(titusFederationConfiguration.getStack()).thenReturn(stackName);
+        when(titusFederationConfiguration.getObserveJobsMaxBufferedEvents()).thenReturn(OBSERVE_JOBS_MAX_BUFFERED_EVENTS);
         when(titusFederationConfiguration.getCells()).thenReturn("one=1;two=2");
         when(titusFederationConfiguration.getRoutingRules()).thenReturn("one=(app1.*|app2.*);two=(app3.*)");
 
         CellInfoResolver cellInfoResolver = new DefaultCellInfoResolver(titusFederationConfiguration);
-        DefaultCellRouter cellRouter = new DefaultCellRouter(cellInfoResolver, titusFederationConfiguration);
+        cellRouter = new DefaultCellRouter(cellInfoResolver, titusFederationConfiguration);
         cells = cellInfoResolver.resolve();
         cellToServiceMap = ImmutableMap.of(
                 cells.get(0), cellOne,
                 cells.get(1), cellTwo
         );
 
-        CellConnector connector = mock(CellConnector.class);
+        connector = mock(CellConnector.class);
         when(connector.getChannels()).thenReturn(cellToServiceMap.entrySet().stream()
                 .collect(Collectors.toMap(Map.Entry::getKey, cellPairEntry -> cellPairEntry.getValue().getChannel()))
         );
@@ -139,20 +149,26 @@ public class AggregatingJobServiceGatewayTest {
                         .map(GrpcServerRule::getChannel)
         );
 
+        service = newService(new CellLocationCache(titusFederationConfiguration, new DefaultRegistry()));
+
+        clock = Clocks.test();
+        dataGenerator = new ServiceDataGenerator(clock, TASKS_IN_GENERATED_JOBS);
+    }
+
+    private AggregatingJobServiceGateway newService(CellLocationCache cellLocationCache) {
         final AggregatingCellClient aggregatingCellClient = new AggregatingCellClient(connector);
         final AnonymousCallMetadataResolver anonymousCallMetadataResolver = new AnonymousCallMetadataResolver();
-        service = new AggregatingJobServiceGateway(
+        return new AggregatingJobServiceGateway(
                 grpcConfiguration,
                 titusFederationConfiguration,
                 connector,
                 cellRouter,
                 anonymousCallMetadataResolver,
                 aggregatingCellClient,
-                new AggregatingJobManagementServiceHelper(aggregatingCellClient, grpcConfiguration, anonymousCallMetadataResolver)
+                new AggregatingJobManagementServiceHelper(aggregatingCellClient, grpcConfiguration, anonymousCallMetadataResolver, cellLocationCache),
+                cellLocationCache,
+                new CellJobEventStreams(titusFederationConfiguration, connector, anonymousCallMetadataResolver, cellLocationCache, TitusRuntimes.internal())
         );
-
-        clock = Clocks.test();
-        dataGenerator = new ServiceDataGenerator(clock, TASKS_IN_GENERATED_JOBS);
     }
 
     @After
@@ -404,6 +420,37 @@ public class AggregatingJobServiceGatewayTest {
         assertThat(Status.fromThrowable(testSubscriber.getOnErrorEvents().get(0))).isEqualTo(UNAVAILABLE);
     }
 
+    @Test
+    public void findJobWithCellLocationCache() {
+        when(titusFederationConfiguration.getCellLocationCacheSize()).thenReturn(100L);
+        when(titusFederationConfiguration.getCellLocationCacheTtlMs()).thenReturn(60_000L);
+        DefaultRegistry registry = new DefaultRegistry();
+        CellLocationCache cellLocationCache = new CellLocationCache(titusFederationConfiguration, registry);
+        service = newService(cellLocationCache);
+
+        List<Job> cellOneSnapshot = new ArrayList<>(dataGenerator.newServiceJobs(2, V3GrpcModelConverters::toGrpcJob));
+        cellOne.getServiceRegistry().addService(new CellWithFixedJobsService(cellOneSnapshot, cellOneUpdates.serialize()));
+        cellTwo.getServiceRegistry().addService(new CellWithFixedJobsService(Collections.emptyList(), cellTwoUpdates.serialize()));
+        Job first = cellOneSnapshot.get(0);
+        Job second = cellOneSnapshot.get(1);
+
+        // Miss: the job is looked up in all cells, and its location is remembered
+        assertFindJob(first);
+        assertThat(cellLocationCache.getJobCell(first.getId())).contains(cells.get(0));
+        assertThat(savedCalls(registry)).isZero();
+
+        // Hit: the call is routed to the cached cell only
+        assertFindJob(first);
+        assertThat(savedCalls(registry)).isEqualTo(1);
+
+        // Stale entry: NOT_FOUND from the cached cell invalidates it, and the job is looked up in all cells
+        cellLocationCache.addJob(second.getId(), cells.get(1));
+        assertFindJob(second);
+        assertThat(cellLocationCache.getJobCell(second.getId())).contains(cells.get(0));
+        assertThat(registry.counter("titusFederation.cellLocationCache.invalidations").count()).isEqualTo(1);
+        assertThat(savedCalls(registry)).isEqualTo(1);
+    }
+
     @Test
     public void killJob() {
         Random random = new Random();
@@ -702,6 +749,107 @@ public class AggregatingJobServiceGatewayTest {
         assertThat(testSubscriber.getCompletions()).isEqualTo(0);
     }
 
+    @Test
+    public void observeJobsSharesSingleStreamPerCell() {
+        final List<Job> cellOneSnapshot = dataGenerator.newBatchJobs(2, V3GrpcModelConverters::toGrpcJob);
+        CellWithFixedJobsService cellOneService = new CellWithFixedJobsService(cellOneSnapshot, cellOneUpdates.serialize());
+        CellWithFixedJobsService cellTwoService = new CellWithFixedJobsService(Collections.emptyList(), cellTwoUpdates.serialize());
+        cellOne.getServiceRegistry().addService(cellOneService);
+        cellTwo.getServiceRegistry().addService(cellTwoService);
+
+        final AssertableSubscriber<JobChangeNotification> first = service.observeJobs(ObserveJobsQuery.getDefaultInstance()).test();
+        first.awaitValueCount(3, 1, TimeUnit.SECONDS);
+
+        final JobChangeNotification cellOneUpdate = toNotification(dataGenerator.newServiceJob(V3GrpcModelConverters::toGrpcJob));
+        cellOneUpdates.onNext(cellOneUpdate);
+        first.awaitValueCount(4, 1, TimeUnit.SECONDS);
+
+        // The second subscriber gets the snapshot from the local replica, including the update received before
+        final AssertableSubscriber<JobChangeNotification> second = service.observeJobs(ObserveJobsQuery.getDefaultInstance()).test();
+        second.awaitValueCount(4, 1, TimeUnit.SECONDS);
+        final JobChangeNotification mergedMarker = JobChangeNotification.newBuilder().setSnapshotEnd(SnapshotEnd.newBuilder()).build();
+        assertThat(second.getOnNextEvents()).last().isEqualTo(mergedMarker);
+        assertThat(second.getOnNextEvents()).containsExactlyInAnyOrder(
+                withStackName(toNotification(cellOneSnapshot.get(0))),
+                withStackName(toNotification(cellOneSnapshot.get(1))),
+                withStackName(cellOneUpdate),
+                mergedMarker
+        );
+
+        assertThat(cellOneService.getObserveJobsCalls()).isEqualTo(1);
+        assertThat(cellTwoService.getObserveJobsCalls()).isEqualTo(1);
+    }
+
+    @Test
+    public void observeJobsDisconnectsFromCellsWithoutSubscribers() {
+        CellWithFixedJobsService cellOneService = new CellWithFixedJobsService(Collections.emptyList(), cellOneUpdates.serialize());
+        CellWithFixedJobsService cellTwoService = new CellWithFixedJobsService(Collections.emptyList(), cellTwoUpdates.serialize());
+        cellOne.getServiceRegistry().addService(cellOneService);
+        cellTwo.getServiceRegistry().addService(cellTwoService);
+
+        final AssertableSubscriber<JobChangeNotification> first = service.observeJobs(ObserveJobsQuery.getDefaultInstance()).test();
+        first.awaitValueCount(1, 1, TimeUnit.SECONDS);
+        assertThat(cellOneUpdates.hasObservers()).isTrue();
+
+        // The upstream streams are cancelled with the last subscriber
+        first.unsubscribe();
+        Awaitility.await().timeout(1, TimeUnit.SECONDS).until(() -> !cellOneUpdates.hasObservers() && !cellTwoUpdates.hasObservers());
+
+        // and opened again for the next one
+        final AssertableSubscriber<JobChangeNotification> second = service.observeJobs(ObserveJobsQuery.getDefaultInstance()).test();
+        second.awaitValueCount(1, 1, TimeUnit.SECONDS);
+        assertThat(cellOneService.getObserveJobsCalls()).isEqualTo(2);
+        assertThat(cellTwoService.getObserveJobsCalls()).isEqualTo(2);
+    }
+
+    @Test
+    public void observeJobsTerminatesSlowSubscribers() {
+        when(titusFederationConfiguration.getObserveJobsMaxBufferedEvents()).thenReturn(2);
+        cellOne.getServiceRegistry().addService(new CellWithFixedJobsService(Collections.emptyList(), cellOneUpdates.serialize()));
+        cellTwo.getServiceRegistry().addService(new CellWithFixedJobsService(Collections.emptyList(), cellTwoUpdates.serialize()));
+
+        // Nothing is requested, so the live events are buffered, once the merge operator buffer is full
+        final AssertableSubscriber<JobChangeNotification> slowSubscriber = service.observeJobs(ObserveJobsQuery.getDefaultInstance()).test(0);
+        final AssertableSubscriber<JobChangeNotification> fastSubscriber = service.observeJobs(ObserveJobsQuery.getDefaultInstance()).test();
+        int updates = 2 * RxRingBuffer.SIZE;
+        for (int i = 0; i < updates; i++) {
+            cellOneUpdates.onNext(toNotification(Job.newBuilder().setId("cell-1-job-" + i).setStatus(ACCEPTED_STATE).build()));
+        }
+        fastSubscriber.awaitValueCount(updates + 1, 1, TimeUnit.SECONDS);
+        fastSubscriber.assertNoErrors();
+
+        slowSubscriber.requestMore(Long.MAX_VALUE);
+        slowSubscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        assertThat(slowSubscriber.getOnErrorEvents()).hasSize(1);
+        assertThat(Status.fromThrowable(slowSubscriber.getOnErrorEvents().get(0)).getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+    }
+
+    @Test
+    public void observeJobsAppliesQueryCriteria() {
+        final List<Job> cellOneSnapshot = dataGenerator.newBatchJobs(3, V3GrpcModelConverters::toGrpcJob);
+        cellOne.getServiceRegistry().addService(new CellWithFixedJobsService(cellOneSnapshot, cellOneUpdates.serialize()));
+        cellTwo.getServiceRegistry().addService(new CellWithFixedJobsService(Collections.emptyList(), cellTwoUpdates.serialize()));
+
+        final Job selected = cellOneSnapshot.get(1);
+        final ObserveJobsQuery query = ObserveJobsQuery.newBuilder()
+                .putFilteringCriteria("jobIds", selected.getId())
+                .build();
+        final AssertableSubscriber<JobChangeNotification> testSubscriber = service.observeJobs(query).test();
+        testSubscriber.awaitValueCount(2, 1, TimeUnit.SECONDS);
+
+        final JobChangeNotification mergedMarker = JobChangeNotification.newBuilder().setSnapshotEnd(SnapshotEnd.newBuilder()).build();
+        assertThat(testSubscriber.getOnNextEvents()).containsExactly(withStackName(toNotification(selected)), mergedMarker);
+
+        // Updates of other jobs are filtered out
+        cellOneUpdates.onNext(toNotification(dataGenerator.newBatchJob(V3GrpcModelConverters::toGrpcJob)));
+        final JobChangeNotification selectedUpdate = toNotification(selected.toBuilder().setStatus(KILL_INITIATED_STATE).build());
+        cellOneUpdates.onNext(selectedUpdate);
+
+        testSubscriber.awaitValueCount(3, 1, TimeUnit.SECONDS);
+        assertThat(testSubscriber.getOnNextEvents()).hasSize(3);
+        assertThat(testSubscriber.getOnNextEvents()).last().isEqualTo(withStackName(selectedUpdate));
+    }
+
     @Test
     public void observeJob() {
         String cellOneJobId = UUID.randomUUID().toString();
@@ -854,6 +1002,17 @@ public class AggregatingJobServiceGatewayTest {
         );
     }
 
+    private void assertFindJob(Job job) {
+        AssertableSubscriber<Job> testSubscriber = service.findJob(job.getId()).test();
+        testSubscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        testSubscriber.assertNoErrors();
+        testSubscriber.assertValue(withStackName(job));
+    }
+
+    private long savedCalls(DefaultRegistry registry) {
+        return registry.counter("titusFederation.cellLocationCache.savedCalls").count();
+    }
+
     private JobChangeNotification toNotification(Job job) {
         return JobChangeNotification.newBuilder().setJobUpdate(JobUpdate.newBuilder().setJob(job)).build();
     }
@@ -26,8 +26,10 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import com.google.common.collect.ImmutableMap;
+import com.netflix.spectator.api.DefaultRegistry;
 import com.netflix.titus.api.federation.model.Cell;
 import com.netflix.titus.api.model.Page;
+import com.netflix.titus.common.runtime.TitusRuntimes;
 import com.netflix.titus.common.util.time.Clocks;
 import com.netflix.titus.common.util.time.TestClock;
 import com.netflix.titus.federation.startup.GrpcConfiguration;
@@ -58,6 +60,7 @@ import static org.mockito.Mockito.when;
 
 public class AggregatingJobServiceGatewayWithSingleCellTest {
     private static final int TASKS_IN_GENERATED_JOBS = 10;
+    private static final int OBSERVE_JOBS_MAX_BUFFERED_EVENTS = 1_000;
 
     @Rule
     public final GrpcServerRule cell = new GrpcServerRule().directExecutor();
@@ -77,6 +80,7 @@ public class AggregatingJobServiceGatewayWithSingleCellTest {
 
         TitusFederationConfiguration titusFederationConfiguration = mock(TitusFederationConfiguration.class);
         when(titusFederationConfiguration.getStack()).thenReturn(stackName);
+        when(titusFederationConfiguration.getObserveJobsMaxBufferedEvents()).thenReturn(OBSERVE_JOBS_MAX_BUFFERED_EVENTS);
         when(titusFederationConfiguration.getCells()).thenReturn("one=1");
         when(titusFederationConfiguration.getRoutingRules()).thenReturn("one=(app1.*|app2.*);two=(app3.*)");
 
@@ -95,6 +99,7 @@ public class AggregatingJobServiceGatewayWithSingleCellTest {
         );
 
         final AggregatingCellClient aggregatingCellClient = new AggregatingCellClient(connector);
+        final CellLocationCache cellLocationCache = new CellLocationCache(titusFederationConfiguration, new DefaultRegistry());
         final AnonymousCallMetadataResolver anonymousCallMetadataResolver = new AnonymousCallMetadataResolver();
         service = new AggregatingJobServiceGateway(
                 grpcClientConfiguration,
@@ -103,7 +108,9 @@ public class AggregatingJobServiceGatewayWithSingleCellTest {
                 cellRouter,
                 anonymousCallMetadataResolver,
                 aggregatingCellClient,
-                new AggregatingJobManagementServiceHelper(aggregatingCellClient, grpcClientConfiguration, anonymousCallMetadataResolver)
+                new AggregatingJobManagementServiceHelper(aggregatingCellClient, grpcClientConfiguration, anonymousCallMetadataResolver, cellLocationCache),
+                cellLocationCache,
+                new CellJobEventStreams(titusFederationConfiguration, connector, anonymousCallMetadataResolver, cellLocationCache, TitusRuntimes.internal())
         );
 
         clock = Clocks.test();
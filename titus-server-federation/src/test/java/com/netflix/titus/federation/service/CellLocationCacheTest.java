@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.federation.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.titus.api.federation.model.Cell;
+import com.netflix.titus.federation.startup.TitusFederationConfiguration;
+import com.netflix.titus.grpc.protogen.Task;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CellLocationCacheTest {
+
+    private final Cell cellOne = new Cell("one", "1");
+    private final Cell cellTwo = new Cell("two", "2");
+
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final Observable<Cell> fallback = Observable.defer(() -> {
+        lookups.incrementAndGet();
+        return Observable.just(cellTwo);
+    });
+
+    private final DefaultRegistry registry = new DefaultRegistry();
+
+    private CellLocationCache cache;
+
+    @Before
+    public void setUp() {
+        TitusFederationConfiguration configuration = mock(TitusFederationConfiguration.class);
+        when(configuration.getCellLocationCacheSize()).thenReturn(100L);
+        when(configuration.getCellLocationCacheTtlMs()).thenReturn(60_000L);
+
+        cache = new CellLocationCache(configuration, registry);
+    }
+
+    @Test
+    public void testLookupOnMiss() {
+        assertThat(cache.callInJobCell("job1", Observable::just, fallback).toBlocking().single()).isEqualTo(cellTwo);
+        assertThat(lookups.get()).isEqualTo(1);
+        assertThat(savedCalls()).isZero();
+    }
+
+    @Test
+    public void testCachedCellIsUsed() {
+        cache.addJob("job1", cellOne);
+
+        assertThat(cache.callInJobCell("job1", Observable::just, fallback).toBlocking().single()).isEqualTo(cellOne);
+        assertThat(lookups.get()).isZero();
+        assertThat(savedCalls()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStaleEntryIsInvalidatedOnNotFound() {
+        cache.addJob("job1", cellOne);
+
+        Cell result = cache.callInJobCell(
+                "job1",
+                cell -> Observable.error(Status.NOT_FOUND.asRuntimeException()),
+                fallback
+        ).toBlocking().single();
+
+        assertThat(result).isEqualTo(cellTwo);
+        assertThat(lookups.get()).isEqualTo(1);
+        assertThat(cache.getJobCell("job1")).isEmpty();
+        assertThat(savedCalls()).isZero();
+    }
+
+    @Test
+    public void testOtherErrorsArePropagated() {
+        cache.addJob("job1", cellOne);
+
+        cache.callInJobCell("job1", cell -> Observable.<Cell>error(Status.UNAVAILABLE.asRuntimeException()), fallback)
+                .test()
+                .assertError(StatusRuntimeException.class);
+        assertThat(lookups.get()).isZero();
+        assertThat(cache.getJobCell("job1")).contains(cellOne);
+        assertThat(savedCalls()).isZero();
+    }
+
+    @Test
+    public void testTaskLocationIsLearned() {
+        cache.addTask(Task.newBuilder().setId("task1").setJobId("job1").build(), cellOne);
+
+        assertThat(cache.getTaskCell("task1")).contains(cellOne);
+        assertThat(cache.getJobCell("job1")).contains(cellOne);
+    }
+
+    private long savedCalls() {
+        return registry.counter("titusFederation.cellLocationCache.savedCalls").count();
+    }
+}
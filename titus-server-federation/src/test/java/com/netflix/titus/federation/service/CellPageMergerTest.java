@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.federation.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.google.common.collect.ImmutableMap;
+import com.netflix.titus.api.federation.model.Cell;
+import com.netflix.titus.api.model.PaginationUtil;
+import com.netflix.titus.api.service.TitusServiceException;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.grpc.protogen.Page;
+import com.netflix.titus.grpc.protogen.Pagination;
+import org.junit.Test;
+import rx.Observable;
+
+import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toGrpcPagination;
+import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toPage;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CellPageMergerTest {
+
+    private static final Cell CELL_ONE = new Cell("one", "1");
+    private static final Cell CELL_TWO = new Cell("two", "2");
+    private static final Cell CELL_THREE = new Cell("three", "3");
+
+    private static final long MAX_SKIPPED_ITEMS = 20;
+
+    private final Map<Cell, List<String>> cellItems = new HashMap<>();
+    private final AtomicInteger fetchedItems = new AtomicInteger();
+
+    private final CellPageMerger<String> merger = new CellPageMerger<>(
+            Arrays.asList(CELL_ONE, CELL_TWO, CELL_THREE),
+            this::fetchPage,
+            Comparator.naturalOrder(),
+            Function.identity(),
+            MAX_SKIPPED_ITEMS
+    );
+
+    @Test
+    public void testCursorPagination() {
+        cellItems.put(CELL_ONE, items(0, 50, 2));
+        cellItems.put(CELL_TWO, items(1, 50, 2));
+        cellItems.put(CELL_THREE, Collections.emptyList());
+
+        List<String> all = walkAllPages(7);
+        assertThat(all).containsExactlyElementsOf(items(0, 50, 1));
+
+        // Fetching a full page from each non-empty cell would be 2 * 7 items per page.
+        assertThat(fetchedItems.get()).isLessThan(2 * 7 * 8);
+    }
+
+    @Test
+    public void testSkewedCells() {
+        cellItems.put(CELL_ONE, items(0, 40, 1));
+        cellItems.put(CELL_TWO, items(40, 42, 1));
+        cellItems.put(CELL_THREE, Collections.emptyList());
+
+        List<String> all = walkAllPages(10);
+        assertThat(all).containsExactlyElementsOf(items(0, 42, 1));
+    }
+
+    @Test
+    public void testPageNumberPagination() {
+        cellItems.put(CELL_ONE, items(0, 50, 3));
+        cellItems.put(CELL_TWO, items(1, 50, 3));
+        cellItems.put(CELL_THREE, items(2, 50, 3));
+
+        Pair<List<String>, Pagination> result = takePage(Page.newBuilder().setPageNumber(3).setPageSize(5).build());
+        assertThat(result.getLeft()).containsExactlyElementsOf(items(15, 20, 1));
+        assertThat(result.getRight().getCurrentPage().getPageNumber()).isEqualTo(3);
+        assertThat(result.getRight().getCursorPosition()).isEqualTo(19);
+        assertThat(result.getRight().getTotalItems()).isEqualTo(50);
+        assertThat(result.getRight().getTotalPages()).isEqualTo(10);
+        assertThat(result.getRight().getHasMore()).isTrue();
+
+        // Continue from the page with its cursor
+        Pair<List<String>, Pagination> next = takePage(Page.newBuilder().setCursor(result.getRight().getCursor()).setPageSize(5).build());
+        assertThat(next.getLeft()).containsExactlyElementsOf(items(20, 25, 1));
+        assertThat(next.getRight().getCurrentPage().getPageNumber()).isEqualTo(4);
+        assertThat(next.getRight().getCursorPosition()).isEqualTo(24);
+    }
+
+    @Test
+    public void testPageNumberBeyondMaxSkippedItemsIsRejected() {
+        cellItems.put(CELL_ONE, items(0, 50, 3));
+        cellItems.put(CELL_TWO, items(1, 50, 3));
+        cellItems.put(CELL_THREE, items(2, 50, 3));
+
+        assertThat(takePage(Page.newBuilder().setPageNumber(4).setPageSize(5).build()).getLeft()).containsExactlyElementsOf(items(20, 25, 1));
+        int fetchedBefore = fetchedItems.get();
+
+        // Nothing is fetched from the cells for pages beyond the limit
+        merger.takePage(Page.newBuilder().setPageNumber(5).setPageSize(5).build())
+                .test()
+                .assertError(TitusServiceException.class);
+        assertThat(fetchedItems.get()).isEqualTo(fetchedBefore);
+    }
+
+    @Test
+    public void testPlainCursorIsAppliedToAllCells() {
+        cellItems.put(CELL_ONE, items(0, 20, 2));
+        cellItems.put(CELL_TWO, items(1, 20, 2));
+        cellItems.put(CELL_THREE, Collections.emptyList());
+
+        Pair<List<String>, Pagination> result = takePage(Page.newBuilder().setCursor(item(9)).setPageSize(4).build());
+        assertThat(result.getLeft()).containsExactlyElementsOf(items(10, 14, 1));
+        assertThat(result.getRight().getCursorPosition()).isEqualTo(13);
+    }
+
+    @Test
+    public void testCursorEncoding() {
+        Map<String, String> cellCursors = ImmutableMap.of("one", "abc==", "two", "def");
+        assertThat(CellPageMerger.decodeCursor(CellPageMerger.encodeCursor(cellCursors))).isEqualTo(cellCursors);
+        assertThat(CellPageMerger.decodeCursor("abc")).isEmpty();
+    }
+
+    private List<String> walkAllPages(int pageSize) {
+        List<String> all = new ArrayList<>();
+        Pair<List<String>, Pagination> result = takePage(Page.newBuilder().setPageSize(pageSize).build());
+        int pageNumber = 0;
+        while (true) {
+            all.addAll(result.getLeft());
+            assertThat(result.getRight().getCurrentPage().getPageNumber()).isEqualTo(pageNumber++);
+            assertThat(result.getRight().getCursorPosition()).isEqualTo(all.size() - 1);
+            if (!result.getRight().getHasMore()) {
+                return all;
+            }
+            assertThat(result.getLeft()).hasSize(pageSize);
+            result = takePage(Page.newBuilder().setCursor(result.getRight().getCursor()).setPageSize(pageSize).build());
+        }
+    }
+
+    private Pair<List<String>, Pagination> takePage(Page page) {
+        return merger.takePage(page).toBlocking().first();
+    }
+
+    private Observable<Pair<List<String>, Pagination>> fetchPage(Cell cell, Page page) {
+        Pair<List<String>, com.netflix.titus.api.model.Pagination> result = PaginationUtil.takePageWithCursor(
+                toPage(page),
+                cellItems.get(cell),
+                Comparator.naturalOrder(),
+                CellPageMergerTest::indexOf,
+                Function.identity()
+        );
+        fetchedItems.addAndGet(result.getLeft().size());
+        return Observable.just(Pair.of(result.getLeft(), toGrpcPagination(result.getRight())));
+    }
+
+    /**
+     * Position of the last item not greater than the cursor, the same way as it is resolved for job/task cursors.
+     */
+    private static Optional<Integer> indexOf(List<String> items, String cursor) {
+        int idx = -1;
+        for (int i = 0; i < items.size() && items.get(i).compareTo(cursor) <= 0; i++) {
+            idx = i;
+        }
+        return Optional.of(idx);
+    }
+
+    private static List<String> items(int from, int to, int step) {
+        return IntStream.iterate(from, i -> i + step).limit((to - from + step - 1) / step).mapToObj(CellPageMergerTest::item).collect(Collectors.toList());
+    }
+
+    private static String item(int value) {
+        return String.format("%03d", value);
+    }
+}
@@ -27,4 +27,18 @@ public interface GatewayConfiguration {
      */
     @DefaultValue("5000")
     int getMaxTaskPageSize();
+
+    /**
+     * Set to true to answer job and task queries from the job data replicated from the master, instead of
+     * forwarding them to the master.
+     */
+    @DefaultValue("false")
+    boolean isLocalJobCacheEnabled();
+
+    /**
+     * Maximum replication lag of the local job cache. Queries are forwarded to the master when the cache is more
+     * stale than this.
+     */
+    @DefaultValue("2000")
+    long getLocalJobCacheMaxStalenessMs();
 }
@@ -20,6 +20,7 @@ package com.netflix.titus.gateway.service.v3.internal;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
@@ -54,6 +55,8 @@ import com.netflix.titus.grpc.protogen.Job;
 import com.netflix.titus.grpc.protogen.JobDescriptor;
 import com.netflix.titus.grpc.protogen.JobId;
 import com.netflix.titus.grpc.protogen.JobManagementServiceGrpc.JobManagementServiceStub;
+import com.netflix.titus.grpc.protogen.JobQuery;
+import com.netflix.titus.grpc.protogen.JobQueryResult;
 import com.netflix.titus.grpc.protogen.Page;
 import com.netflix.titus.grpc.protogen.Task;
 import com.netflix.titus.grpc.protogen.TaskId;
@@ -102,6 +105,7 @@ public class GatewayJobServiceGateway extends JobServiceGatewayDelegate {
     private final JobStore store;
     private final LogStorageInfo<com.netflix.titus.api.jobmanager.model.job.Task> logStorageInfo;
     private final TaskRelocationDataInjector taskRelocationDataInjector;
+    private final LocalJobCacheQueryProcessor localJobCacheQueryProcessor;
     private final EntityValidator<com.netflix.titus.api.jobmanager.model.job.JobDescriptor> validator;
     private final Registry spectatorRegistry;
     private final Clock clock;
@@ -115,6 +119,7 @@ public class GatewayJobServiceGateway extends JobServiceGatewayDelegate {
                                     JobStore store,
                                     LogStorageInfo<com.netflix.titus.api.jobmanager.model.job.Task> logStorageInfo,
                                     TaskRelocationDataInjector taskRelocationDataInjector,
+                                    LocalJobCacheQueryProcessor localJobCacheQueryProcessor,
                                     @Named(JOB_STRICT_SANITIZER) EntitySanitizer entitySanitizer,
                                     @Named(SECURITY_GROUPS_REQUIRED_FEATURE) Predicate<com.netflix.titus.api.jobmanager.model.job.JobDescriptor> securityGroupsRequiredPredicate,
                                     @Named(ENVIRONMENT_VARIABLE_NAMES_STRICT_VALIDATION_FEATURE) Predicate<com.netflix.titus.api.jobmanager.model.job.JobDescriptor> environmentVariableNamesStrictValidationPredicate,
@@ -136,6 +141,7 @@ public class GatewayJobServiceGateway extends JobServiceGatewayDelegate {
         this.store = store;
         this.logStorageInfo = logStorageInfo;
         this.taskRelocationDataInjector = taskRelocationDataInjector;
+        this.localJobCacheQueryProcessor = localJobCacheQueryProcessor;
         this.validator = validator;
         this.spectatorRegistry = titusRuntime.getRegistry();
         this.clock = titusRuntime.getClock();
@@ -172,8 +178,22 @@ public class GatewayJobServiceGateway extends JobServiceGatewayDelegate {
         return sanitizedCoreJobDescriptorObs.flatMap(scjd -> super.createJob(V3GrpcModelConverters.toGrpcJobDescriptor(scjd), callMetadata));
     }
 
+    @Override
+    public Observable<JobQueryResult> findJobs(JobQuery jobQuery) {
+        Optional<JobQueryResult> localResult = localJobCacheQueryProcessor.findJobs(jobQuery);
+        if (localResult.isPresent()) {
+            return Observable.just(localResult.get());
+        }
+        return super.findJobs(jobQuery);
+    }
+
     @Override
     public Observable<Job> findJob(String jobId) {
+        Optional<Job> localJob = localJobCacheQueryProcessor.findJob(jobId);
+        if (localJob.isPresent()) {
+            return Observable.just(localJob.get());
+        }
+
         Observable<Job> observable = createRequestObservable(emitter -> {
             StreamObserver<Job> streamObserver = createSimpleClientResponseObserver(emitter);
             createWrappedStub(client, callMetadataResolver, tunablesConfiguration.getRequestTimeout()).findJob(JobId.newBuilder().setId(jobId).build(), streamObserver);
@@ -191,6 +211,11 @@ public class GatewayJobServiceGateway extends JobServiceGatewayDelegate {
 
     @Override
     public Observable<Task> findTask(String taskId) {
+        Optional<Task> localTask = localJobCacheQueryProcessor.findTask(taskId);
+        if (localTask.isPresent()) {
+            return taskRelocationDataInjector.injectIntoTask(taskId, Observable.just(localTask.get()));
+        }
+
         Observable<Task> observable = createRequestObservable(
                 emitter -> {
                     StreamObserver<Task> streamObserver = createSimpleClientResponseObserver(emitter);
@@ -251,6 +276,11 @@ public class GatewayJobServiceGateway extends JobServiceGatewayDelegate {
     }
 
     private Observable<TaskQueryResult> newActiveTaskQueryAction(TaskQuery taskQuery) {
+        Optional<TaskQueryResult> localResult = localJobCacheQueryProcessor.findTasks(taskQuery);
+        if (localResult.isPresent()) {
+            return Observable.just(localResult.get());
+        }
+
         return createRequestObservable(emitter -> {
             StreamObserver<TaskQueryResult> streamObserver = createSimpleClientResponseObserver(emitter);
             createWrappedStub(client, callMetadataResolver, tunablesConfiguration.getRequestTimeout()).findTasks(taskQuery, streamObserver);
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.gateway.service.v3.internal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.netflix.spectator.api.Id;
+import com.netflix.spectator.api.Registry;
+import com.netflix.titus.api.model.Pagination;
+import com.netflix.titus.api.model.PaginationUtil;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.util.ProtobufExt;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.gateway.MetricConstants;
+import com.netflix.titus.grpc.protogen.Job;
+import com.netflix.titus.grpc.protogen.JobDescriptor.JobSpecCase;
+import com.netflix.titus.grpc.protogen.JobQuery;
+import com.netflix.titus.grpc.protogen.JobQueryResult;
+import com.netflix.titus.grpc.protogen.JobStatus;
+import com.netflix.titus.grpc.protogen.Page;
+import com.netflix.titus.grpc.protogen.Task;
+import com.netflix.titus.grpc.protogen.TaskQuery;
+import com.netflix.titus.grpc.protogen.TaskQueryResult;
+import com.netflix.titus.grpc.protogen.TaskStatus;
+import com.netflix.titus.runtime.connector.jobmanager.JobDataReplicator;
+import com.netflix.titus.runtime.connector.jobmanager.JobSnapshot;
+import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
+import com.netflix.titus.runtime.endpoint.common.LogStorageInfo;
+import com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3JobQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3TaskQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.jobmanager.JobManagerCursors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toGrpcPagination;
+import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toJobQueryCriteria;
+import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toPage;
+import static com.netflix.titus.runtime.jobmanager.gateway.JobServiceGateway.JOB_MINIMUM_FIELD_SET;
+import static com.netflix.titus.runtime.jobmanager.gateway.JobServiceGateway.TASK_MINIMUM_FIELD_SET;
+
+/**
+ * Answers job and task queries from the {@link JobSnapshot} replicated from the master, if enabled with
+ * {@link GatewayConfiguration#isLocalJobCacheEnabled()}. An empty result means that the query must be forwarded
+ * to the master, which happens when:
+ * <ul>
+ * <li>the replicator is not connected yet, or the cache is more stale than {@link GatewayConfiguration#getLocalJobCacheMaxStalenessMs()}</li>
+ * <li>a job or a task is not found in the cache (it may be archived, or not replicated yet)</li>
+ * <li>the query asks for finished jobs or tasks, which are not kept in the cache</li>
+ * <li>a task query has no task state filter, as the master includes in the result the finished tasks of active
+ * batch jobs, which are not kept in the cache</li>
+ * </ul>
+ * The replicator is resolved lazily, as it depends on {@link com.netflix.titus.runtime.jobmanager.gateway.JobServiceGateway}
+ * for the event stream, and blocks until the first snapshot is received.
+ */
+@Singleton
+class LocalJobCacheQueryProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalJobCacheQueryProcessor.class);
+
+    private static final String ROOT_METRIC_NAME = MetricConstants.METRIC_ROOT + "localJobCache.";
+
+    private static final String SOURCE_LOCAL = "local";
+    private static final String SOURCE_MASTER = "master";
+
+    private final GatewayConfiguration configuration;
+    private final Provider<JobDataReplicator> replicatorProvider;
+    private final LogStorageInfo<com.netflix.titus.api.jobmanager.model.job.Task> logStorageInfo;
+    private final TitusRuntime titusRuntime;
+    private final Scheduler scheduler;
+
+    private final Registry registry;
+    private final Id queriesId;
+
+    private final AtomicBoolean replicatorRequested = new AtomicBoolean();
+    private volatile JobDataReplicator replicator;
+
+    @Inject
+    LocalJobCacheQueryProcessor(GatewayConfiguration configuration,
+                                Provider<JobDataReplicator> replicatorProvider,
+                                LogStorageInfo<com.netflix.titus.api.jobmanager.model.job.Task> logStorageInfo,
+                                TitusRuntime titusRuntime) {
+        this(configuration, replicatorProvider, logStorageInfo, titusRuntime, Schedulers.io());
+    }
+
+    @VisibleForTesting
+    LocalJobCacheQueryProcessor(GatewayConfiguration configuration,
+                                Provider<JobDataReplicator> replicatorProvider,
+                                LogStorageInfo<com.netflix.titus.api.jobmanager.model.job.Task> logStorageInfo,
+                                TitusRuntime titusRuntime,
+                                Scheduler scheduler) {
+        this.configuration = configuration;
+        this.replicatorProvider = replicatorProvider;
+        this.logStorageInfo = logStorageInfo;
+        this.titusRuntime = titusRuntime;
+        this.scheduler = scheduler;
+        this.registry = titusRuntime.getRegistry();
+        this.queriesId = registry.createId(ROOT_METRIC_NAME + "queries");
+    }
+
+    Optional<Job> findJob(String jobId) {
+        String method = "findJob";
+        return getSnapshot(method).flatMap(snapshot -> {
+            Optional<Job> result = snapshot.findJob(jobId).map(V3GrpcModelConverters::toGrpcJob);
+            recordResult(method, result.isPresent(), "notFound");
+            return result;
+        });
+    }
+
+    Optional<Task> findTask(String taskId) {
+        String method = "findTask";
+        return getSnapshot(method).flatMap(snapshot -> {
+            Optional<Task> result = snapshot.findTaskById(taskId).map(jobAndTask -> V3GrpcModelConverters.toGrpcTask(jobAndTask.getRight(), logStorageInfo));
+            recordResult(method, result.isPresent(), "notFound");
+            return result;
+        });
+    }
+
+    Optional<JobQueryResult> findJobs(JobQuery jobQuery) {
+        String method = "findJobs";
+        if (!configuration.isLocalJobCacheEnabled()) {
+            return Optional.empty();
+        }
+        if (!isValidPage(method, jobQuery.getPage())) {
+            return Optional.empty();
+        }
+        JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria = toJobQueryCriteria(jobQuery);
+        if (criteria.getJobState().map(state -> state == JobStatus.JobState.Finished).orElse(false)
+                || criteria.getTaskStates().contains(TaskStatus.TaskState.Finished)) {
+            recordMaster(method, "finished");
+            return Optional.empty();
+        }
+
+        return getSnapshot(method).map(snapshot -> {
+            V3JobQueryCriteriaEvaluator evaluator = new V3JobQueryCriteriaEvaluator(criteria, titusRuntime);
+            List<com.netflix.titus.api.jobmanager.model.job.Job<?>> matchingJobs = new ArrayList<>();
+            for (Pair<com.netflix.titus.api.jobmanager.model.job.Job<?>, List<com.netflix.titus.api.jobmanager.model.job.Task>> jobAndTasks : snapshot.getJobsAndTasks()) {
+                if (evaluator.test(jobAndTasks)) {
+                    matchingJobs.add(jobAndTasks.getLeft());
+                }
+            }
+            Pair<List<com.netflix.titus.api.jobmanager.model.job.Job<?>>, Pagination> queryResult = PaginationUtil.takePageWithCursor(
+                    toPage(jobQuery.getPage()),
+                    matchingJobs,
+                    JobManagerCursors.coreJobCursorOrderComparator(),
+                    JobManagerCursors::coreJobIndexOf,
+                    JobManagerCursors::newCoreCursorFrom
+            );
+
+            List<Job> grpcJobs = queryResult.getLeft().stream().map(V3GrpcModelConverters::toGrpcJob).collect(Collectors.toList());
+            if (!jobQuery.getFieldsList().isEmpty()) {
+                Set<String> fields = new HashSet<>(jobQuery.getFieldsList());
+                fields.addAll(JOB_MINIMUM_FIELD_SET);
+                grpcJobs = grpcJobs.stream().map(job -> ProtobufExt.copy(job, fields)).collect(Collectors.toList());
+            }
+
+            recordLocal(method);
+            return JobQueryResult.newBuilder()
+                    .addAllItems(grpcJobs)
+                    .setPagination(toGrpcPagination(queryResult.getRight()))
+                    .build();
+        });
+    }
+
+    Optional<TaskQueryResult> findTasks(TaskQuery taskQuery) {
+        String method = "findTasks";
+        if (!configuration.isLocalJobCacheEnabled()) {
+            return Optional.empty();
+        }
+        if (!isValidPage(method, taskQuery.getPage())) {
+            return Optional.empty();
+        }
+        JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria = toJobQueryCriteria(taskQuery);
+        if (criteria.getTaskStates().isEmpty()) {
+            recordMaster(method, "allTaskStates");
+            return Optional.empty();
+        }
+        if (criteria.getTaskStates().contains(TaskStatus.TaskState.Finished)) {
+            recordMaster(method, "finished");
+            return Optional.empty();
+        }
+
+        return getSnapshot(method).map(snapshot -> {
+            V3TaskQueryCriteriaEvaluator evaluator = new V3TaskQueryCriteriaEvaluator(criteria, titusRuntime);
+            List<com.netflix.titus.api.jobmanager.model.job.Task> matchingTasks = new ArrayList<>();
+            for (Pair<com.netflix.titus.api.jobmanager.model.job.Job<?>, List<com.netflix.titus.api.jobmanager.model.job.Task>> jobAndTasks : snapshot.getJobsAndTasks()) {
+                com.netflix.titus.api.jobmanager.model.job.Job<?> job = jobAndTasks.getLeft();
+                for (com.netflix.titus.api.jobmanager.model.job.Task task : jobAndTasks.getRight()) {
+                    if (evaluator.test(Pair.of(job, task))) {
+                        matchingTasks.add(task);
+                    }
+                }
+            }
+            Pair<List<com.netflix.titus.api.jobmanager.model.job.Task>, Pagination> queryResult = PaginationUtil.takePageWithCursor(
+                    toPage(taskQuery.getPage()),
+                    matchingTasks,
+                    JobManagerCursors.coreTaskCursorOrderComparator(),
+                    JobManagerCursors::coreTaskIndexOf,
+                    JobManagerCursors::newCoreCursorFrom
+            );
+
+            List<Task> grpcTasks = queryResult.getLeft().stream().map(task -> V3GrpcModelConverters.toGrpcTask(task, logStorageInfo)).collect(Collectors.toList());
+            if (!taskQuery.getFieldsList().isEmpty()) {
+                Set<String> fields = new HashSet<>(taskQuery.getFieldsList());
+                fields.addAll(TASK_MINIMUM_FIELD_SET);
+                grpcTasks = grpcTasks.stream().map(task -> ProtobufExt.copy(task, fields)).collect(Collectors.toList());
+            }
+
+            recordLocal(method);
+            return TaskQueryResult.newBuilder()
+                    .addAllItems(grpcTasks)
+                    .setPagination(toGrpcPagination(queryResult.getRight()))
+                    .build();
+        });
+    }
+
+    /**
+     * Returns the replicated snapshot, if the local cache is enabled, connected, and within the staleness bound.
+     */
+    private Optional<JobSnapshot> getSnapshot(String method) {
+        if (!configuration.isLocalJobCacheEnabled()) {
+            return Optional.empty();
+        }
+        JobDataReplicator current = resolveReplicator();
+        if (current == null) {
+            recordMaster(method, "notReady");
+            return Optional.empty();
+        }
+        if (current.getStalenessMs() > configuration.getLocalJobCacheMaxStalenessMs()) {
+            recordMaster(method, "stale");
+            return Optional.empty();
+        }
+        return Optional.of(current.getCurrent());
+    }
+
+    private JobDataReplicator resolveReplicator() {
+        if (replicator == null && replicatorRequested.compareAndSet(false, true)) {
+            Observable.fromCallable(replicatorProvider::get)
+                    .subscribeOn(scheduler)
+                    .subscribe(
+                            resolved -> {
+                                logger.info("Local job cache connected");
+                                this.replicator = resolved;
+                            },
+                            error -> {
+                                logger.warn("Cannot connect the local job cache; queries will be forwarded to the master", error);
+                                replicatorRequested.set(false);
+                            }
+                    );
+        }
+        return replicator;
+    }
+
+    private boolean isValidPage(String method, Page page) {
+        // Invalid pages are forwarded to the master, which reports the error.
+        if (page.getPageSize() <= 0 || page.getPageNumber() < 0) {
+            recordMaster(method, "invalidPage");
+            return false;
+        }
+        return true;
+    }
+
+    private void recordResult(String method, boolean found, String missReason) {
+        if (found) {
+            recordLocal(method);
+        } else {
+            recordMaster(method, missReason);
+        }
+    }
+
+    private void recordLocal(String method) {
+        registry.counter(queriesId.withTags("method", method, "source", SOURCE_LOCAL)).increment();
+    }
+
+    private void recordMaster(String method, String reason) {
+        registry.counter(queriesId.withTags("method", method, "source", SOURCE_MASTER, "reason", reason)).increment();
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.gateway.service.v3.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.model.Pagination;
+import com.netflix.titus.api.model.PaginationUtil;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.grpc.protogen.JobQuery;
+import com.netflix.titus.grpc.protogen.JobQueryResult;
+import com.netflix.titus.grpc.protogen.Page;
+import com.netflix.titus.grpc.protogen.TaskQuery;
+import com.netflix.titus.grpc.protogen.TaskQueryResult;
+import com.netflix.titus.runtime.connector.jobmanager.JobDataReplicator;
+import com.netflix.titus.runtime.connector.jobmanager.JobSnapshot;
+import com.netflix.titus.runtime.endpoint.common.EmptyLogStorageInfo;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3TaskQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.jobmanager.JobManagerCursors;
+import com.netflix.titus.testkit.model.job.JobComponentStub;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.Before;
+import org.junit.Test;
+import rx.schedulers.Schedulers;
+
+import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toGrpcPagination;
+import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toJobQueryCriteria;
+import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toPage;
+import static com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters.toGrpcJob;
+import static com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters.toGrpcTask;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class LocalJobCacheQueryProcessorTest {
+
+    private static final long MAX_STALENESS_MS = 2_000;
+
+    private static final String QUERIES_METRIC = "titusGateway.localJobCache.queries";
+
+    private static final String ACTIVE_TASK_STATES = "Accepted,Launched,StartInitiated,Started,KillInitiated";
+
+    private final TitusRuntime titusRuntime = TitusRuntimes.test();
+
+    private final JobComponentStub jobComponentStub = new JobComponentStub(titusRuntime);
+
+    private final GatewayConfiguration configuration = mock(GatewayConfiguration.class);
+
+    private final JobDataReplicator replicator = mock(JobDataReplicator.class);
+
+    private final LocalJobCacheQueryProcessor processor = new LocalJobCacheQueryProcessor(
+            configuration,
+            () -> replicator,
+            EmptyLogStorageInfo.empty(),
+            titusRuntime,
+            Schedulers.immediate()
+    );
+
+    private Job<?> job1;
+    private List<Task> job1Tasks;
+    private Job<?> job2;
+
+    @Before
+    public void setUp() {
+        when(configuration.isLocalJobCacheEnabled()).thenReturn(true);
+        when(configuration.getLocalJobCacheMaxStalenessMs()).thenReturn(MAX_STALENESS_MS);
+        when(replicator.getStalenessMs()).thenReturn(0L);
+        when(replicator.getCurrent()).thenAnswer(invocation -> newSnapshotOfStub());
+
+        List<Job<BatchJobExt>> jobs = JobGenerator.batchJobsOfSize(2).getValues(2);
+        Pair<Job, List<Task>> jobAndTasks1 = jobComponentStub.createJobAndTasks(jobs.get(0));
+        this.job1 = jobAndTasks1.getLeft();
+        this.job1Tasks = jobAndTasks1.getRight();
+        this.job2 = jobComponentStub.createJobAndTasks(jobs.get(1)).getLeft();
+    }
+
+    @Test
+    public void testFindJobAndTask() {
+        assertThat(processor.findJob(job1.getId())).contains(toGrpcJob(job1));
+
+        Task task = job1Tasks.get(0);
+        assertThat(processor.findTask(task.getId())).contains(toGrpcTask(task, EmptyLogStorageInfo.empty()));
+
+        assertThat(queryCount("findJob", "local")).isEqualTo(1);
+        assertThat(queryCount("findTask", "local")).isEqualTo(1);
+    }
+
+    @Test
+    public void testFindJobs() {
+        JobQueryResult result = processor.findJobs(JobQuery.newBuilder()
+                .setPage(Page.newBuilder().setPageSize(10))
+                .build()
+        ).orElseThrow(() -> new IllegalStateException("expected local result"));
+
+        assertThat(result.getItemsList()).extracting(com.netflix.titus.grpc.protogen.Job::getId).containsExactlyInAnyOrder(job1.getId(), job2.getId());
+        assertThat(result.getPagination().getTotalItems()).isEqualTo(2);
+        assertThat(result.getPagination().getHasMore()).isFalse();
+    }
+
+    @Test
+    public void testFindTasksWithCursorPagination() {
+        TaskQuery.Builder queryBuilder = TaskQuery.newBuilder()
+                .putFilteringCriteria("jobIds", job1.getId())
+                .putFilteringCriteria("taskStates", ACTIVE_TASK_STATES)
+                .addFields("status");
+
+        TaskQueryResult firstPage = processor.findTasks(queryBuilder.setPage(Page.newBuilder().setPageSize(1)).build()).get();
+        assertThat(firstPage.getItemsList()).hasSize(1);
+        assertThat(firstPage.getPagination().getHasMore()).isTrue();
+        assertThat(firstPage.getPagination().getTotalItems()).isEqualTo(job1Tasks.size());
+
+        com.netflix.titus.grpc.protogen.Task firstTask = firstPage.getItems(0);
+        assertThat(firstTask.hasStatus()).isTrue();
+        assertThat(firstTask.getJobId()).isEmpty();
+
+        List<String> taskIds = new ArrayList<>();
+        taskIds.add(firstTask.getId());
+        String cursor = firstPage.getPagination().getCursor();
+        while (true) {
+            TaskQueryResult nextPage = processor.findTasks(queryBuilder.setPage(Page.newBuilder().setPageSize(1).setCursor(cursor)).build()).get();
+            nextPage.getItemsList().forEach(task -> taskIds.add(task.getId()));
+            if (!nextPage.getPagination().getHasMore()) {
+                break;
+            }
+            cursor = nextPage.getPagination().getCursor();
+        }
+        assertThat(taskIds).containsExactlyInAnyOrderElementsOf(job1Tasks.stream().map(Task::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testStaleCacheIsNotUsed() {
+        when(replicator.getStalenessMs()).thenReturn(MAX_STALENESS_MS + 1);
+
+        assertThat(processor.findJob(job1.getId())).isEmpty();
+        assertThat(processor.findTasks(TaskQuery.newBuilder().setPage(Page.newBuilder().setPageSize(10)).build())).isEmpty();
+        assertThat(queryCount("findJob", "master", "stale")).isEqualTo(1);
+    }
+
+    @Test
+    public void testEntityNotInCacheIsNotFound() {
+        assertThat(processor.findJob("missingJob")).isEmpty();
+        assertThat(processor.findTask("missingTask")).isEmpty();
+        assertThat(queryCount("findTask", "master", "notFound")).isEqualTo(1);
+    }
+
+    @Test
+    public void testQueryForFinishedTasksIsNotAnsweredLocally() {
+        Optional<TaskQueryResult> result = processor.findTasks(TaskQuery.newBuilder()
+                .putFilteringCriteria("taskStates", "Finished")
+                .setPage(Page.newBuilder().setPageSize(10))
+                .build()
+        );
+        assertThat(result).isEmpty();
+        assertThat(queryCount("findTasks", "master", "finished")).isEqualTo(1);
+    }
+
+    @Test
+    public void testQueryForAllTaskStatesIsNotAnsweredLocally() {
+        Optional<TaskQueryResult> result = processor.findTasks(TaskQuery.newBuilder()
+                .setPage(Page.newBuilder().setPageSize(10))
+                .build()
+        );
+        assertThat(result).isEmpty();
+        assertThat(queryCount("findTasks", "master", "allTaskStates")).isEqualTo(1);
+    }
+
+    @Test
+    public void testTaskQueryResultsMatchMasterWithFinishedBatchTasks() {
+        jobComponentStub.moveTaskToState(job1Tasks.get(0), TaskState.Finished);
+
+        List<TaskQuery> queries = new ArrayList<>();
+        queries.add(TaskQuery.newBuilder().setPage(Page.newBuilder().setPageSize(10)).build());
+        queries.add(TaskQuery.newBuilder().setPage(Page.newBuilder().setPageSize(1)).build());
+        queries.add(TaskQuery.newBuilder().putFilteringCriteria("jobIds", job1.getId()).setPage(Page.newBuilder().setPageSize(10)).build());
+        queries.add(TaskQuery.newBuilder().putFilteringCriteria("taskStates", ACTIVE_TASK_STATES).setPage(Page.newBuilder().setPageSize(10)).build());
+        queries.add(TaskQuery.newBuilder().putFilteringCriteria("taskStates", ACTIVE_TASK_STATES).setPage(Page.newBuilder().setPageSize(1)).build());
+        queries.add(TaskQuery.newBuilder().putFilteringCriteria("taskStates", "Finished").setPage(Page.newBuilder().setPageSize(10)).build());
+
+        for (TaskQuery query : queries) {
+            // Same fallback as in GatewayJobServiceGateway
+            TaskQueryResult result = processor.findTasks(query).orElseGet(() -> findTasksOnMaster(query));
+            TaskQueryResult masterResult = findTasksOnMaster(query);
+            assertThat(result.getItemsList()).describedAs("Query: %s", query).isEqualTo(masterResult.getItemsList());
+            assertThat(result.getPagination()).describedAs("Query: %s", query).isEqualTo(masterResult.getPagination());
+        }
+        assertThat(queryCount("findTasks", "local")).isEqualTo(2);
+    }
+
+    @Test
+    public void testDisabledCacheIsNotUsed() {
+        when(configuration.isLocalJobCacheEnabled()).thenReturn(false);
+
+        assertThat(processor.findJob(job1.getId())).isEmpty();
+        assertThat(processor.findJobs(JobQuery.newBuilder().setPage(Page.newBuilder().setPageSize(10)).build())).isEmpty();
+        verifyZeroInteractions(replicator);
+    }
+
+    /**
+     * Builds the snapshot from job and task updates, as the replicator does, so finished tasks are not included.
+     */
+    private JobSnapshot newSnapshotOfStub() {
+        JobSnapshot snapshot = JobSnapshot.empty();
+        for (Pair<Job, List<Task>> jobAndTasks : jobComponentStub.getJobOperations().getJobsAndTasks()) {
+            snapshot = snapshot.updateJob(jobAndTasks.getLeft()).orElse(snapshot);
+            for (Task task : jobAndTasks.getRight()) {
+                snapshot = snapshot.updateTask(task, false).orElse(snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Evaluates the query against the full active model of the stub, the same way the master's job query engine does.
+     */
+    private TaskQueryResult findTasksOnMaster(TaskQuery taskQuery) {
+        V3TaskQueryCriteriaEvaluator evaluator = new V3TaskQueryCriteriaEvaluator(toJobQueryCriteria(taskQuery), titusRuntime);
+        List<Task> matchingTasks = new ArrayList<>();
+        for (Pair<Job, List<Task>> jobAndTasks : jobComponentStub.getJobOperations().getJobsAndTasks()) {
+            Job<?> job = jobAndTasks.getLeft();
+            jobAndTasks.getRight().stream().filter(task -> evaluator.test(Pair.of(job, task))).forEach(matchingTasks::add);
+        }
+        Pair<List<Task>, Pagination> queryResult = PaginationUtil.takePageWithCursor(
+                toPage(taskQuery.getPage()),
+                matchingTasks,
+                JobManagerCursors.coreTaskCursorOrderComparator(),
+                JobManagerCursors::coreTaskIndexOf,
+                JobManagerCursors::newCoreCursorFrom
+        );
+        return TaskQueryResult.newBuilder()
+                .addAllItems(queryResult.getLeft().stream().map(task -> toGrpcTask(task, EmptyLogStorageInfo.empty())).collect(Collectors.toList()))
+                .setPagination(toGrpcPagination(queryResult.getRight()))
+                .build();
+    }
+
+    private long queryCount(String method, String source) {
+        return titusRuntime.getRegistry().counter(QUERIES_METRIC, "method", method, "source", source).count();
+    }
+
+    private long queryCount(String method, String source, String reason) {
+        return titusRuntime.getRegistry().counter(QUERIES_METRIC, "method", method, "source", source, "reason", reason).count();
+    }
+}
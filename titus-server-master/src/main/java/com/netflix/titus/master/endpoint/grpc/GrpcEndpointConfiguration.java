@@ -44,4 +44,11 @@ public interface GrpcEndpointConfiguration {
      */
     @DefaultValue("false")
     boolean isJobSizeValidationEnabled();
+
+    /**
+     * Maximum number of job change notifications buffered for an observeJobs client, in addition to the initial
+     * snapshot. A client that falls behind more than that is disconnected.
+     */
+    @DefaultValue("10000")
+    int getObserveJobsBufferSize();
 }
@@ -31,4 +31,12 @@ public interface QuotaTracker {
      * Returns current quota.
      */
     EvictionQuota getQuota(Reference reference);
+
+    /**
+     * Returns a reason for rejecting a quota consumption request, given the quota returned by {@link #getQuota(Reference)}.
+     * It is called on the rejection path only, so the returned message may be more detailed than the quota message.
+     */
+    default String getRejectionReason(EvictionQuota quota) {
+        return quota.getMessage();
+    }
 }
@@ -20,10 +20,13 @@ import java.time.Duration;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Striped;
 import com.netflix.titus.api.containerhealth.service.ContainerHealthService;
 import com.netflix.titus.api.eviction.model.EvictionQuota;
 import com.netflix.titus.api.jobmanager.model.job.Job;
@@ -37,6 +40,7 @@ import com.netflix.titus.common.util.guice.annotation.Activator;
 import com.netflix.titus.common.util.rx.ReactorExt;
 import com.netflix.titus.common.util.rx.ReactorRetriers;
 import com.netflix.titus.master.eviction.service.quota.job.EffectiveJobDisruptionBudgetResolver;
+import com.netflix.titus.master.eviction.service.quota.job.HealthyTaskCounters;
 import com.netflix.titus.master.eviction.service.quota.job.JobQuotaController;
 import com.netflix.titus.master.eviction.service.quota.system.SystemQuotaController;
 import org.slf4j.Logger;
@@ -54,17 +58,31 @@ public class TitusQuotasManager {
 
     private static final Duration RETRY_INTERVAL = Duration.ofSeconds(5);
 
+    private static final int JOB_LOCK_STRIPES = 128;
+
     private static final ConsumptionResult UNKNOWN_JOB = ConsumptionResult.rejected("Unknown job");
 
+    /**
+     * With {@link #PerJob} locking, only job quota consumption is serialized per job, and the system quota is consumed
+     * without locking. {@link #GlobalLock} serializes all quota consumption requests on a single monitor, as it was
+     * done before. It is kept as a baseline for benchmarks only.
+     */
+    public enum LockingMode {
+        PerJob,
+        GlobalLock
+    }
+
     private final V3JobOperations jobOperations;
     private final EffectiveJobDisruptionBudgetResolver budgetResolver;
-    private final ContainerHealthService containerHealthService;
+    private final HealthyTaskCounters healthyTaskCounters;
     private final SystemQuotaController systemQuotaController;
     private final TitusRuntime titusRuntime;
 
     private final ConcurrentMap<String, JobQuotaController> jobQuotaControllersByJobId = new ConcurrentHashMap<>();
 
-    private final Object lock = new Object();
+    private final LockingMode lockingMode;
+    private final Striped<Lock> jobLocks = Striped.lock(JOB_LOCK_STRIPES);
+    private final Object globalLock = new Object();
 
     private Disposable jobUpdateDisposable;
 
@@ -74,8 +92,19 @@ public class TitusQuotasManager {
                               ContainerHealthService containerHealthService,
                               SystemQuotaController systemQuotaController,
                               TitusRuntime titusRuntime) {
+        this(jobOperations, budgetResolver, containerHealthService, systemQuotaController, LockingMode.PerJob, titusRuntime);
+    }
+
+    @VisibleForTesting
+    public TitusQuotasManager(V3JobOperations jobOperations,
+                              EffectiveJobDisruptionBudgetResolver budgetResolver,
+                              ContainerHealthService containerHealthService,
+                              SystemQuotaController systemQuotaController,
+                              LockingMode lockingMode,
+                              TitusRuntime titusRuntime) {
+        this.lockingMode = lockingMode;
         this.budgetResolver = budgetResolver;
-        this.containerHealthService = containerHealthService;
+        this.healthyTaskCounters = new HealthyTaskCounters(jobOperations, containerHealthService);
         this.systemQuotaController = systemQuotaController;
         this.jobOperations = jobOperations;
         this.titusRuntime = titusRuntime;
@@ -83,6 +112,7 @@ public class TitusQuotasManager {
 
     @Activator
     public void enterActiveMode() {
+        healthyTaskCounters.activate();
         this.jobUpdateDisposable = jobOperations.observeJobsReactor()
                 .filter(event -> event instanceof JobUpdateEvent)
                 .map(event -> (Job) event.getCurrent())
@@ -94,6 +124,7 @@ public class TitusQuotasManager {
     @PreDestroy
     public void shutdown() {
         ReactorExt.safeDispose(jobUpdateDisposable);
+        healthyTaskCounters.shutdown();
     }
 
     public ConsumptionResult tryConsumeQuota(Job<?> job, Task task) {
@@ -104,29 +135,51 @@ public class TitusQuotasManager {
 
         String taskId = task.getId();
 
-        synchronized (lock) {
-            ConsumptionResult systemResult = systemQuotaController.consume(taskId);
-            ConsumptionResult jobResult = jobQuotaController.consume(taskId);
-
-            if (systemResult.isApproved() && jobResult.isApproved()) {
-                return jobResult;
+        if (lockingMode == LockingMode.GlobalLock) {
+            synchronized (globalLock) {
+                ConsumptionResult systemResult = systemQuotaController.consume(taskId);
+                ConsumptionResult jobResult = jobQuotaController.consume(taskId);
+                if (systemResult.isApproved() && !jobResult.isApproved()) {
+                    systemQuotaController.giveBackConsumedQuota(taskId);
+                } else if (!systemResult.isApproved() && jobResult.isApproved()) {
+                    jobQuotaController.giveBackConsumedQuota(taskId);
+                }
+                return combine(systemResult, jobResult);
             }
+        }
 
-            if (!systemResult.isApproved() && !jobResult.isApproved()) {
-                return ConsumptionResult.rejected(String.format(
-                        "No job and system quota: {systemQuota=%s, jobQuota=%s}",
-                        systemResult.getRejectionReason().get(), jobResult.getRejectionReason().get()
-                ));
-            }
+        // The system quota token bucket is lock-free. Its token is returned if the job quota rejects the request.
+        ConsumptionResult systemResult = systemQuotaController.consume(taskId);
+        ConsumptionResult jobResult;
 
-            if (systemResult.isApproved()) {
-                systemQuotaController.giveBackConsumedQuota(taskId);
-                return jobResult;
+        Lock jobLock = jobLocks.get(job.getId());
+        jobLock.lock();
+        try {
+            jobResult = jobQuotaController.consume(taskId);
+            if (jobResult.isApproved() && !systemResult.isApproved()) {
+                jobQuotaController.giveBackConsumedQuota(taskId);
             }
+        } finally {
+            jobLock.unlock();
+        }
 
-            jobQuotaController.giveBackConsumedQuota(taskId);
-            return systemResult;
+        if (systemResult.isApproved() && !jobResult.isApproved()) {
+            systemQuotaController.giveBackConsumedQuota(taskId);
+        }
+        return combine(systemResult, jobResult);
+    }
+
+    private ConsumptionResult combine(ConsumptionResult systemResult, ConsumptionResult jobResult) {
+        if (systemResult.isApproved() && jobResult.isApproved()) {
+            return jobResult;
+        }
+        if (!systemResult.isApproved() && !jobResult.isApproved()) {
+            return ConsumptionResult.rejected(String.format(
+                    "No job and system quota: {systemQuota=%s, jobQuota=%s}",
+                    systemResult.getRejectionReason().get(), jobResult.getRejectionReason().get()
+            ));
         }
+        return systemResult.isApproved() ? jobResult : systemResult;
     }
 
     public Optional<EvictionQuota> findEvictionQuota(Reference reference) {
@@ -163,7 +216,7 @@ public class TitusQuotasManager {
         if (jobQuotaController != null) {
             jobQuotaControllersByJobId.put(newJob.getId(), jobQuotaController.update(newJob));
         } else {
-            jobQuotaControllersByJobId.put(newJob.getId(), new JobQuotaController(newJob, jobOperations, budgetResolver, containerHealthService, titusRuntime));
+            jobQuotaControllersByJobId.put(newJob.getId(), new JobQuotaController(newJob, jobOperations, budgetResolver, healthyTaskCounters, titusRuntime));
         }
     }
 }
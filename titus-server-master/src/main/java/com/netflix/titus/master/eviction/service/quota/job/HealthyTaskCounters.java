@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.eviction.service.quota.job;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.netflix.titus.api.containerhealth.model.ContainerHealthState;
+import com.netflix.titus.api.containerhealth.model.ContainerHealthStatus;
+import com.netflix.titus.api.containerhealth.model.event.ContainerHealthUpdateEvent;
+import com.netflix.titus.api.containerhealth.service.ContainerHealthService;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.event.TaskUpdateEvent;
+import com.netflix.titus.api.jobmanager.service.JobManagerException;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.common.util.rx.ReactorExt;
+import com.netflix.titus.common.util.rx.ReactorRetriers;
+import com.netflix.titus.common.util.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+
+import static com.netflix.titus.common.util.StringExt.startWithLowercase;
+
+/**
+ * Number of healthy (started, and reported healthy by {@link ContainerHealthService}) tasks per job. The counters
+ * are updated from the job manager and the container health events, with each event re-evaluating the health
+ * of a single task only. This way the healthy task count of a job is available in constant time, no matter how
+ * large the job is.
+ */
+public class HealthyTaskCounters {
+
+    private static final Logger logger = LoggerFactory.getLogger(HealthyTaskCounters.class);
+
+    private static final String NAME = HealthyTaskCounters.class.getSimpleName();
+
+    private static final Duration RETRY_INTERVAL = Duration.ofSeconds(5);
+
+    private static final int TASK_ID_REPORT_LIMIT = 20;
+
+    private final V3JobOperations jobOperations;
+    private final ContainerHealthService containerHealthService;
+
+    /**
+     * Healthy task id to its job id mapping.
+     */
+    private final ConcurrentMap<String, String> healthyTaskJobIds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> healthyCountByJobId = new ConcurrentHashMap<>();
+
+    private final Object lock = new Object();
+
+    private Disposable jobEventsDisposable;
+    private Disposable healthEventsDisposable;
+
+    public HealthyTaskCounters(V3JobOperations jobOperations, ContainerHealthService containerHealthService) {
+        this.jobOperations = jobOperations;
+        this.containerHealthService = containerHealthService;
+    }
+
+    public void activate() {
+        this.jobEventsDisposable = jobOperations.observeJobsReactor()
+                .filter(event -> event instanceof TaskUpdateEvent)
+                .map(event -> ((TaskUpdateEvent) event).getCurrentTask().getId())
+                .compose(ReactorExt.head(this::getAllTaskIds))
+                .compose(ReactorRetriers.instrumentedRetryer(NAME + "-jobs", RETRY_INTERVAL, logger))
+                .subscribe(this::refresh);
+        this.healthEventsDisposable = containerHealthService.events(false)
+                .filter(event -> event instanceof ContainerHealthUpdateEvent)
+                .map(event -> ((ContainerHealthUpdateEvent) event).getContainerHealthStatus().getTaskId())
+                .compose(ReactorRetriers.instrumentedRetryer(NAME + "-health", RETRY_INTERVAL, logger))
+                .subscribe(this::refresh);
+    }
+
+    public void shutdown() {
+        ReactorExt.safeDispose(jobEventsDisposable, healthEventsDisposable);
+    }
+
+    public int getHealthyCount(String jobId) {
+        return healthyCountByJobId.getOrDefault(jobId, 0);
+    }
+
+    /**
+     * Builds a report with the job tasks that are not started or not healthy. As it requires checking the health
+     * of all job tasks, it should be called only when the details are needed.
+     */
+    public String buildNotHealthyTasksReport(String jobId) {
+        List<Task> tasks;
+        try {
+            tasks = jobOperations.getTasks(jobId);
+        } catch (JobManagerException e) {
+            return "job not found";
+        }
+
+        Map<String, String> notStartedOrUnhealthyTasks = new LinkedHashMap<>();
+        for (Task task : tasks) {
+            if (task.getStatus().getState() == TaskState.Started) {
+                Optional<ContainerHealthStatus> statusOpt = containerHealthService.findHealthStatus(task.getId());
+                if (!statusOpt.isPresent() || statusOpt.get().getState() != ContainerHealthState.Healthy) {
+                    String report = statusOpt
+                            .map(status -> startWithLowercase(status.getState().name()) + '(' + status.getReason() + ')')
+                            .orElse("health not found");
+                    notStartedOrUnhealthyTasks.put(task.getId(), report);
+                }
+            } else {
+                notStartedOrUnhealthyTasks.put(task.getId(), String.format("Not started (current task state=%s)", task.getStatus().getState()));
+            }
+        }
+        if (notStartedOrUnhealthyTasks.isEmpty()) {
+            return "all tasks started and healthy";
+        }
+
+        StringBuilder builder = new StringBuilder("not started and healthy: ");
+        builder.append("total=").append(notStartedOrUnhealthyTasks.size());
+        builder.append(", tasks=[");
+        int counter = 0;
+        for (Map.Entry<String, String> entry : notStartedOrUnhealthyTasks.entrySet()) {
+            builder.append(entry.getKey()).append('=').append(entry.getValue());
+            counter++;
+            if (counter >= TASK_ID_REPORT_LIMIT && counter < notStartedOrUnhealthyTasks.size()) {
+                builder.append(",... dropped ").append(notStartedOrUnhealthyTasks.size() - counter).append(" tasks");
+                break;
+            }
+            if (counter < notStartedOrUnhealthyTasks.size()) {
+                builder.append(", ");
+            }
+        }
+        return builder.append(']').toString();
+    }
+
+    private List<String> getAllTaskIds() {
+        List<String> taskIds = new ArrayList<>();
+        jobOperations.getTasks().forEach(task -> taskIds.add(task.getId()));
+        return taskIds;
+    }
+
+    /**
+     * Re-evaluates the health of a task. The current task state is always taken from the job manager, so the result
+     * does not depend on the order in which the job and the health events are processed.
+     */
+    private void refresh(String taskId) {
+        synchronized (lock) {
+            String newJobId = jobOperations.findTaskById(taskId)
+                    .filter(jobAndTask -> isHealthy(jobAndTask.getRight()))
+                    .map(Pair::getLeft)
+                    .map(Job::getId)
+                    .orElse(null);
+            String previousJobId = healthyTaskJobIds.get(taskId);
+            if (Objects.equals(previousJobId, newJobId)) {
+                return;
+            }
+            if (previousJobId != null) {
+                healthyTaskJobIds.remove(taskId);
+                healthyCountByJobId.computeIfPresent(previousJobId, (jobId, count) -> count > 1 ? count - 1 : null);
+            }
+            if (newJobId != null) {
+                healthyTaskJobIds.put(taskId, newJobId);
+                healthyCountByJobId.merge(newJobId, 1, Integer::sum);
+            }
+        }
+    }
+
+    private boolean isHealthy(Task task) {
+        if (task.getStatus().getState() != TaskState.Started) {
+            return false;
+        }
+        return containerHealthService.findHealthStatus(task.getId())
+                .map(status -> status.getState() == ContainerHealthState.Healthy)
+                .orElse(false);
+    }
+}
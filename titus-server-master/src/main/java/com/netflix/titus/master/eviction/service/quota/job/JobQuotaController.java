@@ -22,7 +22,6 @@ import java.util.List;
 import java.util.function.Supplier;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.netflix.titus.api.containerhealth.service.ContainerHealthService;
 import com.netflix.titus.api.eviction.model.EvictionQuota;
 import com.netflix.titus.api.jobmanager.model.job.Job;
 import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
@@ -50,7 +49,7 @@ public class JobQuotaController implements QuotaController<Job<?>> {
     private final Job<?> job;
     private final V3JobOperations jobOperations;
     private final EffectiveJobDisruptionBudgetResolver effectiveDisruptionBudgetResolver;
-    private final ContainerHealthService containerHealthService;
+    private final HealthyTaskCounters healthyTaskCounters;
     private final TitusRuntime titusRuntime;
     private final List<QuotaTracker> quotaTrackers;
     private final List<QuotaController<Job<?>>> quotaControllers;
@@ -58,19 +57,19 @@ public class JobQuotaController implements QuotaController<Job<?>> {
     public JobQuotaController(Job<?> job,
                               V3JobOperations jobOperations,
                               EffectiveJobDisruptionBudgetResolver effectiveDisruptionBudgetResolver,
-                              ContainerHealthService containerHealthService,
+                              HealthyTaskCounters healthyTaskCounters,
                               TitusRuntime titusRuntime) {
         this.job = job;
         this.jobOperations = jobOperations;
         this.effectiveDisruptionBudgetResolver = effectiveDisruptionBudgetResolver;
-        this.containerHealthService = containerHealthService;
+        this.healthyTaskCounters = healthyTaskCounters;
         this.titusRuntime = titusRuntime;
 
         if (DisruptionBudgetFunctions.isLegacyJob(job)) {
             this.quotaTrackers = Collections.emptyList();
             this.quotaControllers = Collections.emptyList();
         } else {
-            this.quotaTrackers = buildQuotaTrackers(job, jobOperations, effectiveDisruptionBudgetResolver, containerHealthService, titusRuntime);
+            this.quotaTrackers = buildQuotaTrackers(job, effectiveDisruptionBudgetResolver, healthyTaskCounters, titusRuntime);
             this.quotaControllers = buildQuotaControllers(job, jobOperations, effectiveDisruptionBudgetResolver, titusRuntime);
         }
     }
@@ -78,20 +77,20 @@ public class JobQuotaController implements QuotaController<Job<?>> {
     private JobQuotaController(Job<?> newJob,
                                V3JobOperations jobOperations,
                                EffectiveJobDisruptionBudgetResolver effectiveDisruptionBudgetResolver,
-                               ContainerHealthService containerHealthService,
+                               HealthyTaskCounters healthyTaskCounters,
                                JobQuotaController previousJobQuotaController,
                                TitusRuntime titusRuntime) {
         this.job = newJob;
         this.jobOperations = jobOperations;
         this.effectiveDisruptionBudgetResolver = effectiveDisruptionBudgetResolver;
-        this.containerHealthService = containerHealthService;
+        this.healthyTaskCounters = healthyTaskCounters;
         this.titusRuntime = titusRuntime;
 
         if (DisruptionBudgetFunctions.isLegacyJob(newJob)) {
             this.quotaTrackers = Collections.emptyList();
             this.quotaControllers = Collections.emptyList();
         } else {
-            this.quotaTrackers = buildQuotaTrackers(job, jobOperations, effectiveDisruptionBudgetResolver, containerHealthService, titusRuntime);
+            this.quotaTrackers = buildQuotaTrackers(job, effectiveDisruptionBudgetResolver, healthyTaskCounters, titusRuntime);
             this.quotaControllers = mergeQuotaControllers(previousJobQuotaController.quotaControllers, newJob, jobOperations, effectiveDisruptionBudgetResolver, titusRuntime);
         }
     }
@@ -123,7 +122,7 @@ public class JobQuotaController implements QuotaController<Job<?>> {
             EvictionQuota quotaStatus = tracker.getQuota(taskReference);
             if (quotaStatus.getQuota() <= 0) {
                 noQuota = true;
-                rejectionResponseBuilder.append(tracker.getClass().getSimpleName()).append('=').append(quotaStatus.getMessage()).append(", ");
+                rejectionResponseBuilder.append(tracker.getClass().getSimpleName()).append('=').append(tracker.getRejectionReason(quotaStatus)).append(", ");
             }
         }
         if (noQuota) {
@@ -174,7 +173,7 @@ public class JobQuotaController implements QuotaController<Job<?>> {
                 updatedJob,
                 jobOperations,
                 effectiveDisruptionBudgetResolver,
-                containerHealthService,
+                healthyTaskCounters,
                 this,
                 titusRuntime
         );
@@ -204,9 +203,8 @@ public class JobQuotaController implements QuotaController<Job<?>> {
 
     @VisibleForTesting
     static List<QuotaTracker> buildQuotaTrackers(Job<?> job,
-                                                 V3JobOperations jobOperations,
                                                  EffectiveJobDisruptionBudgetResolver effectiveDisruptionBudgetResolver,
-                                                 ContainerHealthService containerHealthService,
+                                                 HealthyTaskCounters healthyTaskCounters,
                                                  TitusRuntime titusRuntime) {
         List<QuotaTracker> quotaTrackers = new ArrayList<>();
 
@@ -217,9 +215,9 @@ public class JobQuotaController implements QuotaController<Job<?>> {
 
         DisruptionBudgetPolicy policy = effectiveBudget.getDisruptionBudgetPolicy();
         if (policy instanceof AvailabilityPercentageLimitDisruptionBudgetPolicy) {
-            quotaTrackers.add(UnhealthyTasksLimitTracker.percentageLimit(job, (AvailabilityPercentageLimitDisruptionBudgetPolicy) policy, jobOperations, containerHealthService));
+            quotaTrackers.add(UnhealthyTasksLimitTracker.percentageLimit(job, (AvailabilityPercentageLimitDisruptionBudgetPolicy) policy, healthyTaskCounters));
         } else if (policy instanceof UnhealthyTasksLimitDisruptionBudgetPolicy) {
-            quotaTrackers.add(UnhealthyTasksLimitTracker.absoluteLimit(job, (UnhealthyTasksLimitDisruptionBudgetPolicy) policy, jobOperations, containerHealthService));
+            quotaTrackers.add(UnhealthyTasksLimitTracker.absoluteLimit(job, (UnhealthyTasksLimitDisruptionBudgetPolicy) policy, healthyTaskCounters));
         }
 
         return quotaTrackers;
@@ -16,53 +16,33 @@
 
 package com.netflix.titus.master.eviction.service.quota.job;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-
 import com.google.common.annotations.VisibleForTesting;
-import com.netflix.titus.api.containerhealth.model.ContainerHealthState;
-import com.netflix.titus.api.containerhealth.model.ContainerHealthStatus;
-import com.netflix.titus.api.containerhealth.service.ContainerHealthService;
 import com.netflix.titus.api.eviction.model.EvictionQuota;
 import com.netflix.titus.api.jobmanager.model.job.Job;
 import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
-import com.netflix.titus.api.jobmanager.model.job.Task;
-import com.netflix.titus.api.jobmanager.model.job.TaskState;
 import com.netflix.titus.api.jobmanager.model.job.disruptionbudget.AvailabilityPercentageLimitDisruptionBudgetPolicy;
 import com.netflix.titus.api.jobmanager.model.job.disruptionbudget.UnhealthyTasksLimitDisruptionBudgetPolicy;
-import com.netflix.titus.api.jobmanager.service.JobManagerException;
-import com.netflix.titus.api.jobmanager.service.V3JobOperations;
 import com.netflix.titus.api.model.reference.Reference;
-import com.netflix.titus.common.util.tuple.Pair;
 import com.netflix.titus.master.eviction.service.quota.QuotaTracker;
 
-import static com.netflix.titus.common.util.StringExt.startWithLowercase;
-
 public class UnhealthyTasksLimitTracker implements QuotaTracker {
 
-    private static final int TASK_ID_REPORT_LIMIT = 20;
-
     private final Job<?> job;
     private final int minimumHealthyCount;
 
-    private final V3JobOperations jobOperations;
-    private final ContainerHealthService containerHealthService;
+    private final HealthyTaskCounters healthyTaskCounters;
 
     private UnhealthyTasksLimitTracker(Job<?> job,
                                        int minimumHealthyCount,
-                                       V3JobOperations jobOperations,
-                                       ContainerHealthService containerHealthService) {
+                                       HealthyTaskCounters healthyTaskCounters) {
         this.job = job;
         this.minimumHealthyCount = minimumHealthyCount;
-        this.jobOperations = jobOperations;
-        this.containerHealthService = containerHealthService;
+        this.healthyTaskCounters = healthyTaskCounters;
     }
 
     @Override
     public EvictionQuota getQuota(Reference reference) {
-        int healthyCount = countHealthy().getLeft();
+        int healthyCount = healthyTaskCounters.getHealthyCount(job.getId());
         long quota = Math.max(0, healthyCount - minimumHealthyCount);
         if (quota > 0) {
             return EvictionQuota.newBuilder()
@@ -79,72 +59,25 @@ public class UnhealthyTasksLimitTracker implements QuotaTracker {
                 .build();
     }
 
-    private Pair<Integer, String> countHealthy() {
-        List<Task> tasks;
-        try {
-            tasks = jobOperations.getTasks(job.getId());
-        } catch (JobManagerException e) {
-            return Pair.of(0, "job not found");
-        }
-
-        int healthy = 0;
-        Map<String, String> notStartedOrUnhealthyTasks = new HashMap<>();
-        for (Task task : tasks) {
-            if (task.getStatus().getState() == TaskState.Started) {
-                Optional<ContainerHealthStatus> statusOpt = containerHealthService.findHealthStatus(task.getId());
-                if (statusOpt.isPresent() && statusOpt.get().getState() == ContainerHealthState.Healthy) {
-                    healthy++;
-                } else {
-                    String report = statusOpt
-                            .map(status -> startWithLowercase(status.getState().name()) + '(' + status.getReason() + ')')
-                            .orElse("health not found");
-                    notStartedOrUnhealthyTasks.put(task.getId(), report);
-                }
-            } else {
-                notStartedOrUnhealthyTasks.put(task.getId(), String.format("Not started (current task state=%s)", task.getStatus().getState()));
-            }
-        }
-        if (!notStartedOrUnhealthyTasks.isEmpty()) {
-            StringBuilder builder = new StringBuilder("not started and healthy: ");
-            builder.append("total=").append(notStartedOrUnhealthyTasks.size());
-            builder.append(", tasks=[");
-            int counter = 0;
-            for (Map.Entry<String, String> entry : notStartedOrUnhealthyTasks.entrySet()) {
-                builder.append(entry.getKey()).append('=').append(entry.getValue());
-                counter++;
-                if (counter < notStartedOrUnhealthyTasks.size()) {
-                    builder.append(", ");
-                } else {
-                    builder.append("]");
-                }
-                if (counter >= TASK_ID_REPORT_LIMIT && counter < notStartedOrUnhealthyTasks.size()) {
-                    builder.append(",... dropped ").append(notStartedOrUnhealthyTasks.size() - counter).append(" tasks]");
-                }
-            }
-            return Pair.of(healthy, builder.toString());
-        }
-
-        return Pair.of(
-                healthy,
-                healthy > minimumHealthyCount
-                        ? ""
-                        : String.format("not enough healthy containers: healthy=%s, minimum=%s", healthy, minimumHealthyCount)
-        );
+    /**
+     * The not healthy tasks report is O(job size), so it is built only when an eviction request is rejected.
+     */
+    @Override
+    public String getRejectionReason(EvictionQuota quota) {
+        return quota.getMessage() + " (" + healthyTaskCounters.buildNotHealthyTasksReport(job.getId()) + ')';
     }
 
     public static UnhealthyTasksLimitTracker percentageLimit(Job<?> job,
                                                              AvailabilityPercentageLimitDisruptionBudgetPolicy policy,
-                                                             V3JobOperations jobOperations,
-                                                             ContainerHealthService containerHealthService) {
+                                                             HealthyTaskCounters healthyTaskCounters) {
 
-        return new UnhealthyTasksLimitTracker(job, computeHealthyPoolSizeFromPercentage(job, policy), jobOperations, containerHealthService);
+        return new UnhealthyTasksLimitTracker(job, computeHealthyPoolSizeFromPercentage(job, policy), healthyTaskCounters);
     }
 
     public static UnhealthyTasksLimitTracker absoluteLimit(Job<?> job,
                                                            UnhealthyTasksLimitDisruptionBudgetPolicy policy,
-                                                           V3JobOperations jobOperations,
-                                                           ContainerHealthService containerHealthService) {
-        return new UnhealthyTasksLimitTracker(job, computeHealthyPoolSizeFromAbsoluteLimit(job, policy), jobOperations, containerHealthService);
+                                                           HealthyTaskCounters healthyTaskCounters) {
+        return new UnhealthyTasksLimitTracker(job, computeHealthyPoolSizeFromAbsoluteLimit(job, policy), healthyTaskCounters);
     }
 
     @VisibleForTesting
@@ -27,11 +27,9 @@ import com.google.common.annotations.VisibleForTesting;
 import com.netflix.titus.api.eviction.model.EvictionQuota;
 import com.netflix.titus.api.eviction.model.SystemDisruptionBudget;
 import com.netflix.titus.api.jobmanager.model.job.disruptionbudget.TimeWindowFunctions;
-import com.netflix.titus.api.model.TokenBucketPolicies;
 import com.netflix.titus.api.model.reference.Reference;
 import com.netflix.titus.common.runtime.SystemLogEvent;
 import com.netflix.titus.common.runtime.TitusRuntime;
-import com.netflix.titus.common.util.limiter.tokenbucket.TokenBucket;
 import com.netflix.titus.common.util.rx.ReactorExt;
 import com.netflix.titus.master.eviction.service.quota.ConsumptionResult;
 import com.netflix.titus.master.eviction.service.quota.QuotaController;
@@ -49,8 +47,6 @@ public class SystemQuotaController implements QuotaController<Void> {
     private static final Duration BOOTSTRAP_TIMEOUT = Duration.ofSeconds(5);
     private static final Duration DEFAULT_RETRY_INTERVAL = Duration.ofSeconds(5);
 
-    private static final String NAME = "system";
-
     private static final ConsumptionResult QUOTA_LIMIT_EXCEEDED = ConsumptionResult.rejected("System eviction quota limit exceeded");
     private static final ConsumptionResult OUTSIDE_SYSTEM_TIME_WINDOW = ConsumptionResult.rejected("Outside system time window");
 
@@ -63,7 +59,7 @@ public class SystemQuotaController implements QuotaController<Void> {
     private volatile String quotaMessage;
 
     private volatile Supplier<Boolean> inTimeWindowPredicate;
-    private volatile TokenBucket systemTokenBucket;
+    private volatile SystemTokenBucket systemTokenBucket;
 
     @Inject
     public SystemQuotaController(SystemDisruptionBudgetResolver systemDisruptionBudgetResolver,
@@ -99,7 +95,7 @@ public class SystemQuotaController implements QuotaController<Void> {
         this.inTimeWindowPredicate = TimeWindowFunctions.isInTimeWindowPredicate(titusRuntime, disruptionBudget.getTimeWindows());
         this.quotaMessage = String.format("System quota token bucket: capacity=%s, refillStrategy=%s",
                 systemTokenBucket.getCapacity(),
-                systemTokenBucket.getRefillStrategy()
+                systemTokenBucket.getRefillStrategyDescription()
         );
     }
 
@@ -115,7 +111,7 @@ public class SystemQuotaController implements QuotaController<Void> {
             if (!inTimeWindowPredicate.get()) {
                 return OUTSIDE_SYSTEM_TIME_WINDOW;
             }
-            return systemTokenBucket.tryTake(1)
+            return systemTokenBucket.tryTake()
                     ? ConsumptionResult.approved()
                     : QUOTA_LIMIT_EXCEEDED;
         } catch (IllegalArgumentException e) {
@@ -123,9 +119,12 @@ public class SystemQuotaController implements QuotaController<Void> {
         }
     }
 
+    /**
+     * Returns a token taken by {@link #consume(String)}, for example when the eviction is rejected by the job quota.
+     */
     @Override
     public void giveBackConsumedQuota(String taskId) {
-        systemTokenBucket.refill(1);
+        systemTokenBucket.giveBack();
     }
 
     @Override
@@ -147,7 +146,7 @@ public class SystemQuotaController implements QuotaController<Void> {
         return disruptionBudget;
     }
 
-    private TokenBucket newTokenBucket(SystemDisruptionBudget disruptionBudget) {
+    private SystemTokenBucket newTokenBucket(SystemDisruptionBudget disruptionBudget) {
         logger.info("Configuring new system disruption budget: {}", disruptionBudget);
 
         titusRuntime.getSystemLogService().submit(SystemLogEvent.newBuilder()
@@ -159,6 +158,6 @@ public class SystemQuotaController implements QuotaController<Void> {
                 .build()
         );
 
-        return TokenBucketPolicies.newTokenBucket(NAME, disruptionBudget.getTokenBucketPolicy());
+        return new SystemTokenBucket(disruptionBudget.getTokenBucketPolicy(), titusRuntime.getClock());
     }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.eviction.service.quota.system;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.netflix.titus.api.model.FixedIntervalTokenBucketRefillPolicy;
+import com.netflix.titus.api.model.TokenBucketPolicy;
+import com.netflix.titus.common.util.DateTimeExt;
+import com.netflix.titus.common.util.time.Clock;
+
+/**
+ * Lock-free token bucket for the system eviction quota. Tokens are taken, given back and refilled with CAS
+ * operations only, so concurrent evictions of tasks belonging to different jobs do not serialize on the system quota.
+ * Refill follows the same fixed interval rules as {@link com.netflix.titus.common.util.limiter.tokenbucket.internal.FixedIntervalRefillStrategy}.
+ */
+class SystemTokenBucket {
+
+    private final long capacity;
+    private final long tokensPerInterval;
+    private final long intervalMs;
+    private final Clock clock;
+    private final String refillStrategyDescription;
+
+    private final AtomicLong numberOfTokens;
+    private final AtomicLong lastRefillTimeMs;
+
+    SystemTokenBucket(TokenBucketPolicy policy, Clock clock) {
+        Preconditions.checkArgument(
+                policy.getRefillPolicy() instanceof FixedIntervalTokenBucketRefillPolicy,
+                "Only FixedIntervalTokenBucketRefillPolicy supported"
+        );
+        FixedIntervalTokenBucketRefillPolicy refillPolicy = (FixedIntervalTokenBucketRefillPolicy) policy.getRefillPolicy();
+        Preconditions.checkArgument(policy.getCapacity() > 0, "Capacity must be greater than 0.");
+        Preconditions.checkArgument(refillPolicy.getIntervalMs() > 0, "Refill interval must be greater than 0.");
+
+        this.capacity = policy.getCapacity();
+        this.tokensPerInterval = Math.max(0, refillPolicy.getNumberOfTokensPerInterval());
+        this.intervalMs = refillPolicy.getIntervalMs();
+        this.clock = clock;
+        this.refillStrategyDescription = "FixedIntervalRefillStrategy{refillRate="
+                + DateTimeExt.toRateString(intervalMs, tokensPerInterval, TimeUnit.MILLISECONDS, "refill") + '}';
+
+        this.numberOfTokens = new AtomicLong(Math.min(capacity, Math.max(0, policy.getInitialNumberOfTokens())));
+        // The first refill happens on first access, as in FixedIntervalRefillStrategy.
+        this.lastRefillTimeMs = new AtomicLong(clock.wallTime() - intervalMs);
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+
+    String getRefillStrategyDescription() {
+        return refillStrategyDescription;
+    }
+
+    long getNumberOfTokens() {
+        refill();
+        return numberOfTokens.get();
+    }
+
+    boolean tryTake() {
+        refill();
+        while (true) {
+            long current = numberOfTokens.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (numberOfTokens.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns a token taken by {@link #tryTake()}, when the eviction is rejected by another quota.
+     */
+    void giveBack() {
+        add(1);
+    }
+
+    private void refill() {
+        long now = clock.wallTime();
+        long last = lastRefillTimeMs.get();
+        long intervals = (now - last) / intervalMs;
+        if (intervals <= 0) {
+            return;
+        }
+        // Only the thread that advances the refill time adds the tokens.
+        if (lastRefillTimeMs.compareAndSet(last, last + intervals * intervalMs)) {
+            add(Math.min(capacity, intervals) * tokensPerInterval);
+        }
+    }
+
+    private void add(long tokens) {
+        while (true) {
+            long current = numberOfTokens.get();
+            long next = Math.min(capacity, current + tokens);
+            if (next == current || numberOfTokens.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.endpoint.v3.grpc;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import rx.Subscriber;
+
+/**
+ * Writes stream items to a GRPC server stream, respecting the GRPC transport flow control. Items that cannot be
+ * written immediately are queued. If the queue grows above the configured limit, the client is considered too slow,
+ * and the stream is terminated with {@link Status#RESOURCE_EXHAUSTED} error.
+ */
+class BoundedServerStreamSubscriber<T> extends Subscriber<T> {
+
+    private final ServerCallStreamObserver<T> responseObserver;
+    private final String streamName;
+    private final Runnable onSlowConsumer;
+
+    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile int limit;
+    private volatile boolean done;
+    private volatile Throwable error;
+    private volatile boolean slowConsumer;
+    private volatile boolean cancelled;
+
+    // Accessed only from the drain loop.
+    private boolean terminated;
+
+    BoundedServerStreamSubscriber(ServerCallStreamObserver<T> responseObserver,
+                                  String streamName,
+                                  int limit,
+                                  Runnable onSlowConsumer) {
+        this.responseObserver = responseObserver;
+        this.streamName = streamName;
+        this.limit = limit;
+        this.onSlowConsumer = onSlowConsumer;
+
+        responseObserver.setOnReadyHandler(this::drain);
+        responseObserver.setOnCancelHandler(() -> {
+            cancelled = true;
+            unsubscribe();
+        });
+    }
+
+    /**
+     * Raises the queue limit, to accommodate a burst of items with a known size (for example a snapshot).
+     */
+    void extendLimit(int extraItems) {
+        this.limit += extraItems;
+    }
+
+    @Override
+    public void onNext(T item) {
+        if (done) {
+            return;
+        }
+        if (queueSize.incrementAndGet() > limit) {
+            slowConsumer = true;
+            done = true;
+            unsubscribe();
+            onSlowConsumer.run();
+        } else {
+            queue.add(item);
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable e) {
+        this.error = e;
+        this.done = true;
+        drain();
+    }
+
+    @Override
+    public void onCompleted() {
+        this.done = true;
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            if (!terminated) {
+                if (cancelled) {
+                    queue.clear();
+                    terminated = true;
+                } else if (slowConsumer) {
+                    queue.clear();
+                    terminated = true;
+                    responseObserver.onError(new StatusRuntimeException(Status.RESOURCE_EXHAUSTED
+                            .withDescription(streamName + " stream terminated, as the client is not consuming events fast enough")
+                    ));
+                } else {
+                    T item;
+                    while (responseObserver.isReady() && (item = queue.poll()) != null) {
+                        queueSize.decrementAndGet();
+                        responseObserver.onNext(item);
+                    }
+                    if (done && queue.isEmpty()) {
+                        terminated = true;
+                        if (error != null) {
+                            responseObserver.onError(new StatusRuntimeException(Status.INTERNAL
+                                    .withDescription(streamName + " stream terminated with an error")
+                                    .withCause(error))
+                            );
+                        } else {
+                            responseObserver.onCompleted();
+                        }
+                    }
+                }
+            }
+        } while (wip.decrementAndGet() != 0);
+    }
+}
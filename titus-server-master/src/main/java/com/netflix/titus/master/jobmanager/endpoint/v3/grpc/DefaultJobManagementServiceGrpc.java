@@ -17,6 +17,7 @@
 package com.netflix.titus.master.jobmanager.endpoint.v3.grpc;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -40,7 +41,6 @@ import com.netflix.titus.api.jobmanager.service.JobManagerException;
 import com.netflix.titus.api.jobmanager.service.V3JobOperations;
 import com.netflix.titus.api.jobmanager.service.V3JobOperations.Trigger;
 import com.netflix.titus.api.model.Pagination;
-import com.netflix.titus.api.model.PaginationUtil;
 import com.netflix.titus.api.model.ResourceDimension;
 import com.netflix.titus.api.model.Tier;
 import com.netflix.titus.api.service.TitusServiceException;
@@ -49,6 +49,7 @@ import com.netflix.titus.common.model.validator.ValidationError;
 import com.netflix.titus.common.runtime.TitusRuntime;
 import com.netflix.titus.common.util.CollectionsExt;
 import com.netflix.titus.common.util.ProtobufExt;
+import com.netflix.titus.common.util.StringExt;
 import com.netflix.titus.common.util.rx.ObservableExt;
 import com.netflix.titus.common.util.tuple.Pair;
 import com.netflix.titus.grpc.protogen.Job;
@@ -79,6 +80,7 @@ import com.netflix.titus.master.config.CellInfoResolver;
 import com.netflix.titus.master.endpoint.common.CellDecorator;
 import com.netflix.titus.master.endpoint.grpc.GrpcEndpointConfiguration;
 import com.netflix.titus.master.jobmanager.service.JobManagerUtil;
+import com.netflix.titus.master.jobmanager.service.query.JobQueryEngine;
 import com.netflix.titus.master.model.ResourceDimensions;
 import com.netflix.titus.master.service.management.ApplicationSlaManagementService;
 import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
@@ -90,7 +92,6 @@ import com.netflix.titus.runtime.endpoint.metadata.CallMetadataUtils;
 import com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters;
 import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3JobQueryCriteriaEvaluator;
 import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3TaskQueryCriteriaEvaluator;
-import com.netflix.titus.runtime.jobmanager.JobManagerCursors;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
 import io.grpc.stub.ServerCallStreamObserver;
@@ -124,6 +125,8 @@ public class DefaultJobManagementServiceGrpc extends JobManagementServiceGrpc.Jo
     private final AgentManagementService agentManagementService;
     private final ApplicationSlaManagementService capacityGroupService;
     private final V3JobOperations jobOperations;
+    private final JobQueryEngine jobQueryEngine;
+    private final JobChangeNotificationBroadcaster notificationBroadcaster;
     private final LogStorageInfo<com.netflix.titus.api.jobmanager.model.job.Task> logStorageInfo;
     private final EntitySanitizer entitySanitizer;
     private final Predicate<com.netflix.titus.api.jobmanager.model.job.JobDescriptor> disruptionBudgetEnabledPredicate;
@@ -137,6 +140,8 @@ public class DefaultJobManagementServiceGrpc extends JobManagementServiceGrpc.Jo
                                            AgentManagementService agentManagementService,
                                            ApplicationSlaManagementService capacityGroupService,
                                            V3JobOperations jobOperations,
+                                           JobQueryEngine jobQueryEngine,
+                                           JobChangeNotificationBroadcaster notificationBroadcaster,
                                            LogStorageInfo<com.netflix.titus.api.jobmanager.model.job.Task> logStorageInfo,
                                            @Named(JOB_STRICT_SANITIZER) EntitySanitizer entitySanitizer,
                                            @Named(FeatureRolloutPlans.DISRUPTION_BUDGET_FEATURE) Predicate<com.netflix.titus.api.jobmanager.model.job.JobDescriptor> disruptionBudgetEnabledPredicate,
@@ -148,6 +153,8 @@ public class DefaultJobManagementServiceGrpc extends JobManagementServiceGrpc.Jo
         this.agentManagementService = agentManagementService;
         this.capacityGroupService = capacityGroupService;
         this.jobOperations = jobOperations;
+        this.jobQueryEngine = jobQueryEngine;
+        this.notificationBroadcaster = notificationBroadcaster;
         this.logStorageInfo = logStorageInfo;
         this.entitySanitizer = entitySanitizer;
         this.disruptionBudgetEnabledPredicate = disruptionBudgetEnabledPredicate;
@@ -219,19 +226,9 @@ public class DefaultJobManagementServiceGrpc extends JobManagementServiceGrpc.Jo
         }
 
         try {
-            // We need to find all jobs to get the total number of them.
-            List<com.netflix.titus.api.jobmanager.model.job.Job<?>> allFilteredJobs = jobOperations.findJobs(
-                    new V3JobQueryCriteriaEvaluator(toJobQueryCriteria(jobQuery), titusRuntime),
-                    0,
-                    Integer.MAX_VALUE / 2
-            );
-
-            Pair<List<com.netflix.titus.api.jobmanager.model.job.Job<?>>, Pagination> queryResult = PaginationUtil.takePageWithCursor(
-                    toPage(jobQuery.getPage()),
-                    allFilteredJobs,
-                    JobManagerCursors.coreJobCursorOrderComparator(),
-                    JobManagerCursors::coreJobIndexOf,
-                    JobManagerCursors::newCoreCursorFrom
+            Pair<List<com.netflix.titus.api.jobmanager.model.job.Job<?>>, Pagination> queryResult = jobQueryEngine.findJobs(
+                    toJobQueryCriteria(jobQuery),
+                    toPage(jobQuery.getPage())
             );
             List<Job> grpcJobs = queryResult.getLeft().stream().map(V3GrpcModelConverters::toGrpcJob).collect(Collectors.toList());
 
@@ -276,19 +273,9 @@ public class DefaultJobManagementServiceGrpc extends JobManagementServiceGrpc.Jo
         }
 
         try {
-            // We need to find all tasks to get the total number of them.
-            List<com.netflix.titus.api.jobmanager.model.job.Task> allFilteredTasks = jobOperations.findTasks(
-                    new V3TaskQueryCriteriaEvaluator(toJobQueryCriteria(taskQuery), titusRuntime),
-                    0,
-                    Integer.MAX_VALUE / 2
-            ).stream().map(Pair::getRight).collect(Collectors.toList());
-
-            Pair<List<com.netflix.titus.api.jobmanager.model.job.Task>, Pagination> queryResult = PaginationUtil.takePageWithCursor(
-                    toPage(taskQuery.getPage()),
-                    allFilteredTasks,
-                    JobManagerCursors.coreTaskCursorOrderComparator(),
-                    JobManagerCursors::coreTaskIndexOf,
-                    JobManagerCursors::newCoreCursorFrom
+            Pair<List<com.netflix.titus.api.jobmanager.model.job.Task>, Pagination> queryResult = jobQueryEngine.findTasks(
+                    toJobQueryCriteria(taskQuery),
+                    toPage(taskQuery.getPage())
             );
 
             List<Task> grpcTasks = queryResult.getLeft().stream().map(t -> V3GrpcModelConverters.toGrpcTask(t, logStorageInfo)).collect(Collectors.toList());
@@ -577,27 +564,31 @@ public class DefaultJobManagementServiceGrpc extends JobManagementServiceGrpc.Jo
         V3JobQueryCriteriaEvaluator jobsPredicate = new V3JobQueryCriteriaEvaluator(criteria, titusRuntime);
         V3TaskQueryCriteriaEvaluator tasksPredicate = new V3TaskQueryCriteriaEvaluator(criteria, titusRuntime);
 
-        Observable<JobChangeNotification> eventStream = jobOperations.observeJobs(jobsPredicate, tasksPredicate)
-                .map(event -> V3GrpcModelConverters.toGrpcJobChangeNotification(event, logStorageInfo))
+        // ObserveJobsQuery has no field list, so the projection is requested with the 'fields' filtering criteria key.
+        Set<String> fields = StringExt.splitByCommaIntoSet(query.getFilteringCriteriaMap().get("fields"));
+        Set<String> jobFields = fields.isEmpty() ? Collections.emptySet() : CollectionsExt.merge(fields, JOB_MINIMUM_FIELD_SET);
+        Set<String> taskFields = fields.isEmpty() ? Collections.emptySet() : CollectionsExt.merge(fields, TASK_MINIMUM_FIELD_SET);
+
+        String callerId = callMetadataResolver.resolve().map(CallMetadata::getCallerId).orElse("unknown");
+        BoundedServerStreamSubscriber<JobChangeNotification> subscriber = new BoundedServerStreamSubscriber<>(
+                (ServerCallStreamObserver<JobChangeNotification>) responseObserver,
+                "All jobs monitoring",
+                configuration.getObserveJobsBufferSize(),
+                () -> {
+                    logger.warn("Terminating slow jobs event stream consumer: caller={}", callerId);
+                    notificationBroadcaster.recordSlowConsumer();
+                }
+        );
+
+        notificationBroadcaster.observeJobs(jobsPredicate, tasksPredicate, jobFields, taskFields)
                 .compose(ObservableExt.head(() -> {
-                    List<JobChangeNotification> snapshot = createJobsSnapshot(jobsPredicate, tasksPredicate);
+                    List<JobChangeNotification> snapshot = createJobsSnapshot(jobsPredicate, tasksPredicate, jobFields, taskFields);
                     snapshot.add(SNAPSHOT_END_MARKER);
+                    subscriber.extendLimit(snapshot.size());
                     return snapshot;
                 }))
-                .doOnError(e -> logger.error("Unexpected error in jobs event stream", e));
-
-        Subscription subscription = eventStream.subscribe(
-                responseObserver::onNext,
-                e -> responseObserver.onError(
-                        new StatusRuntimeException(Status.INTERNAL
-                                .withDescription("All jobs monitoring stream terminated with an error")
-                                .withCause(e))
-                ),
-                responseObserver::onCompleted
-        );
-
-        ServerCallStreamObserver<JobChangeNotification> serverObserver = (ServerCallStreamObserver<JobChangeNotification>) responseObserver;
-        serverObserver.setOnCancelHandler(subscription::unsubscribe);
+                .doOnError(e -> logger.error("Unexpected error in jobs event stream", e))
+                .subscribe(subscriber);
     }
 
     @Override
@@ -712,16 +703,18 @@ public class DefaultJobManagementServiceGrpc extends JobManagementServiceGrpc.Jo
 
     private List<JobChangeNotification> createJobsSnapshot(
             Predicate<Pair<com.netflix.titus.api.jobmanager.model.job.Job<?>, List<com.netflix.titus.api.jobmanager.model.job.Task>>> jobsPredicate,
-            Predicate<Pair<com.netflix.titus.api.jobmanager.model.job.Job<?>, com.netflix.titus.api.jobmanager.model.job.Task>> tasksPredicate) {
+            Predicate<Pair<com.netflix.titus.api.jobmanager.model.job.Job<?>, com.netflix.titus.api.jobmanager.model.job.Task>> tasksPredicate,
+            Set<String> jobFields,
+            Set<String> taskFields) {
         List<JobChangeNotification> snapshot = new ArrayList<>();
 
         List<com.netflix.titus.api.jobmanager.model.job.Job<?>> coreJobs =
                 jobOperations.findJobs(jobsPredicate, 0, Integer.MAX_VALUE / 2);
-        coreJobs.forEach(coreJob -> snapshot.add(toJobChangeNotification(coreJob)));
+        coreJobs.forEach(coreJob -> snapshot.add(JobChangeNotificationBroadcaster.project(toJobChangeNotification(coreJob), jobFields, taskFields)));
 
         List<Pair<com.netflix.titus.api.jobmanager.model.job.Job<?>, com.netflix.titus.api.jobmanager.model.job.Task>> coreTasks =
                 jobOperations.findTasks(tasksPredicate, 0, Integer.MAX_VALUE / 2);
-        coreTasks.forEach(task -> snapshot.add(toJobChangeNotification(task.getRight())));
+        coreTasks.forEach(task -> snapshot.add(JobChangeNotificationBroadcaster.project(toJobChangeNotification(task.getRight()), jobFields, taskFields)));
 
         return snapshot;
     }
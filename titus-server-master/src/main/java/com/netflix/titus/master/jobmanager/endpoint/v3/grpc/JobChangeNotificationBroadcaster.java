@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.endpoint.v3.grpc;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.event.JobManagerEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.JobUpdateEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.TaskUpdateEvent;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.util.ProtobufExt;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.grpc.protogen.JobChangeNotification;
+import com.netflix.titus.master.MetricConstants;
+import com.netflix.titus.master.jobmanager.service.query.JobQueryEngine;
+import com.netflix.titus.runtime.endpoint.common.LogStorageInfo;
+import com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters;
+import rx.Observable;
+
+/**
+ * Single subscription to the job manager event stream shared by all observeJobs clients. Each event is converted to
+ * its GRPC form once, on first use, and the result is shared by all subscribers. Field projections are computed once
+ * per distinct field set. Subscribers apply their own filtering on the core model.
+ */
+@Singleton
+public class JobChangeNotificationBroadcaster {
+
+    private static final String METRIC_ROOT = MetricConstants.METRIC_ROOT + "jobManager.observeJobs.";
+
+    private final JobQueryEngine jobQueryEngine;
+    private final LogStorageInfo<Task> logStorageInfo;
+
+    private final Observable<BroadcastEvent> sharedEvents;
+
+    private final AtomicInteger subscribers;
+    private final Counter eventCounter;
+    private final Counter conversionCounter;
+    private final Counter projectionCounter;
+    private final Counter slowConsumerCounter;
+
+    @Inject
+    public JobChangeNotificationBroadcaster(V3JobOperations jobOperations,
+                                            JobQueryEngine jobQueryEngine,
+                                            LogStorageInfo<Task> logStorageInfo,
+                                            TitusRuntime titusRuntime) {
+        this.jobQueryEngine = jobQueryEngine;
+        this.logStorageInfo = logStorageInfo;
+
+        Registry registry = titusRuntime.getRegistry();
+        this.subscribers = registry.gauge(METRIC_ROOT + "subscribers", new AtomicInteger());
+        this.eventCounter = registry.counter(METRIC_ROOT + "events");
+        this.conversionCounter = registry.counter(METRIC_ROOT + "conversions");
+        this.projectionCounter = registry.counter(METRIC_ROOT + "projections");
+        this.slowConsumerCounter = registry.counter(METRIC_ROOT + "slowConsumers");
+
+        this.sharedEvents = Observable.defer(() -> jobOperations.observeJobs(jobAndTasks -> true, jobAndTask -> true))
+                .map(BroadcastEvent::new)
+                .doOnNext(event -> eventCounter.increment())
+                .share();
+    }
+
+    /**
+     * Returns a stream of job change notifications matching the given predicates. If a field set is not empty,
+     * the job or task in the notification is trimmed to these fields.
+     */
+    public Observable<JobChangeNotification> observeJobs(Predicate<Pair<Job<?>, List<Task>>> jobsPredicate,
+                                                         Predicate<Pair<Job<?>, Task>> tasksPredicate,
+                                                         Set<String> jobFields,
+                                                         Set<String> taskFields) {
+        return sharedEvents
+                .filter(event -> event.matches(jobsPredicate, tasksPredicate))
+                .map(event -> event.toNotification(jobFields, taskFields))
+                .doOnSubscribe(subscribers::incrementAndGet)
+                .doOnUnsubscribe(subscribers::decrementAndGet);
+    }
+
+    /**
+     * Applies field projection to a notification, which is not part of the shared event stream (for example a
+     * snapshot item).
+     */
+    public static JobChangeNotification project(JobChangeNotification notification, Set<String> jobFields, Set<String> taskFields) {
+        switch (notification.getNotificationCase()) {
+            case JOBUPDATE:
+                if (jobFields.isEmpty()) {
+                    return notification;
+                }
+                return notification.toBuilder()
+                        .setJobUpdate(notification.getJobUpdate().toBuilder()
+                                .setJob(ProtobufExt.copy(notification.getJobUpdate().getJob(), jobFields))
+                        ).build();
+            case TASKUPDATE:
+                if (taskFields.isEmpty()) {
+                    return notification;
+                }
+                return notification.toBuilder()
+                        .setTaskUpdate(notification.getTaskUpdate().toBuilder()
+                                .setTask(ProtobufExt.copy(notification.getTaskUpdate().getTask(), taskFields))
+                        ).build();
+            default:
+                return notification;
+        }
+    }
+
+    void recordSlowConsumer() {
+        slowConsumerCounter.increment();
+    }
+
+    private class BroadcastEvent {
+
+        private final JobManagerEvent<?> event;
+
+        private volatile List<Task> jobTasks;
+        private volatile JobChangeNotification notification;
+        private volatile ConcurrentMap<Pair<Set<String>, Set<String>>, JobChangeNotification> projections;
+
+        private BroadcastEvent(JobManagerEvent<?> event) {
+            this.event = event;
+        }
+
+        private boolean matches(Predicate<Pair<Job<?>, List<Task>>> jobsPredicate, Predicate<Pair<Job<?>, Task>> tasksPredicate) {
+            if (event instanceof JobUpdateEvent) {
+                Job<?> job = ((JobUpdateEvent) event).getCurrent();
+                return jobsPredicate.test(Pair.of(job, getJobTasks(job)));
+            }
+            TaskUpdateEvent taskUpdateEvent = (TaskUpdateEvent) event;
+            return tasksPredicate.test(Pair.of(taskUpdateEvent.getCurrentJob(), taskUpdateEvent.getCurrentTask()));
+        }
+
+        /**
+         * The query index is updated from the reconciler events before they reach the job event stream subscribers,
+         * so it holds the same task list as the reconciler model at the time of the event.
+         */
+        private List<Task> getJobTasks(Job<?> job) {
+            if (jobTasks == null) {
+                jobTasks = jobQueryEngine.getIndex().getTasks(job.getId());
+            }
+            return jobTasks;
+        }
+
+        private JobChangeNotification toNotification(Set<String> jobFields, Set<String> taskFields) {
+            JobChangeNotification full = getNotification();
+            if (jobFields.isEmpty() && taskFields.isEmpty()) {
+                return full;
+            }
+            if (projections == null) {
+                synchronized (this) {
+                    if (projections == null) {
+                        projections = new ConcurrentHashMap<>();
+                    }
+                }
+            }
+            return projections.computeIfAbsent(Pair.of(jobFields, taskFields), key -> {
+                projectionCounter.increment();
+                return project(full, jobFields, taskFields);
+            });
+        }
+
+        private JobChangeNotification getNotification() {
+            if (notification == null) {
+                synchronized (this) {
+                    if (notification == null) {
+                        JobChangeNotification converted = V3GrpcModelConverters.toGrpcJobChangeNotification(event, logStorageInfo);
+                        // Protobuf memoizes the serialized size, which is then reused by each subscriber's marshaller.
+                        converted.getSerializedSize();
+                        conversionCounter.increment();
+                        this.notification = converted;
+                    }
+                }
+            }
+            return notification;
+        }
+    }
+}
@@ -16,6 +16,9 @@
 
 package com.netflix.titus.master.jobmanager.service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -77,6 +80,7 @@ import com.netflix.titus.master.jobmanager.service.event.JobManagerReconcilerEve
 import com.netflix.titus.master.jobmanager.service.event.JobModelReconcilerEvent.JobModelUpdateReconcilerEvent;
 import com.netflix.titus.master.jobmanager.service.event.JobModelReconcilerEvent.JobNewModelReconcilerEvent;
 import com.netflix.titus.master.jobmanager.service.limiter.JobSubmitLimiter;
+import com.netflix.titus.master.jobmanager.service.query.JobQueryEngine;
 import com.netflix.titus.master.jobmanager.service.service.action.BasicServiceJobActions;
 import com.netflix.titus.master.jobmanager.service.service.action.MoveTaskBetweenJobsAction;
 import com.netflix.titus.master.mesos.VirtualMachineMasterService;
@@ -108,6 +112,7 @@ public class DefaultV3JobOperations implements V3JobOperations {
     private final FeatureActivationConfiguration featureActivationConfiguration;
     private final JobReconciliationFrameworkFactory jobReconciliationFrameworkFactory;
     private final JobSubmitLimiter jobSubmitLimiter;
+    private final JobQueryEngine jobQueryEngine;
     private final TitusRuntime titusRuntime;
 
     private ReconciliationFramework<JobManagerReconcilerEvent> reconciliationFramework;
@@ -124,6 +129,7 @@ public class DefaultV3JobOperations implements V3JobOperations {
                                   VirtualMachineMasterService vmService,
                                   JobReconciliationFrameworkFactory jobReconciliationFrameworkFactory,
                                   JobSubmitLimiter jobSubmitLimiter,
+                                  JobQueryEngine jobQueryEngine,
                                   ManagementSubsystemInitializer managementSubsystemInitializer,
                                   TitusRuntime titusRuntime) {
         this.featureActivationConfiguration = featureActivationConfiguration;
@@ -132,6 +138,7 @@ public class DefaultV3JobOperations implements V3JobOperations {
         this.jobManagerConfiguration = jobManagerConfiguration;
         this.jobReconciliationFrameworkFactory = jobReconciliationFrameworkFactory;
         this.jobSubmitLimiter = jobSubmitLimiter;
+        this.jobQueryEngine = jobQueryEngine;
         this.titusRuntime = titusRuntime;
     }
 
@@ -140,11 +147,16 @@ public class DefaultV3JobOperations implements V3JobOperations {
         this.reconciliationFramework = jobReconciliationFrameworkFactory.newInstance();
         this.transactionLoggerSubscription = JobTransactionLogger.logEvents(reconciliationFramework);
 
-        // Remove finished jobs from the reconciliation framework.
+        jobQueryEngine.reset(reconciliationFramework.orderedView(IndexKind.StatusCreationTime));
+
+        // Update the query index, and remove finished jobs from the reconciliation framework.
         this.reconcilerEventSubscription = reconciliationFramework.events().subscribe(
                 event -> {
-                    if (event instanceof JobModelUpdateReconcilerEvent) {
+                    if (event instanceof JobNewModelReconcilerEvent) {
+                        jobQueryEngine.updateJob(((JobNewModelReconcilerEvent) event).getNewRoot());
+                    } else if (event instanceof JobModelUpdateReconcilerEvent) {
                         JobModelUpdateReconcilerEvent jobUpdateEvent = (JobModelUpdateReconcilerEvent) event;
+                        updateQueryIndex(jobUpdateEvent);
                         handleJobCompletedEvent(jobUpdateEvent.getChangedEntityHolder());
                     }
                 },
@@ -155,6 +167,18 @@ public class DefaultV3JobOperations implements V3JobOperations {
         reconciliationFramework.start();
     }
 
+    private void updateQueryIndex(JobModelUpdateReconcilerEvent event) {
+        if (event.getModelActionHolder().getModel() != Model.Reference) {
+            return;
+        }
+        EntityHolder changedEntityHolder = event.getChangedEntityHolder();
+        if (changedEntityHolder.getEntity() instanceof Job) {
+            jobQueryEngine.updateJob(changedEntityHolder);
+        } else {
+            jobQueryEngine.updateTask(changedEntityHolder.getEntity());
+        }
+    }
+
     private boolean handleJobCompletedEvent(EntityHolder changedEntityHolder) {
         if (changedEntityHolder.getEntity() instanceof Job) {
             Job<?> job = changedEntityHolder.getEntity();
@@ -164,7 +188,10 @@ public class DefaultV3JobOperations implements V3JobOperations {
                     String jobId = job.getId();
                     reconciliationFramework.findEngineByRootId(jobId).ifPresent(engine ->
                             reconciliationFramework.removeEngine(engine).subscribe(
-                                    () -> logger.info("Removed reconciliation engine of job {}", jobId),
+                                    () -> {
+                                        jobQueryEngine.removeJob(jobId);
+                                        logger.info("Removed reconciliation engine of job {}", jobId);
+                                    },
                                     e -> logger.warn("Could not remove reconciliation engine of job {}", jobId, e)
                             )
                     );
@@ -293,6 +320,24 @@ public class DefaultV3JobOperations implements V3JobOperations {
         return engine.changeReferenceModel(changeAction, taskId).toCompletable();
     }
 
+    @Override
+    public Completable updateTasks(Map<String, Function<Task, Optional<Task>>> changeFunctions, Trigger trigger, String reason, CallMetadata callMetadata) {
+        return Completable.defer(() -> {
+            Map<ReconciliationEngine<JobManagerReconcilerEvent>, Map<String, Function<Task, Optional<Task>>>> changeFunctionsByEngine = new HashMap<>();
+            changeFunctions.forEach((taskId, changeFunction) ->
+                    reconciliationFramework.findEngineByChildId(taskId).ifPresent(engineAndTask ->
+                            changeFunctionsByEngine.computeIfAbsent(engineAndTask.getLeft(), engine -> new LinkedHashMap<>()).put(taskId, changeFunction)
+                    )
+            );
+            List<Completable> updates = new ArrayList<>();
+            changeFunctionsByEngine.forEach((engine, engineChangeFunctions) -> {
+                TitusChangeAction changeAction = BasicTaskActions.updateTasksInRunningModel(engineChangeFunctions, trigger, jobManagerConfiguration, engine, reason, titusRuntime, callMetadata);
+                updates.add(engine.changeReferenceModel(changeAction).toCompletable());
+            });
+            return Completable.merge(updates);
+        });
+    }
+
     @Override
     public Completable recordTaskPlacement(String taskId, Function<Task, Task> changeFunction, CallMetadata callMetadata) {
         Optional<ReconciliationEngine<JobManagerReconcilerEvent>> engineOpt = reconciliationFramework.findEngineByChildId(taskId).map(Pair::getLeft);
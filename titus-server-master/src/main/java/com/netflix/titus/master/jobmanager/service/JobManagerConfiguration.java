@@ -30,6 +30,13 @@ public interface JobManagerConfiguration {
     @DefaultValue("1")
     long getReconcilerActiveTimeoutMs();
 
+    /**
+     * Number of reconciliation framework shards. Jobs are partitioned by their id between the shards, and each shard runs
+     * its reconciliation loop on a separate thread. The default value (1) runs all jobs in a single reconciliation loop.
+     */
+    @DefaultValue("1")
+    int getReconcilerShardCount();
+
     /**
      * How many active tasks in the transient state (in other words not Started and not Finished) are allowed in a job.
      * If the number of active tasks in the transient state goes above this limit, no new tasks are created.
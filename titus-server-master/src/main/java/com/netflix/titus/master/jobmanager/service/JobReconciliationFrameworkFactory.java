@@ -30,6 +30,7 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import com.netflix.fenzo.queues.QueuableTask;
 import com.netflix.spectator.api.BasicTag;
 import com.netflix.spectator.api.Gauge;
 import com.netflix.spectator.api.Registry;
@@ -56,6 +57,7 @@ import com.netflix.titus.common.framework.reconciler.ReconciliationFramework;
 import com.netflix.titus.common.framework.reconciler.internal.DefaultReconciliationEngine;
 import com.netflix.titus.common.framework.reconciler.internal.DefaultReconciliationFramework;
 import com.netflix.titus.common.framework.reconciler.internal.InternalReconciliationEngine;
+import com.netflix.titus.common.framework.reconciler.internal.ShardedReconciliationFramework;
 import com.netflix.titus.common.model.sanitizer.EntitySanitizer;
 import com.netflix.titus.common.model.sanitizer.EntitySanitizerUtil;
 import com.netflix.titus.common.model.validator.ValidationError;
@@ -195,6 +197,7 @@ public class JobReconciliationFrameworkFactory {
 
         // initialize fenzo with running tasks
         List<InternalReconciliationEngine<JobManagerReconcilerEvent>> engines = new ArrayList<>();
+        Map<String, List<QueuableTask>> runningTasksByHost = new HashMap<>();
         for (Pair<Job, List<Task>> pair : jobsAndTasks) {
             Job job = pair.getLeft();
             List<Task> tasks = pair.getRight();
@@ -203,7 +206,7 @@ public class JobReconciliationFrameworkFactory {
             for (Task task : tasks) {
                 Optional<Task> validatedTask = validateTask(task);
                 if (validatedTask.isPresent()) {
-                    TaskFenzoCheck check = addTaskToFenzo(engine, job, task);
+                    TaskFenzoCheck check = addTaskToFenzo(engine, job, task, runningTasksByHost);
                     if (check == TaskFenzoCheck.FenzoAddError) {
                         errorCollector.taskAddToFenzoError(task.getId());
                     } else if (check == TaskFenzoCheck.Inconsistent) {
@@ -215,8 +218,23 @@ public class JobReconciliationFrameworkFactory {
             }
         }
 
+        addRunningTasksToFenzo(runningTasksByHost);
+
         errorCollector.failIfTooManyBadRecords();
 
+        int shardCount = jobManagerConfiguration.getReconcilerShardCount();
+        if (shardCount > 1) {
+            return new ShardedReconciliationFramework<>(
+                    shardCount,
+                    engines,
+                    bootstrapModel -> newEngine(bootstrapModel, true),
+                    jobManagerConfiguration.getReconcilerIdleTimeoutMs(),
+                    jobManagerConfiguration.getReconcilerActiveTimeoutMs(),
+                    INDEX_COMPARATORS,
+                    registry,
+                    optionalScheduler
+            );
+        }
         return new DefaultReconciliationFramework<>(
                 engines,
                 bootstrapModel -> newEngine(bootstrapModel, true),
@@ -229,12 +247,12 @@ public class JobReconciliationFrameworkFactory {
     }
 
     private InternalReconciliationEngine<JobManagerReconcilerEvent> newRestoredEngine(Job job, List<Task> tasks) {
-        EntityHolder jobHolder = EntityHolder.newRoot(job.getId(), job);
+        List<EntityHolder> taskHolders = new ArrayList<>(tasks.size());
         for (Task task : tasks) {
             EntityHolder taskHolder = EntityHolder.newRoot(task.getId(), task);
-            EntityHolder decorated = TaskTimeoutChangeActions.setTimeoutOnRestoreFromStore(jobManagerConfiguration, taskHolder, clock);
-            jobHolder = jobHolder.addChild(decorated);
+            taskHolders.add(TaskTimeoutChangeActions.setTimeoutOnRestoreFromStore(jobManagerConfiguration, taskHolder, clock));
         }
+        EntityHolder jobHolder = EntityHolder.newRoot(job.getId(), job).addChildren(taskHolders);
         return newEngine(jobHolder, false);
     }
 
@@ -269,8 +287,13 @@ public class JobReconciliationFrameworkFactory {
      * <li>task ok, and should not be added to Fenzo</li>
      * <li>task has inconsistent state, and because of that should not be added</li>
      * </ul>
+     * Running tasks are not added to Fenzo immediately, but collected in <code>runningTasksByHost</code>, and added
+     * in batches, one per host, by {@link #addRunningTasksToFenzo(Map)}.
      */
-    private TaskFenzoCheck addTaskToFenzo(ReconciliationEngine<JobManagerReconcilerEvent> engine, Job job, Task task) {
+    private TaskFenzoCheck addTaskToFenzo(ReconciliationEngine<JobManagerReconcilerEvent> engine,
+                                          Job job,
+                                          Task task,
+                                          Map<String, List<QueuableTask>> runningTasksByHost) {
         TaskState taskState = task.getStatus().getState();
         if (taskState == TaskState.Accepted) {
             try {
@@ -304,7 +327,7 @@ public class JobReconciliationFrameworkFactory {
         try {
             Pair<Tier, String> tierAssignment = JobManagerUtil.getTierAssignment(job, capacityGroupService);
             String host = task.getTaskContext().get(TaskAttributes.TASK_ATTRIBUTES_AGENT_HOST);
-            schedulingService.addRunningTask(new V3QueueableTask(
+            runningTasksByHost.computeIfAbsent(host, h -> new ArrayList<>()).add(new V3QueueableTask(
                     tierAssignment.getLeft(),
                     tierAssignment.getRight(),
                     job,
@@ -313,7 +336,7 @@ public class JobReconciliationFrameworkFactory {
                     constraintEvaluatorTransformer,
                     systemSoftConstraint,
                     systemHardConstraint
-            ), host);
+            ));
         } catch (Exception e) {
             logger.error("Failed to initialize running task in Fenzo: {} with error:", task.getId(), e);
             return TaskFenzoCheck.FenzoAddError;
@@ -321,6 +344,10 @@ public class JobReconciliationFrameworkFactory {
         return TaskFenzoCheck.AddedToFenzo;
     }
 
+    private void addRunningTasksToFenzo(Map<String, List<QueuableTask>> runningTasksByHost) {
+        runningTasksByHost.forEach((host, tasks) -> schedulingService.addRunningTasks(host, tasks).forEach(errorCollector::taskAddToFenzoError));
+    }
+
     /**
      * If the task is in KillInitiated state without resources assigned (this may happen for transition Accepted -> KillInitiated,
      * as we always run through that state), do not add the task to Fenzo, as it was never assigned to any host, and we do
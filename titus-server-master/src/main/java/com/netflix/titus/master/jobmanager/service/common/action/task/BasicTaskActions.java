@@ -19,6 +19,7 @@ package com.netflix.titus.master.jobmanager.service.common.action.task;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Function;
@@ -56,10 +57,14 @@ import com.netflix.titus.master.scheduler.constraint.ConstraintEvaluatorTransfor
 import com.netflix.titus.master.scheduler.constraint.SystemHardConstraint;
 import com.netflix.titus.master.scheduler.constraint.SystemSoftConstraint;
 import com.netflix.titus.master.service.management.ApplicationSlaManagementService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import rx.Observable;
 
 public class BasicTaskActions {
 
+    private static final Logger logger = LoggerFactory.getLogger(BasicTaskActions.class);
+
     /**
      * Update a task, and write it to store before updating reference and store models.
      * This action is used when handling user initiated updates.
@@ -145,54 +150,105 @@ public class BasicTaskActions {
                 .id(taskId)
                 .trigger(trigger)
                 .summary(reason)
+                .applyModelUpdates(self -> updateTaskInRunningModel(
+                        taskId, engine, changeFunction, task -> TitusModelAction.newModelUpdate(self), configuration, titusRuntime, callMetadata
+                ));
+    }
+
+    /**
+     * Batch version of {@link #updateTaskInRunningModel(String, Trigger, JobManagerConfiguration, ReconciliationEngine, Function, String, TitusRuntime, CallMetadata)},
+     * which updates multiple tasks of a job in a single change action. Tasks not found are ignored. A failing task update
+     * is logged and skipped, and does not affect updates of the other tasks. Each task update is recorded as a separate
+     * model action, with the new task state in its summary.
+     */
+    public static TitusChangeAction updateTasksInRunningModel(Map<String, Function<Task, Optional<Task>>> changeFunctions,
+                                                              Trigger trigger,
+                                                              JobManagerConfiguration configuration,
+                                                              ReconciliationEngine<JobManagerReconcilerEvent> engine,
+                                                              String reason,
+                                                              TitusRuntime titusRuntime,
+                                                              CallMetadata callMetadata) {
+        return TitusChangeAction.newAction("updateTasksInRunningModel")
+                .id(engine.getReferenceView().getId())
+                .trigger(trigger)
+                .summary(reason)
                 .applyModelUpdates(self -> {
-                            Optional<EntityHolder> taskOptional = JobEntityHolders.expectTaskHolder(engine, taskId, titusRuntime);
-                            if (!taskOptional.isPresent()) {
-                                return Collections.emptyList();
-                            }
-                            EntityHolder taskHolder = taskOptional.get();
-                            Task oldTask = taskHolder.getEntity();
-                            Optional<Task> maybeNewTask = changeFunction.apply(oldTask);
-                            if (!maybeNewTask.isPresent()) {
-                                return Collections.emptyList();
-                            }
-                            Task newTask = maybeNewTask.get();
-
-                            // Handle separately reference and runtime models, as only reference model gets retry attributes.
                             List<ModelActionHolder> modelActionHolders = new ArrayList<>();
-
-                            // Add retryer data to task context.
-                            EntityHolder newTaskHolder;
-                            if (newTask.getStatus().getState() == TaskState.Finished) {
-                                long retryDelayMs = TaskRetryers.getCurrentRetryerDelayMs(
-                                        taskHolder, configuration.getMinRetryIntervalMs(), configuration.getTaskRetryerResetTimeMs(), titusRuntime.getClock()
-                                );
-                                String retryDelayString = DateTimeExt.toTimeUnitString(retryDelayMs);
-
-                                newTask = newTask.toBuilder()
-                                        .addToTaskContext(TaskAttributes.TASK_ATTRIBUTES_RETRY_DELAY, retryDelayString)
-                                        .build();
-                                newTaskHolder = taskHolder.
-                                        setEntity(newTask)
-                                        .addTag(JobManagerConstants.JOB_MANAGER_ATTRIBUTE_CALLMETADATA, callMetadata)
-                                        .addTag(TaskRetryers.ATTR_TASK_RETRY_DELAY_MS, retryDelayMs);
-
-                                modelActionHolders.add(
-                                        ModelActionHolder.reference(TitusModelAction.newModelUpdate(self)
-                                                .summary("Setting retry delay on task in Finished state: %s", retryDelayString)
-                                                .addTaskHolder(newTaskHolder))
-                                );
-                            } else {
-                                modelActionHolders.add(ModelActionHolder.reference(TitusModelAction.newModelUpdate(self).taskUpdate(newTask, callMetadata)));
-                            }
-
-                            modelActionHolders.add(ModelActionHolder.running(TitusModelAction.newModelUpdate(self).taskUpdate(newTask, callMetadata)));
-
+                            changeFunctions.forEach((taskId, changeFunction) -> {
+                                try {
+                                    modelActionHolders.addAll(updateTaskInRunningModel(
+                                            taskId,
+                                            engine,
+                                            changeFunction,
+                                            task -> TitusModelAction.newModelUpdate("updateTaskInRunningModel")
+                                                    .task(task)
+                                                    .trigger(trigger)
+                                                    .summary("%s -> %s", trigger, task.getStatus()),
+                                            configuration,
+                                            titusRuntime,
+                                            callMetadata
+                                    ));
+                                } catch (Exception e) {
+                                    logger.warn("Could not update task {} in a batch update of job {} ({})", taskId, engine.getReferenceView().getId(), e.toString());
+                                }
+                            });
                             return modelActionHolders;
                         }
                 );
     }
 
+    private static List<ModelActionHolder> updateTaskInRunningModel(String taskId,
+                                                                    ReconciliationEngine<JobManagerReconcilerEvent> engine,
+                                                                    Function<Task, Optional<Task>> changeFunction,
+                                                                    Function<Task, TitusModelAction.Builder> modelUpdateFactory,
+                                                                    JobManagerConfiguration configuration,
+                                                                    TitusRuntime titusRuntime,
+                                                                    CallMetadata callMetadata) {
+        Optional<EntityHolder> taskOptional = JobEntityHolders.expectTaskHolder(engine, taskId, titusRuntime);
+        if (!taskOptional.isPresent()) {
+            return Collections.emptyList();
+        }
+        EntityHolder taskHolder = taskOptional.get();
+        Task oldTask = taskHolder.getEntity();
+        Optional<Task> maybeNewTask = changeFunction.apply(oldTask);
+        if (!maybeNewTask.isPresent()) {
+            return Collections.emptyList();
+        }
+        Task newTask = maybeNewTask.get();
+
+        // Handle separately reference and runtime models, as only reference model gets retry attributes.
+        List<ModelActionHolder> modelActionHolders = new ArrayList<>();
+
+        // Add retryer data to task context.
+        EntityHolder newTaskHolder;
+        if (newTask.getStatus().getState() == TaskState.Finished) {
+            long retryDelayMs = TaskRetryers.getCurrentRetryerDelayMs(
+                    taskHolder, configuration.getMinRetryIntervalMs(), configuration.getTaskRetryerResetTimeMs(), titusRuntime.getClock()
+            );
+            String retryDelayString = DateTimeExt.toTimeUnitString(retryDelayMs);
+
+            newTask = newTask.toBuilder()
+                    .addToTaskContext(TaskAttributes.TASK_ATTRIBUTES_RETRY_DELAY, retryDelayString)
+                    .build();
+            newTaskHolder = taskHolder.
+                    setEntity(newTask)
+                    .addTag(JobManagerConstants.JOB_MANAGER_ATTRIBUTE_CALLMETADATA, callMetadata)
+                    .addTag(TaskRetryers.ATTR_TASK_RETRY_DELAY_MS, retryDelayMs);
+
+            modelActionHolders.add(
+                    ModelActionHolder.reference(modelUpdateFactory.apply(newTask)
+                            .summary("Setting retry delay on task in Finished state: %s", retryDelayString)
+                            .addTaskHolder(newTaskHolder))
+            );
+        } else {
+            modelActionHolders.add(ModelActionHolder.reference(modelUpdateFactory.apply(newTask).taskUpdate(newTask, callMetadata)));
+        }
+
+        modelActionHolders.add(ModelActionHolder.running(modelUpdateFactory.apply(newTask).taskUpdate(newTask, callMetadata)));
+
+        return modelActionHolders;
+    }
+
     /**
      * Add a task to {@link SchedulingService}, and create runtime entity holder for it.
      */
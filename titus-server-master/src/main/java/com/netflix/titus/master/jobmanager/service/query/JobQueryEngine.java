@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.service.query;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.model.Page;
+import com.netflix.titus.api.model.Pagination;
+import com.netflix.titus.api.model.PaginationUtil;
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.grpc.protogen.JobDescriptor.JobSpecCase;
+import com.netflix.titus.grpc.protogen.TaskStatus;
+import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3JobQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3TaskQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.jobmanager.JobManagerCursors;
+
+/**
+ * Answers paginated job and task queries from a {@link JobQueryIndex}, which is maintained from the job reconciler
+ * events by {@link com.netflix.titus.master.jobmanager.service.DefaultV3JobOperations}. As the query results come
+ * from the index in the cursor order, a page is located by seeking the cursor position, without sorting the result.
+ */
+@Singleton
+public class JobQueryEngine {
+
+    private final TitusRuntime titusRuntime;
+
+    private final Object lock = new Object();
+    private volatile JobQueryIndex index = JobQueryIndex.empty();
+
+    @Inject
+    public JobQueryEngine(TitusRuntime titusRuntime) {
+        this.titusRuntime = titusRuntime;
+    }
+
+    public JobQueryIndex getIndex() {
+        return index;
+    }
+
+    public Pair<List<Job<?>>, Pagination> findJobs(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria, Page page) {
+        List<Job<?>> matchingJobs = index.findJobs(criteria, new V3JobQueryCriteriaEvaluator(criteria, titusRuntime));
+        return PaginationUtil.takePageWithCursorFromSorted(
+                page,
+                matchingJobs,
+                JobManagerCursors::coreJobIndexOf,
+                JobManagerCursors::newCoreCursorFrom
+        );
+    }
+
+    public Pair<List<Task>, Pagination> findTasks(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria, Page page) {
+        List<Task> matchingTasks = index.findTasks(criteria, new V3TaskQueryCriteriaEvaluator(criteria, titusRuntime));
+        return PaginationUtil.takePageWithCursorFromSorted(
+                page,
+                matchingTasks,
+                JobManagerCursors::coreTaskIndexOf,
+                JobManagerCursors::newCoreCursorFrom
+        );
+    }
+
+    /**
+     * Replaces the index content with the given job holders (a job entity with its task entities as children).
+     */
+    public void reset(List<EntityHolder> jobHolders) {
+        JobQueryIndex newIndex = JobQueryIndex.empty();
+        for (EntityHolder jobHolder : jobHolders) {
+            newIndex = newIndex.withJob(jobHolder.getEntity(), toTasks(jobHolder));
+        }
+        JobQueryIndex result = newIndex;
+        update(current -> result);
+    }
+
+    /**
+     * Updates a job and its tasks from the job holder (a job entity with its task entities as children).
+     */
+    public void updateJob(EntityHolder jobHolder) {
+        Job<?> job = jobHolder.getEntity();
+        List<Task> tasks = toTasks(jobHolder);
+        update(current -> current.withJob(job, tasks));
+    }
+
+    public void updateTask(Task task) {
+        update(current -> current.withTask(task));
+    }
+
+    public void removeJob(String jobId) {
+        update(current -> current.withoutJob(jobId));
+    }
+
+    private void update(UnaryOperator<JobQueryIndex> updater) {
+        synchronized (lock) {
+            this.index = updater.apply(index);
+        }
+    }
+
+    private static List<Task> toTasks(EntityHolder jobHolder) {
+        return jobHolder.getChildren().stream().map(EntityHolder::<Task>getEntity).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,560 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.service.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobState;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.common.util.collections.PersistentHashMap;
+import com.netflix.titus.common.util.collections.PersistentSortedSet;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.grpc.protogen.JobDescriptor.JobSpecCase;
+import com.netflix.titus.grpc.protogen.JobStatus;
+import com.netflix.titus.grpc.protogen.TaskStatus;
+import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
+import com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters;
+import com.netflix.titus.runtime.jobmanager.JobManagerCursors;
+
+/**
+ * Immutable index of active jobs and tasks, with secondary indexes on the most common query criteria. All job and task
+ * collections are kept in the pagination cursor order, so query results need no sorting, and a page can be found by
+ * seeking the cursor position. Updates share all unchanged data with the previous version of the index.
+ * <p>
+ * A query picks the most selective index among its criteria, and evaluates the full query predicate only against
+ * the entities found in it. A query without criteria returns a view of the whole ordered collection.
+ */
+public class JobQueryIndex {
+
+    private static final Comparator<Job<?>> JOB_ORDER = JobManagerCursors.coreJobCursorOrderComparator();
+    private static final Comparator<Task> TASK_ORDER = JobManagerCursors.coreTaskCursorOrderComparator();
+
+    private static final JobQueryIndex EMPTY = new JobQueryIndex(
+            PersistentHashMap.empty(),
+            PersistentSortedSet.empty(JOB_ORDER),
+            PersistentHashMap.empty(),
+            PersistentHashMap.empty(),
+            PersistentSortedSet.empty(TASK_ORDER),
+            PersistentHashMap.empty(),
+            PersistentHashMap.empty()
+    );
+
+    enum KeyKind {Owner, AppName, CapacityGroup, ImageName, JobState, Label}
+
+    private final PersistentHashMap<String, Job<?>> jobsById;
+    private final PersistentSortedSet<Job<?>> jobs;
+    private final PersistentHashMap<IndexKey, PersistentSortedSet<Job<?>>> jobsByKey;
+
+    private final PersistentHashMap<String, Task> tasksById;
+    private final PersistentSortedSet<Task> tasks;
+    private final PersistentHashMap<String, PersistentSortedSet<Task>> tasksByJobId;
+    private final PersistentHashMap<TaskState, PersistentSortedSet<Task>> tasksByState;
+
+    private JobQueryIndex(PersistentHashMap<String, Job<?>> jobsById,
+                          PersistentSortedSet<Job<?>> jobs,
+                          PersistentHashMap<IndexKey, PersistentSortedSet<Job<?>>> jobsByKey,
+                          PersistentHashMap<String, Task> tasksById,
+                          PersistentSortedSet<Task> tasks,
+                          PersistentHashMap<String, PersistentSortedSet<Task>> tasksByJobId,
+                          PersistentHashMap<TaskState, PersistentSortedSet<Task>> tasksByState) {
+        this.jobsById = jobsById;
+        this.jobs = jobs;
+        this.jobsByKey = jobsByKey;
+        this.tasksById = tasksById;
+        this.tasks = tasks;
+        this.tasksByJobId = tasksByJobId;
+        this.tasksByState = tasksByState;
+    }
+
+    public static JobQueryIndex empty() {
+        return EMPTY;
+    }
+
+    public int getJobCount() {
+        return jobs.size();
+    }
+
+    public int getTaskCount() {
+        return tasks.size();
+    }
+
+    public Optional<Job<?>> findJob(String jobId) {
+        return Optional.ofNullable(jobsById.get(jobId));
+    }
+
+    public List<Task> getTasks(String jobId) {
+        PersistentSortedSet<Task> jobTasks = tasksByJobId.get(jobId);
+        return jobTasks == null ? Collections.emptyList() : jobTasks.asList();
+    }
+
+    /**
+     * Replaces a job and all its tasks.
+     */
+    public JobQueryIndex withJob(Job<?> job, Collection<Task> jobTasks) {
+        Updater updater = new Updater(this);
+
+        Job<?> previous = jobsById.get(job.getId());
+        if (previous != job) {
+            if (previous != null) {
+                updater.removeJob(previous);
+            }
+            updater.addJob(job);
+        }
+
+        PersistentSortedSet<Task> previousTasks = tasksByJobId.get(job.getId());
+        if (previousTasks != null) {
+            Set<String> taskIds = new HashSet<>();
+            jobTasks.forEach(task -> taskIds.add(task.getId()));
+            previousTasks.forEach(task -> {
+                if (!taskIds.contains(task.getId())) {
+                    updater.removeTask(task);
+                }
+            });
+        }
+        jobTasks.forEach(updater::addOrUpdateTask);
+
+        return updater.build();
+    }
+
+    /**
+     * Adds or updates a task. If the task belonged to another job before, it is removed from that job. Tasks of
+     * jobs not present in the index are ignored.
+     */
+    public JobQueryIndex withTask(Task task) {
+        if (!jobsById.containsKey(task.getJobId()) || tasksById.get(task.getId()) == task) {
+            return this;
+        }
+        Updater updater = new Updater(this);
+        updater.addOrUpdateTask(task);
+        return updater.build();
+    }
+
+    /**
+     * Removes a job and all its tasks.
+     */
+    public JobQueryIndex withoutJob(String jobId) {
+        Job<?> job = jobsById.get(jobId);
+        if (job == null) {
+            return this;
+        }
+        Updater updater = new Updater(this);
+        updater.removeJob(job);
+        PersistentSortedSet<Task> jobTasks = tasksByJobId.get(jobId);
+        if (jobTasks != null) {
+            jobTasks.forEach(updater::removeTask);
+        }
+        return updater.build();
+    }
+
+    /**
+     * Returns jobs matching the query criteria in the cursor order.
+     *
+     * @param predicate predicate equivalent to the criteria, evaluated against the jobs found in the secondary indexes
+     */
+    public List<Job<?>> findJobs(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria,
+                                 Predicate<Pair<Job<?>, List<Task>>> predicate) {
+        if (isUnfiltered(criteria)) {
+            return jobs.asList();
+        }
+
+        Candidates<Job<?>> candidates = Candidates.of(jobs.size(), jobs::asList);
+        candidates = candidates.orSmaller(findJobCandidatesById(criteria));
+        candidates = candidates.orSmaller(findJobCandidatesByKey(criteria));
+
+        List<Job<?>> result = new ArrayList<>();
+        for (Job<?> job : candidates.get()) {
+            if (predicate.test(Pair.of(job, getTasks(job.getId())))) {
+                result.add(job);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns tasks matching the query criteria in the cursor order.
+     *
+     * @param predicate predicate equivalent to the criteria, evaluated against the tasks found in the secondary indexes
+     */
+    public List<Task> findTasks(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria,
+                                Predicate<Pair<Job<?>, Task>> predicate) {
+        if (isUnfiltered(criteria)) {
+            return tasks.asList();
+        }
+
+        Candidates<Task> candidates = Candidates.of(tasks.size(), tasks::asList);
+        candidates = candidates.orSmaller(findTaskCandidatesById(criteria));
+        candidates = candidates.orSmaller(findTaskCandidatesByState(criteria));
+
+        // Job level criteria. Tasks of the selected jobs must be merged and sorted.
+        Candidates<Job<?>> jobCandidates = Candidates.smallest(findJobCandidatesByJobIds(criteria), findJobCandidatesByKey(criteria));
+        if (jobCandidates != null) {
+            List<Job<?>> selectedJobs = jobCandidates.get();
+            int taskCount = 0;
+            for (Job<?> job : selectedJobs) {
+                taskCount += getTasks(job.getId()).size();
+            }
+            candidates = candidates.orSmaller(Candidates.of(taskCount, () -> {
+                List<Task> jobTasks = new ArrayList<>();
+                selectedJobs.forEach(job -> jobTasks.addAll(getTasks(job.getId())));
+                jobTasks.sort(TASK_ORDER);
+                return jobTasks;
+            }));
+        }
+
+        List<Task> result = new ArrayList<>();
+        for (Task task : candidates.get()) {
+            Job<?> job = jobsById.get(task.getJobId());
+            if (job != null && predicate.test(Pair.of(job, task))) {
+                result.add(task);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isUnfiltered(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+        return criteria.isEmpty() && criteria.getTaskStateReasons().isEmpty();
+    }
+
+    private Candidates<Job<?>> findJobCandidatesByJobIds(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+        if (criteria.getJobIds().isEmpty()) {
+            return null;
+        }
+        return Candidates.of(criteria.getJobIds().size(), () -> sortedJobs(criteria.getJobIds()));
+    }
+
+    private Candidates<Job<?>> findJobCandidatesById(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+        Candidates<Job<?>> result = findJobCandidatesByJobIds(criteria);
+        if (!criteria.getTaskIds().isEmpty()) {
+            Candidates<Job<?>> byTaskIds = Candidates.of(criteria.getTaskIds().size(), () -> {
+                Set<String> jobIds = new LinkedHashSet<>();
+                for (String taskId : criteria.getTaskIds()) {
+                    Task task = tasksById.get(taskId);
+                    if (task != null) {
+                        jobIds.add(task.getJobId());
+                    }
+                }
+                return sortedJobs(jobIds);
+            });
+            result = Candidates.smallest(result, byTaskIds);
+        }
+        return result;
+    }
+
+    private Candidates<Job<?>> findJobCandidatesByKey(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+        List<IndexKey> keys = new ArrayList<>();
+        criteria.getOwner().ifPresent(owner -> keys.add(new IndexKey(KeyKind.Owner, owner)));
+        criteria.getAppName().ifPresent(appName -> keys.add(new IndexKey(KeyKind.AppName, appName)));
+        criteria.getCapacityGroup().ifPresent(capacityGroup -> keys.add(new IndexKey(KeyKind.CapacityGroup, capacityGroup)));
+        criteria.getImageName().ifPresent(imageName -> keys.add(new IndexKey(KeyKind.ImageName, imageName)));
+        criteria.getJobState().ifPresent(jobState -> keys.add(
+                new IndexKey(KeyKind.JobState, V3GrpcModelConverters.toCoreJobState((JobStatus.JobState) jobState).name())
+        ));
+
+        Candidates<Job<?>> result = null;
+        for (IndexKey key : keys) {
+            PersistentSortedSet<Job<?>> keyJobs = jobsByKey.get(key);
+            Candidates<Job<?>> next = keyJobs == null
+                    ? Candidates.of(0, Collections::emptyList)
+                    : Candidates.of(keyJobs.size(), keyJobs::asList);
+            result = Candidates.smallest(result, next);
+        }
+
+        // With the 'or' operator, a single label key is the only case where the label index can be used.
+        Map<String, Set<String>> labels = criteria.getLabels();
+        if (!labels.isEmpty() && (criteria.isLabelsAndOp() || labels.size() == 1)) {
+            for (Map.Entry<String, Set<String>> entry : labels.entrySet()) {
+                Candidates<Job<?>> next = findJobCandidatesByLabel(entry.getKey(), entry.getValue());
+                result = Candidates.smallest(result, next);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Label criteria with no values match any value of the label, which is not indexed.
+     */
+    private Candidates<Job<?>> findJobCandidatesByLabel(String name, Set<String> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        List<PersistentSortedSet<Job<?>>> sets = new ArrayList<>();
+        int size = 0;
+        for (String value : values) {
+            PersistentSortedSet<Job<?>> labelJobs = jobsByKey.get(new IndexKey(KeyKind.Label, labelValue(name, value)));
+            if (labelJobs != null) {
+                sets.add(labelJobs);
+                size += labelJobs.size();
+            }
+        }
+        if (sets.size() <= 1) {
+            return sets.isEmpty() ? Candidates.of(0, Collections::emptyList) : Candidates.of(size, sets.get(0)::asList);
+        }
+        return Candidates.of(size, () -> {
+            List<Job<?>> result = new ArrayList<>();
+            sets.forEach(set -> result.addAll(set.asList()));
+            result.sort(JOB_ORDER);
+            return result;
+        });
+    }
+
+    private Candidates<Task> findTaskCandidatesById(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+        if (criteria.getTaskIds().isEmpty()) {
+            return null;
+        }
+        return Candidates.of(criteria.getTaskIds().size(), () -> {
+            List<Task> result = new ArrayList<>();
+            for (String taskId : criteria.getTaskIds()) {
+                Task task = tasksById.get(taskId);
+                if (task != null) {
+                    result.add(task);
+                }
+            }
+            result.sort(TASK_ORDER);
+            return result;
+        });
+    }
+
+    private Candidates<Task> findTaskCandidatesByState(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+        if (criteria.getTaskStates().isEmpty()) {
+            return null;
+        }
+        Set<TaskState> states = new HashSet<>();
+        criteria.getTaskStates().forEach(state -> states.add(V3GrpcModelConverters.toCoreTaskState(state)));
+
+        List<PersistentSortedSet<Task>> sets = new ArrayList<>();
+        int size = 0;
+        for (TaskState state : states) {
+            PersistentSortedSet<Task> stateTasks = tasksByState.get(state);
+            if (stateTasks != null) {
+                sets.add(stateTasks);
+                size += stateTasks.size();
+            }
+        }
+        if (sets.size() <= 1) {
+            return sets.isEmpty() ? Candidates.of(0, Collections::emptyList) : Candidates.of(size, sets.get(0)::asList);
+        }
+        return Candidates.of(size, () -> {
+            List<Task> result = new ArrayList<>();
+            sets.forEach(set -> result.addAll(set.asList()));
+            result.sort(TASK_ORDER);
+            return result;
+        });
+    }
+
+    private List<Job<?>> sortedJobs(Collection<String> jobIds) {
+        List<Job<?>> result = new ArrayList<>();
+        for (String jobId : jobIds) {
+            Job<?> job = jobsById.get(jobId);
+            if (job != null) {
+                result.add(job);
+            }
+        }
+        result.sort(JOB_ORDER);
+        return result;
+    }
+
+    private static List<IndexKey> getKeys(Job<?> job) {
+        List<IndexKey> keys = new ArrayList<>();
+        com.netflix.titus.api.jobmanager.model.job.JobDescriptor<?> descriptor = job.getJobDescriptor();
+        if (descriptor.getOwner() != null && descriptor.getOwner().getTeamEmail() != null) {
+            keys.add(new IndexKey(KeyKind.Owner, descriptor.getOwner().getTeamEmail()));
+        }
+        if (descriptor.getApplicationName() != null) {
+            keys.add(new IndexKey(KeyKind.AppName, descriptor.getApplicationName()));
+        }
+        if (descriptor.getCapacityGroup() != null) {
+            keys.add(new IndexKey(KeyKind.CapacityGroup, descriptor.getCapacityGroup()));
+        }
+        if (descriptor.getContainer() != null && descriptor.getContainer().getImage() != null
+                && descriptor.getContainer().getImage().getName() != null) {
+            keys.add(new IndexKey(KeyKind.ImageName, descriptor.getContainer().getImage().getName()));
+        }
+        JobState state = job.getStatus().getState();
+        keys.add(new IndexKey(KeyKind.JobState, state.name()));
+        descriptor.getAttributes().forEach((name, value) -> keys.add(new IndexKey(KeyKind.Label, labelValue(name, value))));
+        return keys;
+    }
+
+    private static String labelValue(String name, String value) {
+        return name + '=' + value;
+    }
+
+    /**
+     * Accumulates changes to all index structures, and creates a new index version from them.
+     */
+    private static class Updater {
+
+        private PersistentHashMap<String, Job<?>> jobsById;
+        private PersistentSortedSet<Job<?>> jobs;
+        private PersistentHashMap<IndexKey, PersistentSortedSet<Job<?>>> jobsByKey;
+        private PersistentHashMap<String, Task> tasksById;
+        private PersistentSortedSet<Task> tasks;
+        private PersistentHashMap<String, PersistentSortedSet<Task>> tasksByJobId;
+        private PersistentHashMap<TaskState, PersistentSortedSet<Task>> tasksByState;
+
+        private Updater(JobQueryIndex index) {
+            this.jobsById = index.jobsById;
+            this.jobs = index.jobs;
+            this.jobsByKey = index.jobsByKey;
+            this.tasksById = index.tasksById;
+            this.tasks = index.tasks;
+            this.tasksByJobId = index.tasksByJobId;
+            this.tasksByState = index.tasksByState;
+        }
+
+        private void addJob(Job<?> job) {
+            jobsById = jobsById.with(job.getId(), job);
+            jobs = jobs.add(job);
+            for (IndexKey key : getKeys(job)) {
+                jobsByKey = addToGroup(jobsByKey, key, job, JOB_ORDER);
+            }
+        }
+
+        private void removeJob(Job<?> job) {
+            jobsById = jobsById.without(job.getId());
+            jobs = jobs.remove(job);
+            for (IndexKey key : getKeys(job)) {
+                jobsByKey = removeFromGroup(jobsByKey, key, job);
+            }
+        }
+
+        private void addOrUpdateTask(Task task) {
+            Task previous = tasksById.get(task.getId());
+            if (previous == task) {
+                return;
+            }
+            if (previous != null) {
+                removeTask(previous);
+            }
+            tasksById = tasksById.with(task.getId(), task);
+            tasks = tasks.add(task);
+            tasksByJobId = addToGroup(tasksByJobId, task.getJobId(), task, TASK_ORDER);
+            tasksByState = addToGroup(tasksByState, task.getStatus().getState(), task, TASK_ORDER);
+        }
+
+        /**
+         * Removes the task, if the given instance is the indexed one. If a task was moved to another job, and the new
+         * version is already indexed, an update of the previous job must not remove it.
+         */
+        private void removeTask(Task task) {
+            if (tasksById.get(task.getId()) != task) {
+                return;
+            }
+            tasksById = tasksById.without(task.getId());
+            tasks = tasks.remove(task);
+            tasksByJobId = removeFromGroup(tasksByJobId, task.getJobId(), task);
+            tasksByState = removeFromGroup(tasksByState, task.getStatus().getState(), task);
+        }
+
+        private JobQueryIndex build() {
+            return new JobQueryIndex(jobsById, jobs, jobsByKey, tasksById, tasks, tasksByJobId, tasksByState);
+        }
+
+        private static <K, T> PersistentHashMap<K, PersistentSortedSet<T>> addToGroup(PersistentHashMap<K, PersistentSortedSet<T>> groups,
+                                                                                     K key,
+                                                                                     T value,
+                                                                                     Comparator<T> comparator) {
+            PersistentSortedSet<T> group = groups.get(key);
+            return groups.with(key, (group == null ? PersistentSortedSet.empty(comparator) : group).add(value));
+        }
+
+        private static <K, T> PersistentHashMap<K, PersistentSortedSet<T>> removeFromGroup(PersistentHashMap<K, PersistentSortedSet<T>> groups,
+                                                                                          K key,
+                                                                                          T value) {
+            PersistentSortedSet<T> group = groups.get(key);
+            if (group == null) {
+                return groups;
+            }
+            PersistentSortedSet<T> updated = group.remove(value);
+            if (updated == group) {
+                return groups;
+            }
+            return updated.isEmpty() ? groups.without(key) : groups.with(key, updated);
+        }
+    }
+
+    /**
+     * A lazily evaluated list of entities in the cursor order, with a known upper bound on its size.
+     */
+    private static class Candidates<T> {
+
+        private final int size;
+        private final Supplier<List<T>> supplier;
+
+        private Candidates(int size, Supplier<List<T>> supplier) {
+            this.size = size;
+            this.supplier = supplier;
+        }
+
+        private List<T> get() {
+            return supplier.get();
+        }
+
+        private Candidates<T> orSmaller(Candidates<T> other) {
+            return other != null && other.size < size ? other : this;
+        }
+
+        private static <T> Candidates<T> of(int size, Supplier<List<T>> supplier) {
+            return new Candidates<>(size, supplier);
+        }
+
+        private static <T> Candidates<T> smallest(Candidates<T> first, Candidates<T> second) {
+            return first == null ? second : first.orSmaller(second);
+        }
+    }
+
+    private static class IndexKey {
+
+        private final KeyKind kind;
+        private final String value;
+
+        private IndexKey(KeyKind kind, String value) {
+            this.kind = kind;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            IndexKey indexKey = (IndexKey) o;
+            return kind == indexKey.kind && value.equals(indexKey.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * kind.hashCode() + value.hashCode();
+        }
+    }
+}
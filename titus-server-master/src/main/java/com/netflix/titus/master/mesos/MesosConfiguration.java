@@ -43,6 +43,20 @@ public interface MesosConfiguration {
     @DefaultValue("false")
     boolean isAllowReconcilerUpdatesForUnknownTasks();
 
+    /**
+     * @return time window in which Mesos task status updates are collected, and applied to the job reconcilers together.
+     * If set to 0 (default), each update is applied immediately.
+     */
+    @DefaultValue("0")
+    long getTaskStatusUpdateBatchingWindowMs();
+
+    /**
+     * @return maximum number of task status updates in a batch. When reached, the batch is applied before the end of
+     * the batching window.
+     */
+    @DefaultValue("1000")
+    int getTaskStatusUpdateMaxBatchSize();
+
     /**
      * @return whether or not the nested containers should be allowed.
      */
@@ -25,9 +25,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import com.google.common.cache.Cache;
@@ -37,13 +35,13 @@ import com.netflix.fenzo.functions.Action1;
 import com.netflix.fenzo.plugins.VMLeaseObject;
 import com.netflix.spectator.api.Counter;
 import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
 import com.netflix.titus.api.jobmanager.TaskAttributes;
 import com.netflix.titus.api.jobmanager.model.job.Task;
 import com.netflix.titus.api.jobmanager.service.V3JobOperations;
 import com.netflix.titus.common.framework.fit.FitInjection;
 import com.netflix.titus.common.runtime.TitusRuntime;
 import com.netflix.titus.common.util.CollectionsExt;
-import com.netflix.titus.common.util.RegExpExt;
 import com.netflix.titus.common.util.StringExt;
 import com.netflix.titus.master.MetricConstants;
 import com.netflix.titus.master.config.MasterConfiguration;
@@ -104,11 +102,10 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
     private long reconciliationTrial = 0;
     private final com.netflix.fenzo.functions.Action1<List<? extends VirtualMachineLease>> leaseHandler;
 
-    private final Function<String, Matcher> invalidRequestMessageMatcherFactory;
-    private final Function<String, Matcher> crashedMessageMatcherFactory;
-    private final Function<String, Matcher> transientSystemErrorMessageMatcherFactory;
-    private final Function<String, Matcher> localSystemErrorMessageMatcherFactory;
-    private final Function<String, Matcher> unknownSystemErrorMessageMatcherFactory;
+    private final TaskStatusReasonClassifier reasonClassifier;
+    private final Timer statusUpdateTimer;
+    private final Timer reasonClassificationTimer;
+    private final Timer executorDetailsParseTimer;
 
     private final Subscription subscription;
     private ScheduledThreadPoolExecutor executor;
@@ -151,11 +148,11 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
         numInvalidOffers = registry.counter(MetricConstants.METRIC_MESOS + "numInvalidOffers");
         numOfferTooSmall = registry.counter(MetricConstants.METRIC_MESOS + "numOfferTooSmall");
 
-        this.invalidRequestMessageMatcherFactory = RegExpExt.dynamicMatcher(mesosConfiguration::getInvalidRequestMessagePattern, "invalidRequestMessagePattern", Pattern.DOTALL, logger);
-        this.crashedMessageMatcherFactory = RegExpExt.dynamicMatcher(mesosConfiguration::getCrashedMessagePattern, "crashedMessagePattern", Pattern.DOTALL, logger);
-        this.transientSystemErrorMessageMatcherFactory = RegExpExt.dynamicMatcher(mesosConfiguration::getTransientSystemErrorMessagePattern, "transientSystemErrorMessagePattern", Pattern.DOTALL, logger);
-        this.localSystemErrorMessageMatcherFactory = RegExpExt.dynamicMatcher(mesosConfiguration::getLocalSystemErrorMessagePattern, "localSystemErrorMessagePattern", Pattern.DOTALL, logger);
-        this.unknownSystemErrorMessageMatcherFactory = RegExpExt.dynamicMatcher(mesosConfiguration::getUnknownSystemErrorMessagePattern, "unknownSystemErrorMessagePattern", Pattern.DOTALL, logger);
+        statusUpdateTimer = registry.timer(MetricConstants.METRIC_MESOS + "statusUpdate.callbackTime");
+        reasonClassificationTimer = registry.timer(MetricConstants.METRIC_MESOS + "statusUpdate.reasonClassificationTime");
+        executorDetailsParseTimer = registry.timer(MetricConstants.METRIC_MESOS + "statusUpdate.executorDetailsParseTime");
+
+        this.reasonClassifier = new TaskStatusReasonClassifier(mesosConfiguration);
 
         this.subscription = Observable
                 .interval(10, 10, TimeUnit.SECONDS)
@@ -370,6 +367,7 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
 
     @Override
     public void statusUpdate(final SchedulerDriver arg0, TaskStatus taskStatus) {
+        long startTime = registry.clock().monotonicTime();
         try {
             String taskId = taskStatus.getTaskId().getValue();
             TaskState taskState = taskStatus.getState();
@@ -396,6 +394,8 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
         } catch (Exception e) {
             logger.error("Unexpected error when handling the status update: {}", taskStatus, e);
             throw e;
+        } finally {
+            statusUpdateTimer.record(registry.clock().monotonicTime() - startTime, TimeUnit.NANOSECONDS);
         }
     }
 
@@ -488,28 +488,23 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
         }
 
         if (v3TaskState == com.netflix.titus.api.jobmanager.model.job.TaskState.Finished && !StringExt.isEmpty(taskStatus.getMessage())) {
-            String message = taskStatus.getMessage();
-            if (invalidRequestMessageMatcherFactory.apply(message).matches()) {
-                reasonCode = com.netflix.titus.api.jobmanager.model.job.TaskStatus.REASON_INVALID_REQUEST;
-            } else if (crashedMessageMatcherFactory.apply(message).matches()) {
-                reasonCode = com.netflix.titus.api.jobmanager.model.job.TaskStatus.REASON_CRASHED;
-            } else if (transientSystemErrorMessageMatcherFactory.apply(message).matches()) {
-                reasonCode = com.netflix.titus.api.jobmanager.model.job.TaskStatus.REASON_TRANSIENT_SYSTEM_ERROR;
-            } else if (localSystemErrorMessageMatcherFactory.apply(message).matches()) {
-                reasonCode = com.netflix.titus.api.jobmanager.model.job.TaskStatus.REASON_LOCAL_SYSTEM_ERROR;
-            } else if (unknownSystemErrorMessageMatcherFactory.apply(message).matches()) {
-                reasonCode = com.netflix.titus.api.jobmanager.model.job.TaskStatus.REASON_UNKNOWN_SYSTEM_ERROR;
-            }
+            long classificationStartTime = registry.clock().monotonicTime();
+            reasonCode = reasonClassifier.classify(taskStatus.getMessage()).orElse(reasonCode);
+            reasonClassificationTimer.record(registry.clock().monotonicTime() - classificationStartTime, TimeUnit.NANOSECONDS);
         }
 
-        Optional<TitusExecutorDetails> details;
-        if (taskStatus.getData() != null) {
+        // Executor details are parsed lazily by the event consumer, to keep the Mesos callback thread short.
+        Supplier<Optional<TitusExecutorDetails>> details = () -> {
+            if (taskStatus.getData() == null) {
+                return Optional.empty();
+            }
+            long parseStartTime = registry.clock().monotonicTime();
             String data = new String(taskStatus.getData().toByteArray());
             logMesosCallbackDebug("Mesos status object data: %s", data);
-            details = JobManagerUtil.parseDetails(data);
-        } else {
-            details = Optional.empty();
-        }
+            Optional<TitusExecutorDetails> parsed = JobManagerUtil.parseDetails(data);
+            executorDetailsParseTimer.record(registry.clock().monotonicTime() - parseStartTime, TimeUnit.NANOSECONDS);
+            return parsed;
+        };
 
         V3ContainerEvent event = new V3ContainerEvent(
                 taskId,
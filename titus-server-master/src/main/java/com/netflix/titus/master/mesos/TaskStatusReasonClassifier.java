@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.mesos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.netflix.titus.api.jobmanager.model.job.TaskStatus;
+import com.netflix.titus.common.util.cache.MemoizedFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maps a Mesos task status message to a Titus reason code. The configured message patterns are combined into
+ * a single regular expression, with each pattern put into its own named group, in the order of precedence. This way
+ * a message is scanned once, instead of being matched against each pattern in sequence. As status messages repeat
+ * a lot (for example when an agent is lost, all its tasks are reported with the same message), the classification
+ * results are cached per distinct message. The cache is dropped when any of the patterns changes.
+ * <p>
+ * As the patterns are embedded into a single expression, numbered back references are not supported in them.
+ */
+class TaskStatusReasonClassifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskStatusReasonClassifier.class);
+
+    private static final int MAX_CACHED_MESSAGES = 10_000;
+    private static final String GROUP_PREFIX = "reason";
+
+    private final List<ReasonPattern> reasonPatterns;
+    private final Function<List<String>, CompiledClassifier> compiler;
+
+    TaskStatusReasonClassifier(MesosConfiguration configuration) {
+        this.reasonPatterns = new ArrayList<>();
+        reasonPatterns.add(new ReasonPattern(TaskStatus.REASON_INVALID_REQUEST, configuration::getInvalidRequestMessagePattern, "invalidRequestMessagePattern"));
+        reasonPatterns.add(new ReasonPattern(TaskStatus.REASON_CRASHED, configuration::getCrashedMessagePattern, "crashedMessagePattern"));
+        reasonPatterns.add(new ReasonPattern(TaskStatus.REASON_TRANSIENT_SYSTEM_ERROR, configuration::getTransientSystemErrorMessagePattern, "transientSystemErrorMessagePattern"));
+        reasonPatterns.add(new ReasonPattern(TaskStatus.REASON_LOCAL_SYSTEM_ERROR, configuration::getLocalSystemErrorMessagePattern, "localSystemErrorMessagePattern"));
+        reasonPatterns.add(new ReasonPattern(TaskStatus.REASON_UNKNOWN_SYSTEM_ERROR, configuration::getUnknownSystemErrorMessagePattern, "unknownSystemErrorMessagePattern"));
+
+        this.compiler = new MemoizedFunction<>((patterns, lastGood) -> new CompiledClassifier(patterns));
+    }
+
+    /**
+     * Returns reason code of the first pattern matching the whole message, or {@link Optional#empty()} if none does.
+     */
+    Optional<String> classify(String message) {
+        List<String> patterns = reasonPatterns.stream().map(ReasonPattern::getPattern).collect(Collectors.toList());
+        return compiler.apply(patterns).classify(message);
+    }
+
+    private class CompiledClassifier {
+
+        private final Pattern pattern;
+        private final Cache<String, Optional<String>> results = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CACHED_MESSAGES)
+                .build();
+
+        private CompiledClassifier(List<String> patterns) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < patterns.size(); i++) {
+                if (i > 0) {
+                    sb.append('|');
+                }
+                sb.append("(?<").append(GROUP_PREFIX).append(i).append('>').append(patterns.get(i)).append(')');
+            }
+            this.pattern = Pattern.compile(sb.toString(), Pattern.DOTALL);
+        }
+
+        private Optional<String> classify(String message) {
+            Optional<String> result = results.getIfPresent(message);
+            if (result == null) {
+                result = match(message);
+                results.put(message, result);
+            }
+            return result;
+        }
+
+        private Optional<String> match(String message) {
+            Matcher matcher = pattern.matcher(message);
+            if (!matcher.matches()) {
+                return Optional.empty();
+            }
+            // Alternatives are tried from left to right, so the matched group is the one with the highest precedence.
+            for (int i = 0; i < reasonPatterns.size(); i++) {
+                if (matcher.start(GROUP_PREFIX + i) >= 0) {
+                    return Optional.of(reasonPatterns.get(i).getReasonCode());
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    private static class ReasonPattern {
+
+        private final String reasonCode;
+        private final Supplier<String> patternSource;
+        private final Function<String, String> validator;
+
+        private ReasonPattern(String reasonCode, Supplier<String> patternSource, String propertyName) {
+            this.reasonCode = reasonCode;
+            this.patternSource = patternSource;
+            this.validator = new MemoizedFunction<>((patternString, lastGoodPattern) -> {
+                try {
+                    Pattern.compile(patternString, Pattern.DOTALL);
+                    return patternString;
+                } catch (Exception e) {
+                    logger.warn("Not valid regular expression value in '{}' property: {}", propertyName, e.getMessage());
+                    // there is nothing that can be done if the first patternString is invalid
+                    return lastGoodPattern.orElseThrow(() -> new RuntimeException(e));
+                }
+            });
+        }
+
+        private String getReasonCode() {
+            return reasonCode;
+        }
+
+        private String getPattern() {
+            return validator.apply(patternSource.get());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.mesos;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.DistributionSummary;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
+import com.netflix.titus.api.jobmanager.model.CallMetadata;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations.Trigger;
+import com.netflix.titus.master.MetricConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Scheduler;
+
+/**
+ * Collects task updates triggered by Mesos status updates within a short time window, and applies them with
+ * {@link V3JobOperations#updateTasks(Map, Trigger, String, CallMetadata)}, which results in a single change action
+ * per job, instead of one per task update. Multiple updates of the same task within a window are composed in the
+ * arrival order into one change function, so the per-task ordering is preserved. Batches are applied sequentially,
+ * from a single worker.
+ */
+class TaskStatusUpdateBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskStatusUpdateBatcher.class);
+
+    private static final String METRIC_ROOT = MetricConstants.METRIC_MESOS + "statusUpdate.";
+
+    private final V3JobOperations v3JobOperations;
+    private final MesosConfiguration configuration;
+    private final CallMetadata callMetadata;
+    private final Registry registry;
+    private final Scheduler.Worker worker;
+
+    private final DistributionSummary batchSizeSummary;
+    private final Counter batchErrorsCounter;
+    private final Timer latencyTimer;
+
+    private final Object lock = new Object();
+    private Map<String, PendingUpdate> pendingUpdates = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    TaskStatusUpdateBatcher(V3JobOperations v3JobOperations,
+                            MesosConfiguration configuration,
+                            CallMetadata callMetadata,
+                            Registry registry,
+                            Scheduler scheduler) {
+        this.v3JobOperations = v3JobOperations;
+        this.configuration = configuration;
+        this.callMetadata = callMetadata;
+        this.registry = registry;
+        this.worker = scheduler.createWorker();
+
+        this.batchSizeSummary = registry.distributionSummary(METRIC_ROOT + "batchSize");
+        this.batchErrorsCounter = registry.counter(METRIC_ROOT + "batchErrors");
+        this.latencyTimer = registry.timer(METRIC_ROOT + "latency");
+    }
+
+    void shutdown() {
+        worker.unsubscribe();
+    }
+
+    /**
+     * Schedules a task update.
+     *
+     * @param eventTimestamp time when the Mesos status update was received, used to measure the end-to-end latency
+     */
+    void updateTask(String taskId, Function<Task, Optional<Task>> changeFunction, long eventTimestamp) {
+        long windowMs = configuration.getTaskStatusUpdateBatchingWindowMs();
+        if (windowMs <= 0) {
+            applyImmediately(taskId, changeFunction, eventTimestamp);
+            return;
+        }
+        synchronized (lock) {
+            PendingUpdate pendingUpdate = pendingUpdates.get(taskId);
+            if (pendingUpdate == null) {
+                pendingUpdates.put(taskId, new PendingUpdate(changeFunction, eventTimestamp));
+            } else {
+                pendingUpdate.andThen(changeFunction);
+            }
+            if (pendingUpdates.size() >= configuration.getTaskStatusUpdateMaxBatchSize()) {
+                flushScheduled = true;
+                worker.schedule(this::flush);
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                worker.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void applyImmediately(String taskId, Function<Task, Optional<Task>> changeFunction, long eventTimestamp) {
+        batchSizeSummary.record(1);
+        PendingUpdate update = new PendingUpdate(changeFunction, eventTimestamp);
+        v3JobOperations.updateTask(taskId, update::apply, Trigger.Mesos, "Mesos task status update", callMetadata).subscribe(
+                () -> onApplied(taskId, update),
+                e -> {
+                    batchErrorsCounter.increment();
+                    logger.warn("Could not update task state of {} ({})", taskId, e.toString());
+                }
+        );
+    }
+
+    private void flush() {
+        Map<String, PendingUpdate> toFlush;
+        synchronized (lock) {
+            toFlush = pendingUpdates;
+            pendingUpdates = new LinkedHashMap<>();
+            flushScheduled = false;
+        }
+        if (toFlush.isEmpty()) {
+            return;
+        }
+
+        Map<String, Function<Task, Optional<Task>>> changeFunctions = new LinkedHashMap<>();
+        toFlush.forEach((taskId, pendingUpdate) -> changeFunctions.put(taskId, pendingUpdate::apply));
+        batchSizeSummary.record(changeFunctions.size());
+
+        String reason = "Mesos task status updates (" + changeFunctions.size() + " tasks)";
+        // Failures are logged only, as the reconciler will take care of it if needed.
+        v3JobOperations.updateTasks(changeFunctions, Trigger.Mesos, reason, callMetadata).subscribe(
+                () -> {
+                    logger.debug("Applied {} task status updates", changeFunctions.size());
+                    toFlush.forEach(this::onApplied);
+                },
+                e -> {
+                    batchErrorsCounter.increment();
+                    logger.warn("Could not apply batch of {} task status updates ({})", changeFunctions.size(), e.toString());
+                }
+        );
+    }
+
+    private void onApplied(String taskId, PendingUpdate update) {
+        latencyTimer.record(registry.clock().wallTime() - update.eventTimestamp, TimeUnit.MILLISECONDS);
+        Task appliedTask = update.appliedTask;
+        if (appliedTask != null) {
+            logger.info("Changed task {} status state to {}", taskId, appliedTask.getStatus());
+        }
+    }
+
+    private static class PendingUpdate {
+
+        private final long eventTimestamp;
+        private Function<Task, Optional<Task>> changeFunction;
+        private volatile Task appliedTask;
+
+        private PendingUpdate(Function<Task, Optional<Task>> changeFunction, long eventTimestamp) {
+            this.changeFunction = changeFunction;
+            this.eventTimestamp = eventTimestamp;
+        }
+
+        private Optional<Task> apply(Task task) {
+            Optional<Task> result = changeFunction.apply(task);
+            result.ifPresent(newTask -> this.appliedTask = newTask);
+            return result;
+        }
+
+        /**
+         * Composes the next update with the pending one. If the pending update is a no-op, the next one is applied to the
+         * original task version.
+         */
+        private void andThen(Function<Task, Optional<Task>> next) {
+            Function<Task, Optional<Task>> previous = this.changeFunction;
+            this.changeFunction = task -> {
+                Optional<Task> afterPrevious = previous.apply(task);
+                Optional<Task> afterNext = next.apply(afterPrevious.orElse(task));
+                return afterNext.isPresent() ? afterNext : afterPrevious;
+            };
+        }
+    }
+}
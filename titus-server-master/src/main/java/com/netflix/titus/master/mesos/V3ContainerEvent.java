@@ -18,6 +18,7 @@ package com.netflix.titus.master.mesos;
 
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import com.netflix.titus.api.jobmanager.model.job.TaskState;
 
@@ -28,7 +29,9 @@ public class V3ContainerEvent implements ContainerEvent {
     private final String reasonCode;
     private final String reasonMessage;
     private final long timestamp;
-    private final Optional<TitusExecutorDetails> titusExecutorDetails;
+    private final Supplier<Optional<TitusExecutorDetails>> titusExecutorDetailsSupplier;
+
+    private volatile Optional<TitusExecutorDetails> titusExecutorDetails;
 
     public V3ContainerEvent(String taskId,
                             TaskState taskState,
@@ -36,12 +39,25 @@ public class V3ContainerEvent implements ContainerEvent {
                             String reasonMessage,
                             long timestamp,
                             Optional<TitusExecutorDetails> titusExecutorDetails) {
+        this(taskId, taskState, reasonCode, reasonMessage, timestamp, () -> titusExecutorDetails);
+    }
+
+    /**
+     * Executor details are resolved on first access, so they are parsed only by the consumers that need them,
+     * and not on the Mesos callback thread.
+     */
+    public V3ContainerEvent(String taskId,
+                            TaskState taskState,
+                            String reasonCode,
+                            String reasonMessage,
+                            long timestamp,
+                            Supplier<Optional<TitusExecutorDetails>> titusExecutorDetailsSupplier) {
         this.taskId = taskId;
         this.taskState = taskState;
         this.reasonCode = reasonCode;
         this.reasonMessage = reasonMessage;
         this.timestamp = timestamp;
-        this.titusExecutorDetails = titusExecutorDetails;
+        this.titusExecutorDetailsSupplier = titusExecutorDetailsSupplier;
     }
 
     public String getTaskId() {
@@ -65,6 +81,9 @@ public class V3ContainerEvent implements ContainerEvent {
     }
 
     public Optional<TitusExecutorDetails> getTitusExecutorDetails() {
+        if (titusExecutorDetails == null) {
+            titusExecutorDetails = titusExecutorDetailsSupplier.get();
+        }
         return titusExecutorDetails;
     }
 
@@ -82,12 +101,12 @@ public class V3ContainerEvent implements ContainerEvent {
                 taskState == that.taskState &&
                 Objects.equals(reasonCode, that.reasonCode) &&
                 Objects.equals(reasonMessage, that.reasonMessage) &&
-                Objects.equals(titusExecutorDetails, that.titusExecutorDetails);
+                Objects.equals(getTitusExecutorDetails(), that.getTitusExecutorDetails());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(taskId, taskState, reasonCode, reasonMessage, timestamp, titusExecutorDetails);
+        return Objects.hash(taskId, taskState, reasonCode, reasonMessage, timestamp, getTitusExecutorDetails());
     }
 
     @Override
@@ -98,7 +117,7 @@ public class V3ContainerEvent implements ContainerEvent {
                 ", reasonCode='" + reasonCode + '\'' +
                 ", reasonMessage='" + reasonMessage + '\'' +
                 ", timestamp=" + timestamp +
-                ", titusExecutorDetails=" + titusExecutorDetails +
+                ", titusExecutorDetails=" + getTitusExecutorDetails() +
                 '}';
     }
 }
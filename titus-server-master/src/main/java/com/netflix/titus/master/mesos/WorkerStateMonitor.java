@@ -30,13 +30,13 @@ import com.netflix.titus.api.jobmanager.model.job.Task;
 import com.netflix.titus.api.jobmanager.model.job.TaskState;
 import com.netflix.titus.api.jobmanager.model.job.TaskStatus;
 import com.netflix.titus.api.jobmanager.service.V3JobOperations;
-import com.netflix.titus.api.jobmanager.service.V3JobOperations.Trigger;
 import com.netflix.titus.common.runtime.TitusRuntime;
 import com.netflix.titus.common.util.tuple.Pair;
 import com.netflix.titus.master.jobmanager.service.JobManagerUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observer;
+import rx.schedulers.Schedulers;
 
 @Singleton
 public class WorkerStateMonitor {
@@ -44,6 +44,7 @@ public class WorkerStateMonitor {
     private static final Logger logger = LoggerFactory.getLogger(WorkerStateMonitor.class);
 
     private final VirtualMachineMasterService vmService;
+    private final TaskStatusUpdateBatcher statusUpdateBatcher;
     private AtomicBoolean shutdownFlag = new AtomicBoolean();
 
     private static CallMetadata MESOS_CALL_METADATA = CallMetadata.newBuilder().withCallerId("Mesos").build();
@@ -51,8 +52,16 @@ public class WorkerStateMonitor {
     @Inject
     public WorkerStateMonitor(VirtualMachineMasterService vmService,
                               V3JobOperations v3JobOperations,
+                              MesosConfiguration mesosConfiguration,
                               TitusRuntime titusRuntime) {
         this.vmService = vmService;
+        this.statusUpdateBatcher = new TaskStatusUpdateBatcher(
+                v3JobOperations,
+                mesosConfiguration,
+                MESOS_CALL_METADATA.toBuilder().withCallReason("Mesos task change").build(),
+                titusRuntime.getRegistry(),
+                Schedulers.computation()
+        );
         vmService.getTaskStatusObservable().subscribe(new Observer<ContainerEvent>() {
             @Override
             public void onCompleted() {
@@ -72,34 +81,11 @@ public class WorkerStateMonitor {
                         Optional<Pair<Job<?>, Task>> jobAndTaskOpt = v3JobOperations.findTaskById(args.getTaskId());
                         if (jobAndTaskOpt.isPresent()) {
                             Task task = jobAndTaskOpt.get().getRight();
-                            TaskState newState = args.getTaskState();
-                            if (task.getStatus().getState() != newState) {
-
-                                String reasonCode = args.getReasonCode();
-
-                                TaskStatus.Builder taskStatusBuilder = JobModel.newTaskStatus()
-                                        .withState(newState)
-                                        .withTimestamp(args.getTimestamp());
-
-                                // We send kill operation even if task is in Accepted state, but if the latter is the case
-                                // we do not want to report Mesos 'lost' state in task status.
-                                if (isKillConfirmationForTaskInAcceptedState(task, newState, reasonCode)) {
-                                    taskStatusBuilder
-                                            .withReasonCode(TaskStatus.REASON_TASK_KILLED)
-                                            .withReasonMessage("Task killed before it was launched");
-                                } else {
-                                    taskStatusBuilder
-                                            .withReasonCode(reasonCode)
-                                            .withReasonMessage("Mesos task state change event: " + args.getReasonMessage());
-                                }
-                                TaskStatus taskStatus = taskStatusBuilder.build();
-
-                                // Failures are logged only, as the reconciler will take care of it if needed.
-                                final Function<Task, Optional<Task>> updater = JobManagerUtil.newMesosTaskStateUpdater(taskStatus, args.getTitusExecutorDetails(), titusRuntime);
-                                v3JobOperations.updateTask(task.getId(), updater, Trigger.Mesos, "Mesos -> " + taskStatus, MESOS_CALL_METADATA.toBuilder().withCallReason("Mesos task change").build()).subscribe(
-                                        () -> logger.info("Changed task {} status state to {}", task.getId(), taskStatus),
-                                        e -> logger.warn("Could not update task state of {} to {} ({})", args.getTaskId(), taskStatus, e.toString())
-                                );
+                            if (task.getStatus().getState() != args.getTaskState()) {
+                                // The task status is resolved when the update is applied, as other updates of the same task may precede it in a batch.
+                                // Duplicates are dropped by the Mesos task state updater, which keeps updates with the same state, but new details.
+                                Function<Task, Optional<Task>> updater = currentTask -> newTaskUpdate(currentTask, args, titusRuntime);
+                                statusUpdateBatcher.updateTask(task.getId(), updater, args.getTimestamp());
                             }
                             return;
                         }
@@ -112,6 +98,30 @@ public class WorkerStateMonitor {
         });
     }
 
+    private Optional<Task> newTaskUpdate(Task task, V3ContainerEvent args, TitusRuntime titusRuntime) {
+        TaskState newState = args.getTaskState();
+        String reasonCode = args.getReasonCode();
+
+        TaskStatus.Builder taskStatusBuilder = JobModel.newTaskStatus()
+                .withState(newState)
+                .withTimestamp(args.getTimestamp());
+
+        // We send kill operation even if task is in Accepted state, but if the latter is the case
+        // we do not want to report Mesos 'lost' state in task status.
+        if (isKillConfirmationForTaskInAcceptedState(task, newState, reasonCode)) {
+            taskStatusBuilder
+                    .withReasonCode(TaskStatus.REASON_TASK_KILLED)
+                    .withReasonMessage("Task killed before it was launched");
+        } else {
+            taskStatusBuilder
+                    .withReasonCode(reasonCode)
+                    .withReasonMessage("Mesos task state change event: " + args.getReasonMessage());
+        }
+        TaskStatus taskStatus = taskStatusBuilder.build();
+
+        return JobManagerUtil.newMesosTaskStateUpdater(taskStatus, args.getTitusExecutorDetails(), titusRuntime).apply(task);
+    }
+
     /**
      * Check if task moved directly from Accepted to KillInitiated.
      */
@@ -154,5 +164,6 @@ public class WorkerStateMonitor {
     @PreDestroy
     public void shutdown() {
         shutdownFlag.set(true);
+        statusUpdateBatcher.shutdown();
     }
 }
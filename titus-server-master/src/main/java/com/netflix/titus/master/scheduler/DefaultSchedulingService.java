@@ -111,6 +111,8 @@ public class DefaultSchedulingService implements SchedulingService {
     // expiring mesos offers, etc.
     private static final long MAX_DELAY_MILLIS_BETWEEN_SCHEDULING_ITERATIONS = 5_000L;
 
+    private static final long PLACEMENT_BACK_PRESSURE_TIMEOUT_MS = 10_000L;
+
     private final VirtualMachineMasterService virtualMachineService;
     private final MasterConfiguration masterConfiguration;
     private final SchedulerConfiguration schedulerConfiguration;
@@ -262,7 +264,7 @@ public class DefaultSchedulingService implements SchedulingService {
         virtualMachineService.setVMLeaseHandler(schedulingService::addLeases);
         this.taskCache = taskCache;
 
-        this.taskPlacementRecorder = new TaskPlacementRecorder(config, masterConfiguration, schedulingService, v3JobOperations, v3TaskInfoFactory, titusRuntime);
+        this.taskPlacementRecorder = new TaskPlacementRecorder(config, masterConfiguration, schedulingService, v3JobOperations, v3TaskInfoFactory, taskCache, titusRuntime);
         this.taskPlacementFailureClassifier = new TaskPlacementFailureClassifier(titusRuntime);
 
         totalTasksPerIterationGauge = registry.gauge(METRIC_SCHEDULING_SERVICE + "totalTasksPerIteration");
@@ -454,10 +456,19 @@ public class DefaultSchedulingService implements SchedulingService {
         int failedTasksDuringSchedulingResult = schedulingResult.getFailures().size();
 
         long recordingStart = titusRuntime.getClock().wallTime();
-        List<Pair<List<VirtualMachineLease>, List<Protos.TaskInfo>>> taskInfos = taskPlacementRecorder.record(schedulingResult);
-        recordTaskPlacementLatencyTimer.record(titusRuntime.getClock().wallTime() - recordingStart, TimeUnit.MILLISECONDS);
-        taskInfos.forEach(ts -> launchTasks(ts.getLeft(), ts.getRight()));
-        assignedDuringSchedulingResult += taskInfos.stream().mapToInt(p -> p.getRight().size()).sum();
+        if (schedulerConfiguration.isAsyncTaskPlacementRecordingEnabled()) {
+            // Launches are done in the background, as the store updates complete. Their latency is reported by
+            // the placement pipeline metrics, not the scheduling iteration Mesos latency.
+            TaskPlacementRecorder.PlacementBatch placements = taskPlacementRecorder.recordAsync(schedulingResult, this::launchTasks);
+            awaitIfTooManyPlacementsInFlight(placements);
+            recordTaskPlacementLatencyTimer.record(titusRuntime.getClock().wallTime() - recordingStart, TimeUnit.MILLISECONDS);
+            assignedDuringSchedulingResult += schedulingResult.getResultMap().values().stream().mapToInt(a -> a.getTasksAssigned().size()).sum();
+        } else {
+            List<Pair<List<VirtualMachineLease>, List<Protos.TaskInfo>>> taskInfos = taskPlacementRecorder.record(schedulingResult);
+            recordTaskPlacementLatencyTimer.record(titusRuntime.getClock().wallTime() - recordingStart, TimeUnit.MILLISECONDS);
+            taskInfos.forEach(ts -> totalSchedulingIterationMesosLatency.addAndGet(launchTasks(ts.getLeft(), ts.getRight())));
+            assignedDuringSchedulingResult += taskInfos.stream().mapToInt(p -> p.getRight().size()).sum();
+        }
 
         recordLastSchedulingResult(schedulingResult);
         processTaskSchedulingFailureCallbacks(schedulingResult);
@@ -475,6 +486,20 @@ public class DefaultSchedulingService implements SchedulingService {
         mesosLatencyTimer.record(totalSchedulingIterationMesosLatency.get(), TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Applies back pressure to the scheduling loop, if the store cannot keep up with the task placement rate.
+     */
+    private void awaitIfTooManyPlacementsInFlight(TaskPlacementRecorder.PlacementBatch placements) {
+        int inFlight = taskPlacementRecorder.getInFlightTaskCount();
+        if (inFlight <= schedulerConfiguration.getMaxInFlightTaskPlacements()) {
+            return;
+        }
+        logger.warn("Too many task placements in flight ({}). Waiting for the current placements to complete", inFlight);
+        if (!placements.await(PLACEMENT_BACK_PRESSURE_TIMEOUT_MS)) {
+            logger.warn("Task placements not completed within {}ms", PLACEMENT_BACK_PRESSURE_TIMEOUT_MS);
+        }
+    }
+
     private void recordLastSchedulingResult(SchedulingResult schedulingResult) {
         try {
             Map<String, List<TaskAssignmentResult>> byTaskId = new HashMap<>();
@@ -517,25 +542,30 @@ public class DefaultSchedulingService implements SchedulingService {
         }
     }
 
-    private void launchTasks(List<VirtualMachineLease> leases, List<Protos.TaskInfo> taskInfoList) {
+    /**
+     * Launches the tasks placed on an agent, or rejects its offers if there are none.
+     *
+     * @return Mesos call latency
+     */
+    private long launchTasks(List<VirtualMachineLease> leases, List<Protos.TaskInfo> taskInfoList) {
         long mesosStartTime = titusRuntime.getClock().wallTime();
+        long mesosLatency;
         if (taskInfoList.isEmpty()) {
             try {
                 leases.forEach(virtualMachineService::rejectLease);
             } finally {
-                long mesosLatency = titusRuntime.getClock().wallTime() - mesosStartTime;
-                totalSchedulingIterationMesosLatency.addAndGet(mesosLatency);
+                mesosLatency = titusRuntime.getClock().wallTime() - mesosStartTime;
                 logger.info("Rejected offers as no task effectively placed on the agent in {}ms: offers={}", mesosLatency, leases.size());
             }
         } else {
             try {
                 virtualMachineService.launchTasks(taskInfoList, leases);
             } finally {
-                long mesosLatency = titusRuntime.getClock().wallTime() - mesosStartTime;
-                totalSchedulingIterationMesosLatency.addAndGet(mesosLatency);
+                mesosLatency = titusRuntime.getClock().wallTime() - mesosStartTime;
                 logger.info("Launched tasks on Mesos in {}ms: tasks={}, offers={}", mesosLatency, taskInfoList.size(), leases.size());
             }
         }
+        return mesosLatency;
     }
 
     @Override
@@ -557,6 +587,31 @@ public class DefaultSchedulingService implements SchedulingService {
         agentResourceCacheUpdater.createOrUpdateAgentResourceCacheForTask(task, hostname);
     }
 
+    @Override
+    public List<String> addRunningTasks(String hostname, List<QueuableTask> tasks) {
+        if (logger.isInfoEnabled()) {
+            logger.info("Initializing Fenzo with the tasks: host={}, taskIds={}", hostname, tasks.stream().map(QueuableTask::getId).collect(Collectors.toList()));
+        }
+        List<String> failedTaskIds = new ArrayList<>();
+        List<QueuableTask> initializedTasks = new ArrayList<>(tasks.size());
+        for (QueuableTask task : tasks) {
+            try {
+                schedulingService.initializeRunningTask(task, hostname);
+                initializedTasks.add(task);
+            } catch (Exception e) {
+                logger.error("Failed to initialize running task in Fenzo: {} with error:", task.getId(), e);
+                failedTaskIds.add(task.getId());
+            }
+        }
+        try {
+            agentResourceCacheUpdater.createOrUpdateAgentResourceCacheForTasks(initializedTasks, hostname);
+        } catch (Exception e) {
+            logger.error("Failed to update the agent resource cache: host={}, taskCount={} with error:", hostname, initializedTasks.size(), e);
+            initializedTasks.forEach(task -> failedTaskIds.add(task.getId()));
+        }
+        return failedTaskIds;
+    }
+
     @Activator
     public Observable<Void> enterActiveMode() {
         logger.info("Scheduling service starting now");
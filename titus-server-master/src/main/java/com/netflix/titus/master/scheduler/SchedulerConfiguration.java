@@ -120,4 +120,19 @@ public interface SchedulerConfiguration {
      */
     @DefaultValue("true")
     boolean isCriticalTierJobSpreadingEnabled();
-}
\ No newline at end of file
+
+    /**
+     * If enabled, task placements are written to the store and launched asynchronously, so the Fenzo scheduling
+     * loop does not wait for the store updates. Placements with the store update in progress are counted by
+     * the constraint evaluators of the next scheduling iterations.
+     */
+    @DefaultValue("true")
+    boolean isAsyncTaskPlacementRecordingEnabled();
+
+    /**
+     * Maximum number of placed tasks with store update or launch in progress. If exceeded, the scheduling loop
+     * waits for the placements from the current iteration to complete, before starting the next one.
+     */
+    @DefaultValue("2000")
+    int getMaxInFlightTaskPlacements();
+}
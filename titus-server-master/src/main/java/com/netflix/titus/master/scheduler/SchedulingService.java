@@ -36,6 +36,16 @@ public interface SchedulingService {
      */
     void addRunningTask(QueuableTask task, String hostname);
 
+    /**
+     * Adds a batch of running tasks, all placed on the same host, to the scheduler. This method is used to restore
+     * the scheduler state after system failover, and is equivalent to calling {@link #addRunningTask(QueuableTask, String)}
+     * for each task, but updates the per host state once for the whole batch. Each task is initialized separately,
+     * so a failure of one task does not affect the others.
+     *
+     * @return ids of the tasks that could not be added
+     */
+    List<String> addRunningTasks(String hostname, List<QueuableTask> tasks);
+
     /**
      * Adds a new, not scheduled yet, task to the scheduler.
      */
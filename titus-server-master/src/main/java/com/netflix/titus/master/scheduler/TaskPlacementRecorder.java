@@ -22,8 +22,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -35,6 +39,8 @@ import com.netflix.fenzo.TaskAssignmentResult;
 import com.netflix.fenzo.TaskSchedulingService;
 import com.netflix.fenzo.VMAssignmentResult;
 import com.netflix.fenzo.VirtualMachineLease;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
 import com.netflix.titus.api.jobmanager.model.job.Job;
 import com.netflix.titus.api.jobmanager.model.job.Task;
 import com.netflix.titus.api.jobmanager.service.JobManagerConstants;
@@ -50,16 +56,21 @@ import com.netflix.titus.master.config.MasterConfiguration;
 import com.netflix.titus.master.jobmanager.service.JobManagerUtil;
 import com.netflix.titus.master.mesos.TaskInfoFactory;
 import com.netflix.titus.master.model.job.TitusQueuableTask;
+import com.netflix.titus.master.scheduler.constraint.TaskCache;
 import org.apache.mesos.Protos;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observable;
 
+import static com.netflix.titus.master.MetricConstants.METRIC_SCHEDULING_SERVICE;
+
 @Singleton
 class TaskPlacementRecorder {
 
     private static final Logger logger = LoggerFactory.getLogger(TaskPlacementRecorder.class);
 
+    private static final String METRIC_PLACEMENT_PIPELINE = METRIC_SCHEDULING_SERVICE + "placementPipeline.";
+
     private static final long STORE_UPDATE_TIMEOUT_MS = 5_000;
     private static final int RECORD_CONCURRENCY_LIMIT = 500;
 
@@ -68,21 +79,170 @@ class TaskPlacementRecorder {
     private final TaskSchedulingService schedulingService;
     private final V3JobOperations v3JobOperations;
     private final TaskInfoFactory<Protos.TaskInfo> v3TaskInfoFactory;
+    private final TaskCache taskCache;
     private final Clock clock;
 
+    private final AtomicInteger inFlightTasks;
+    private final Timer recordLatencyTimer;
+    private final Timer launchLatencyTimer;
+    private final Timer totalLatencyTimer;
+
     @Inject
     TaskPlacementRecorder(Config config,
                           MasterConfiguration masterConfiguration,
                           TaskSchedulingService schedulingService,
                           V3JobOperations v3JobOperations,
                           TaskInfoFactory<Protos.TaskInfo> v3TaskInfoFactory,
+                          TaskCache taskCache,
                           TitusRuntime titusRuntime) {
         this.config = config;
         this.masterConfiguration = masterConfiguration;
         this.schedulingService = schedulingService;
         this.v3JobOperations = v3JobOperations;
         this.v3TaskInfoFactory = v3TaskInfoFactory;
+        this.taskCache = taskCache;
         this.clock = titusRuntime.getClock();
+
+        Registry registry = titusRuntime.getRegistry();
+        this.inFlightTasks = registry.gauge(METRIC_PLACEMENT_PIPELINE + "inFlightTasks", new AtomicInteger());
+        this.recordLatencyTimer = registry.timer(METRIC_PLACEMENT_PIPELINE + "latency", "stage", "record");
+        this.launchLatencyTimer = registry.timer(METRIC_PLACEMENT_PIPELINE + "latency", "stage", "launch");
+        this.totalLatencyTimer = registry.timer(METRIC_PLACEMENT_PIPELINE + "latency", "stage", "total");
+    }
+
+    /**
+     * Number of tasks placed by Fenzo, for which the store update or the Mesos launch request is not completed yet.
+     */
+    int getInFlightTaskCount() {
+        return inFlightTasks.get();
+    }
+
+    /**
+     * Records task placements in the store, with concurrent updates grouped by agent, and launches the tasks of an
+     * agent (or rejects its offers) as soon as all its store updates complete. The method does not wait for the
+     * store updates, so the next scheduling iteration may start while they are in progress. Fenzo accounts
+     * the agent resources of the placed tasks when it assigns them, and until a placement is recorded in the job
+     * manager, it is registered in {@link TaskCache} as an in-flight placement, so the constraint evaluators of
+     * the next iterations see it.
+     *
+     * @param launcher called for each agent, from the thread completing its last store update. An agent with no task
+     *                 recorded successfully is passed to the launcher with an empty task list, so its offers are rejected.
+     */
+    PlacementBatch recordAsync(SchedulingResult schedulingResult, BiConsumer<List<VirtualMachineLease>, List<Protos.TaskInfo>> launcher) {
+        List<AgentAssignment> assignments = schedulingResult.getResultMap().entrySet().stream()
+                .map(entry -> new AgentAssignment(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+        int taskCount = assignments.stream().mapToInt(a -> a.getV3Assignments().size()).sum();
+        PlacementBatch batch = new PlacementBatch(assignments.size(), taskCount, clock.wallTime());
+        if (assignments.isEmpty()) {
+            return batch;
+        }
+        inFlightTasks.addAndGet(taskCount);
+
+        // Register all placements before the first store update starts, so the next iteration sees all of them.
+        String zoneAttributeName = masterConfiguration.getHostZoneAttributeName();
+        for (AgentAssignment assignment : assignments) {
+            String zoneId = assignment.getAttributesMap().get(zoneAttributeName);
+            for (TaskAssignmentResult assignmentResult : assignment.getV3Assignments()) {
+                TitusQueuableTask<Job, Task> fenzoTask = (TitusQueuableTask<Job, Task>) assignmentResult.getRequest();
+                taskCache.addInFlightPlacement(fenzoTask.getJob().getId(), fenzoTask.getId(), zoneId);
+            }
+        }
+
+        Observable.from(assignments)
+                .flatMap(assignment -> recordAgentAssignment(assignment, batch, launcher), RECORD_CONCURRENCY_LIMIT)
+                .subscribe(
+                        next -> {
+                        },
+                        e -> logger.error("Unexpected error in the task placement pipeline", e)
+                );
+        return batch;
+    }
+
+    private Observable<Protos.TaskInfo> recordAgentAssignment(AgentAssignment assignment,
+                                                              PlacementBatch batch,
+                                                              BiConsumer<List<VirtualMachineLease>, List<Protos.TaskInfo>> launcher) {
+        List<Protos.TaskInfo> taskInfos = new CopyOnWriteArrayList<>();
+        return Observable.defer(() -> {
+            List<Observable<Protos.TaskInfo>> recordActions = assignment.getV3Assignments().stream()
+                    .map(ar -> processTask(assignment, ar)
+                            .map(Pair::getRight)
+                            .doOnTerminate(() -> taskCache.removeInFlightPlacement(ar.getTaskId()))
+                    )
+                    .collect(Collectors.toList());
+            return Observable.merge(recordActions);
+        }).doOnNext(taskInfos::add).onErrorResumeNext(error -> {
+            logger.error("Failed to record task placements on agent {}", assignment.getHostname(), error);
+            return Observable.empty();
+        }).doOnTerminate(() -> {
+            recordLatencyTimer.record(clock.wallTime() - batch.startTime, TimeUnit.MILLISECONDS);
+            launch(assignment, new ArrayList<>(taskInfos), batch, launcher);
+        }).ignoreElements();
+    }
+
+    private void launch(AgentAssignment assignment,
+                        List<Protos.TaskInfo> taskInfos,
+                        PlacementBatch batch,
+                        BiConsumer<List<VirtualMachineLease>, List<Protos.TaskInfo>> launcher) {
+        long launchStartTime = clock.wallTime();
+        try {
+            launcher.accept(assignment.getLeases(), taskInfos);
+            batch.launchedTasks.addAndGet(taskInfos.size());
+        } catch (Exception e) {
+            logger.error("Failed to launch tasks on agent {}", assignment.getHostname(), e);
+        } finally {
+            launchLatencyTimer.record(clock.wallTime() - launchStartTime, TimeUnit.MILLISECONDS);
+            inFlightTasks.addAndGet(-assignment.getV3Assignments().size());
+            batch.onAgentCompleted();
+        }
+    }
+
+    /**
+     * Task placements of a single scheduling iteration, with the store updates or launches in progress.
+     */
+    class PlacementBatch {
+
+        private final int taskCount;
+        private final long startTime;
+        private final CountDownLatch pendingAgents;
+        private final AtomicInteger launchedTasks = new AtomicInteger();
+
+        private PlacementBatch(int agentCount, int taskCount, long startTime) {
+            this.taskCount = taskCount;
+            this.startTime = startTime;
+            this.pendingAgents = new CountDownLatch(agentCount);
+        }
+
+        /**
+         * Waits until all placements are recorded and launched, or the timeout expires.
+         *
+         * @return true if all placements completed
+         */
+        boolean await(long timeoutMs) {
+            try {
+                return pendingAgents.await(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                logger.warn("Interrupted while waiting for the task placements to complete");
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * Number of tasks launched so far.
+         */
+        int getLaunchedTaskCount() {
+            return launchedTasks.get();
+        }
+
+        private void onAgentCompleted() {
+            pendingAgents.countDown();
+            if (pendingAgents.getCount() == 0) {
+                long executionTimeMs = clock.wallTime() - startTime;
+                totalLatencyTimer.record(executionTimeMs, TimeUnit.MILLISECONDS);
+                logger.info("Asynchronous task placement recording: tasks={}, launched={}, executionTimeMs={}", taskCount, launchedTasks.get(), executionTimeMs);
+            }
+        }
     }
 
     List<Pair<List<VirtualMachineLease>, List<Protos.TaskInfo>>> record(SchedulingResult schedulingResult) {
@@ -232,6 +392,10 @@ class TaskPlacementRecorder {
             this.v3Assignments = new ArrayList<>(assignmentResult.getTasksAssigned());
         }
 
+        String getHostname() {
+            return hostname;
+        }
+
         List<VirtualMachineLease> getLeases() {
             return assignmentResult.getLeasesUsed();
         }
@@ -16,73 +16,351 @@
 
 package com.netflix.titus.master.scheduler.constraint;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import com.netflix.titus.api.jobmanager.TaskAttributes;
 import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobState;
 import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.event.JobManagerEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.JobUpdateEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.TaskUpdateEvent;
 import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.common.util.collections.PersistentHashMap;
+import com.netflix.titus.common.util.guice.annotation.Activator;
+import com.netflix.titus.common.util.rx.ObservableExt;
 import com.netflix.titus.common.util.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Subscription;
 
 /**
  * Helper class that aggregates task data by multiple criteria used by Fenzo constraint/fitness evaluators.
+ * <p>
+ * The aggregates are seeded once from the job manager state, and next maintained incrementally from the job manager
+ * event stream. {@link #prepare()} is called before each Fenzo scheduling iteration, and only takes a reference to the
+ * latest immutable version of the aggregates, so all evaluators see the same consistent view during the iteration.
+ * If the event stream is not active (the cache was not activated or the stream terminated), {@link #prepare()}
+ * restarts the event stream, and if it is still not running, brings the previous version of the aggregates in sync
+ * with the job manager state, updating only the tasks that changed.
+ * <p>
+ * Finished tasks are not counted. The job manager does not emit an event when a finished task is removed from a job,
+ * so keeping them counted would leave stale entries behind until the job itself finishes.
+ * <p>
+ * Task placements made by Fenzo, which are not recorded in the job manager yet, are registered as in-flight
+ * placements, and counted as if they were recorded. Otherwise a scheduling iteration starting while the previous
+ * placements are written to the store would not see them.
  */
 @Singleton
 public class TaskCache {
 
+    private static final Logger logger = LoggerFactory.getLogger(TaskCache.class);
+
     private final V3JobOperations v3JobOperations;
-    private final AtomicReference<TaskCacheValue> currentCacheValue;
+
+    private final Object lock = new Object();
+
+    /**
+     * Latest version of the aggregates, updated by the event stream. Set to null if the event stream is not running.
+     */
+    private volatile TaskCacheValue latestCacheValue;
+
+    /**
+     * Events received while the initial state is loaded. Null when the event stream is not being initialized.
+     */
+    private List<JobManagerEvent<?>> pendingEvents;
+
+    private volatile TaskCacheValue currentCacheValue = TaskCacheValue.EMPTY;
+
+    /**
+     * Placed tasks, with the store update in progress.
+     */
+    private final ConcurrentMap<String, TaskEntry> inFlightPlacements = new ConcurrentHashMap<>();
+
+    private volatile boolean active;
+    private Subscription eventSubscription;
 
     @Inject
     public TaskCache(V3JobOperations v3JobOperations) {
         this.v3JobOperations = v3JobOperations;
-        this.currentCacheValue = new AtomicReference<>();
+    }
+
+    @Activator
+    public void enterActiveMode() {
+        this.active = true;
+        startEventStream();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.active = false;
+        ObservableExt.safeUnsubscribe(eventSubscription);
+        synchronized (lock) {
+            this.latestCacheValue = null;
+            this.pendingEvents = null;
+        }
     }
 
     public void prepare() {
-        currentCacheValue.set(new TaskCacheValue());
+        TaskCacheValue latest = latestCacheValue;
+        if (latest == null && active) {
+            logger.info("Task cache event stream not running; restarting it");
+            startEventStream();
+            latest = latestCacheValue;
+        }
+        if (latest == null) {
+            latest = currentCacheValue.syncWith(v3JobOperations.getJobsAndTasks());
+        }
+        this.currentCacheValue = latest.withInFlightPlacements(inFlightPlacements);
+    }
+
+    /**
+     * Registers a task placement, which is not recorded in the job manager yet. It is counted from the next
+     * {@link #prepare()} call, until it is removed with {@link #removeInFlightPlacement(String)}.
+     */
+    public void addInFlightPlacement(String jobId, String taskId, String zoneId) {
+        if (zoneId != null) {
+            inFlightPlacements.put(taskId, new TaskEntry(jobId, zoneId));
+        }
+    }
+
+    /**
+     * Removes an in-flight task placement, once its store update completes. The job manager emits the task update
+     * event before the store update is reported as completed, so a recorded placement remains counted.
+     */
+    public void removeInFlightPlacement(String taskId) {
+        inFlightPlacements.remove(taskId);
     }
 
+    /**
+     * Returns the number of not finished tasks of a job in each zone.
+     */
     public Map<String, Integer> getTasksByZoneIdCounters(String jobId) {
-        return currentCacheValue.get().getTasksByZoneIdCounters(jobId);
+        return currentCacheValue.getTasksByZoneIdCounters(jobId);
     }
 
-    private class TaskCacheValue {
+    private void startEventStream() {
+        ObservableExt.safeUnsubscribe(eventSubscription);
+        synchronized (lock) {
+            this.latestCacheValue = null;
+            this.pendingEvents = new ArrayList<>();
+        }
+
+        // Events emitted after the subscription but before the snapshot is taken are already included in the snapshot.
+        // Replaying them in order on top of it converges to the same state, as each event carries the full task state.
+        this.eventSubscription = v3JobOperations.observeJobs().subscribe(
+                this::onEvent,
+                e -> {
+                    logger.warn("Job event stream terminated with an error", e);
+                    resetEventStream();
+                },
+                () -> {
+                    logger.info("Job event stream completed");
+                    resetEventStream();
+                }
+        );
 
-        private final Map<String, Map<String, Integer>> zoneBalanceCountersByJobId;
+        TaskCacheValue seed;
+        try {
+            seed = TaskCacheValue.EMPTY.syncWith(v3JobOperations.getJobsAndTasks());
+        } catch (Exception e) {
+            logger.warn("Cannot load the initial task cache state", e);
+            ObservableExt.safeUnsubscribe(eventSubscription);
+            resetEventStream();
+            return;
+        }
+        synchronized (lock) {
+            if (pendingEvents == null) {
+                return;
+            }
+            for (JobManagerEvent<?> event : pendingEvents) {
+                seed = seed.withEvent(event);
+            }
+            this.pendingEvents = null;
+            this.latestCacheValue = seed;
+        }
+    }
 
-        private TaskCacheValue() {
-            List<Pair<Job, List<Task>>> jobsAndTasks = v3JobOperations.getJobsAndTasks();
-            this.zoneBalanceCountersByJobId = buildZoneBalanceCountersByJobId(jobsAndTasks);
+    private void resetEventStream() {
+        synchronized (lock) {
+            this.latestCacheValue = null;
+            this.pendingEvents = null;
+        }
+    }
+
+    private void onEvent(JobManagerEvent<?> event) {
+        synchronized (lock) {
+            if (pendingEvents != null) {
+                pendingEvents.add(event);
+            } else if (latestCacheValue != null) {
+                this.latestCacheValue = latestCacheValue.withEvent(event);
+            }
+        }
+    }
+
+    /**
+     * Immutable aggregates. Updates share the unchanged parts with the previous version.
+     */
+    private static class TaskCacheValue {
+
+        private static final TaskCacheValue EMPTY = new TaskCacheValue(PersistentHashMap.empty(), PersistentHashMap.empty());
+
+        private final PersistentHashMap<String, TaskEntry> tasksById;
+        private final PersistentHashMap<String, PersistentHashMap<String, Integer>> tasksByZoneIdByJobId;
+
+        private TaskCacheValue(PersistentHashMap<String, TaskEntry> tasksById,
+                               PersistentHashMap<String, PersistentHashMap<String, Integer>> tasksByZoneIdByJobId) {
+            this.tasksById = tasksById;
+            this.tasksByZoneIdByJobId = tasksByZoneIdByJobId;
         }
 
         private Map<String, Integer> getTasksByZoneIdCounters(String jobId) {
-            return zoneBalanceCountersByJobId.getOrDefault(jobId, Collections.emptyMap());
-        }
-
-        private Map<String, Map<String, Integer>> buildZoneBalanceCountersByJobId(List<Pair<Job, List<Task>>> jobsAndTasks) {
-            Map<String, Map<String, Integer>> result = new HashMap<>();
-            for (Pair<Job, List<Task>> jobAndTask : jobsAndTasks) {
-                Map<String, Integer> jobZoneBalancing = new HashMap<>();
-                for (Task task : jobAndTask.getRight()) {
-                    String zoneId = getZoneId(task);
-                    if (zoneId != null) {
-                        jobZoneBalancing.put(zoneId, jobZoneBalancing.getOrDefault(zoneId, 0) + 1);
-                    }
+            PersistentHashMap<String, Integer> counters = tasksByZoneIdByJobId.get(jobId);
+            return counters == null ? PersistentHashMap.empty() : counters;
+        }
+
+        /**
+         * Brings the aggregates in sync with the given job manager state. Tasks that did not change are not touched.
+         */
+        private TaskCacheValue syncWith(List<Pair<Job, List<Task>>> jobsAndTasks) {
+            Set<String> taskIds = new HashSet<>();
+            TaskCacheValue result = this;
+            for (Pair<Job, List<Task>> jobAndTasks : jobsAndTasks) {
+                for (Task task : jobAndTasks.getRight()) {
+                    taskIds.add(task.getId());
+                    result = result.withTask(task.getId(), TaskEntry.of(task));
+                }
+            }
+            for (String taskId : tasksById.keySet()) {
+                if (!taskIds.contains(taskId)) {
+                    result = result.withTask(taskId, null);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Adds the in-flight placements of tasks, which are not counted yet. The number of in-flight placements is
+         * bounded by the scheduler, so this is cheap compared to the size of the aggregates.
+         */
+        private TaskCacheValue withInFlightPlacements(Map<String, TaskEntry> inFlightPlacements) {
+            TaskCacheValue result = this;
+            for (Map.Entry<String, TaskEntry> entry : inFlightPlacements.entrySet()) {
+                if (!tasksById.containsKey(entry.getKey())) {
+                    result = result.withTask(entry.getKey(), entry.getValue());
                 }
-                result.put(jobAndTask.getLeft().getId(), jobZoneBalancing);
             }
             return result;
         }
 
-        private String getZoneId(Task task) {
-            return task.getTaskContext().get(TaskAttributes.TASK_ATTRIBUTES_AGENT_ZONE);
+        private TaskCacheValue withEvent(JobManagerEvent<?> event) {
+            if (event instanceof TaskUpdateEvent) {
+                Task task = ((TaskUpdateEvent) event).getCurrentTask();
+                return withTask(task.getId(), TaskEntry.of(task));
+            }
+            if (event instanceof JobUpdateEvent) {
+                Job<?> job = ((JobUpdateEvent) event).getCurrent();
+                if (job.getStatus().getState() == JobState.Finished && tasksByZoneIdByJobId.containsKey(job.getId())) {
+                    return new TaskCacheValue(tasksById, tasksByZoneIdByJobId.without(job.getId()));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Replaces the previous task version (which may belong to another job, if the task was moved) with the new one.
+         * A null entry removes the task.
+         */
+        private TaskCacheValue withTask(String taskId, TaskEntry current) {
+            TaskEntry previous = tasksById.get(taskId);
+            if (previous == null ? current == null : previous.equals(current)) {
+                return this;
+            }
+
+            PersistentHashMap<String, TaskEntry> newTasksById = tasksById;
+            PersistentHashMap<String, PersistentHashMap<String, Integer>> newTasksByZoneIdByJobId = tasksByZoneIdByJobId;
+
+            if (previous != null) {
+                newTasksById = newTasksById.without(taskId);
+                PersistentHashMap<String, Integer> jobCounters = newTasksByZoneIdByJobId.get(previous.jobId);
+                if (jobCounters != null) {
+                    PersistentHashMap<String, Integer> updated = decrement(jobCounters, previous.zoneId);
+                    newTasksByZoneIdByJobId = updated.isEmpty()
+                            ? newTasksByZoneIdByJobId.without(previous.jobId)
+                            : newTasksByZoneIdByJobId.with(previous.jobId, updated);
+                }
+            }
+            if (current != null) {
+                newTasksById = newTasksById.with(taskId, current);
+                PersistentHashMap<String, Integer> jobCounters = newTasksByZoneIdByJobId.get(current.jobId);
+                newTasksByZoneIdByJobId = newTasksByZoneIdByJobId.with(
+                        current.jobId,
+                        increment(jobCounters == null ? PersistentHashMap.<String, Integer>empty() : jobCounters, current.zoneId)
+                );
+            }
+            return new TaskCacheValue(newTasksById, newTasksByZoneIdByJobId);
+        }
+    }
+
+    /**
+     * Task attributes that are aggregated. Only not finished tasks placed in a zone are tracked.
+     */
+    private static class TaskEntry {
+
+        private final String jobId;
+        private final String zoneId;
+
+        private TaskEntry(String jobId, String zoneId) {
+            this.jobId = jobId;
+            this.zoneId = zoneId;
+        }
+
+        private static TaskEntry of(Task task) {
+            if (task.getStatus().getState() == TaskState.Finished) {
+                return null;
+            }
+            String zoneId = task.getTaskContext().get(TaskAttributes.TASK_ATTRIBUTES_AGENT_ZONE);
+            return zoneId == null ? null : new TaskEntry(task.getJobId(), zoneId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            TaskEntry that = (TaskEntry) o;
+            return jobId.equals(that.jobId) && zoneId.equals(that.zoneId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * jobId.hashCode() + zoneId.hashCode();
+        }
+    }
+
+    private static <K> PersistentHashMap<K, Integer> increment(PersistentHashMap<K, Integer> counters, K key) {
+        Integer value = counters.get(key);
+        return counters.with(key, value == null ? 1 : value + 1);
+    }
+
+    private static <K> PersistentHashMap<K, Integer> decrement(PersistentHashMap<K, Integer> counters, K key) {
+        Integer value = counters.get(key);
+        if (value == null) {
+            return counters;
         }
+        return value <= 1 ? counters.without(key) : counters.with(key, value - 1);
     }
-}
\ No newline at end of file
+}
@@ -16,6 +16,9 @@
 
 package com.netflix.titus.master.scheduler.resourcecache;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.netflix.fenzo.PreferentialNamedConsumableResourceSet.ConsumeResult;
 import com.netflix.fenzo.queues.QueuableTask;
 import com.netflix.titus.api.jobmanager.model.job.Job;
@@ -77,6 +80,29 @@ public class AgentResourceCacheUpdater {
         });
     }
 
+    /**
+     * Same as calling {@link #createOrUpdateAgentResourceCacheForTask(QueuableTask, String)} for each task, but updates
+     * the host entry in the cache once.
+     */
+    public void createOrUpdateAgentResourceCacheForTasks(List<QueuableTask> tasks, String hostname) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        long time = titusRuntime.getClock().wallTime();
+        List<AgentResourceCacheInstance> instances = new ArrayList<>(tasks.size());
+        for (QueuableTask task : tasks) {
+            ConsumeResult consumeResult = CollectionsExt.first(task.getAssignedResources().getConsumedNamedResources());
+            instances.add(AgentResourceCacheFunctions.createInstance(hostname, task, consumeResult, time));
+        }
+        agentResourceCache.createOrUpdate(hostname, instanceOpt -> {
+            AgentResourceCacheInstance result = instanceOpt.orElse(null);
+            for (AgentResourceCacheInstance instance : instances) {
+                result = result == null ? instance : AgentResourceCacheFunctions.updateInstance(result, instance);
+            }
+            return result;
+        });
+    }
+
     private void createOrUpdateAgentResourceCacheForV3Task(TaskUpdateEvent event) {
         Job<?> job = event.getCurrentJob();
         Task task = event.getCurrentTask();
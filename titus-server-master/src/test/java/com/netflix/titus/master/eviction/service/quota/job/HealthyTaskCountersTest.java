@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.eviction.service.quota.job;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.netflix.titus.api.containerhealth.model.ContainerHealthState;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.testkit.model.job.JobComponentStub;
+import org.junit.After;
+import org.junit.Test;
+
+import static com.netflix.titus.testkit.model.eviction.DisruptionBudgetGenerator.budget;
+import static com.netflix.titus.testkit.model.eviction.DisruptionBudgetGenerator.newBatchJob;
+import static com.netflix.titus.testkit.model.eviction.DisruptionBudgetGenerator.percentageOfHealthyPolicy;
+import static com.netflix.titus.testkit.model.eviction.DisruptionBudgetGenerator.unlimitedRate;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HealthyTaskCountersTest {
+
+    private final TitusRuntime titusRuntime = TitusRuntimes.test();
+
+    private final JobComponentStub jobComponentStub = new JobComponentStub(titusRuntime);
+
+    private final V3JobOperations jobOperations = jobComponentStub.getJobOperations();
+
+    private final HealthyTaskCounters healthyTaskCounters = new HealthyTaskCounters(jobOperations, jobComponentStub.getContainerHealthService());
+
+    @After
+    public void tearDown() {
+        healthyTaskCounters.shutdown();
+    }
+
+    @Test
+    public void testCountersFollowTaskStateAndHealth() {
+        healthyTaskCounters.activate();
+        Job<BatchJobExt> job = newJob(3);
+        List<Task> tasks = jobOperations.getTasks(job.getId());
+        assertThat(healthyTaskCounters.getHealthyCount(job.getId())).isEqualTo(0);
+
+        tasks.forEach(task -> jobComponentStub.moveTaskToState(task, TaskState.Started));
+        assertThat(healthyTaskCounters.getHealthyCount(job.getId())).isEqualTo(3);
+        assertThat(healthyTaskCounters.buildNotHealthyTasksReport(job.getId())).isEqualTo("all tasks started and healthy");
+
+        jobComponentStub.changeContainerHealth(tasks.get(0).getId(), ContainerHealthState.Unhealthy);
+        assertThat(healthyTaskCounters.getHealthyCount(job.getId())).isEqualTo(2);
+        assertThat(healthyTaskCounters.buildNotHealthyTasksReport(job.getId())).contains(tasks.get(0).getId());
+
+        jobComponentStub.changeContainerHealth(tasks.get(0).getId(), ContainerHealthState.Healthy);
+        assertThat(healthyTaskCounters.getHealthyCount(job.getId())).isEqualTo(3);
+
+        jobComponentStub.killTask(tasks.get(1), false, V3JobOperations.Trigger.Eviction);
+        assertThat(healthyTaskCounters.getHealthyCount(job.getId())).isEqualTo(2);
+    }
+
+    @Test
+    public void testCountersAreInitializedFromExistingTasks() {
+        Job<BatchJobExt> job = newJob(2);
+        jobOperations.getTasks(job.getId()).forEach(task -> jobComponentStub.moveTaskToState(task, TaskState.Started));
+
+        healthyTaskCounters.activate();
+        assertThat(healthyTaskCounters.getHealthyCount(job.getId())).isEqualTo(2);
+    }
+
+    private Job<BatchJobExt> newJob(int desired) {
+        Job<BatchJobExt> job = newBatchJob(desired, budget(percentageOfHealthyPolicy(80), unlimitedRate(), Collections.emptyList()));
+        jobComponentStub.createJobAndTasks(job);
+        return job;
+    }
+}
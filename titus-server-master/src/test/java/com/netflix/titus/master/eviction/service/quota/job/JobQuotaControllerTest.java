@@ -23,7 +23,6 @@ import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import com.netflix.titus.api.containerhealth.service.ContainerHealthService;
 import com.netflix.titus.api.jobmanager.model.job.Job;
 import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
 import com.netflix.titus.api.jobmanager.model.job.Task;
@@ -40,6 +39,8 @@ import com.netflix.titus.master.eviction.service.quota.QuotaController;
 import com.netflix.titus.master.eviction.service.quota.QuotaTracker;
 import com.netflix.titus.master.eviction.service.quota.TimeWindowQuotaTracker;
 import com.netflix.titus.testkit.model.job.JobComponentStub;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 import static com.netflix.titus.master.eviction.service.quota.job.JobQuotaController.buildQuotaControllers;
@@ -71,7 +72,17 @@ public class JobQuotaControllerTest {
 
     private final V3JobOperations jobOperations = jobComponentStub.getJobOperations();
 
-    private final ContainerHealthService containerHealthService = jobComponentStub.getContainerHealthService();
+    private final HealthyTaskCounters healthyTaskCounters = new HealthyTaskCounters(jobOperations, jobComponentStub.getContainerHealthService());
+
+    @Before
+    public void setUp() {
+        healthyTaskCounters.activate();
+    }
+
+    @After
+    public void tearDown() {
+        healthyTaskCounters.shutdown();
+    }
 
     @Test
     public void testBuildQuotaTrackers() {
@@ -113,7 +124,7 @@ public class JobQuotaControllerTest {
     }
 
     private void testBuildQuotaTrackers(Job<?> job, EffectiveJobDisruptionBudgetResolver fallback, Class<?>... expectedTypes) {
-        List<QuotaTracker> trackers = buildQuotaTrackers(job, jobOperations, fallback, containerHealthService, titusRuntime);
+        List<QuotaTracker> trackers = buildQuotaTrackers(job, fallback, healthyTaskCounters, titusRuntime);
         checkContains(trackers, expectedTypes);
     }
 
@@ -250,7 +261,7 @@ public class JobQuotaControllerTest {
         com.netflix.titus.api.model.reference.Reference jobReference = com.netflix.titus.api.model.reference.Reference.job(job.getId());
 
         scheduleJob(job, 10);
-        JobQuotaController jobController = new JobQuotaController(job, jobOperations, SelfJobDisruptionBudgetResolver.getInstance(), containerHealthService, titusRuntime);
+        JobQuotaController jobController = new JobQuotaController(job, jobOperations, SelfJobDisruptionBudgetResolver.getInstance(), healthyTaskCounters, titusRuntime);
 
         assertThat(jobController.getQuota(jobReference).getQuota()).isEqualTo(0);
     }
@@ -261,7 +272,7 @@ public class JobQuotaControllerTest {
         com.netflix.titus.api.model.reference.Reference jobReference = com.netflix.titus.api.model.reference.Reference.job(job.getId());
 
         scheduleJob(job, 10);
-        JobQuotaController jobController = new JobQuotaController(job, jobOperations, SelfJobDisruptionBudgetResolver.getInstance(), containerHealthService, titusRuntime);
+        JobQuotaController jobController = new JobQuotaController(job, jobOperations, SelfJobDisruptionBudgetResolver.getInstance(), healthyTaskCounters, titusRuntime);
 
         assertThat(jobController.getQuota(jobReference).getQuota()).isEqualTo(2);
 
@@ -275,7 +286,7 @@ public class JobQuotaControllerTest {
         com.netflix.titus.api.model.reference.Reference jobReference = com.netflix.titus.api.model.reference.Reference.job(job.getId());
 
         scheduleJob(job, 10);
-        JobQuotaController jobController = new JobQuotaController(job, jobOperations, SelfJobDisruptionBudgetResolver.getInstance(), containerHealthService, titusRuntime);
+        JobQuotaController jobController = new JobQuotaController(job, jobOperations, SelfJobDisruptionBudgetResolver.getInstance(), healthyTaskCounters, titusRuntime);
 
         assertThat(jobController.getQuota(jobReference).getQuota()).isEqualTo(2);
 
@@ -295,7 +306,7 @@ public class JobQuotaControllerTest {
         com.netflix.titus.api.model.reference.Reference jobReference = com.netflix.titus.api.model.reference.Reference.job(job.getId());
 
         scheduleJob(job, 10);
-        JobQuotaController jobController = new JobQuotaController(job, jobOperations, SelfJobDisruptionBudgetResolver.getInstance(), containerHealthService, titusRuntime);
+        JobQuotaController jobController = new JobQuotaController(job, jobOperations, SelfJobDisruptionBudgetResolver.getInstance(), healthyTaskCounters, titusRuntime);
 
         assertThat(jobController.getQuota(jobReference).getQuota()).isEqualTo(2);
 
@@ -345,7 +356,7 @@ public class JobQuotaControllerTest {
         scheduleJob(job, 10);
 
         EffectiveJobDisruptionBudgetResolver budgetResolver = j -> budget(perTaskRelocationLimitPolicy(100), hourlyRatePercentage(5), singletonList(officeHourTimeWindow()));
-        JobQuotaController jobController = new JobQuotaController(job, jobOperations, budgetResolver, containerHealthService, titusRuntime);
+        JobQuotaController jobController = new JobQuotaController(job, jobOperations, budgetResolver, healthyTaskCounters, titusRuntime);
 
         assertThat(jobController.getQuota(jobReference).getQuota()).isEqualTo(1);
 
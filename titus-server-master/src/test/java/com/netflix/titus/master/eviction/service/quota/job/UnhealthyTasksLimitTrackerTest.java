@@ -19,6 +19,7 @@ package com.netflix.titus.master.eviction.service.quota.job;
 import java.util.Collections;
 
 import com.netflix.titus.api.containerhealth.model.ContainerHealthState;
+import com.netflix.titus.api.eviction.model.EvictionQuota;
 import com.netflix.titus.api.jobmanager.model.job.Job;
 import com.netflix.titus.api.jobmanager.model.job.TaskState;
 import com.netflix.titus.api.jobmanager.model.job.disruptionbudget.AvailabilityPercentageLimitDisruptionBudgetPolicy;
@@ -29,6 +30,8 @@ import com.netflix.titus.api.model.reference.Reference;
 import com.netflix.titus.common.runtime.TitusRuntime;
 import com.netflix.titus.common.runtime.TitusRuntimes;
 import com.netflix.titus.testkit.model.job.JobComponentStub;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 import static com.netflix.titus.master.eviction.service.quota.job.UnhealthyTasksLimitTracker.computeHealthyPoolSizeFromAbsoluteLimit;
@@ -48,6 +51,18 @@ public class UnhealthyTasksLimitTrackerTest {
 
     private final V3JobOperations jobOperations = jobComponentStub.getJobOperations();
 
+    private final HealthyTaskCounters healthyTaskCounters = new HealthyTaskCounters(jobOperations, jobComponentStub.getContainerHealthService());
+
+    @Before
+    public void setUp() {
+        healthyTaskCounters.activate();
+    }
+
+    @After
+    public void tearDown() {
+        healthyTaskCounters.shutdown();
+    }
+
     @Test
     public void testComputeHealthyPoolSizeFromPercentage() {
         testComputeHealthyPoolSizeFromPercentage(newBatchJobWithPercentageLimit(0, 80), 0);
@@ -80,8 +95,7 @@ public class UnhealthyTasksLimitTrackerTest {
         UnhealthyTasksLimitTracker tracker = UnhealthyTasksLimitTracker.percentageLimit(
                 job,
                 (AvailabilityPercentageLimitDisruptionBudgetPolicy) job.getJobDescriptor().getDisruptionBudget().getDisruptionBudgetPolicy(),
-                jobOperations,
-                jobComponentStub.getContainerHealthService()
+                healthyTaskCounters
         );
         testQuota(tracker, Reference.job(job.getId()));
     }
@@ -92,8 +106,7 @@ public class UnhealthyTasksLimitTrackerTest {
         UnhealthyTasksLimitTracker tracker = UnhealthyTasksLimitTracker.absoluteLimit(
                 job,
                 (UnhealthyTasksLimitDisruptionBudgetPolicy) job.getJobDescriptor().getDisruptionBudget().getDisruptionBudgetPolicy(),
-                jobOperations,
-                jobComponentStub.getContainerHealthService()
+                healthyTaskCounters
         );
         testQuota(tracker, Reference.job(job.getId()));
     }
@@ -111,6 +124,22 @@ public class UnhealthyTasksLimitTrackerTest {
         assertThat(tracker.getQuota(jobReference).getQuota()).isEqualTo(1);
     }
 
+    @Test
+    public void testNotHealthyTasksReportIsAddedToRejectionReasonOnly() {
+        Job<?> job = newBatchJobWithAbsoluteLimit(2, 1);
+        UnhealthyTasksLimitTracker tracker = UnhealthyTasksLimitTracker.absoluteLimit(
+                job,
+                (UnhealthyTasksLimitDisruptionBudgetPolicy) job.getJobDescriptor().getDisruptionBudget().getDisruptionBudgetPolicy(),
+                healthyTaskCounters
+        );
+        String taskId = jobOperations.getTasks().get(0).getId();
+
+        EvictionQuota quota = tracker.getQuota(Reference.job(job.getId()));
+        assertThat(quota.getQuota()).isEqualTo(0);
+        assertThat(quota.getMessage()).doesNotContain(taskId);
+        assertThat(tracker.getRejectionReason(quota)).startsWith(quota.getMessage()).contains(taskId);
+    }
+
     private Job<BatchJobExt> newBatchJobWithPercentageLimit(int desired, int percentage) {
         Job<BatchJobExt> job = newBatchJob(desired, budget(percentageOfHealthyPolicy(percentage), unlimitedRate(), Collections.emptyList()));
         jobComponentStub.createJobAndTasks(job);
@@ -66,6 +66,34 @@ public class SystemQuotaControllerTest {
         assertThat(quotaController.consume("someTaskId").isApproved()).isTrue();
     }
 
+    @Test
+    public void testGiveBackConsumedQuota() {
+        budgetEmitter.onNext(SystemDisruptionBudget.newBasicSystemDisruptionBudget(1, 1));
+        quotaController = newSystemQuotaController();
+
+        assertThat(quotaController.consume("someTaskId").isApproved()).isTrue();
+        assertThat(quotaController.consume("someTaskId").isApproved()).isFalse();
+
+        quotaController.giveBackConsumedQuota("someTaskId");
+        assertThat(quotaController.getQuota(Reference.system()).getQuota()).isEqualTo(1);
+        assertThat(quotaController.consume("someTaskId").isApproved()).isTrue();
+    }
+
+    @Test
+    public void testQuotaRefill() {
+        budgetEmitter.onNext(SystemDisruptionBudget.newBasicSystemDisruptionBudget(1, 5));
+        quotaController = newSystemQuotaController();
+
+        assertThat(quotaController.consume("someTaskId").isApproved()).isTrue();
+        assertThat(quotaController.consume("someTaskId").isApproved()).isFalse();
+
+        // One token is added every second, up to the bucket capacity.
+        clock.advanceTime(3, TimeUnit.SECONDS);
+        assertThat(quotaController.getQuota(Reference.system()).getQuota()).isEqualTo(3);
+        clock.advanceTime(10, TimeUnit.SECONDS);
+        assertThat(quotaController.getQuota(Reference.system()).getQuota()).isEqualTo(5);
+    }
+
     @Test
     public void testOutsideTimeWindow() {
         budgetEmitter.onNext(SystemDisruptionBudget.newBasicSystemDisruptionBudget(
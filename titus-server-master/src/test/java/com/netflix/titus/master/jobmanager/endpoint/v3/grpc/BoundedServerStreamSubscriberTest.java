@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.endpoint.v3.grpc;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.netflix.titus.testkit.grpc.TestStreamObserver;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.junit.Test;
+import rx.subjects.PublishSubject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BoundedServerStreamSubscriberTest {
+
+    private final TestStreamObserver<String> responseObserver = new TestStreamObserver<>();
+    private final PublishSubject<String> source = PublishSubject.create();
+    private final AtomicInteger slowConsumerCount = new AtomicInteger();
+
+    private final BoundedServerStreamSubscriber<String> subscriber = new BoundedServerStreamSubscriber<>(
+            responseObserver, "test", 2, slowConsumerCount::incrementAndGet
+    );
+
+    @Test
+    public void testItemsAreBufferedUntilStreamIsReady() {
+        source.subscribe(subscriber);
+
+        responseObserver.setReady(false);
+        source.onNext("a");
+        source.onNext("b");
+        source.onCompleted();
+        assertThat(responseObserver.getEmittedItems()).isEmpty();
+        assertThat(responseObserver.isTerminated()).isFalse();
+
+        responseObserver.setReady(true);
+        assertThat(responseObserver.getEmittedItems()).containsExactly("a", "b");
+        assertThat(responseObserver.isCompleted()).isTrue();
+    }
+
+    @Test
+    public void testSlowConsumerIsTerminated() {
+        source.subscribe(subscriber);
+
+        responseObserver.setReady(false);
+        source.onNext("a");
+        source.onNext("b");
+        source.onNext("c");
+
+        assertThat(source.hasObservers()).isFalse();
+        assertThat(slowConsumerCount.get()).isEqualTo(1);
+        assertThat(responseObserver.getEmittedItems()).isEmpty();
+        assertThat(responseObserver.hasError()).isTrue();
+        assertThat(((StatusRuntimeException) responseObserver.getError()).getStatus().getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+    }
+
+    @Test
+    public void testExtendedLimit() {
+        source.subscribe(subscriber);
+        subscriber.extendLimit(1);
+
+        responseObserver.setReady(false);
+        source.onNext("a");
+        source.onNext("b");
+        source.onNext("c");
+        assertThat(slowConsumerCount.get()).isZero();
+
+        responseObserver.setReady(true);
+        assertThat(responseObserver.getEmittedItems()).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    public void testCancel() {
+        source.subscribe(subscriber);
+
+        responseObserver.cancel();
+        assertThat(source.hasObservers()).isFalse();
+    }
+}
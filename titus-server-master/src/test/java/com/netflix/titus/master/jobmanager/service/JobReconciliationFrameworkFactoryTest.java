@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.model.ApplicationSLA;
+import com.netflix.titus.api.model.ResourceDimension;
+import com.netflix.titus.api.model.Tier;
+import com.netflix.titus.common.framework.reconciler.ReconciliationEngine.DifferenceResolver;
+import com.netflix.titus.common.framework.reconciler.ReconciliationFramework;
+import com.netflix.titus.common.model.sanitizer.EntitySanitizer;
+import com.netflix.titus.common.model.validator.ValidationError;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.master.jobmanager.service.event.JobManagerReconcilerEvent;
+import com.netflix.titus.master.scheduler.SchedulingService;
+import com.netflix.titus.master.scheduler.constraint.SystemHardConstraint;
+import com.netflix.titus.master.scheduler.constraint.SystemSoftConstraint;
+import com.netflix.titus.master.service.management.ApplicationSlaManagementService;
+import com.netflix.titus.runtime.store.v3.memory.InMemoryJobStore;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.Before;
+import org.junit.Test;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+
+import static com.netflix.titus.testkit.model.job.JobDescriptorGenerator.oneTaskBatchJobDescriptor;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JobReconciliationFrameworkFactoryTest {
+
+    private static final ApplicationSLA DEFAULT_SLA = new ApplicationSLA(
+            ApplicationSlaManagementService.DEFAULT_APPLICATION,
+            Tier.Flex,
+            ResourceDimension.newBuilder().withCpus(16).withMemoryMB(32 * 1024).withNetworkMbs(4096).withDiskMB(100 * 1024).build(),
+            10
+    );
+
+    private final TestScheduler testScheduler = Schedulers.test();
+    private final TitusRuntime titusRuntime = TitusRuntimes.test(testScheduler);
+
+    private final JobManagerConfiguration configuration = mock(JobManagerConfiguration.class);
+    private final SchedulingService schedulingService = mock(SchedulingService.class);
+    private final ApplicationSlaManagementService capacityGroupService = mock(ApplicationSlaManagementService.class);
+    private final EntitySanitizer permissiveSanitizer = mock(EntitySanitizer.class);
+    private final EntitySanitizer strictSanitizer = mock(EntitySanitizer.class);
+
+    private final InMemoryJobStore store = new InMemoryJobStore();
+
+    @Before
+    public void setUp() {
+        when(configuration.isFailOnDataValidation()).thenReturn(true);
+        when(configuration.getMaxFailedJobs()).thenReturn(100L);
+        when(configuration.getMaxFailedTasks()).thenReturn(100L);
+        when(configuration.getReconcilerShardCount()).thenReturn(1);
+        when(capacityGroupService.getApplicationSLA(any())).thenReturn(DEFAULT_SLA);
+        when(permissiveSanitizer.validate(any())).thenReturn(Collections.emptySet());
+        when(strictSanitizer.validate(any())).thenReturn(Collections.emptySet());
+
+        for (Job<BatchJobExt> job : JobGenerator.batchJobs(oneTaskBatchJobDescriptor()).getValues(3)) {
+            store.storeJob(job).await();
+            for (Task task : JobGenerator.batchTasks(job).getValues(2)) {
+                store.storeTask(task).await();
+            }
+        }
+    }
+
+    @Test
+    public void testStoreModelIsLoaded() {
+        List<Task> loadedTasks = loadTasks(newFactory().newInstance());
+
+        assertThat(loadedTasks).containsExactlyInAnyOrderElementsOf(retrieveTasks());
+        assertThat(gaugeValue("invalidTasks")).isEqualTo(0);
+    }
+
+    @Test
+    public void testInvalidStoreRecordsAreCounted() {
+        Task invalidTask = retrieveTasks().get(0);
+        Set<ValidationError> violations = Collections.singleton(new ValidationError("field", "invalid"));
+        when(permissiveSanitizer.validate(invalidTask)).thenReturn(violations);
+        when(strictSanitizer.validate(invalidTask)).thenReturn(violations);
+
+        List<Task> loadedTasks = loadTasks(newFactory().newInstance());
+        assertThat(loadedTasks).hasSize(6);
+
+        assertThat(gaugeValue("invalidTasks")).isEqualTo(1);
+        assertThat(gaugeValue("strictlyInvalidTasks")).isEqualTo(1);
+    }
+
+    private JobReconciliationFrameworkFactory newFactory() {
+        return new JobReconciliationFrameworkFactory(
+                configuration,
+                mock(DifferenceResolver.class),
+                mock(DifferenceResolver.class),
+                store,
+                schedulingService,
+                capacityGroupService,
+                mock(SystemSoftConstraint.class),
+                mock(SystemHardConstraint.class),
+                null,
+                permissiveSanitizer,
+                strictSanitizer,
+                titusRuntime,
+                Optional.of(testScheduler)
+        );
+    }
+
+    private List<Task> loadTasks(ReconciliationFramework<JobManagerReconcilerEvent> framework) {
+        return store.retrieveJobs().toBlocking().first().getLeft().stream()
+                .map(job -> framework.findEngineByRootId(job.getId()))
+                .filter(Optional::isPresent)
+                .flatMap(engine -> engine.get().getReferenceView().getChildren().stream())
+                .map(holder -> (Task) holder.getEntity())
+                .collect(Collectors.toList());
+    }
+
+    private double gaugeValue(String name) {
+        return titusRuntime.getRegistry().gauge(JobReconciliationFrameworkFactory.ROOT_METRIC_NAME + name).value();
+    }
+
+    private List<Task> retrieveTasks() {
+        List<Task> tasks = new ArrayList<>();
+        for (Job<?> job : store.retrieveJobs().toBlocking().first().getLeft()) {
+            tasks.addAll(store.retrieveTasksForJob(job.getId()).toBlocking().first().getLeft());
+        }
+        return tasks;
+    }
+}
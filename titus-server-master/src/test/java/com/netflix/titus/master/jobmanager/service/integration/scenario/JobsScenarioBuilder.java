@@ -47,6 +47,7 @@ import com.netflix.titus.master.jobmanager.service.JobReconciliationFrameworkFac
 import com.netflix.titus.master.jobmanager.service.batch.BatchDifferenceResolver;
 import com.netflix.titus.master.jobmanager.service.integration.scenario.StubbedJobStore.StoreEvent;
 import com.netflix.titus.master.jobmanager.service.limiter.JobSubmitLimiter;
+import com.netflix.titus.master.jobmanager.service.query.JobQueryEngine;
 import com.netflix.titus.master.jobmanager.service.service.ServiceDifferenceResolver;
 import com.netflix.titus.master.scheduler.constraint.ConstraintEvaluatorTransformer;
 import com.netflix.titus.master.scheduler.constraint.SystemHardConstraint;
@@ -197,6 +198,7 @@ public class JobsScenarioBuilder {
                         Optional.of(testScheduler)
                 ),
                 jobSubmitLimiter,
+                new JobQueryEngine(titusRuntime),
                 new ManagementSubsystemInitializer(null, null),
                 titusRuntime
         );
@@ -54,6 +54,12 @@ class StubbedSchedulingService implements SchedulingService {
         queuableTasks.put(task.getId(), task);
     }
 
+    @Override
+    public List<String> addRunningTasks(String hostname, List<QueuableTask> tasks) {
+        tasks.forEach(task -> queuableTasks.put(task.getId(), task));
+        return Collections.emptyList();
+    }
+
     @Override
     public Optional<SchedulingResultEvent> findLastSchedulingResult(String taskId) {
         throw new UnsupportedOperationException("not implemented");
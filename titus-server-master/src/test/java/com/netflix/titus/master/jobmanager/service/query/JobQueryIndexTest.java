@@ -0,0 +1,185 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.service.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.grpc.protogen.JobDescriptor.JobSpecCase;
+import com.netflix.titus.grpc.protogen.JobStatus;
+import com.netflix.titus.grpc.protogen.TaskStatus;
+import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3JobQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3TaskQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.jobmanager.JobManagerCursors;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.netflix.titus.common.util.CollectionsExt.asSet;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JobQueryIndexTest {
+
+    private static final int JOB_COUNT = 30;
+    private static final int TASKS_PER_JOB = 4;
+
+    private final TitusRuntime titusRuntime = TitusRuntimes.internal();
+
+    private final List<Job<?>> allJobs = new ArrayList<>();
+    private final List<Task> allTasks = new ArrayList<>();
+
+    private JobQueryIndex index = JobQueryIndex.empty();
+
+    @Before
+    public void setUp() {
+        List<Job<BatchJobExt>> jobs = JobGenerator.batchJobs(JobDescriptorGenerator.batchJobDescriptor(TASKS_PER_JOB)).getValues(JOB_COUNT);
+        for (int i = 0; i < jobs.size(); i++) {
+            String appName = "app" + (i % 3);
+            Job<BatchJobExt> job = jobs.get(i).toBuilder()
+                    .withJobDescriptor(jobs.get(i).getJobDescriptor().toBuilder().withApplicationName(appName).build())
+                    .build();
+            List<Task> tasks = new ArrayList<>();
+            List<? extends Task> generated = JobGenerator.batchTasks(job).getValues(TASKS_PER_JOB);
+            for (int t = 0; t < generated.size(); t++) {
+                Task task = generated.get(t);
+                tasks.add(t % 2 == 0 ? task : JobFunctions.changeTaskStatus(task, TaskState.Started, "started", "started"));
+            }
+            allJobs.add(job);
+            allTasks.addAll(tasks);
+            index = index.withJob(job, tasks);
+        }
+    }
+
+    @Test
+    public void testQueriesMatchFullScan() {
+        List<JobQueryCriteria<TaskStatus.TaskState, JobSpecCase>> queries = new ArrayList<>();
+        queries.add(JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder().build());
+        queries.add(JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder().withAppName("app1").build());
+        queries.add(JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder().withAppName("unknown").build());
+        queries.add(JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder().withJobState(JobStatus.JobState.Accepted).build());
+        queries.add(JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder().withTaskStates(asSet(TaskStatus.TaskState.Started)).build());
+        queries.add(JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder()
+                .withAppName("app2")
+                .withTaskStates(asSet(TaskStatus.TaskState.Accepted))
+                .build()
+        );
+        queries.add(JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder()
+                .withJobIds(asSet(allJobs.get(0).getId(), allJobs.get(5).getId(), "missing"))
+                .build()
+        );
+        queries.add(JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder()
+                .withTaskIds(asSet(allTasks.get(3).getId(), allTasks.get(17).getId()))
+                .build()
+        );
+
+        for (JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria : queries) {
+            assertThat(index.findJobs(criteria, new V3JobQueryCriteriaEvaluator(criteria, titusRuntime)))
+                    .describedAs("Jobs for %s", criteria)
+                    .containsExactlyElementsOf(scanJobs(criteria));
+            assertThat(index.findTasks(criteria, new V3TaskQueryCriteriaEvaluator(criteria, titusRuntime)))
+                    .describedAs("Tasks for %s", criteria)
+                    .containsExactlyElementsOf(scanTasks(criteria));
+        }
+    }
+
+    @Test
+    public void testTaskUpdate() {
+        Task task = allTasks.get(0);
+        Task started = JobFunctions.changeTaskStatus(task, TaskState.Started, "started", "started");
+        JobQueryIndex updated = index.withTask(started);
+
+        JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria = JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder()
+                .withTaskStates(asSet(TaskStatus.TaskState.Started))
+                .build();
+        assertThat(updated.findTasks(criteria, p -> true)).contains(started);
+        assertThat(index.findTasks(criteria, p -> true)).doesNotContain(task);
+        assertThat(updated.getTasks(task.getJobId())).contains(started).doesNotContain(task);
+    }
+
+    @Test
+    public void testTaskMove() {
+        Job<?> jobFrom = allJobs.get(0);
+        Job<?> jobTo = allJobs.get(1);
+        Task task = index.getTasks(jobFrom.getId()).get(0);
+        Task moved = JobFunctions.moveTask(jobFrom.getId(), jobTo.getId(), task);
+
+        List<Task> jobToTasks = new ArrayList<>(index.getTasks(jobTo.getId()));
+        jobToTasks.add(moved);
+
+        // The target job update may be observed before the source job update.
+        JobQueryIndex updated = index.withJob(jobTo, jobToTasks);
+        updated = updated.withJob(jobFrom, index.getTasks(jobFrom.getId()).subList(1, TASKS_PER_JOB));
+
+        assertThat(updated.getTasks(jobFrom.getId())).hasSize(TASKS_PER_JOB - 1).doesNotContain(task);
+        assertThat(updated.getTasks(jobTo.getId())).hasSize(TASKS_PER_JOB + 1).contains(moved);
+        assertThat(updated.getTaskCount()).isEqualTo(index.getTaskCount());
+    }
+
+    @Test
+    public void testJobRemove() {
+        Job<?> job = allJobs.get(0);
+        JobQueryIndex updated = index.withoutJob(job.getId());
+
+        assertThat(updated.getJobCount()).isEqualTo(JOB_COUNT - 1);
+        assertThat(updated.getTaskCount()).isEqualTo((JOB_COUNT - 1) * TASKS_PER_JOB);
+        assertThat(updated.findJob(job.getId())).isEmpty();
+        assertThat(updated.getTasks(job.getId())).isEmpty();
+
+        String appName = job.getJobDescriptor().getApplicationName();
+        JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria = JobQueryCriteria.<TaskStatus.TaskState, JobSpecCase>newBuilder()
+                .withAppName(appName)
+                .build();
+        assertThat(updated.findJobs(criteria, p -> true)).doesNotContain(job).hasSize(JOB_COUNT / 3 - 1);
+    }
+
+    private List<Job<?>> scanJobs(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+        V3JobQueryCriteriaEvaluator evaluator = new V3JobQueryCriteriaEvaluator(criteria, titusRuntime);
+        List<Job<?>> result = allJobs.stream()
+                .filter(job -> evaluator.test(Pair.of(job, tasksOf(job))))
+                .collect(Collectors.toList());
+        result.sort(JobManagerCursors.coreJobCursorOrderComparator());
+        return result;
+    }
+
+    private List<Task> scanTasks(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+        V3TaskQueryCriteriaEvaluator evaluator = new V3TaskQueryCriteriaEvaluator(criteria, titusRuntime);
+        List<Task> result = allTasks.stream()
+                .filter(task -> evaluator.test(Pair.of(findJob(task.getJobId()), task)))
+                .collect(Collectors.toList());
+        result.sort(JobManagerCursors.coreTaskCursorOrderComparator());
+        return result;
+    }
+
+    private List<Task> tasksOf(Job<?> job) {
+        return allTasks.stream().filter(t -> t.getJobId().equals(job.getId())).collect(Collectors.toList());
+    }
+
+    private Job<?> findJob(String jobId) {
+        return allJobs.stream().filter(j -> j.getId().equals(jobId)).findFirst().orElseThrow(IllegalStateException::new);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.mesos;
+
+import com.netflix.titus.api.jobmanager.model.job.TaskStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TaskStatusReasonClassifierTest {
+
+    private final MesosConfiguration configuration = mock(MesosConfiguration.class);
+
+    private TaskStatusReasonClassifier classifier;
+
+    @Before
+    public void setUp() {
+        when(configuration.getInvalidRequestMessagePattern()).thenReturn(".*invalidRequest.*");
+        when(configuration.getCrashedMessagePattern()).thenReturn(".*crashed.*");
+        when(configuration.getTransientSystemErrorMessagePattern()).thenReturn(".*transientSystemError.*");
+        when(configuration.getLocalSystemErrorMessagePattern()).thenReturn(".*localSystemError.*");
+        when(configuration.getUnknownSystemErrorMessagePattern()).thenReturn(".*unknownSystemError.*");
+        classifier = new TaskStatusReasonClassifier(configuration);
+    }
+
+    @Test
+    public void testClassification() {
+        assertThat(classifier.classify("task invalidRequest")).contains(TaskStatus.REASON_INVALID_REQUEST);
+        assertThat(classifier.classify("task crashed")).contains(TaskStatus.REASON_CRASHED);
+        assertThat(classifier.classify("transientSystemError")).contains(TaskStatus.REASON_TRANSIENT_SYSTEM_ERROR);
+        assertThat(classifier.classify("first line\nlocalSystemError")).contains(TaskStatus.REASON_LOCAL_SYSTEM_ERROR);
+        assertThat(classifier.classify("unknownSystemError")).contains(TaskStatus.REASON_UNKNOWN_SYSTEM_ERROR);
+        assertThat(classifier.classify("task finished")).isEmpty();
+    }
+
+    @Test
+    public void testPatternPrecedence() {
+        assertThat(classifier.classify("crashed due to invalidRequest")).contains(TaskStatus.REASON_INVALID_REQUEST);
+        assertThat(classifier.classify("localSystemError, then crashed")).contains(TaskStatus.REASON_CRASHED);
+    }
+
+    @Test
+    public void testPatternUpdate() {
+        assertThat(classifier.classify("task crashed")).contains(TaskStatus.REASON_CRASHED);
+
+        when(configuration.getCrashedMessagePattern()).thenReturn("exited.*");
+        assertThat(classifier.classify("task crashed")).isEmpty();
+        assertThat(classifier.classify("exited with code 1")).contains(TaskStatus.REASON_CRASHED);
+    }
+
+    @Test
+    public void testInvalidPatternUpdateIsIgnored() {
+        assertThat(classifier.classify("task crashed")).contains(TaskStatus.REASON_CRASHED);
+
+        when(configuration.getCrashedMessagePattern()).thenReturn("(crashed");
+        assertThat(classifier.classify("task crashed")).contains(TaskStatus.REASON_CRASHED);
+        assertThat(classifier.classify("task invalidRequest")).contains(TaskStatus.REASON_INVALID_REQUEST);
+    }
+}
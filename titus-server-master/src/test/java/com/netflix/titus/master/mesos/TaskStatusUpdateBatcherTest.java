@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.mesos;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.spectator.api.DistributionSummary;
+import com.netflix.spectator.api.Registry;
+import com.netflix.titus.api.jobmanager.model.CallMetadata;
+import com.netflix.titus.api.jobmanager.model.job.JobModel;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.TaskStatus;
+import com.netflix.titus.master.MetricConstants;
+import com.netflix.titus.master.jobmanager.service.DefaultV3JobOperations;
+import com.netflix.titus.master.jobmanager.service.JobManagerUtil;
+import com.netflix.titus.master.jobmanager.service.integration.scenario.JobsScenarioBuilder;
+import com.netflix.titus.master.jobmanager.service.integration.scenario.ScenarioTemplates;
+import org.junit.Before;
+import org.junit.Test;
+import rx.schedulers.TestScheduler;
+
+import static com.netflix.titus.api.jobmanager.model.job.JobFunctions.changeBatchJobSize;
+import static com.netflix.titus.testkit.model.job.JobDescriptorGenerator.oneTaskBatchJobDescriptor;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TaskStatusUpdateBatcherTest {
+
+    private static final long WINDOW_MS = 10;
+
+    private final JobsScenarioBuilder jobsScenarioBuilder = new JobsScenarioBuilder();
+    private final TestScheduler testScheduler = jobsScenarioBuilder.getTestScheduler();
+    private final DefaultV3JobOperations jobOperations = jobsScenarioBuilder.getJobOperations();
+
+    private final MesosConfiguration configuration = mock(MesosConfiguration.class);
+    private final Registry registry = new DefaultRegistry();
+
+    private TaskStatusUpdateBatcher batcher;
+
+    private Task task0;
+    private Task task1;
+
+    @Before
+    public void setUp() {
+        when(configuration.getTaskStatusUpdateBatchingWindowMs()).thenReturn(WINDOW_MS);
+        when(configuration.getTaskStatusUpdateMaxBatchSize()).thenReturn(100);
+
+        batcher = new TaskStatusUpdateBatcher(jobOperations, configuration, CallMetadata.newBuilder().withCallerId("test").build(), registry, testScheduler);
+
+        jobsScenarioBuilder.scheduleJob(changeBatchJobSize(oneTaskBatchJobDescriptor(), 2), jobScenario -> jobScenario
+                .expectJobEvent()
+                .inActiveTasks((taskIdx, resubmit) -> ScenarioTemplates.acceptTask(taskIdx, resubmit))
+                .inActiveTasks((taskIdx, resubmit) -> ScenarioTemplates.startTask(taskIdx, resubmit, TaskState.Launched))
+        );
+        List<Task> tasks = jobOperations.getTasks(jobsScenarioBuilder.getJobScenario(0).getJobId());
+        assertThat(tasks).hasSize(2);
+        this.task0 = tasks.get(0);
+        this.task1 = tasks.get(1);
+    }
+
+    @Test
+    public void testUpdatesAreAppliedInOneBatch() {
+        for (Task task : new Task[]{task0, task1}) {
+            batcher.updateTask(task.getId(), changeState(TaskState.StartInitiated), testScheduler.now());
+            batcher.updateTask(task.getId(), changeState(TaskState.Started), testScheduler.now());
+        }
+        assertThat(currentState(task0)).isEqualTo(TaskState.Launched);
+
+        advanceUntil(() -> currentState(task0) == TaskState.Started && currentState(task1) == TaskState.Started);
+
+        for (Task task : new Task[]{task0, task1}) {
+            Task updated = jobOperations.findTaskById(task.getId()).get().getRight();
+            assertThat(updated.getStatusHistory()).extracting(TaskStatus::getState).contains(TaskState.StartInitiated);
+        }
+        DistributionSummary batchSize = registry.distributionSummary(MetricConstants.METRIC_MESOS + "statusUpdate.batchSize");
+        assertThat(batchSize.count()).isEqualTo(1);
+        assertThat(batchSize.totalAmount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testFailingTaskUpdateDoesNotAffectOtherTasksInBatch() {
+        batcher.updateTask(task0.getId(), task -> {
+            throw new IllegalStateException("simulated error");
+        }, testScheduler.now());
+        batcher.updateTask(task1.getId(), changeState(TaskState.StartInitiated), testScheduler.now());
+
+        advanceUntil(() -> currentState(task1) == TaskState.StartInitiated);
+        assertThat(currentState(task0)).isEqualTo(TaskState.Launched);
+    }
+
+    @Test
+    public void testBatchIsAppliedWhenFull() {
+        when(configuration.getTaskStatusUpdateBatchingWindowMs()).thenReturn(TimeUnit.HOURS.toMillis(1));
+        when(configuration.getTaskStatusUpdateMaxBatchSize()).thenReturn(2);
+
+        batcher.updateTask(task0.getId(), changeState(TaskState.StartInitiated), testScheduler.now());
+        batcher.updateTask(task1.getId(), changeState(TaskState.StartInitiated), testScheduler.now());
+
+        advanceUntil(() -> currentState(task0) == TaskState.StartInitiated && currentState(task1) == TaskState.StartInitiated);
+    }
+
+    @Test
+    public void testImmediateUpdateIfBatchingDisabled() {
+        when(configuration.getTaskStatusUpdateBatchingWindowMs()).thenReturn(0L);
+
+        batcher.updateTask(task0.getId(), changeState(TaskState.StartInitiated), testScheduler.now());
+
+        advanceUntil(() -> currentState(task0) == TaskState.StartInitiated);
+        assertThat(currentState(task1)).isEqualTo(TaskState.Launched);
+    }
+
+    private TaskState currentState(Task task) {
+        return jobOperations.findTaskById(task.getId()).get().getRight().getStatus().getState();
+    }
+
+    /**
+     * Advances the test scheduler by the reconciler loop interval, until the condition is met. The total time is well
+     * below the batching window used in {@link #testBatchIsAppliedWhenFull()}.
+     */
+    private void advanceUntil(Supplier<Boolean> condition) {
+        for (int i = 0; i < 10 && !condition.get(); i++) {
+            testScheduler.advanceTimeBy(JobsScenarioBuilder.RECONCILER_ACTIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+        assertThat(condition.get()).isTrue();
+    }
+
+    private Function<Task, Optional<Task>> changeState(TaskState taskState) {
+        TaskStatus taskStatus = JobModel.newTaskStatus()
+                .withState(taskState)
+                .withReasonCode("test")
+                .withReasonMessage("Task changed state to " + taskState)
+                .withTimestamp(testScheduler.now())
+                .build();
+        return JobManagerUtil.newMesosTaskStateUpdater(taskStatus, Optional.empty(), jobsScenarioBuilder.getTitusRuntime());
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.archaius.api.Config;
+import com.netflix.fenzo.PreferentialNamedConsumableResourceSet;
+import com.netflix.fenzo.SchedulingResult;
+import com.netflix.fenzo.TaskAssignmentResult;
+import com.netflix.fenzo.TaskSchedulingService;
+import com.netflix.fenzo.VMAssignmentResult;
+import com.netflix.fenzo.VirtualMachineLease;
+import com.netflix.fenzo.queues.QAttributes;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.master.config.MasterConfiguration;
+import com.netflix.titus.master.mesos.TaskInfoFactory;
+import com.netflix.titus.master.model.job.TitusQueuableTask;
+import com.netflix.titus.master.scheduler.constraint.TaskCache;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.apache.mesos.Protos;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+import rx.Completable;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TaskPlacementRecorderTest {
+
+    private static final long STORE_UPDATE_DELAY_MS = 20;
+
+    private static final String ZONE_ATTRIBUTE_NAME = "zone";
+    private static final String ZONE = "zoneA";
+
+    private final TestScheduler testScheduler = Schedulers.test();
+
+    private final V3JobOperations v3JobOperations = mock(V3JobOperations.class);
+    private final TaskSchedulingService schedulingService = mock(TaskSchedulingService.class);
+    private final MasterConfiguration masterConfiguration = mock(MasterConfiguration.class);
+    private final TaskCache taskCache = mock(TaskCache.class);
+
+    @SuppressWarnings("unchecked")
+    private final TaskInfoFactory<Protos.TaskInfo> taskInfoFactory = mock(TaskInfoFactory.class);
+
+    private final TaskPlacementRecorder recorder = new TaskPlacementRecorder(
+            mock(Config.class),
+            masterConfiguration,
+            schedulingService,
+            v3JobOperations,
+            taskInfoFactory,
+            taskCache,
+            TitusRuntimes.internal()
+    );
+
+    private final Job<BatchJobExt> job = JobGenerator.oneBatchJob();
+
+    private final Map<String, Task> tasksById = new HashMap<>();
+
+    /**
+     * Task ids in the order their store updates completed.
+     */
+    private final List<String> recordedTaskIds = new CopyOnWriteArrayList<>();
+
+    private final Map<String, List<String>> launchedTaskIdsByHost = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() {
+        when(masterConfiguration.getHostZoneAttributeName()).thenReturn(ZONE_ATTRIBUTE_NAME);
+        when(v3JobOperations.findTaskById(any())).thenAnswer(invocation -> {
+            Task task = tasksById.get(invocation.<String>getArgument(0));
+            return task == null ? Optional.empty() : Optional.of(Pair.of(job, task));
+        });
+        when(v3JobOperations.recordTaskPlacement(any(), any(), any())).thenAnswer(invocation -> {
+            String taskId = invocation.getArgument(0);
+            return Completable.timer(STORE_UPDATE_DELAY_MS, TimeUnit.MILLISECONDS, testScheduler)
+                    .doOnCompleted(() -> recordedTaskIds.add(taskId));
+        });
+        when(v3JobOperations.killTask(any(), anyBoolean(), any(), any())).thenReturn(Mono.empty());
+        when(taskInfoFactory.newTaskInfo(any(), any(), any(), any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            TitusQueuableTask fenzoTask = invocation.getArgument(0);
+            return Protos.TaskInfo.newBuilder()
+                    .setTaskId(Protos.TaskID.newBuilder().setValue(fenzoTask.getId()))
+                    .buildPartial();
+        });
+    }
+
+    @Test
+    public void testTasksAreLaunchedAfterStoreUpdateWithoutBlockingCaller() {
+        Task task1 = newTask();
+        Task task2 = newTask();
+        Task task3 = newTask();
+        SchedulingResult schedulingResult = newSchedulingResult(
+                newAgentAssignment("host1", task1, task2),
+                newAgentAssignment("host2", task3)
+        );
+
+        TaskPlacementRecorder.PlacementBatch batch = recorder.recordAsync(schedulingResult, this::launch);
+
+        // Store updates are in progress, and the placements are counted as in-flight
+        assertThat(launchedTaskIdsByHost).isEmpty();
+        assertThat(recorder.getInFlightTaskCount()).isEqualTo(3);
+        verify(taskCache).addInFlightPlacement(job.getId(), task1.getId(), ZONE);
+        verify(taskCache).addInFlightPlacement(job.getId(), task2.getId(), ZONE);
+        verify(taskCache).addInFlightPlacement(job.getId(), task3.getId(), ZONE);
+        verify(taskCache, never()).removeInFlightPlacement(any());
+
+        testScheduler.advanceTimeBy(STORE_UPDATE_DELAY_MS, TimeUnit.MILLISECONDS);
+
+        assertThat(batch.await(0)).isTrue();
+        assertThat(batch.getLaunchedTaskCount()).isEqualTo(3);
+        assertThat(launchedTaskIdsByHost.get("host1")).containsExactlyInAnyOrder(task1.getId(), task2.getId());
+        assertThat(launchedTaskIdsByHost.get("host2")).containsExactly(task3.getId());
+        assertThat(recorder.getInFlightTaskCount()).isZero();
+        verify(taskCache).removeInFlightPlacement(task1.getId());
+        verify(taskCache).removeInFlightPlacement(task2.getId());
+        verify(taskCache).removeInFlightPlacement(task3.getId());
+    }
+
+    @Test
+    public void testStoreUpdateFailureKillsTaskAndRejectsOffers() {
+        Task failingTask = newTask();
+        when(v3JobOperations.recordTaskPlacement(eq(failingTask.getId()), any(), any())).thenReturn(Completable.error(new RuntimeException("simulated store error")));
+
+        Task okTask = newTask();
+        SchedulingResult schedulingResult = newSchedulingResult(
+                newAgentAssignment("host1", failingTask),
+                newAgentAssignment("host2", okTask)
+        );
+
+        TaskPlacementRecorder.PlacementBatch batch = recorder.recordAsync(schedulingResult, this::launch);
+        testScheduler.advanceTimeBy(STORE_UPDATE_DELAY_MS, TimeUnit.MILLISECONDS);
+
+        assertThat(batch.getLaunchedTaskCount()).isEqualTo(1);
+        assertThat(launchedTaskIdsByHost.get("host1")).isEmpty();
+        assertThat(launchedTaskIdsByHost.get("host2")).containsExactly(okTask.getId());
+        verify(v3JobOperations).killTask(eq(failingTask.getId()), eq(false), eq(V3JobOperations.Trigger.Scheduler), any());
+        verify(taskCache).removeInFlightPlacement(failingTask.getId());
+    }
+
+    @Test
+    public void testUnknownTaskIsRemovedFromFenzo() {
+        TaskAssignmentResult unknownTaskAssignment = newTaskAssignment("unknownTask", "host1");
+        VMAssignmentResult agentAssignment = newAgentAssignment("host1", Collections.singleton(unknownTaskAssignment));
+
+        TaskPlacementRecorder.PlacementBatch batch = recorder.recordAsync(newSchedulingResult(agentAssignment), this::launch);
+
+        assertThat(batch.await(0)).isTrue();
+        assertThat(batch.getLaunchedTaskCount()).isZero();
+        assertThat(launchedTaskIdsByHost.get("host1")).isEmpty();
+        verify(schedulingService).removeTask(eq("unknownTask"), any(), eq("host1"));
+        verify(taskCache).removeInFlightPlacement("unknownTask");
+    }
+
+    @Test
+    public void testLauncherFailureDoesNotAffectOtherAgents() {
+        SchedulingResult schedulingResult = newSchedulingResult(
+                newAgentAssignment("host1", newTask()),
+                newAgentAssignment("host2", newTask())
+        );
+
+        TaskPlacementRecorder.PlacementBatch batch = recorder.recordAsync(schedulingResult, (leases, taskInfos) -> {
+            if (leases.get(0).hostname().equals("host1")) {
+                throw new RuntimeException("simulated launch error");
+            }
+            launch(leases, taskInfos);
+        });
+        testScheduler.advanceTimeBy(STORE_UPDATE_DELAY_MS, TimeUnit.MILLISECONDS);
+
+        assertThat(batch.await(0)).isTrue();
+        assertThat(batch.getLaunchedTaskCount()).isEqualTo(1);
+        assertThat(launchedTaskIdsByHost).containsOnlyKeys("host2");
+        assertThat(recorder.getInFlightTaskCount()).isZero();
+    }
+
+    @Test
+    public void testEmptySchedulingResult() {
+        TaskPlacementRecorder.PlacementBatch batch = recorder.recordAsync(newSchedulingResult(), this::launch);
+
+        assertThat(batch.await(0)).isTrue();
+        assertThat(batch.getLaunchedTaskCount()).isZero();
+        assertThat(launchedTaskIdsByHost).isEmpty();
+    }
+
+    private void launch(List<VirtualMachineLease> leases, List<Protos.TaskInfo> taskInfos) {
+        String hostname = leases.get(0).hostname();
+        List<String> taskIds = new ArrayList<>();
+        for (Protos.TaskInfo taskInfo : taskInfos) {
+            String taskId = taskInfo.getTaskId().getValue();
+            assertThat(recordedTaskIds).contains(taskId);
+            taskIds.add(taskId);
+        }
+        launchedTaskIdsByHost.put(hostname, taskIds);
+    }
+
+    private Task newTask() {
+        Task task = JobGenerator.batchTasks(job).getValue();
+        tasksById.put(task.getId(), task);
+        return task;
+    }
+
+    private SchedulingResult newSchedulingResult(VMAssignmentResult... agentAssignments) {
+        Map<String, VMAssignmentResult> resultMap = new HashMap<>();
+        for (VMAssignmentResult agentAssignment : agentAssignments) {
+            resultMap.put(agentAssignment.getHostname(), agentAssignment);
+        }
+        SchedulingResult schedulingResult = mock(SchedulingResult.class);
+        when(schedulingResult.getResultMap()).thenReturn(resultMap);
+        return schedulingResult;
+    }
+
+    private VMAssignmentResult newAgentAssignment(String hostname, Task... tasks) {
+        Set<TaskAssignmentResult> taskAssignments = new HashSet<>();
+        for (Task task : tasks) {
+            taskAssignments.add(newTaskAssignment(task.getId(), hostname));
+        }
+        return newAgentAssignment(hostname, taskAssignments);
+    }
+
+    private VMAssignmentResult newAgentAssignment(String hostname, Set<TaskAssignmentResult> taskAssignments) {
+        VirtualMachineLease lease = mock(VirtualMachineLease.class);
+        when(lease.hostname()).thenReturn(hostname);
+        when(lease.getAttributeMap()).thenReturn(Collections.singletonMap(ZONE_ATTRIBUTE_NAME, Protos.Attribute.newBuilder()
+                .setName(ZONE_ATTRIBUTE_NAME)
+                .setType(Protos.Value.Type.TEXT)
+                .setText(Protos.Value.Text.newBuilder().setValue(ZONE))
+                .build()
+        ));
+        when(lease.getOffer()).thenReturn(Protos.Offer.getDefaultInstance());
+
+        VMAssignmentResult agentAssignment = mock(VMAssignmentResult.class);
+        when(agentAssignment.getHostname()).thenReturn(hostname);
+        when(agentAssignment.getLeasesUsed()).thenReturn(Collections.singletonList(lease));
+        when(agentAssignment.getTasksAssigned()).thenReturn(taskAssignments);
+        return agentAssignment;
+    }
+
+    private TaskAssignmentResult newTaskAssignment(String taskId, String hostname) {
+        QAttributes qAttributes = mock(QAttributes.class);
+        when(qAttributes.getTierNumber()).thenReturn(1);
+
+        TitusQueuableTask fenzoTask = mock(TitusQueuableTask.class);
+        when(fenzoTask.getId()).thenReturn(taskId);
+        when(fenzoTask.getJob()).thenReturn(job);
+        when(fenzoTask.getQAttributes()).thenReturn(qAttributes);
+
+        TaskAssignmentResult taskAssignment = mock(TaskAssignmentResult.class);
+        when(taskAssignment.getRequest()).thenReturn(fenzoTask);
+        when(taskAssignment.getTaskId()).thenReturn(taskId);
+        when(taskAssignment.getHostname()).thenReturn(hostname);
+        when(taskAssignment.getrSets()).thenReturn(Collections.<PreferentialNamedConsumableResourceSet.ConsumeResult>singletonList(null));
+        return taskAssignment;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.scheduler.constraint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.netflix.titus.api.jobmanager.TaskAttributes;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.JobState;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.event.JobManagerEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.JobUpdateEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.TaskUpdateEvent;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.subjects.PublishSubject;
+
+import static com.netflix.titus.api.jobmanager.service.JobManagerConstants.UNDEFINED_CALL_METADATA;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TaskCacheTest {
+
+    private final V3JobOperations v3JobOperations = mock(V3JobOperations.class);
+
+    private final PublishSubject<JobManagerEvent<?>> eventSubject = PublishSubject.create();
+
+    private final List<Pair<Job, List<Task>>> jobsAndTasks = new ArrayList<>();
+
+    private final Job<BatchJobExt> job = JobGenerator.oneBatchJob();
+
+    private final TaskCache taskCache = new TaskCache(v3JobOperations);
+
+    @Before
+    public void setUp() {
+        when(v3JobOperations.observeJobs()).thenReturn(eventSubject);
+        when(v3JobOperations.getJobsAndTasks()).thenAnswer(invocation -> new ArrayList<>(jobsAndTasks));
+    }
+
+    @After
+    public void tearDown() {
+        taskCache.shutdown();
+    }
+
+    @Test
+    public void testInitialStateIsLoadedOnce() {
+        Task task = placedTask("zoneA", "host1");
+        jobsAndTasks.add(Pair.of(job, Collections.singletonList(task)));
+
+        taskCache.enterActiveMode();
+        taskCache.prepare();
+        taskCache.prepare();
+
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).containsEntry("zoneA", 1).hasSize(1);
+        verify(v3JobOperations, times(1)).getJobsAndTasks();
+    }
+
+    @Test
+    public void testCountersAreUpdatedFromEvents() {
+        taskCache.enterActiveMode();
+
+        Task task1 = placedTask("zoneA", "host1");
+        Task task2 = placedTask("zoneB", "host2");
+        eventSubject.onNext(TaskUpdateEvent.newTask(job, task1, UNDEFINED_CALL_METADATA));
+        eventSubject.onNext(TaskUpdateEvent.newTask(job, task2, UNDEFINED_CALL_METADATA));
+        taskCache.prepare();
+
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).containsEntry("zoneA", 1).containsEntry("zoneB", 1);
+
+        // A status update keeps the task counted, until the task finishes
+        Task task1Started = JobFunctions.changeTaskStatus(task1, TaskState.Started, "started", "started");
+        eventSubject.onNext(TaskUpdateEvent.taskChange(job, task1Started, task1, UNDEFINED_CALL_METADATA));
+        Task task1Finished = JobFunctions.changeTaskStatus(task1Started, TaskState.Finished, "finished", "finished");
+        eventSubject.onNext(TaskUpdateEvent.taskChange(job, task1Finished, task1Started, UNDEFINED_CALL_METADATA));
+        taskCache.prepare();
+
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).containsEntry("zoneB", 1).hasSize(1);
+
+        Job<BatchJobExt> finishedJob = JobFunctions.changeJobStatus(job, JobState.Finished, "finished");
+        eventSubject.onNext(JobUpdateEvent.jobChange(finishedJob, job, UNDEFINED_CALL_METADATA));
+        taskCache.prepare();
+
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).isEmpty();
+    }
+
+    @Test
+    public void testPrepareKeepsIterationViewStable() {
+        taskCache.enterActiveMode();
+        taskCache.prepare();
+
+        eventSubject.onNext(TaskUpdateEvent.newTask(job, placedTask("zoneA", "host1"), UNDEFINED_CALL_METADATA));
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).isEmpty();
+
+        taskCache.prepare();
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).containsEntry("zoneA", 1);
+    }
+
+    @Test
+    public void testInFlightPlacementsAreCounted() {
+        taskCache.enterActiveMode();
+
+        Task task = placedTask("zoneA", "host1");
+        taskCache.addInFlightPlacement(job.getId(), task.getId(), "zoneA");
+        taskCache.addInFlightPlacement(job.getId(), "failedTask", "zoneB");
+        taskCache.prepare();
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).containsEntry("zoneA", 1).containsEntry("zoneB", 1);
+
+        // Recorded placement is not counted twice
+        eventSubject.onNext(TaskUpdateEvent.newTask(job, task, UNDEFINED_CALL_METADATA));
+        taskCache.prepare();
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).containsEntry("zoneA", 1).containsEntry("zoneB", 1);
+
+        taskCache.removeInFlightPlacement(task.getId());
+        taskCache.removeInFlightPlacement("failedTask");
+        taskCache.prepare();
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).containsEntry("zoneA", 1).hasSize(1);
+    }
+
+    @Test
+    public void testEventStreamIsRestartedAfterError() {
+        taskCache.enterActiveMode();
+        eventSubject.onError(new RuntimeException("simulated error"));
+
+        PublishSubject<JobManagerEvent<?>> newEventSubject = PublishSubject.create();
+        when(v3JobOperations.observeJobs()).thenReturn(newEventSubject);
+        jobsAndTasks.add(Pair.of(job, Collections.singletonList(placedTask("zoneA", "host1"))));
+
+        taskCache.prepare();
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).containsEntry("zoneA", 1);
+
+        newEventSubject.onNext(TaskUpdateEvent.newTask(job, placedTask("zoneB", "host2"), UNDEFINED_CALL_METADATA));
+        taskCache.prepare();
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).containsEntry("zoneA", 1).containsEntry("zoneB", 1);
+    }
+
+    @Test
+    public void testFullRebuildWhenNotActivated() {
+        jobsAndTasks.add(Pair.of(job, Collections.singletonList(placedTask("zoneA", "host1"))));
+
+        taskCache.prepare();
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).containsEntry("zoneA", 1);
+    }
+
+    @Test
+    public void testFullRebuildSyncsChangedTasksOnly() {
+        Task task1 = placedTask("zoneA", "host1");
+        Task task2 = placedTask("zoneB", "host2");
+        jobsAndTasks.add(Pair.of(job, Arrays.asList(task1, task2)));
+        taskCache.prepare();
+        Map<String, Integer> zoneCounters = taskCache.getTasksByZoneIdCounters(job.getId());
+        assertThat(zoneCounters).containsEntry("zoneA", 1).containsEntry("zoneB", 1);
+
+        // Nothing changed, so the same aggregates are reused
+        taskCache.prepare();
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).isSameAs(zoneCounters);
+
+        // Removed and finished tasks are no longer counted
+        Task task3 = placedTask("zoneC", "host3");
+        jobsAndTasks.clear();
+        jobsAndTasks.add(Pair.of(job, Arrays.asList(
+                JobFunctions.changeTaskStatus(task2, TaskState.Finished, "finished", "finished"),
+                task3
+        )));
+        taskCache.prepare();
+        assertThat(taskCache.getTasksByZoneIdCounters(job.getId())).containsEntry("zoneC", 1).hasSize(1);
+    }
+
+    private Task placedTask(String zoneId, String host) {
+        Task task = JobGenerator.batchTasks(job).getValue();
+        String taskId = task.getId() + '-' + zoneId + '-' + host;
+        return task.toBuilder()
+                .withId(taskId)
+                .withOriginalId(taskId)
+                .addToTaskContext(TaskAttributes.TASK_ATTRIBUTES_AGENT_ZONE, zoneId)
+                .addToTaskContext(TaskAttributes.TASK_ATTRIBUTES_AGENT_HOST, host)
+                .build();
+    }
+}
@@ -19,11 +19,10 @@ package com.netflix.titus.runtime.connector.jobmanager;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import com.google.common.base.Preconditions;
 import com.netflix.titus.api.jobmanager.TaskAttributes;
@@ -31,54 +30,66 @@ import com.netflix.titus.api.jobmanager.model.job.Job;
 import com.netflix.titus.api.jobmanager.model.job.JobState;
 import com.netflix.titus.api.jobmanager.model.job.Task;
 import com.netflix.titus.api.jobmanager.model.job.TaskState;
-import com.netflix.titus.common.util.CollectionsExt;
 import com.netflix.titus.common.util.StringExt;
+import com.netflix.titus.common.util.code.CodeInvariants;
+import com.netflix.titus.common.util.code.LoggingCodeInvariants;
+import com.netflix.titus.common.util.collections.PersistentHashMap;
 import com.netflix.titus.common.util.tuple.Pair;
 
 import static java.util.Collections.unmodifiableList;
-import static java.util.Collections.unmodifiableMap;
 
 /**
- * TODO Handle moved tasks
+ * Immutable snapshot of the replicated job and task data. Snapshots are backed by persistent collections, so
+ * {@link #updateJob(Job)} and {@link #updateTask(Task, boolean)} create a new version in O(log n), sharing all
+ * unchanged data with the previous one. The aggregate views (all jobs, all tasks, jobs and their tasks) are
+ * materialized lazily on first access.
+ * <p>
  * TODO Finished tasks are not handled correctly for batch jobs (they are in active data set until replaced).
  */
 public class JobSnapshot {
 
-    private static final JobSnapshot EMPTY = new Builder("empty", Collections.emptyMap(), Collections.emptyMap()).build();
+    private static final JobSnapshot EMPTY = new Builder("empty", Collections.emptyMap(), Collections.emptyMap(), LoggingCodeInvariants.getDefault()).build();
 
     private final String snapshotId;
-    private final Map<String, Job<?>> jobsById;
-    private final Map<String, List<Task>> tasksByJobId;
-    private final List<Job<?>> allJobs;
-    private final List<Task> allTasks;
-    private final List<Pair<Job<?>, List<Task>>> allJobsAndTasks;
-    private final Map<String, Task> taskById;
+    private final PersistentHashMap<String, Job<?>> jobsById;
+    private final PersistentHashMap<String, JobTasks> tasksByJobId;
+    private final PersistentHashMap<String, Task> taskById;
+
+    private volatile List<Job<?>> allJobs;
+    private volatile List<Task> allTasks;
+    private volatile List<Pair<Job<?>, List<Task>>> allJobsAndTasks;
 
     public static JobSnapshot empty() {
         return EMPTY;
     }
 
     public static JobSnapshot newInstance(String snapshotId, Map<String, Job<?>> jobsById, Map<String, List<Task>> tasksByJobId) {
-        return new Builder(snapshotId, jobsById, tasksByJobId).build();
+        return new Builder(snapshotId, jobsById, tasksByJobId, LoggingCodeInvariants.getDefault()).build();
     }
 
     public static Builder newBuilder(String snapshotId, Map<String, Job<?>> jobsById, Map<String, List<Task>> tasksByJobId) {
-        return new Builder(snapshotId, jobsById, tasksByJobId);
+        return new Builder(snapshotId, jobsById, tasksByJobId, LoggingCodeInvariants.getDefault());
     }
 
     public static Builder newBuilder(String snapshotId) {
-        return new Builder(snapshotId);
+        return newBuilder(snapshotId, LoggingCodeInvariants.getDefault());
+    }
+
+    /**
+     * Tasks whose job is not in the snapshot are dropped by {@link Builder#build()}, and each of them is reported
+     * to the given {@link CodeInvariants}.
+     */
+    public static Builder newBuilder(String snapshotId, CodeInvariants codeInvariants) {
+        return new Builder(snapshotId, codeInvariants);
     }
 
-    private JobSnapshot(String snapshotId, Map<String, Job<?>> jobsById, Map<String, List<Task>> tasksByJobId,
-                        List<Job<?>> allJobs, List<Task> allTasks, List<Pair<Job<?>, List<Task>>> allJobsAndTasks,
-                        Map<String, Task> taskById) {
+    private JobSnapshot(String snapshotId,
+                        PersistentHashMap<String, Job<?>> jobsById,
+                        PersistentHashMap<String, JobTasks> tasksByJobId,
+                        PersistentHashMap<String, Task> taskById) {
         this.snapshotId = snapshotId;
         this.jobsById = jobsById;
         this.tasksByJobId = tasksByJobId;
-        this.allJobs = allJobs;
-        this.allTasks = allTasks;
-        this.allJobsAndTasks = allJobsAndTasks;
         this.taskById = taskById;
     }
 
@@ -87,7 +98,12 @@ public class JobSnapshot {
     }
 
     public List<Job<?>> getJobs() {
-        return allJobs;
+        List<Job<?>> result = allJobs;
+        if (result == null) {
+            result = unmodifiableList(new ArrayList<>(jobsById.values()));
+            this.allJobs = result;
+        }
+        return result;
     }
 
     public Optional<Job<?>> findJob(String jobId) {
@@ -95,15 +111,28 @@ public class JobSnapshot {
     }
 
     public List<Task> getTasks() {
-        return allTasks;
+        List<Task> result = allTasks;
+        if (result == null) {
+            result = unmodifiableList(new ArrayList<>(taskById.values()));
+            this.allTasks = result;
+        }
+        return result;
     }
 
     public List<Task> getTasks(String jobId) {
-        return tasksByJobId.getOrDefault(jobId, Collections.emptyList());
+        JobTasks jobTasks = tasksByJobId.get(jobId);
+        return jobTasks == null ? Collections.emptyList() : jobTasks.getTaskList();
     }
 
     public List<Pair<Job<?>, List<Task>>> getJobsAndTasks() {
-        return allJobsAndTasks;
+        List<Pair<Job<?>, List<Task>>> result = allJobsAndTasks;
+        if (result == null) {
+            List<Pair<Job<?>, List<Task>>> jobsAndTasks = new ArrayList<>(jobsById.size());
+            jobsById.forEach((jobId, job) -> jobsAndTasks.add(Pair.of(job, getTasks(jobId))));
+            result = unmodifiableList(jobsAndTasks);
+            this.allJobsAndTasks = result;
+        }
+        return result;
     }
 
     public Optional<Pair<Job<?>, Task>> findTaskById(String taskId) {
@@ -123,13 +152,18 @@ public class JobSnapshot {
             return Optional.empty();
         }
 
-        Builder builder = new Builder(this);
-        if (job.getStatus().getState() == JobState.Finished) {
-            builder.removeJob(job);
-        } else {
-            builder.addOrUpdateJob(job);
+        if (job.getStatus().getState() != JobState.Finished) {
+            return Optional.of(new JobSnapshot(snapshotId, jobsById.with(job.getId(), job), tasksByJobId, taskById));
         }
-        return Optional.of(builder.build());
+
+        PersistentHashMap<String, Task> newTaskById = taskById;
+        JobTasks jobTasks = tasksByJobId.get(job.getId());
+        if (jobTasks != null) {
+            for (String taskId : jobTasks.tasks.keySet()) {
+                newTaskById = newTaskById.without(taskId);
+            }
+        }
+        return Optional.of(new JobSnapshot(snapshotId, jobsById.without(job.getId()), tasksByJobId.without(job.getId()), newTaskById));
     }
 
     public Optional<JobSnapshot> updateTask(Task task, boolean moved) {
@@ -142,69 +176,127 @@ public class JobSnapshot {
             return Optional.empty();
         }
 
-        Builder builder = new Builder(this);
+        PersistentHashMap<String, JobTasks> newTasksByJobId = tasksByJobId;
+        if (moved) {
+            String previousJobId = previous != null ? previous.getJobId() : getMovedFromJobId(task);
+            newTasksByJobId = withoutTask(newTasksByJobId, previousJobId, task.getId());
+        }
+
         if (task.getStatus().getState() == TaskState.Finished) {
-            builder.removeTask(task, moved);
-        } else {
-            builder.addOrUpdateTask(task, moved);
+            newTasksByJobId = withoutTask(newTasksByJobId, task.getJobId(), task.getId());
+            return Optional.of(new JobSnapshot(snapshotId, jobsById, newTasksByJobId, taskById.without(task.getId())));
         }
-        return Optional.of(builder.build());
+
+        JobTasks jobTasks = newTasksByJobId.get(task.getJobId());
+        newTasksByJobId = newTasksByJobId.with(task.getJobId(), (jobTasks == null ? JobTasks.EMPTY : jobTasks).with(task));
+        return Optional.of(new JobSnapshot(snapshotId, jobsById, newTasksByJobId, taskById.with(task.getId(), task)));
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("JobSnapshot{snapshotId=").append(snapshotId).append(", jobs=");
         jobsById.forEach((id, job) -> {
-            List<Task> tasks = tasksByJobId.get(id);
-            int tasksCount = tasks == null ? 0 : tasks.size();
+            JobTasks tasks = tasksByJobId.get(id);
+            int tasksCount = tasks == null ? 0 : tasks.tasks.size();
             sb.append(id).append('=').append(tasksCount).append(',');
         });
         sb.setLength(sb.length() - 1);
         return sb.append('}').toString();
     }
 
+    private static String getMovedFromJobId(Task task) {
+        String jobId = task.getTaskContext().get(TaskAttributes.TASK_ATTRIBUTES_MOVED_FROM_JOB);
+        Preconditions.checkArgument(StringExt.isNotEmpty(jobId));
+        return jobId;
+    }
+
+    private static PersistentHashMap<String, JobTasks> withoutTask(PersistentHashMap<String, JobTasks> tasksByJobId, String jobId, String taskId) {
+        JobTasks jobTasks = tasksByJobId.get(jobId);
+        if (jobTasks == null) {
+            return tasksByJobId;
+        }
+        JobTasks updated = jobTasks.without(taskId);
+        return updated == jobTasks ? tasksByJobId : tasksByJobId.with(jobId, updated);
+    }
+
+    /**
+     * Tasks of a single job. The task list is materialized lazily, and is reused by all snapshot versions in which
+     * the job's tasks did not change.
+     */
+    private static class JobTasks {
+
+        private static final JobTasks EMPTY = new JobTasks(PersistentHashMap.empty());
+
+        private final PersistentHashMap<String, Task> tasks;
+        private volatile List<Task> taskList;
+
+        private JobTasks(PersistentHashMap<String, Task> tasks) {
+            this.tasks = tasks;
+        }
+
+        private List<Task> getTaskList() {
+            List<Task> result = taskList;
+            if (result == null) {
+                result = unmodifiableList(new ArrayList<>(tasks.values()));
+                this.taskList = result;
+            }
+            return result;
+        }
+
+        private JobTasks with(Task task) {
+            PersistentHashMap<String, Task> newTasks = tasks.with(task.getId(), task);
+            return newTasks == tasks ? this : new JobTasks(newTasks);
+        }
+
+        private JobTasks without(String taskId) {
+            PersistentHashMap<String, Task> newTasks = tasks.without(taskId);
+            return newTasks == tasks ? this : new JobTasks(newTasks);
+        }
+    }
+
     public static class Builder {
         private final String snapshotId;
         private final Map<String, Job<?>> jobsById;
-        private final Map<String, List<Task>> tasksByJobId;
+        private final Map<String, Map<String, Task>> tasksByJobId;
+        private final CodeInvariants codeInvariants;
 
-        private Builder(String snapshotId) {
+        private Builder(String snapshotId, CodeInvariants codeInvariants) {
             this.snapshotId = snapshotId;
             this.jobsById = new HashMap<>();
             this.tasksByJobId = new HashMap<>();
+            this.codeInvariants = codeInvariants;
         }
 
-        private Builder(JobSnapshot from) {
-            this(from.snapshotId, from.jobsById, from.tasksByJobId);
-        }
-
-        private Builder(String snapshotId, Map<String, Job<?>> jobsById, Map<String, List<Task>> tasksByJobId) {
+        private Builder(String snapshotId, Map<String, Job<?>> jobsById, Map<String, List<Task>> tasksByJobId, CodeInvariants codeInvariants) {
             this.snapshotId = snapshotId;
             this.jobsById = new HashMap<>(jobsById);
-            HashMap<String, List<Task>> copy = new HashMap<>();
-            tasksByJobId.forEach((jobId, tasks) -> copy.put(jobId, new ArrayList<>(tasks)));
-            this.tasksByJobId = copy;
+            this.tasksByJobId = new HashMap<>();
+            this.codeInvariants = codeInvariants;
+            tasksByJobId.forEach((jobId, tasks) -> tasks.forEach(task -> addTask(jobId, task)));
         }
 
+        /**
+         * Builds the snapshot. Tasks of jobs that are not in the snapshot are dropped, as
+         * {@link JobSnapshot#findTaskById(String)} requires each task to have its job. Each dropped task is reported
+         * as an inconsistency.
+         */
         public JobSnapshot build() {
-            Map<String, List<Task>> immutableTasksByJobId = new HashMap<>();
-            tasksByJobId.forEach((jobId, tasks) -> immutableTasksByJobId.put(jobId, unmodifiableList(tasks)));
-
-            List<Task> allTasks = new ArrayList<>();
-            tasksByJobId.values().forEach(allTasks::addAll);
-
-            Map<String, Task> taskById = allTasks.stream().collect(Collectors.toMap(Task::getId, Function.identity()));
-
+            Map<String, Task> taskById = new HashMap<>();
+            Map<String, JobTasks> jobTasksById = new HashMap<>();
+            tasksByJobId.forEach((jobId, tasks) -> {
+                if (!jobsById.containsKey(jobId)) {
+                    tasks.keySet().forEach(taskId -> codeInvariants.inconsistent("Job record not found, dropping task from the snapshot: jobId=%s, taskId=%s", jobId, taskId));
+                } else if (!tasks.isEmpty()) {
+                    jobTasksById.put(jobId, new JobTasks(PersistentHashMap.copyOf(tasks)));
+                    taskById.putAll(tasks);
+                }
+            });
             return new JobSnapshot(
                     snapshotId,
-                    unmodifiableMap(jobsById),
-                    unmodifiableMap(immutableTasksByJobId),
-                    unmodifiableList(new ArrayList<>(jobsById.values())),
-                    unmodifiableList(allTasks),
-                    buildAllJobsAndTasksList(jobsById, tasksByJobId),
-                    unmodifiableMap(taskById)
+                    PersistentHashMap.copyOf(jobsById),
+                    PersistentHashMap.copyOf(jobTasksById),
+                    PersistentHashMap.copyOf(taskById)
             );
-
         }
 
         public Builder removeJob(Job<?> job) {
@@ -219,15 +311,13 @@ public class JobSnapshot {
         }
 
         public Builder removeTask(Task task, boolean movedFromAnotherJob) {
-            String jobIdIndexToUpdate = movedFromAnotherJob ?
-                    task.getTaskContext().get(TaskAttributes.TASK_ATTRIBUTES_MOVED_FROM_JOB) :
-                    task.getJobId();
+            String jobIdIndexToUpdate = movedFromAnotherJob ? getMovedFromJobId(task) : task.getJobId();
             Preconditions.checkArgument(StringExt.isNotEmpty(jobIdIndexToUpdate));
 
-            if (tasksByJobId.containsKey(jobIdIndexToUpdate)) {
-                tasksByJobId.get(jobIdIndexToUpdate).removeIf(t -> t.getId().equals(task.getId()));
+            Map<String, Task> jobTasks = tasksByJobId.get(jobIdIndexToUpdate);
+            if (jobTasks != null) {
+                jobTasks.remove(task.getId());
             }
-
             return this;
         }
 
@@ -235,31 +325,16 @@ public class JobSnapshot {
             if (movedFromAnotherJob) {
                 removeTask(task, true);
             }
-            tasksByJobId.putIfAbsent(task.getJobId(), new ArrayList<>());
-            List<Task> jobTasks = tasksByJobId.get(task.getJobId());
-            jobTasks.removeIf(t -> t.getId().equals(task.getId()));
-            jobTasks.add(task);
-
+            addTask(task.getJobId(), task);
             return this;
         }
 
-        private static List<Pair<Job<?>, List<Task>>> buildAllJobsAndTasksList(Map<String, Job<?>> jobsById, Map<String, List<Task>> tasksByJobId) {
-            List<Pair<Job<?>, List<Task>>> result = new ArrayList<>();
-
-            jobsById.values().forEach(job -> {
-                List<Task> tasks = tasksByJobId.get(job.getId());
-                if (CollectionsExt.isNullOrEmpty(tasks)) {
-                    result.add(Pair.of(job, Collections.emptyList()));
-                } else {
-                    result.add(Pair.of(job, unmodifiableList(tasks)));
-                }
-            });
-
-            return unmodifiableList(result);
-        }
-
         public Job<?> getJob(String jobId) {
             return jobsById.get(jobId);
         }
+
+        private void addTask(String jobId, Task task) {
+            tasksByJobId.computeIfAbsent(jobId, id -> new LinkedHashMap<>()).put(task.getId(), task);
+        }
     }
 }
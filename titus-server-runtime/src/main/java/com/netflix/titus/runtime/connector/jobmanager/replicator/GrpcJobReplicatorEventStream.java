@@ -103,7 +103,7 @@ public class GrpcJobReplicatorEventStream extends AbstractReplicatorEventStream<
         }
 
         private Flux<ReplicatorEvent<JobSnapshot, JobManagerEvent<?>>> buildInitialCache() {
-            JobSnapshot.Builder builder = JobSnapshot.newBuilder(UUID.randomUUID().toString());
+            JobSnapshot.Builder builder = JobSnapshot.newBuilder(UUID.randomUUID().toString(), titusRuntime.getCodeInvariants());
 
             snapshotEvents.forEach(event -> {
                 switch (event.getNotificationCase()) {
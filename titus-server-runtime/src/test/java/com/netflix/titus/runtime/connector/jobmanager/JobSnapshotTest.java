@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.runtime.connector.jobmanager;
+
+import java.util.List;
+
+import com.netflix.titus.api.jobmanager.TaskAttributes;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.JobState;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.common.util.code.RecordingCodeInvariants;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JobSnapshotTest {
+
+    private final Job<BatchJobExt> job1 = JobGenerator.batchJobs(JobDescriptorGenerator.batchJobDescriptor(2)).getValue();
+    private final Job<BatchJobExt> job2 = JobGenerator.batchJobs(JobDescriptorGenerator.batchJobDescriptor(2)).skip(1).getValue();
+
+    @Test
+    public void testAddAndUpdate() {
+        List<Task> job1Tasks = JobGenerator.batchTasks(job1).getValues(2);
+        Task task1 = job1Tasks.get(0);
+        Task task2 = job1Tasks.get(1);
+
+        JobSnapshot snapshot = JobSnapshot.empty()
+                .updateJob(job1).get()
+                .updateTask(task1, false).get()
+                .updateTask(task2, false).get();
+
+        assertThat(snapshot.getJobs()).containsExactly(job1);
+        assertThat(snapshot.getTasks()).containsExactlyInAnyOrder(task1, task2);
+        assertThat(snapshot.getTasks(job1.getId())).containsExactlyInAnyOrder(task1, task2);
+        assertThat(snapshot.getJobsAndTasks()).hasSize(1);
+        assertThat(snapshot.getJobsAndTasks().get(0).getRight()).containsExactlyInAnyOrder(task1, task2);
+
+        Task task1Started = JobFunctions.changeTaskStatus(task1, TaskState.Started, "started", "started");
+        JobSnapshot updated = snapshot.updateTask(task1Started, false).get();
+
+        assertThat(updated.findTaskById(task1.getId()).get().getRight()).isEqualTo(task1Started);
+        assertThat(updated.getTasks(job1.getId())).containsExactlyInAnyOrder(task1Started, task2);
+
+        // Previous version is not affected
+        assertThat(snapshot.findTaskById(task1.getId()).get().getRight()).isEqualTo(task1);
+    }
+
+    @Test
+    public void testUnchangedJobTaskListIsShared() {
+        Task job1Task = JobGenerator.batchTasks(job1).getValue();
+        List<Task> job2Tasks = JobGenerator.batchTasks(job2).getValues(2);
+
+        JobSnapshot snapshot = JobSnapshot.empty()
+                .updateJob(job1).get()
+                .updateJob(job2).get()
+                .updateTask(job1Task, false).get()
+                .updateTask(job2Tasks.get(0), false).get();
+        List<Task> job1TaskList = snapshot.getTasks(job1.getId());
+
+        JobSnapshot updated = snapshot.updateTask(job2Tasks.get(1), false).get();
+        assertThat(updated.getTasks(job1.getId())).isSameAs(job1TaskList);
+        assertThat(updated.getTasks(job2.getId())).hasSize(2);
+        assertThat(updated.getTasks()).hasSize(3);
+    }
+
+    @Test
+    public void testFinishedTaskAndJobRemoval() {
+        Task task = JobGenerator.batchTasks(job1).getValue();
+        JobSnapshot snapshot = JobSnapshot.empty()
+                .updateJob(job1).get()
+                .updateTask(task, false).get();
+
+        Task finishedTask = JobFunctions.changeTaskStatus(task, TaskState.Finished, "finished", "finished");
+        JobSnapshot withoutTask = snapshot.updateTask(finishedTask, false).get();
+        assertThat(withoutTask.getTasks()).isEmpty();
+        assertThat(withoutTask.findTaskById(task.getId())).isEmpty();
+        assertThat(withoutTask.updateTask(finishedTask, false)).isEmpty();
+
+        Job<?> finishedJob = JobFunctions.changeJobStatus(job1, JobState.Finished, "finished");
+        JobSnapshot withoutJob = snapshot.updateJob(finishedJob).get();
+        assertThat(withoutJob.getJobs()).isEmpty();
+        assertThat(withoutJob.getTasks()).isEmpty();
+        assertThat(withoutJob.findTaskById(task.getId())).isEmpty();
+    }
+
+    @Test
+    public void testMovedTask() {
+        Task task = JobGenerator.batchTasks(job1).getValue();
+        JobSnapshot snapshot = JobSnapshot.empty()
+                .updateJob(job1).get()
+                .updateJob(job2).get()
+                .updateTask(task, false).get();
+
+        Task movedTask = task.toBuilder()
+                .withJobId(job2.getId())
+                .addToTaskContext(TaskAttributes.TASK_ATTRIBUTES_MOVED_FROM_JOB, job1.getId())
+                .build();
+        JobSnapshot updated = snapshot.updateTask(movedTask, true).get();
+
+        assertThat(updated.getTasks(job1.getId())).isEmpty();
+        assertThat(updated.getTasks(job2.getId())).containsExactly(movedTask);
+        assertThat(updated.findTaskById(task.getId()).get().getLeft()).isEqualTo(job2);
+    }
+
+    @Test
+    public void testTasksWithoutJobAreReported() {
+        Task job1Task = JobGenerator.batchTasks(job1).getValue();
+        Task job2Task = JobGenerator.batchTasks(job2).getValue();
+        RecordingCodeInvariants codeInvariants = new RecordingCodeInvariants();
+
+        JobSnapshot snapshot = JobSnapshot.newBuilder("test", codeInvariants)
+                .addOrUpdateJob(job1)
+                .addOrUpdateTask(job1Task, false)
+                .addOrUpdateTask(job2Task, false)
+                .build();
+
+        assertThat(snapshot.getTasks()).containsExactly(job1Task);
+        assertThat(snapshot.findTaskById(job2Task.getId())).isEmpty();
+        assertThat(codeInvariants.getViolations()).hasSize(1);
+        assertThat(codeInvariants.getViolations().get(0)).contains(job2.getId(), job2Task.getId());
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.netflix.titus.supplementary.relocation.descheduler;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -25,6 +27,7 @@ import java.util.Set;
 import com.google.common.base.Preconditions;
 import com.netflix.titus.api.agent.model.AgentInstance;
 import com.netflix.titus.api.agent.service.ReadOnlyAgentOperations;
+import com.netflix.titus.api.jobmanager.TaskAttributes;
 import com.netflix.titus.api.jobmanager.model.job.Task;
 import com.netflix.titus.common.util.tuple.Pair;
 import com.netflix.titus.supplementary.relocation.util.RelocationPredicates;
@@ -52,7 +55,18 @@ class EvacuatedAgentsAllocationTracker {
                     }
                 })
         );
-        this.removableAgentsAndTasksByAgentId = transformValues(removableAgentsById, i -> Pair.of(i, RelocationUtil.findTasksOnInstance(i, tasksById.values())));
+
+        // Group the tasks by agent in a single pass, instead of scanning all tasks for each removable agent.
+        Map<String, List<Task>> removableTasksByAgentId = new HashMap<>();
+        tasksById.values().forEach(task -> {
+            String agentId = task.getTaskContext().get(TaskAttributes.TASK_ATTRIBUTES_AGENT_ID);
+            if (agentId != null && removableAgentsById.containsKey(agentId) && RelocationUtil.isAssignedToAgent(task)) {
+                removableTasksByAgentId.computeIfAbsent(agentId, id -> new ArrayList<>()).add(task);
+            }
+        });
+        this.removableAgentsAndTasksByAgentId = transformValues(removableAgentsById,
+                i -> Pair.of(i, removableTasksByAgentId.getOrDefault(i.getId(), Collections.emptyList()))
+        );
 
         for (Pair<AgentInstance, List<Task>> agentTasksPair : removableAgentsAndTasksByAgentId.values()) {
             agentTasksPair.getRight().forEach(task -> removableAgentsByTaskId.put(task.getId(), agentTasksPair.getLeft()));
@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.PriorityQueue;
 
 import com.netflix.titus.api.agent.model.AgentInstance;
 import com.netflix.titus.api.jobmanager.model.job.Job;
@@ -61,6 +62,12 @@ class TaskMigrationDescheduler {
     private final Map<String, Task> tasksById;
     private final Clock clock;
 
+    /**
+     * Agent fitness scores, built on the first {@link #nextBestMatch()} call, after the requested relocations consumed
+     * their share of the eviction quota.
+     */
+    private PriorityQueue<AgentFitness> fitnessQueue;
+
     TaskMigrationDescheduler(Map<String, TaskRelocationPlan> plannedAheadTaskRelocationPlans,
                              EvacuatedAgentsAllocationTracker evacuatedAgentsAllocationTracker,
                              EvictionQuotaTracker evictionQuotaTracker,
@@ -114,26 +121,57 @@ class TaskMigrationDescheduler {
         return result;
     }
 
+    /**
+     * Returns the agent with the highest fitness score, and the tasks to evict from it. Agent scores are kept in a
+     * priority queue. Descheduling decisions only consume quota, and remove tasks from the selected agent, so
+     * the score of an agent can only go down. A score in the queue is thus an upper bound of the current one, and
+     * only agents from the head of the queue must be re-scored, until the head keeps its position. The result is
+     * the same as if all agents were re-scored on each call, including the tie resolution order.
+     */
     Optional<Pair<AgentInstance, List<Task>>> nextBestMatch() {
         if (evictionQuotaTracker.getSystemEvictionQuota() <= 0) {
             return Optional.empty();
         }
+        if (fitnessQueue == null) {
+            this.fitnessQueue = buildFitnessQueue();
+        }
 
-        return evacuatedAgentsAllocationTracker.getRemovableAgentsById().values().stream()
-                .map(i -> Pair.of(i, computeFitness(i)))
-                .filter(p -> p.getRight().getLeft() > 0)
-                .max(Comparator.comparingDouble(p -> p.getRight().getLeft()))
-                .map(p -> {
-                    AgentInstance agent = p.getLeft();
-                    List<Task> tasks = p.getRight().getRight();
+        while (!fitnessQueue.isEmpty()) {
+            AgentFitness head = fitnessQueue.poll();
+            Pair<Double, List<Task>> current = computeFitness(head.getAgent());
+            if (current.getLeft() <= 0) {
+                continue;
+            }
+            AgentFitness rescored = head.rescore(current.getLeft());
+            if (!fitnessQueue.isEmpty() && AgentFitness.COMPARATOR.compare(rescored, fitnessQueue.peek()) > 0) {
+                fitnessQueue.add(rescored);
+                continue;
+            }
 
-                    tasks.forEach(task -> {
-                        evacuatedAgentsAllocationTracker.descheduled(task);
-                        evictionQuotaTracker.consumeQuota(task.getJobId());
-                    });
+            List<Task> tasks = current.getRight();
+            tasks.forEach(task -> {
+                evacuatedAgentsAllocationTracker.descheduled(task);
+                evictionQuotaTracker.consumeQuota(task.getJobId());
+            });
 
-                    return Pair.of(agent, tasks);
-                });
+            // The selected agent is not put back into the queue. All tasks that could be evicted from it were
+            // selected, or the system quota is exhausted, so its next score would be always none.
+            return Optional.of(Pair.of(head.getAgent(), tasks));
+        }
+        return Optional.empty();
+    }
+
+    private PriorityQueue<AgentFitness> buildFitnessQueue() {
+        PriorityQueue<AgentFitness> queue = new PriorityQueue<>(AgentFitness.COMPARATOR);
+        int order = 0;
+        for (AgentInstance agent : evacuatedAgentsAllocationTracker.getRemovableAgentsById().values()) {
+            double fitness = computeFitness(agent).getLeft();
+            if (fitness > 0) {
+                queue.add(new AgentFitness(agent, order, fitness));
+            }
+            order++;
+        }
+        return queue;
     }
 
     DeschedulingFailure getDeschedulingFailure(Task task) {
@@ -231,4 +269,33 @@ class TaskMigrationDescheduler {
 
         return relocationPlan.getRelocationTime() <= clock.wallTime();
     }
+
+    private static class AgentFitness {
+
+        /**
+         * Highest fitness first. Among agents with the same fitness, the first one in the removable agent iteration order
+         * wins, as it did when the best agent was selected with a stream maximum.
+         */
+        private static final Comparator<AgentFitness> COMPARATOR = Comparator
+                .comparingDouble((AgentFitness f) -> -f.fitness)
+                .thenComparingInt(f -> f.order);
+
+        private final AgentInstance agent;
+        private final int order;
+        private final double fitness;
+
+        private AgentFitness(AgentInstance agent, int order, double fitness) {
+            this.agent = agent;
+            this.order = order;
+            this.fitness = fitness;
+        }
+
+        private AgentInstance getAgent() {
+            return agent;
+        }
+
+        private AgentFitness rescore(double newFitness) {
+            return newFitness == fitness ? this : new AgentFitness(agent, order, newFitness);
+        }
+    }
 }
@@ -37,6 +37,8 @@ import com.netflix.titus.common.framework.scheduler.ScheduleReference;
 import com.netflix.titus.common.framework.scheduler.model.ScheduleDescriptor;
 import com.netflix.titus.common.runtime.TitusRuntime;
 import com.netflix.titus.common.util.IOExt;
+import com.netflix.titus.common.util.rx.ReactorExt;
+import com.netflix.titus.common.util.rx.ReactorRetriers;
 import com.netflix.titus.common.util.retry.Retryers;
 import com.netflix.titus.runtime.connector.agent.AgentDataReplicator;
 import com.netflix.titus.runtime.connector.eviction.EvictionDataReplicator;
@@ -50,11 +52,13 @@ import com.netflix.titus.supplementary.relocation.store.TaskRelocationStore;
 import com.netflix.titus.supplementary.relocation.workflow.step.DeschedulerStep;
 import com.netflix.titus.supplementary.relocation.workflow.step.MustBeRelocatedTaskCollectorStep;
 import com.netflix.titus.supplementary.relocation.workflow.step.MustBeRelocatedTaskStoreUpdateStep;
+import com.netflix.titus.supplementary.relocation.workflow.step.RelocationChangeTracker;
 import com.netflix.titus.supplementary.relocation.workflow.step.RelocationTransactionLogger;
 import com.netflix.titus.supplementary.relocation.workflow.step.TaskEvictionResultStoreStep;
 import com.netflix.titus.supplementary.relocation.workflow.step.TaskEvictionStep;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
 import reactor.core.scheduler.Schedulers;
 
 @Singleton
@@ -64,6 +68,8 @@ public class DefaultRelocationWorkflowExecutor implements RelocationWorkflowExec
 
     private static final long STALENESS_THRESHOLD_MS = 30_000;
 
+    private static final Duration EVENT_STREAM_RETRY_INTERVAL = Duration.ofSeconds(5);
+
     /**
      * A marker object (do not optimize by changing the value to {@link Collections#emptyList()}).
      */
@@ -79,6 +85,8 @@ public class DefaultRelocationWorkflowExecutor implements RelocationWorkflowExec
     private final TitusRuntime titusRuntime;
     private final WorkflowMetrics metrics;
     private final ScheduleReference disposable;
+    private final Disposable jobEventsDisposable;
+    private final Disposable agentEventsDisposable;
 
     private final MustBeRelocatedTaskCollectorStep mustBeRelocatedTaskCollectorStep;
     private final DeschedulerStep deschedulerStep;
@@ -113,8 +121,19 @@ public class DefaultRelocationWorkflowExecutor implements RelocationWorkflowExec
 
         ensureReplicatorsReady();
 
+        // Changes are collected from the replicator event streams, so the relocation plans are updated incrementally.
+        RelocationChangeTracker changeTracker = new RelocationChangeTracker();
+        this.jobEventsDisposable = jobDataReplicator.events()
+                .doOnSubscribe(subscription -> changeTracker.requestFullRefresh())
+                .compose(ReactorRetriers.instrumentedRetryer("relocationJobEvents", EVENT_STREAM_RETRY_INTERVAL, logger))
+                .subscribe(event -> changeTracker.onJobEvent(event.getRight()));
+        this.agentEventsDisposable = agentDataReplicator.events()
+                .doOnSubscribe(subscription -> changeTracker.requestFullRefresh())
+                .compose(ReactorRetriers.instrumentedRetryer("relocationAgentEvents", EVENT_STREAM_RETRY_INTERVAL, logger))
+                .subscribe(event -> changeTracker.onAgentEvent(event.getRight()));
+
         RelocationTransactionLogger transactionLog = new RelocationTransactionLogger(jobOperations);
-        this.mustBeRelocatedTaskCollectorStep = new MustBeRelocatedTaskCollectorStep(agentOperations, jobOperations, titusRuntime);
+        this.mustBeRelocatedTaskCollectorStep = new MustBeRelocatedTaskCollectorStep(agentOperations, jobOperations, changeTracker, titusRuntime);
         this.mustBeRelocatedTaskStoreUpdateStep = new MustBeRelocatedTaskStoreUpdateStep(activeStore, transactionLog, titusRuntime);
         this.deschedulerStep = new DeschedulerStep(deschedulerService, transactionLog, titusRuntime);
         this.taskEvictionStep = new TaskEvictionStep(evictionServiceClient, titusRuntime, transactionLog, Schedulers.parallel());
@@ -164,6 +183,7 @@ public class DefaultRelocationWorkflowExecutor implements RelocationWorkflowExec
     @PreDestroy
     public void shutdown() {
         IOExt.closeSilently(disposable);
+        ReactorExt.safeDispose(jobEventsDisposable, agentEventsDisposable);
     }
 
     @Override
@@ -194,7 +214,10 @@ public class DefaultRelocationWorkflowExecutor implements RelocationWorkflowExec
         boolean executed = false;
         try {
             executed = doWork(descheduling);
-            logger.info("Task relocation iteration {} finished in {}sec", count, stopwatch.elapsed(TimeUnit.SECONDS));
+            if (executed) {
+                metrics.onIterationCompleted(descheduling, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+            }
+            logger.info("Task relocation iteration {} finished in {}ms", count, stopwatch.elapsed(TimeUnit.MILLISECONDS));
         } catch (Exception e) {
             logger.error("Task relocation iteration {} failed after {}sec", count, stopwatch.elapsed(TimeUnit.SECONDS), e);
         }
@@ -16,8 +16,11 @@
 
 package com.netflix.titus.supplementary.relocation.workflow;
 
+import java.util.concurrent.TimeUnit;
+
 import com.netflix.spectator.api.Gauge;
 import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
 import com.netflix.titus.common.runtime.TitusRuntime;
 import com.netflix.titus.supplementary.relocation.RelocationMetrics;
 
@@ -30,14 +33,24 @@ class WorkflowMetrics {
     private final Gauge stalenessStatusGauge;
     private final Gauge stalenessTimeGauge;
 
+    private final Timer planningIterationTime;
+    private final Timer deschedulingIterationTime;
+
     WorkflowMetrics(TitusRuntime titusRuntime) {
         this.registry = titusRuntime.getRegistry();
         this.stalenessStatusGauge = registry.gauge(EVACUATION_METRICS + "stalenessStatus");
         this.stalenessTimeGauge = registry.gauge(EVACUATION_METRICS + "stalenessMs");
+
+        this.planningIterationTime = registry.timer(EVACUATION_METRICS + "iterationTime", "descheduling", "false");
+        this.deschedulingIterationTime = registry.timer(EVACUATION_METRICS + "iterationTime", "descheduling", "true");
     }
 
     void setStaleness(boolean stalenessStatus, long stalenessMs) {
         stalenessStatusGauge.set(stalenessStatus ? 1 : 0);
         stalenessTimeGauge.set(stalenessMs);
     }
+
+    void onIterationCompleted(boolean descheduling, long elapsedMs) {
+        (descheduling ? deschedulingIterationTime : planningIterationTime).record(elapsedMs, TimeUnit.MILLISECONDS);
+    }
 }
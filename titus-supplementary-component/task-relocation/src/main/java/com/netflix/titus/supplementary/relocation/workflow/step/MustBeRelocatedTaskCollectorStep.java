@@ -16,16 +16,20 @@
 
 package com.netflix.titus.supplementary.relocation.workflow.step;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Stopwatch;
-import com.netflix.titus.api.agent.model.AgentInstance;
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.titus.api.agent.service.AgentManagementException;
 import com.netflix.titus.api.agent.service.ReadOnlyAgentOperations;
+import com.netflix.titus.api.jobmanager.TaskAttributes;
 import com.netflix.titus.api.jobmanager.model.job.Job;
 import com.netflix.titus.api.jobmanager.model.job.Task;
 import com.netflix.titus.api.jobmanager.model.job.TaskState;
@@ -35,8 +39,8 @@ import com.netflix.titus.api.relocation.model.TaskRelocationPlan;
 import com.netflix.titus.api.relocation.model.TaskRelocationPlan.TaskRelocationReason;
 import com.netflix.titus.common.runtime.TitusRuntime;
 import com.netflix.titus.common.util.time.Clock;
-import com.netflix.titus.common.util.tuple.Triple;
-import com.netflix.titus.supplementary.relocation.util.RelocationUtil;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.supplementary.relocation.RelocationMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +49,11 @@ import static com.netflix.titus.supplementary.relocation.util.RelocationPredicat
 
 /**
  * Step at which all containers that are requested to terminate are identified, and their relocation timestamps are set.
+ * <p>
+ * The step keeps an index of tasks placed on agents, and the tasks that need a relocation plan. The index is updated
+ * incrementally, by re-evaluating only the tasks affected by the job and agent changes collected by
+ * {@link RelocationChangeTracker} since the previous iteration. All tasks are re-evaluated only when the tracker
+ * requests a full refresh.
  */
 public class MustBeRelocatedTaskCollectorStep {
 
@@ -52,18 +61,41 @@ public class MustBeRelocatedTaskCollectorStep {
 
     private final ReadOnlyAgentOperations agentOperations;
     private final ReadOnlyJobOperations jobOperations;
+    private final RelocationChangeTracker changeTracker;
     private final StepMetrics metrics;
     private final Clock clock;
 
+    private final Counter reevaluatedTasksCounter;
+    private final Counter fullRefreshCounter;
+
+    /**
+     * Running tasks placed on agents, with their instance id, and reverse mappings.
+     */
+    private final Map<String, String> instanceIdByTaskId = new HashMap<>();
+    private final Map<String, String> jobIdByTaskId = new HashMap<>();
+    private final Map<String, Set<String>> taskIdsByInstanceId = new HashMap<>();
+    private final Map<String, Set<String>> taskIdsByJobId = new HashMap<>();
+
+    /**
+     * Tasks that need a relocation plan, with their jobs and the relocation reason.
+     */
+    private final Map<String, Pair<Job<?>, String>> candidates = new HashMap<>();
+
     private Map<String, TaskRelocationPlan> lastResult = Collections.emptyMap();
 
     public MustBeRelocatedTaskCollectorStep(ReadOnlyAgentOperations agentOperations,
                                             ReadOnlyJobOperations jobOperations,
+                                            RelocationChangeTracker changeTracker,
                                             TitusRuntime titusRuntime) {
         this.agentOperations = agentOperations;
         this.jobOperations = jobOperations;
+        this.changeTracker = changeTracker;
         this.clock = titusRuntime.getClock();
         this.metrics = new StepMetrics("mustBeRelocatedTaskCollectorStep", titusRuntime);
+
+        Registry registry = titusRuntime.getRegistry();
+        this.reevaluatedTasksCounter = registry.counter(RelocationMetrics.METRIC_ROOT + "mustBeRelocatedTaskCollectorStep.reevaluatedTasks");
+        this.fullRefreshCounter = registry.counter(RelocationMetrics.METRIC_ROOT + "mustBeRelocatedTaskCollectorStep.fullRefresh");
     }
 
     public Map<String, TaskRelocationPlan> collectTasksThatMustBeRelocated() {
@@ -76,65 +108,133 @@ public class MustBeRelocatedTaskCollectorStep {
         } catch (Exception e) {
             logger.error("Step processing error", e);
             metrics.onError(stopwatch.elapsed(TimeUnit.MILLISECONDS));
+            // The index may be partially updated, so it must be rebuilt in the next iteration.
+            changeTracker.requestFullRefresh();
             throw e;
         }
     }
 
     private Map<String, TaskRelocationPlan> buildRelocationPlans() {
-        Map<String, TaskRelocationPlan> result = new HashMap<>();
-        List<Triple<Job<?>, Task, AgentInstance>> allItems = findAllJobTaskAgentTriples();
-        allItems.forEach(triple -> {
+        updateIndex(changeTracker.drain());
 
-            Job<?> job = triple.getFirst();
-            Task task = triple.getSecond();
-            AgentInstance instance = triple.getThird();
-
-            agentOperations.findInstanceGroup(instance.getInstanceGroupId()).ifPresent(instanceGroup ->
-                    checkIfNeedsRelocationPlan(job, task, instanceGroup, instance).ifPresent(reason ->
-                            result.put(task.getId(), buildSelfManagedRelocationPlan(job, task, reason))
-                    ));
-        });
+        Map<String, TaskRelocationPlan> result = new HashMap<>();
+        candidates.forEach((taskId, jobAndReason) ->
+                result.put(taskId, buildSelfManagedRelocationPlan(jobAndReason.getLeft(), taskId, jobAndReason.getRight()))
+        );
 
         this.lastResult = result;
-        
+
         return result;
     }
 
-    private List<Triple<Job<?>, Task, AgentInstance>> findAllJobTaskAgentTriples() {
-        Map<String, AgentInstance> taskToInstanceMap = RelocationUtil.buildTasksToInstanceMap(agentOperations, jobOperations);
-
-        List<Triple<Job<?>, Task, AgentInstance>> result = new ArrayList<>();
-        jobOperations.getJobs().forEach(job -> {
-            jobOperations.getTasks(job.getId()).forEach(task -> {
-                TaskState taskState = task.getStatus().getState();
-                if (taskState != TaskState.Accepted && taskState != TaskState.KillInitiated && taskState != TaskState.Finished) {
-                    AgentInstance instance = taskToInstanceMap.get(task.getId());
-                    if (instance != null) {
-                        result.add(Triple.of(job, task, instance));
-                    }
-                }
-            });
+    private void updateIndex(RelocationChangeTracker.Changes changes) {
+        if (changes.isFullRefresh()) {
+            rebuildIndex();
+            return;
+        }
+
+        Set<String> changedTaskIds = new HashSet<>(changes.getTaskIds());
+        changes.getJobIds().forEach(jobId -> changedTaskIds.addAll(taskIdsByJobId.getOrDefault(jobId, Collections.emptySet())));
+        changes.getInstanceIds().forEach(instanceId -> changedTaskIds.addAll(taskIdsByInstanceId.getOrDefault(instanceId, Collections.emptySet())));
+        changes.getInstanceGroupIds().forEach(instanceGroupId -> {
+            try {
+                agentOperations.getAgentInstances(instanceGroupId).forEach(instance ->
+                        changedTaskIds.addAll(taskIdsByInstanceId.getOrDefault(instance.getId(), Collections.emptySet()))
+                );
+            } catch (AgentManagementException e) {
+                logger.debug("Instance group not found: {}", instanceGroupId);
+            }
         });
-        return result;
+
+        changedTaskIds.forEach(taskId -> {
+            Optional<Pair<Job<?>, Task>> jobAndTask = jobOperations.findTaskById(taskId);
+            if (jobAndTask.isPresent()) {
+                reevaluate(jobAndTask.get().getLeft(), jobAndTask.get().getRight());
+            } else {
+                removeFromIndex(taskId);
+            }
+        });
+        reevaluatedTasksCounter.increment(changedTaskIds.size());
+    }
+
+    private void rebuildIndex() {
+        instanceIdByTaskId.clear();
+        jobIdByTaskId.clear();
+        taskIdsByInstanceId.clear();
+        taskIdsByJobId.clear();
+        candidates.clear();
+
+        int counter = 0;
+        for (Job<?> job : jobOperations.getJobs()) {
+            for (Task task : jobOperations.getTasks(job.getId())) {
+                reevaluate(job, task);
+                counter++;
+            }
+        }
+        reevaluatedTasksCounter.increment(counter);
+        fullRefreshCounter.increment();
+    }
+
+    private void reevaluate(Job<?> job, Task task) {
+        String taskId = task.getId();
+        removeFromIndex(taskId);
+
+        TaskState taskState = task.getStatus().getState();
+        if (taskState == TaskState.Accepted || taskState == TaskState.KillInitiated || taskState == TaskState.Finished) {
+            return;
+        }
+        String instanceId = task.getTaskContext().get(TaskAttributes.TASK_ATTRIBUTES_AGENT_INSTANCE_ID);
+        if (instanceId == null) {
+            return;
+        }
+
+        // Index the task even if its agent is not known yet, so it is re-evaluated when the agent shows up.
+        instanceIdByTaskId.put(taskId, instanceId);
+        jobIdByTaskId.put(taskId, job.getId());
+        taskIdsByInstanceId.computeIfAbsent(instanceId, id -> new HashSet<>()).add(taskId);
+        taskIdsByJobId.computeIfAbsent(job.getId(), id -> new HashSet<>()).add(taskId);
+
+        agentOperations.findAgentInstance(instanceId).ifPresent(instance ->
+                agentOperations.findInstanceGroup(instance.getInstanceGroupId()).ifPresent(instanceGroup ->
+                        checkIfNeedsRelocationPlan(job, task, instanceGroup, instance).ifPresent(reason ->
+                                candidates.put(taskId, Pair.of(job, reason))
+                        )));
+    }
+
+    private void removeFromIndex(String taskId) {
+        candidates.remove(taskId);
+        String instanceId = instanceIdByTaskId.remove(taskId);
+        if (instanceId == null) {
+            return;
+        }
+        removeFromSet(taskIdsByInstanceId, instanceId, taskId);
+        removeFromSet(taskIdsByJobId, jobIdByTaskId.remove(taskId), taskId);
+    }
+
+    private static void removeFromSet(Map<String, Set<String>> setMap, String key, String value) {
+        Set<String> values = setMap.get(key);
+        if (values != null && values.remove(value) && values.isEmpty()) {
+            setMap.remove(key);
+        }
     }
 
     /**
      * Relocation plans today are limited to self managed polices.
      */
-    private TaskRelocationPlan buildSelfManagedRelocationPlan(Job<?> job, Task task, String reason) {
+    private TaskRelocationPlan buildSelfManagedRelocationPlan(Job<?> job, String taskId, String reason) {
         long now = clock.wallTime();
 
         SelfManagedDisruptionBudgetPolicy selfManaged = (SelfManagedDisruptionBudgetPolicy) job.getJobDescriptor().getDisruptionBudget().getDisruptionBudgetPolicy();
 
         TaskRelocationPlan relocationPlan = TaskRelocationPlan.newBuilder()
-                .withTaskId(task.getId())
+                .withTaskId(taskId)
                 .withReason(TaskRelocationReason.TaskMigration)
                 .withReasonMessage(reason)
                 .withDecisionTime(now)
                 .withRelocationTime(now + selfManaged.getRelocationTimeMs())
                 .build();
 
-        TaskRelocationPlan previous = lastResult.get(task.getId());
+        TaskRelocationPlan previous = lastResult.get(taskId);
         boolean keepPrevious = previous != null &&
                 (areEqualExceptRelocationTime(previous, relocationPlan) || previous.getRelocationTime() < relocationPlan.getRelocationTime());
 
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.supplementary.relocation.workflow.step;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.netflix.titus.api.agent.model.event.AgentEvent;
+import com.netflix.titus.api.agent.model.event.AgentInstanceGroupRemovedEvent;
+import com.netflix.titus.api.agent.model.event.AgentInstanceGroupUpdateEvent;
+import com.netflix.titus.api.agent.model.event.AgentInstanceRemovedEvent;
+import com.netflix.titus.api.agent.model.event.AgentInstanceUpdateEvent;
+import com.netflix.titus.api.agent.model.event.AgentSnapshotEndEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.JobManagerEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.JobUpdateEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.TaskUpdateEvent;
+
+/**
+ * Collects identifiers of jobs, tasks, agent instances and instance groups that changed since the last
+ * {@link #drain()} call. The relocation workflow uses it to re-evaluate only the changed entities on each iteration.
+ * A full refresh is requested initially, when a new snapshot is received (for example after a replicator reconnect),
+ * and when the change cannot be mapped onto individual entities.
+ */
+public class RelocationChangeTracker {
+
+    private final Object lock = new Object();
+
+    private Changes pending = Changes.full();
+
+    public void onJobEvent(JobManagerEvent<?> event) {
+        if (event == JobManagerEvent.snapshotMarker()) {
+            requestFullRefresh();
+        } else if (event instanceof JobUpdateEvent) {
+            String jobId = ((JobUpdateEvent) event).getCurrent().getId();
+            synchronized (lock) {
+                pending.jobIds.add(jobId);
+            }
+        } else if (event instanceof TaskUpdateEvent) {
+            String taskId = ((TaskUpdateEvent) event).getCurrentTask().getId();
+            synchronized (lock) {
+                pending.taskIds.add(taskId);
+            }
+        }
+    }
+
+    public void onAgentEvent(AgentEvent event) {
+        if (event instanceof AgentSnapshotEndEvent || event instanceof AgentInstanceGroupRemovedEvent) {
+            requestFullRefresh();
+        } else if (event instanceof AgentInstanceGroupUpdateEvent) {
+            String instanceGroupId = ((AgentInstanceGroupUpdateEvent) event).getAgentInstanceGroup().getId();
+            synchronized (lock) {
+                pending.instanceGroupIds.add(instanceGroupId);
+            }
+        } else if (event instanceof AgentInstanceUpdateEvent) {
+            String instanceId = ((AgentInstanceUpdateEvent) event).getAgentInstance().getId();
+            synchronized (lock) {
+                pending.instanceIds.add(instanceId);
+            }
+        } else if (event instanceof AgentInstanceRemovedEvent) {
+            String instanceId = ((AgentInstanceRemovedEvent) event).getAgentInstanceId();
+            synchronized (lock) {
+                pending.instanceIds.add(instanceId);
+            }
+        }
+    }
+
+    public void requestFullRefresh() {
+        synchronized (lock) {
+            this.pending = Changes.full();
+        }
+    }
+
+    /**
+     * Returns all changes collected so far, and starts collecting a new change set.
+     */
+    Changes drain() {
+        synchronized (lock) {
+            Changes result = pending;
+            this.pending = new Changes(false);
+            return result;
+        }
+    }
+
+    static class Changes {
+
+        private final boolean fullRefresh;
+        private final Set<String> jobIds = new HashSet<>();
+        private final Set<String> taskIds = new HashSet<>();
+        private final Set<String> instanceIds = new HashSet<>();
+        private final Set<String> instanceGroupIds = new HashSet<>();
+
+        private Changes(boolean fullRefresh) {
+            this.fullRefresh = fullRefresh;
+        }
+
+        boolean isFullRefresh() {
+            return fullRefresh;
+        }
+
+        Set<String> getJobIds() {
+            return jobIds;
+        }
+
+        Set<String> getTaskIds() {
+            return taskIds;
+        }
+
+        Set<String> getInstanceIds() {
+            return instanceIds;
+        }
+
+        Set<String> getInstanceGroupIds() {
+            return instanceGroupIds;
+        }
+
+        private static Changes full() {
+            return new Changes(true);
+        }
+    }
+}
@@ -21,22 +21,29 @@ import java.util.List;
 import com.google.common.base.Preconditions;
 import com.netflix.titus.api.agent.model.AgentInstance;
 import com.netflix.titus.api.agent.model.AgentInstanceGroup;
+import com.netflix.titus.api.agent.model.event.AgentEvent;
 import com.netflix.titus.api.agent.service.ReadOnlyAgentOperations;
 import com.netflix.titus.api.eviction.service.ReadOnlyEvictionOperations;
 import com.netflix.titus.api.jobmanager.model.job.Job;
 import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.event.JobManagerEvent;
 import com.netflix.titus.api.jobmanager.service.ReadOnlyJobOperations;
 import com.netflix.titus.common.runtime.TitusRuntime;
 import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.common.util.rx.ReactorExt;
+import com.netflix.titus.common.util.tuple.Pair;
 import com.netflix.titus.runtime.connector.agent.AgentDataReplicator;
+import com.netflix.titus.runtime.connector.agent.AgentSnapshot;
 import com.netflix.titus.runtime.connector.eviction.EvictionDataReplicator;
 import com.netflix.titus.runtime.connector.eviction.EvictionServiceClient;
 import com.netflix.titus.runtime.connector.jobmanager.JobDataReplicator;
+import com.netflix.titus.runtime.connector.jobmanager.JobSnapshot;
 import com.netflix.titus.testkit.model.agent.AgentComponentStub;
 import com.netflix.titus.testkit.model.eviction.EvictionComponentStub;
 import com.netflix.titus.testkit.model.job.JobComponentStub;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.StaticApplicationContext;
+import reactor.core.publisher.Flux;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -81,10 +88,12 @@ public class RelocationConnectorStubs {
         // We care only about data staleness here
         AgentDataReplicator agentDataReplicator = mock(AgentDataReplicator.class);
         when(agentDataReplicator.getStalenessMs()).thenReturn(0L);
+        when(agentDataReplicator.events()).thenReturn(observeAgentEvents());
         context.getBeanFactory().registerSingleton("agentOperations", agentDataReplicator);
 
         JobDataReplicator jobDataReplicator = mock(JobDataReplicator.class);
         when(jobDataReplicator.getStalenessMs()).thenReturn(0L);
+        when(jobDataReplicator.events()).thenReturn(observeJobEvents());
         context.getBeanFactory().registerSingleton("jobDataReplicator", jobDataReplicator);
 
         EvictionDataReplicator evictionDataReplicator = mock(EvictionDataReplicator.class);
@@ -96,6 +105,18 @@ public class RelocationConnectorStubs {
         return context;
     }
 
+    /**
+     * Job events in the replicator format. Snapshots are not used by the relocation service, so an empty one is
+     * provided.
+     */
+    public Flux<Pair<JobSnapshot, JobManagerEvent<?>>> observeJobEvents() {
+        return ReactorExt.toFlux(jobOperations.observeJobs()).map(event -> Pair.of(JobSnapshot.empty(), event));
+    }
+
+    public Flux<Pair<AgentSnapshot, AgentEvent>> observeAgentEvents() {
+        return agentComponentStub.grpcObserveAgents(false).map(event -> Pair.of(AgentSnapshot.empty(), event));
+    }
+
     public TitusRuntime getTitusRuntime() {
         return titusRuntime;
     }
@@ -145,6 +145,34 @@ public class TaskMigrationDeschedulerTest {
         assertThat(results.get().getLeft().getId()).isEqualTo(agent2);
     }
 
+    @Test
+    public void testFitnessIsReevaluatedAfterEachMatch() {
+        List<AgentInstance> removableAgents = agentOperations.getAgentInstances("removable1");
+        String agent1 = removableAgents.get(0).getId();
+        String agent2 = removableAgents.get(1).getId();
+        List<Task> tasksOfJob1 = jobOperations.getTasks("job1");
+        List<Task> tasksOfJob2 = jobOperations.getTasks("job2");
+        dataGenerator.placeOnAgent(agent1, tasksOfJob1.get(0), tasksOfJob1.get(1), tasksOfJob2.get(0));
+        dataGenerator.placeOnAgent(agent2, tasksOfJob2.get(1));
+        dataGenerator.setQuota("job1", 1);
+        dataGenerator.setQuota("job2", 2);
+
+        TaskMigrationDescheduler descheduler = newDescheduler(Collections.emptyMap());
+
+        // Agent 2 can be fully evacuated, so it goes first, and consumes one unit of the job2 quota.
+        Optional<Pair<AgentInstance, List<Task>>> first = descheduler.nextBestMatch();
+        assertThat(first).isPresent();
+        assertThat(first.get().getLeft().getId()).isEqualTo(agent2);
+
+        // Agent 1 is still a match, as there is enough quota left for one task of each job.
+        Optional<Pair<AgentInstance, List<Task>>> second = descheduler.nextBestMatch();
+        assertThat(second).isPresent();
+        assertThat(second.get().getLeft().getId()).isEqualTo(agent1);
+        assertThat(second.get().getRight()).hasSize(2);
+
+        assertThat(descheduler.nextBestMatch()).isEmpty();
+    }
+
     @Test
     public void testFailures() {
         Task job1Task0 = jobOperations.getTasks("job1").get(0);
@@ -19,26 +19,43 @@ package com.netflix.titus.supplementary.relocation.workflow.step;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import com.netflix.titus.api.jobmanager.TaskAttributes;
 import com.netflix.titus.api.jobmanager.model.job.Job;
 import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
 import com.netflix.titus.api.jobmanager.model.job.Task;
 import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.common.util.rx.ReactorExt;
 import com.netflix.titus.common.util.time.TestClock;
 import com.netflix.titus.supplementary.relocation.AbstractTaskRelocationTest;
+import com.netflix.titus.supplementary.relocation.RelocationAttributes;
 import com.netflix.titus.supplementary.relocation.TestDataFactory;
 import com.netflix.titus.api.relocation.model.TaskRelocationPlan;
+import org.junit.After;
 import org.junit.Test;
+import reactor.core.Disposable;
 
 import static com.netflix.titus.supplementary.relocation.TestDataFactory.newSelfManagedDisruptionBudget;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class MustBeRelocatedTaskCollectorStepTest extends AbstractTaskRelocationTest {
 
+    private final RelocationChangeTracker changeTracker = new RelocationChangeTracker();
+
     private final MustBeRelocatedTaskCollectorStep step;
 
+    private final Disposable jobEventsDisposable;
+    private final Disposable agentEventsDisposable;
+
     public MustBeRelocatedTaskCollectorStepTest() {
         super(TestDataFactory.activeRemovableSetup());
-        this.step = new MustBeRelocatedTaskCollectorStep(agentOperations, jobOperations, titusRuntime);
+        this.step = new MustBeRelocatedTaskCollectorStep(agentOperations, jobOperations, changeTracker, titusRuntime);
+        this.jobEventsDisposable = relocationConnectorStubs.observeJobEvents().subscribe(event -> changeTracker.onJobEvent(event.getRight()));
+        this.agentEventsDisposable = relocationConnectorStubs.observeAgentEvents().subscribe(event -> changeTracker.onAgentEvent(event.getRight()));
+    }
+
+    @After
+    public void tearDown() {
+        ReactorExt.safeDispose(jobEventsDisposable, agentEventsDisposable);
     }
 
     @Test
@@ -80,4 +97,27 @@ public class MustBeRelocatedTaskCollectorStepTest extends AbstractTaskRelocation
 
         assertThat(first).isEqualTo(second);
     }
+
+    @Test
+    public void testIncrementalUpdates() {
+        Job<BatchJobExt> job = TestDataFactory.newBatchJob("job1", 2, newSelfManagedDisruptionBudget(1_000));
+        relocationConnectorStubs.addJob(job);
+        Task task1 = jobOperations.getTasks().get(0);
+        Task task2 = jobOperations.getTasks().get(1);
+        relocationConnectorStubs.place(TestDataFactory.ACTIVE_INSTANCE_GROUP, task1, task2);
+        assertThat(step.collectTasksThatMustBeRelocated()).isEmpty();
+
+        // Agent change
+        String agentId = jobOperations.findTaskById(task1.getId()).get().getRight().getTaskContext().get(TaskAttributes.TASK_ATTRIBUTES_AGENT_INSTANCE_ID);
+        relocationConnectorStubs.addInstanceAttribute(agentId, RelocationAttributes.RELOCATION_REQUIRED, true);
+        assertThat(step.collectTasksThatMustBeRelocated()).containsOnlyKeys(task1.getId());
+
+        // Task change
+        relocationConnectorStubs.addTaskAttribute(task2.getId(), RelocationAttributes.RELOCATION_REQUIRED, true);
+        assertThat(step.collectTasksThatMustBeRelocated()).containsOnlyKeys(task1.getId(), task2.getId());
+
+        // Job change
+        relocationConnectorStubs.addJobAttribute(job.getId(), RelocationAttributes.RELOCATION_NOT_ALLOWED, true);
+        assertThat(step.collectTasksThatMustBeRelocated()).isEmpty();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.supplementary.taskspublisher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Chooses the ElasticSearch bulk request size based on the observed response latency. The size grows additively
+ * while the latency stays below the target, and is halved when the latency is above it, or a request fails.
+ */
+public class AdaptiveBulkSizer {
+
+    private final int minBulkSize;
+    private final int maxBulkSize;
+    private final long targetLatencyMs;
+
+    private final AtomicInteger bulkSize;
+
+    public AdaptiveBulkSizer(int minBulkSize, int maxBulkSize, long targetLatencyMs) {
+        Preconditions.checkArgument(minBulkSize > 0, "Min bulk size must be > 0");
+        Preconditions.checkArgument(maxBulkSize >= minBulkSize, "Max bulk size must be >= min bulk size");
+        this.minBulkSize = minBulkSize;
+        this.maxBulkSize = maxBulkSize;
+        this.targetLatencyMs = targetLatencyMs;
+        this.bulkSize = new AtomicInteger(maxBulkSize);
+    }
+
+    public int getMaxBulkSize() {
+        return maxBulkSize;
+    }
+
+    public AtomicInteger getBulkSize() {
+        return bulkSize;
+    }
+
+    /**
+     * Splits the given documents into chunks not larger than the current bulk size.
+     */
+    public <T> List<List<T>> split(List<T> items) {
+        int size = bulkSize.get();
+        if (items.size() <= size) {
+            return Collections.singletonList(items);
+        }
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += size) {
+            chunks.add(items.subList(i, Math.min(items.size(), i + size)));
+        }
+        return chunks;
+    }
+
+    public void onSuccess(int requestSize, long latencyMs) {
+        bulkSize.updateAndGet(current -> {
+            if (latencyMs > targetLatencyMs) {
+                return Math.max(minBulkSize, current / 2);
+            }
+            // Grow only if the request was full, otherwise the latency says little about larger requests.
+            if (requestSize < current) {
+                return current;
+            }
+            return Math.min(maxBulkSize, current + Math.max(1, current / 10));
+        });
+    }
+
+    public void onFailure() {
+        bulkSize.updateAndGet(current -> Math.max(minBulkSize, current / 2));
+    }
+}
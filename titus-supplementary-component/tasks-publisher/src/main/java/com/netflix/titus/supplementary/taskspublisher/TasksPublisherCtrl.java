@@ -17,8 +17,10 @@ package com.netflix.titus.supplementary.taskspublisher;
 
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -26,6 +28,8 @@ import java.util.function.Function;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.netflix.spectator.api.Functions;
 import com.netflix.spectator.api.Registry;
 import com.netflix.spectator.api.patterns.PolledMeter;
@@ -37,7 +41,6 @@ import com.netflix.titus.ext.elasticsearch.TaskDocument;
 import com.netflix.titus.grpc.protogen.Job;
 import com.netflix.titus.grpc.protogen.Task;
 import com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters;
-import org.eclipse.jetty.util.ConcurrentHashSet;
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,21 +62,46 @@ public class TasksPublisherCtrl {
     private AtomicInteger numErrors = new AtomicInteger(0);
     private AtomicInteger numIndexUpdated = new AtomicInteger(0);
     private AtomicInteger numTasksUpdated = new AtomicInteger(0);
-    private Set<String> uniqueTasksIdUpdated = new ConcurrentHashSet<>();
+    private AtomicInteger numJobConversions = new AtomicInteger(0);
+    /**
+     * Ids of indexed tasks that are not finished yet, so each task is counted once in numTasksUpdated. A finished
+     * task is not updated anymore, and its id is released once its final state is indexed, so the set is bounded by
+     * the number of active tasks.
+     */
+    private final Set<String> indexedActiveTaskIds = ConcurrentHashMap.newKeySet();
+    private final Cache<String, Pair<Job, com.netflix.titus.api.jobmanager.model.job.Job>> coreJobCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_JOBS)
+            .build();
+    private final AdaptiveBulkSizer bulkSizer;
     private AtomicLong lastPublishedTimestamp;
 
     private static final long INITIAL_RETRY_DELAY_MS = 500;
     private static final long MAX_RETRY_DELAY_MS = 2_000;
+    private static final int MAX_CACHED_JOBS = 20_000;
+
+    private static final int DEFAULT_MIN_BULK_SIZE = 10;
+    private static final int DEFAULT_MAX_BULK_SIZE = 100;
+    private static final long DEFAULT_TARGET_BULK_LATENCY_MS = 1_000;
     private Disposable subscription;
 
     public TasksPublisherCtrl(EsClient esClient,
                               TitusClient titusClient,
                               @Qualifier(TASK_DOCUMENT_CONTEXT) Map<String, String> taskDocumentBaseContext,
                               Registry registry) {
+        this(esClient, titusClient, taskDocumentBaseContext, registry,
+                new AdaptiveBulkSizer(DEFAULT_MIN_BULK_SIZE, DEFAULT_MAX_BULK_SIZE, DEFAULT_TARGET_BULK_LATENCY_MS));
+    }
+
+    public TasksPublisherCtrl(EsClient esClient,
+                              TitusClient titusClient,
+                              @Qualifier(TASK_DOCUMENT_CONTEXT) Map<String, String> taskDocumentBaseContext,
+                              Registry registry,
+                              AdaptiveBulkSizer bulkSizer) {
         this.esClient = esClient;
         this.titusClient = titusClient;
         this.taskDocumentBaseContext = taskDocumentBaseContext;
         this.registry = registry;
+        this.bulkSizer = bulkSizer;
         configureMetrics();
     }
 
@@ -94,39 +122,32 @@ public class TasksPublisherCtrl {
     public void start() {
         subscription = titusClient.getTaskUpdates()
                 .publishOn(Schedulers.elastic())
-                .map(task -> {
-                    final Mono<Job> jobById = titusClient.getJobById(task.getJobId());
-                    return Pair.of(task, jobById);
-                })
-                .flatMap(taskMonoPair -> {
-                    final Task task = taskMonoPair.getLeft();
-                    return taskMonoPair.getRight()
-                            .map(job -> {
-                                final com.netflix.titus.api.jobmanager.model.job.Job coreJob = V3GrpcModelConverters.toCoreJob(job);
-                                final com.netflix.titus.api.jobmanager.model.job.Task coreTask = V3GrpcModelConverters.toCoreTask(coreJob, task);
-                                return TaskDocument.fromV3Task(coreTask, coreJob, ElasticSearchUtils.DATE_FORMAT, buildTaskContext(task));
-                            }).flux();
-                })
-                .bufferTimeout(100, Duration.ofSeconds(5))
-                .flatMap(taskDocuments -> esClient.bulkIndexTaskDocument(taskDocuments)
-                        .retryWhen(buildLimitedRetryHandler()))
+                .flatMap(task -> titusClient.getJobById(task.getJobId())
+                        .map(job -> {
+                            final com.netflix.titus.api.jobmanager.model.job.Job coreJob = toCoreJob(job);
+                            final com.netflix.titus.api.jobmanager.model.job.Task coreTask = V3GrpcModelConverters.toCoreTask(coreJob, task);
+                            return TaskDocument.fromV3Task(coreTask, coreJob, ElasticSearchUtils.DATE_FORMAT, buildTaskContext(task));
+                        }).flux()
+                )
+                .bufferTimeout(bulkSizer.getMaxBulkSize(), Duration.ofSeconds(5))
+                .flatMapIterable(bulkSizer::split)
+                .flatMap(this::indexBulk)
                 .doOnError(e -> {
                     logger.error("Error in indexing documents (Retrying) : ", e);
                     numErrors.incrementAndGet();
                 })
                 .retryWhen(buildUnlimitedRetryHandler())
-                .subscribe(bulkIndexResp -> {
+                .subscribe(indexResult -> {
+                            EsClient.BulkEsIndexResp bulkIndexResp = indexResult.getRight();
                             logger.info("Received bulk response for {} items", bulkIndexResp.items.size());
                             lastPublishedTimestamp.set(registry.clock().wallTime());
                             bulkIndexResp.items.forEach(bulkEsIndexRespItem -> {
                                 String indexedItemId = bulkEsIndexRespItem.index._id;
                                 logger.info("Index result <{}> for task ID {}", bulkEsIndexRespItem.index.result, indexedItemId);
                                 numIndexUpdated.incrementAndGet();
-                                if (!uniqueTasksIdUpdated.contains(indexedItemId)) {
-                                    uniqueTasksIdUpdated.add(indexedItemId);
-                                    numTasksUpdated.incrementAndGet();
-                                }
                             });
+                            // Documents are processed in the bulk order, as the same task may be updated more than once in a bulk.
+                            indexResult.getLeft().forEach(this::countUpdatedTask);
                         },
                         e -> logger.error("Error in indexing documents ", e));
     }
@@ -136,6 +157,43 @@ public class TasksPublisherCtrl {
         ReactorExt.safeDispose(subscription);
     }
 
+    private void countUpdatedTask(TaskDocument taskDocument) {
+        String taskId = taskDocument.getId();
+        boolean firstUpdate = taskDocument.getFinishedAt() == null
+                ? indexedActiveTaskIds.add(taskId)
+                : !indexedActiveTaskIds.remove(taskId);
+        if (firstUpdate) {
+            numTasksUpdated.incrementAndGet();
+        }
+    }
+
+    private Mono<Pair<List<TaskDocument>, EsClient.BulkEsIndexResp>> indexBulk(List<TaskDocument> taskDocuments) {
+        return Mono.defer(() -> {
+            long startTime = registry.clock().monotonicTime();
+            return esClient.bulkIndexTaskDocument(taskDocuments)
+                    .doOnSuccess(response -> bulkSizer.onSuccess(
+                            taskDocuments.size(),
+                            TimeUnit.NANOSECONDS.toMillis(registry.clock().monotonicTime() - startTime)
+                    ))
+                    .doOnError(e -> bulkSizer.onFailure());
+        }).retryWhen(buildLimitedRetryHandler()).map(response -> Pair.of(taskDocuments, response));
+    }
+
+    /**
+     * Converts a job once per version. {@link TitusClient} returns the same job instance until the job is updated,
+     * so the reference check is sufficient in most cases.
+     */
+    private com.netflix.titus.api.jobmanager.model.job.Job toCoreJob(Job job) {
+        Pair<Job, com.netflix.titus.api.jobmanager.model.job.Job> cached = coreJobCache.getIfPresent(job.getId());
+        if (cached != null && (cached.getLeft() == job || cached.getLeft().equals(job))) {
+            return cached.getRight();
+        }
+        com.netflix.titus.api.jobmanager.model.job.Job coreJob = V3GrpcModelConverters.toCoreJob(job);
+        coreJobCache.put(job.getId(), Pair.of(job, coreJob));
+        numJobConversions.incrementAndGet();
+        return coreJob;
+    }
+
     private Map<String, String> buildTaskContext(Task task) {
         String stack = "";
         if (task.getTaskContextMap().containsKey(JobAttributes.JOB_ATTRIBUTES_CELL)) {
@@ -172,6 +230,12 @@ public class TasksPublisherCtrl {
         PolledMeter.using(registry)
                 .withId(registry.createId(EsTaskPublisherMetrics.METRIC_ES_PUBLISHER + "numTasksUpdated"))
                 .monitorValue(numTasksUpdated);
+        PolledMeter.using(registry)
+                .withId(registry.createId(EsTaskPublisherMetrics.METRIC_ES_PUBLISHER + "numJobConversions"))
+                .monitorValue(numJobConversions);
+        PolledMeter.using(registry)
+                .withId(registry.createId(EsTaskPublisherMetrics.METRIC_ES_PUBLISHER + "bulkSize"))
+                .monitorValue(bulkSizer.getBulkSize());
 
         lastPublishedTimestamp = PolledMeter.using(registry)
                 .withId(registry.createId(EsTaskPublisherMetrics.METRIC_ES_PUBLISHER + "lastPublishedTimestamp"))
@@ -25,6 +25,7 @@ import com.netflix.titus.grpc.protogen.Job;
 import com.netflix.titus.grpc.protogen.JobChangeNotification;
 import com.netflix.titus.grpc.protogen.JobId;
 import com.netflix.titus.grpc.protogen.JobManagementServiceGrpc;
+import com.netflix.titus.grpc.protogen.JobStatus;
 import com.netflix.titus.grpc.protogen.ObserveJobsQuery;
 import com.netflix.titus.grpc.protogen.Task;
 import com.netflix.titus.grpc.protogen.TaskId;
@@ -90,7 +91,12 @@ public class TitusClientImpl implements TitusClient {
                         switch (jobChangeNotification.getNotificationCase()) {
                             case JOBUPDATE:
                                 final Job job = jobChangeNotification.getJobUpdate().getJob();
-                                jobs.putIfAbsent(job.getId(), job);
+                                // Keep the latest job version, so task updates can be published without a findJob call.
+                                if (job.getStatus().getState() == JobStatus.JobState.Finished) {
+                                    jobs.remove(job.getId());
+                                } else {
+                                    jobs.put(job.getId(), job);
+                                }
                                 logger.debug("<{}> JobUpdate {}", Thread.currentThread().getName(), jobChangeNotification.getJobUpdate().getJob().getId());
                                 numJobUpdates.incrementAndGet();
                                 break;
@@ -131,8 +137,9 @@ public class TitusClientImpl implements TitusClient {
     @Override
     public Mono<Job> getJobById(String jobId) {
         return Mono.create(sink -> {
-            if (jobs.containsKey(jobId)) {
-                sink.success(jobs.get(jobId));
+            Job cachedJob = jobs.get(jobId);
+            if (cachedJob != null) {
+                sink.success(cachedJob);
             } else {
                 attachCallerId(jobManagementService, CLIENT_ID)
                         .findJob(JobId.newBuilder().setId(jobId).build(), new StreamObserver<Job>() {
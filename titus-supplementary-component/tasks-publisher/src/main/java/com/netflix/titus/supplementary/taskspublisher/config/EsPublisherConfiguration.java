@@ -42,6 +42,15 @@ public class EsPublisherConfiguration {
     @Value("${titus.es.taskDocumentEsIndexName}")
     private String taskDocumentEsIndexName;
 
+    @Value("${titus.es.bulk.minSize:10}")
+    private int minBulkSize;
+
+    @Value("${titus.es.bulk.maxSize:100}")
+    private int maxBulkSize;
+
+    @Value("${titus.es.bulk.targetLatencyMs:1000}")
+    private long targetBulkLatencyMs;
+
     public String getTaskDocumentEsIndexDateSuffixPattern() {
         return taskDocumentEsIndexDateSuffixPattern;
     }
@@ -69,4 +78,16 @@ public class EsPublisherConfiguration {
     public int getEsPort() {
         return esPort;
     }
+
+    public int getMinBulkSize() {
+        return minBulkSize;
+    }
+
+    public int getMaxBulkSize() {
+        return maxBulkSize;
+    }
+
+    public long getTargetBulkLatencyMs() {
+        return targetBulkLatencyMs;
+    }
 }
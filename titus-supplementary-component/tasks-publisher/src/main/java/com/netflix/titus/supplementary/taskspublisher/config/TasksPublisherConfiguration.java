@@ -21,6 +21,7 @@ import java.util.concurrent.TimeUnit;
 import com.netflix.spectator.api.DefaultRegistry;
 import com.netflix.titus.grpc.protogen.JobManagementServiceGrpc;
 import com.netflix.titus.grpc.protogen.JobManagementServiceGrpc.JobManagementServiceStub;
+import com.netflix.titus.supplementary.taskspublisher.AdaptiveBulkSizer;
 import com.netflix.titus.supplementary.taskspublisher.DefaultEsWebClientFactory;
 import com.netflix.titus.supplementary.taskspublisher.EsClient;
 import com.netflix.titus.supplementary.taskspublisher.EsClientHttp;
@@ -82,7 +83,12 @@ public class TasksPublisherConfiguration {
 
     @Bean
     public TasksPublisherCtrl getTasksPublisherCtrl() {
-        return new TasksPublisherCtrl(getEsClient(), getTitusClient(), Collections.emptyMap(), new DefaultRegistry());
+        AdaptiveBulkSizer bulkSizer = new AdaptiveBulkSizer(
+                esPublisherConfiguration.getMinBulkSize(),
+                esPublisherConfiguration.getMaxBulkSize(),
+                esPublisherConfiguration.getTargetBulkLatencyMs()
+        );
+        return new TasksPublisherCtrl(getEsClient(), getTitusClient(), Collections.emptyMap(), new DefaultRegistry(), bulkSizer);
     }
 
 
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.titus.supplementary.taskspublisher;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveBulkSizerTest {
+
+    private final AdaptiveBulkSizer sizer = new AdaptiveBulkSizer(2, 40, 100);
+
+    @Test
+    public void testSizeDecreasesOnSlowResponseOrFailure() {
+        assertThat(sizer.getBulkSize().get()).isEqualTo(40);
+
+        sizer.onSuccess(40, 500);
+        assertThat(sizer.getBulkSize().get()).isEqualTo(20);
+
+        sizer.onFailure();
+        assertThat(sizer.getBulkSize().get()).isEqualTo(10);
+
+        for (int i = 0; i < 10; i++) {
+            sizer.onFailure();
+        }
+        assertThat(sizer.getBulkSize().get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSizeGrowsOnFastFullResponse() {
+        sizer.onFailure();
+        assertThat(sizer.getBulkSize().get()).isEqualTo(20);
+
+        // Partially filled request does not grow the size.
+        sizer.onSuccess(5, 10);
+        assertThat(sizer.getBulkSize().get()).isEqualTo(20);
+
+        sizer.onSuccess(20, 10);
+        assertThat(sizer.getBulkSize().get()).isEqualTo(22);
+
+        for (int i = 0; i < 20; i++) {
+            sizer.onSuccess(sizer.getBulkSize().get(), 10);
+        }
+        assertThat(sizer.getBulkSize().get()).isEqualTo(40);
+    }
+
+    @Test
+    public void testSplit() {
+        List<Integer> items = Arrays.asList(1, 2, 3, 4, 5);
+        assertThat(sizer.split(items)).containsExactly(items);
+
+        sizer.onFailure();
+        sizer.onFailure();
+        sizer.onFailure();
+        sizer.onFailure();
+        assertThat(sizer.getBulkSize().get()).isEqualTo(2);
+        assertThat(sizer.split(items)).containsExactly(Arrays.asList(1, 2), Arrays.asList(3, 4), Arrays.asList(5));
+    }
+}
@@ -16,14 +16,20 @@
 package com.netflix.titus.supplementary.taskspublisher;
 
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import com.jayway.awaitility.Awaitility;
 import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.TaskStatus;
 import com.netflix.titus.ext.elasticsearch.TaskDocument;
+import com.netflix.titus.grpc.protogen.Task;
 import com.netflix.titus.runtime.endpoint.common.EmptyLogStorageInfo;
 import com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters;
 import com.netflix.titus.testkit.model.job.JobGenerator;
@@ -44,8 +50,12 @@ import static org.mockito.Mockito.when;
 public class TasksPublisherCtrlTest {
 
     private TitusClient mockTitusClient(int numTasks) {
+        return mockTitusClient(TestUtils.generateSampleTasks(numTasks));
+    }
+
+    private TitusClient mockTitusClient(List<Task> taskUpdates) {
         TitusClient titusClient = mock(TitusClient.class);
-        when(titusClient.getTaskUpdates()).thenReturn(Flux.fromIterable(TestUtils.generateSampleTasks(numTasks)));
+        when(titusClient.getTaskUpdates()).thenReturn(Flux.fromIterable(taskUpdates));
         when(titusClient.getTask(anyString())).thenReturn(Mono.just(V3GrpcModelConverters.toGrpcTask(JobGenerator.oneBatchTask(), new EmptyLogStorageInfo<>())));
         when(titusClient.getJobById(anyString())).thenReturn(Mono.just(V3GrpcModelConverters.toGrpcJob(JobGenerator.oneBatchJob())));
         return titusClient;
@@ -100,4 +110,29 @@ public class TasksPublisherCtrlTest {
             fail("Timeout in checkPublisherState ", e);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void checkTaskUpdatesAreCountedOncePerTask() {
+        BatchJobTask task = JobGenerator.oneBatchTask();
+        BatchJobTask finishedTask = task.toBuilder()
+                .withStatus(TaskStatus.newBuilder().withState(TaskState.Finished).withTimestamp(System.currentTimeMillis()).build())
+                .build();
+        List<Task> taskUpdates = Arrays.asList(
+                V3GrpcModelConverters.toGrpcTask(task, new EmptyLogStorageInfo<>()),
+                V3GrpcModelConverters.toGrpcTask(task, new EmptyLogStorageInfo<>()),
+                V3GrpcModelConverters.toGrpcTask(finishedTask, new EmptyLogStorageInfo<>())
+        );
+
+        final TasksPublisherCtrl tasksPublisherCtrl = new TasksPublisherCtrl(
+                mockElasticSearchClient(),
+                mockTitusClient(taskUpdates),
+                Collections.emptyMap(),
+                new DefaultRegistry());
+        tasksPublisherCtrl.start();
+
+        Awaitility.await().timeout(30, TimeUnit.SECONDS).until(() -> tasksPublisherCtrl.getNumIndexUpdated().get() == 3);
+        assertThat(tasksPublisherCtrl.getNumTasksUpdated().get()).isEqualTo(1);
+        assertThat(tasksPublisherCtrl.getNumErrors().get()).isEqualTo(0);
+        tasksPublisherCtrl.stop();
+    }
+}
@@ -52,7 +52,9 @@ public class TestStreamObserver<T> extends ServerCallStreamObserver<T> {
     private volatile boolean completed;
 
     private Runnable onCancelHandler;
+    private Runnable onReadyHandler;
     private boolean cancelled;
+    private volatile boolean ready = true;
 
     @Override
     public void onNext(T value) {
@@ -164,7 +166,17 @@ public class TestStreamObserver<T> extends ServerCallStreamObserver<T> {
 
     @Override
     public boolean isReady() {
-        return true;
+        return ready;
+    }
+
+    /**
+     * Simulates the GRPC transport flow control. Changing the state to ready triggers the on-ready handler.
+     */
+    public void setReady(boolean ready) {
+        this.ready = ready;
+        if (ready && onReadyHandler != null) {
+            onReadyHandler.run();
+        }
     }
 
     @Override
@@ -183,6 +195,7 @@ public class TestStreamObserver<T> extends ServerCallStreamObserver<T> {
 
     @Override
     public void setOnReadyHandler(Runnable onReadyHandler) {
+        this.onReadyHandler = onReadyHandler;
     }
 
     @Override
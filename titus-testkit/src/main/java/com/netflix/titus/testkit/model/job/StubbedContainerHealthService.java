@@ -16,11 +16,15 @@
 
 package com.netflix.titus.testkit.model.job;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import com.netflix.titus.api.containerhealth.model.ContainerHealthStatus;
 import com.netflix.titus.api.containerhealth.model.event.ContainerHealthEvent;
 import com.netflix.titus.api.containerhealth.service.ContainerHealthService;
+import com.netflix.titus.common.util.rx.ReactorExt;
 import reactor.core.publisher.Flux;
 
 class StubbedContainerHealthService implements ContainerHealthService {
@@ -43,6 +47,14 @@ class StubbedContainerHealthService implements ContainerHealthService {
 
     @Override
     public Flux<ContainerHealthEvent> events(boolean snapshot) {
-        return null;
+        Flux<ContainerHealthEvent> updates = ReactorExt.toFlux(stubbedJobData.healthEvents());
+        if (!snapshot) {
+            return updates;
+        }
+        return updates.compose(ReactorExt.head(() -> {
+            List<ContainerHealthStatus> statuses = new ArrayList<>();
+            stubbedJobData.getTasks().forEach(task -> findHealthStatus(task.getId()).ifPresent(statuses::add));
+            return Collections.singletonList(ContainerHealthEvent.snapshot(statuses));
+        }));
     }
 }
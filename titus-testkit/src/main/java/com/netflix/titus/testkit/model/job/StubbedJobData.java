@@ -32,6 +32,7 @@ import java.util.stream.Collectors;
 import com.google.common.base.Preconditions;
 import com.netflix.titus.api.containerhealth.model.ContainerHealthState;
 import com.netflix.titus.api.containerhealth.model.ContainerHealthStatus;
+import com.netflix.titus.api.containerhealth.model.event.ContainerHealthEvent;
 import com.netflix.titus.api.jobmanager.model.CallMetadata;
 import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
 import com.netflix.titus.api.jobmanager.model.job.Capacity;
@@ -65,6 +66,7 @@ class StubbedJobData {
     private final ConcurrentMap<String, JobHolder> jobHoldersById = new ConcurrentHashMap<>();
 
     private final PublishSubject<JobManagerEvent<?>> observeJobsSubject = PublishSubject.create();
+    private final PublishSubject<ContainerHealthEvent> healthEventsSubject = PublishSubject.create();
 
     private final CallMetadata callMetadata = CallMetadata.newBuilder().withCallerId("StubbedData").build();
 
@@ -172,6 +174,10 @@ class StubbedJobData {
         return snapshot ? ObservableExt.fromCollection(this::getEventSnapshot).concatWith(observeJobsSubject) : observeJobsSubject;
     }
 
+    Observable<ContainerHealthEvent> healthEvents() {
+        return healthEventsSubject;
+    }
+
     private JobHolder getJobHolderByJobId(String jobId) {
         JobHolder jobHolder = jobHoldersById.get(jobId);
         if (jobHolder == null) {
@@ -347,13 +353,14 @@ class StubbedJobData {
         }
 
         void changeContainerHealth(String taskId, ContainerHealthState healthState) {
-            tasksHealthById.put(taskId, ContainerHealthStatus.newBuilder()
+            ContainerHealthStatus healthStatus = ContainerHealthStatus.newBuilder()
                     .withTaskId(taskId)
                     .withState(healthState)
                     .withReason("On demand change")
                     .withTimestamp(titusRuntime.getClock().wallTime())
-                    .build()
-            );
+                    .build();
+            tasksHealthById.put(taskId, healthStatus);
+            healthEventsSubject.onNext(ContainerHealthEvent.healthChanged(healthStatus));
         }
 
         Task moveTaskToState(Task task, V3JobOperations.Trigger trigger, TaskState newState) {
@@ -216,6 +216,15 @@ class StubbedJobOperations implements V3JobOperations {
         return deferCompletable(() -> stubbedJobData.changeTask(taskId, task -> changeFunction.apply(task).orElse(task)));
     }
 
+    @Override
+    public Completable updateTasks(Map<String, Function<Task, Optional<Task>>> changeFunctions, Trigger trigger, String reason, CallMetadata callMetadata) {
+        return deferCompletable(() -> changeFunctions.forEach((taskId, changeFunction) -> {
+            if (stubbedJobData.findTask(taskId).isPresent()) {
+                stubbedJobData.changeTask(taskId, task -> changeFunction.apply(task).orElse(task));
+            }
+        }));
+    }
+
     @Override
     public Completable recordTaskPlacement(String taskId, Function<Task, Task> changeFunction, CallMetadata callMetadata) {
         return deferCompletable(() -> stubbedJobData.changeTask(taskId, changeFunction::apply));